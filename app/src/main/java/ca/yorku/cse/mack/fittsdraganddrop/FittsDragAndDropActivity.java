@@ -2,9 +2,9 @@ package ca.yorku.cse.mack.fittsdraganddrop;
 
 import android.app.Activity;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.content.pm.ActivityInfo;
 import android.content.res.Configuration;
-import android.graphics.PointF;
 import android.media.MediaPlayer;
 import android.media.MediaScannerConnection;
 import android.os.Bundle;
@@ -18,15 +18,33 @@ import android.view.Surface;
 import android.view.View;
 import android.widget.Toast;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Locale;
 import java.util.Random;
 import java.util.StringTokenizer;
 
+import ca.yorku.cse.mack.fittscore.AsyncDataWriter;
+import ca.yorku.cse.mack.fittscore.BinaryTraceWriter;
+import ca.yorku.cse.mack.fittscore.ColumnarTrialWriter;
+import ca.yorku.cse.mack.fittscore.CompressedTextWriter;
+import ca.yorku.cse.mack.fittscore.DragTrialLogic;
+import ca.yorku.cse.mack.fittscore.FittsModel;
+import ca.yorku.cse.mack.fittscore.MappedTraceStore;
+import ca.yorku.cse.mack.fittscore.RecordEncoder;
+import ca.yorku.cse.mack.fittscore.StudyCatalog;
+import ca.yorku.cse.mack.fittscore.TargetShape;
+import ca.yorku.cse.mack.fittscore.ThroughputAccumulator;
+import ca.yorku.cse.mack.fittscore.TraceBuffer;
+import ca.yorku.cse.mack.fittscore.TrialJournal;
+import ca.yorku.cse.mack.fittscore.TrialTable;
+
 import static android.content.res.Configuration.ORIENTATION_PORTRAIT;
 
 /**
@@ -139,6 +157,31 @@ import static android.content.res.Configuration.ORIENTATION_PORTRAIT;
  *
  * <center> <a href="FittsDragAndDrop-2.jpg"><img src="FittsDragAndDrop-2.jpg" height=200></a> </center> <p>
  *
+ * <tr> <td valign="top">Capture batched touch samples <td>A checkbox parameter. If checked, the touch samples that
+ * Android batches into a single move event (the event's history) are added to the trace data, so the trace has every
+ * sample delivered by the digitizer. If unchecked (the default), only the latest sample in each move event is used. <p>
+ *
+ * <tr> <td valign="top">Also write trial data in columns (sd1c) <td>A checkbox parameter. If checked, the sd1 data
+ * are also written to an sd1c file, in a columnar binary format (see "sd1 Output File", below). The default is
+ * unchecked. <p>
+ *
+ * <tr> <td valign="top">Also write a session database (SQLite) <td>A checkbox parameter. If checked, the data are
+ * also written to an SQLite database, FittsDragAndDrop.db in the data directory, with every block run on the device
+ * (see SessionDatabase). The default is unchecked. <p>
+ *
+ * <tr> <td valign="top">Compress the sd1 file (sd1z) <td>A checkbox parameter. If checked, the sd1 file is written
+ * compressed, as an sd1z file, instead (see "sd3 Output Data", below). The default is unchecked. Compression needs
+ * Android 4.4 (API 19); on earlier devices the checkbox is disabled. <p>
+ *
+ * <tr> <td valign="top">Trace data format <td>"sd3" (the default), "sd3b", "sd3m", or "sd3z". With "sd3b", the trace
+ * data are written in a compact binary format, with "sd3m", to a memory-mapped file, and with "sd3z", as compressed
+ * sd3 text (see "sd3 Output Data", below), instead of the sd3 text format. "sd3z" is not offered on devices before
+ * Android 4.4 (API 19). <p>
+ *
+ * <tr> <td valign="top">Trace tolerance (px) <td>If greater than 0, the trace data are simplified as they are
+ * collected: trace points are dropped if the path through the remaining points passes within this distance of them
+ * (see TraceSimplifier). The first and last points of each trial are always kept. The default is 0 (no
+ * simplification). The path measures in the sd1 file are computed from all the trace points. <p>
  *
  * </table> </blockquote>
  *
@@ -258,6 +301,19 @@ import static android.content.res.Configuration.ORIENTATION_PORTRAIT;
  *      PickupMisses - number of times the drag object was missed at the beginning of trial
  *      Error - 0 = target selected, 1 = target missed
  *      MT - movement time in ms for the trial
+ *      HistoricalSamples - number of trace samples taken from the history of move events (0 unless "Capture
+ *                          batched touch samples" is checked)
+ *      TRE - target re-entries: times the path entered the target after the first entry
+ *      TAC - task axis crossings: times the path crossed the task axis
+ *      MDC - movement direction changes: times the path changed direction relative to the task axis
+ *      ODC - orthogonal direction changes: times the path changed direction along the task axis
+ *      MV - movement variability: standard deviation of the distances of the trace points from the task axis
+ *      ME - movement error: mean absolute distance of the trace points from the task axis
+ *      MO - movement offset: mean (signed) distance of the trace points from the task axis
+ *      PathLength - length of the path (sum of the distances between successive trace points)
+ *      TraceSamples - number of trace points collected for the trial
+ *      TraceCompression - TraceSamples divided by the number of trace points written to the sd3 file (1 unless the
+ *                         trace tolerance is greater than 0)
  * </pre>
  *
  * Note: All sizes, distances, and coordinates are in pixel units for the test device. <p>
@@ -279,6 +335,11 @@ import static android.content.res.Configuration.ORIENTATION_PORTRAIT;
  *
  * <i>TP</i> = <i>ID</i><sub>e</sub> / <i>MT</i> <p> </blockquote>
  *
+ * If the sd1c option is set, the same data are also written to an sd1c file. This is a binary file with one batch
+ * per sequence, holding each column's values together as little-endian ints, longs, or floats (see
+ * ColumnarTrialWriter). A column is thus read straight into an array (e.g., with numpy or Arrow) for analysis,
+ * without parsing text. The sd1c file is converted to an sd1 file with the Sd1cToSd1 utility in fitts-tools. <p>
+ *
  * <h4>sd2 Output File</h4>
  *
  * The sd2 file contains one line per sequence.   The columns contain the following data: <p>
@@ -320,6 +381,26 @@ import static android.content.res.Configuration.ORIENTATION_PORTRAIT;
  * utility, <a href="file:///C:/Users/mack/Desktop/Scott-new/Java/FITTS_LAW/doc/FittsTrace.html">FittsTrace</a>,
  * facilitates viewing the trace data. <p>
  *
+ * If the trace data format is "sd3b", the trace data are written to an sd3b file instead. This is a binary file with
+ * the same data, delta and varint encoded (see BinaryTraceWriter), and typically a fraction of the size of the sd3
+ * file. The sd3b file is converted to an sd3 file with the Sd3bToSd3 utility in fitts-tools. <p>
+ *
+ * If the trace data format is "sd3m", the trace data are written to an sd3m file. This is an append-only binary file
+ * written through a memory-mapped buffer (see MappedTraceStore), so saving a trial's samples is a copy into memory,
+ * with no encoding and no write calls. Each trial is committed when it is complete; if the app is stopped part way
+ * through a trial, the file still holds every completed trial. The sd3m file is also converted to an sd3 file with
+ * the Sd3bToSd3 utility. <p>
+ *
+ * If the trace data format is "sd3z", the sd3 text is written through a streaming compressor (see
+ * CompressedTextWriter), typically to a small fraction of its size. The compressor is flushed at the end of each trial,
+ * so if the app is stopped part way through a block, the file still decodes up to the last completed trial. The sd1
+ * file can be compressed the same way (sd1z; flushed at the end of each sequence). The compression is done on the
+ * thread that writes the files, so the touch events do not wait on it, and the compression ratio is reported at the
+ * end of the block. An sd3z or sd1z file is converted to the text file with the SdzToText utility in fitts-tools.
+ * The compressor's sync flush (Deflater.SYNC_FLUSH) was added in Android 4.4 (API 19), so the compressed formats are
+ * only offered from API 19 (see FittsDragAndDropSetup).
+ * (The files rebuilt from the journal after a crash are written as text.) <p>
+ *
  * The following are examples of "sd" (summary data) files: <p>
  *
  * <ul> <li><a href="FittsDragAndDrop-sd1-example.txt">sd1 example</a>
@@ -337,6 +418,22 @@ import static android.content.res.Configuration.ORIENTATION_PORTRAIT;
  *
  * <center> <a href="FittsDragAndDrop-10.jpg"><img src="FittsDragAndDrop-10.jpg" width=1000></a> </center> <p>
  *
+ * <h4>Recovery</h4>
+ *
+ * As each trial is completed, its data are also recorded in a journal, FittsDragAndDrop.journal in the data
+ * directory (see TrialJournal). The journal is committed (written and synced) in groups: at the end of each sequence,
+ * and within a few seconds of a trial. If the app is stopped part way through a block, the block's sd1, sd2, and sd3
+ * (or sd3b) files are rebuilt from the journal the next time the app is started. The rebuilt files have every
+ * completed sequence, but not the model lines at the end of the sd2 file. The journal is deleted at the end of each
+ * block. <p>
+ *
+ * <h4>Catalog</h4>
+ *
+ * At the end of each block, the block is added to the study catalog, FittsDragAndDrop.catalog in the data directory
+ * (see StudyCatalog): its codes, the number of sequences and trials, the mean MT, error rate, and throughput, and where
+ * its sd1, sd2, and trace data are. The catalog is replaced atomically. The Compact tool (in fitts-tools) merges the
+ * data of the blocks in the catalog into one segment file per participant. <p>
+ *
  * When using this application in an experiment, it is a good idea to terminate all other applications and to disable
  * the system's WiFi and Bluetooth transceivers. This will maintain the integrity of the data collected and ensure that
  * the application runs without hesitations. <p>
@@ -344,7 +441,8 @@ import static android.content.res.Configuration.ORIENTATION_PORTRAIT;
  * @author (c) Scott MacKenzie, 2018
  */
 
-public class FittsDragAndDropActivity extends Activity implements View.OnTouchListener, MediaPlayer.OnCompletionListener
+public class FittsDragAndDropActivity extends Activity implements View.OnTouchListener,
+        MediaPlayer.OnCompletionListener, DragTrialLogic.Listener
 {
     final String MYDEBUG = "MYDEBUG";
     final String DATA_DIRECTORY = "/FittsDragAndDropData/";
@@ -352,7 +450,8 @@ public class FittsDragAndDropActivity extends Activity implements View.OnTouchLi
 
     final String SD1_HEADER = "Participant,Session,Block,Group,Condition,Mode,Trial,A,W,FromX,FromY,TargetX,TargetY," +
             "FingerDownX,FingerDownY,SelectX,SelectY,xDelta,FingerDownUpDelta,FingerDownUpTime(ms)," +
-            "DistanceFromTargetCenter,PickupMisses,Error,MT(ms)" + System.getProperty("line.separator");
+            "DistanceFromTargetCenter,PickupMisses,Error,MT(ms),HistoricalSamples,TRE,TAC,MDC,ODC,MV,ME,MO,PathLength," +
+            "TraceSamples,TraceCompression" + System.getProperty("line.separator");
     final String SD2_HEADER = "App,Participant,Session,Block,Group,Condition,Mode,Trials," +
             "A,W,ID,Ae,We,IDe,PickupMisses,SequenceRepeatCount,MT(ms),ErrorRate(%),TP(bps)" + System.getProperty
             ("line.separator");
@@ -360,7 +459,14 @@ public class FittsDragAndDropActivity extends Activity implements View.OnTouchLi
             System.getProperty("line.separator") +
             "App,Participant,Condition,Block,Sequence,A,W,Trial,from_x,from_y,to_x,to_y,{t_x_y}" +
             System.getProperty("line.separator");
-    final float TWO_TIMES_PI = 6.283185307f;
+    final String SD2_MODEL_HEADER = System.getProperty("line.separator") + "MODEL DATA" +
+            System.getProperty("line.separator") +
+            "App,Participant,Session,Block,Group,Condition,Mode,Scope,Predictor,Sequences,Intercept(ms)," +
+            "Slope(ms/bit),R2" + System.getProperty("line.separator");
+    final String MODEL_PREFERENCES = "FittsModels";
+    final String JOURNAL_FILENAME = APP + ".journal";
+    final String CATALOG_FILENAME = APP + ".catalog";
+    final int SD1_STREAM = 0, SD2_STREAM = 1, TRACE_STREAM = 2; // the journal's streams (see TrialJournal)
     final int VIBRATION_PULSE_DURATION = 10;
 
     ExperimentPanel expPanel;
@@ -368,34 +474,50 @@ public class FittsDragAndDropActivity extends Activity implements View.OnTouchLi
     String dimensionMode;
     boolean vibrotactileFeedback, auditoryFeedback, speechFeedback;
     boolean fittsFarmStyle, showAllTargets;
-    int numberOfTrials, numberOfTargets, outlierSequenceCount, pickupMissCountSequence, pickupMissCountTrial;
+    boolean historicalSamples; // add the batched (historical) samples in move events to the trace
+    boolean columnarTrials; // also write the sd1 data to an sd1c file
+    boolean compressSd1; // write the sd1 file compressed (sd1z)
+    int numberOfTrials, numberOfTargets;
     float[] amplitude, width;
-    BufferedWriter sd1, sd2, sd3;
-    File f1, f2, f3;
+    Writer sd1, sd3; // a BufferedWriter, or (if compressed) a CompressedTextWriter
+    BufferedWriter sd2;
+    CompressedTextWriter sd1z, sd3z; // the same as sd1 and sd3, if compressed
+    BinaryTraceWriter sd3b; // used instead of sd3 if the trace data format is sd3b
+    MappedTraceStore sd3m; // used instead of sd3 if the trace data format is sd3m
+    ColumnarTrialWriter sd1c; // used (as well as sd1) if columnarTrials is set
+    AsyncDataWriter dataWriter; // writes sd1, sd1c, sd2, and sd3 (or sd3b) on a background thread
+    TrialJournal journal; // the block's data, committed in groups, to rebuild the files after a crash
+    final ArrayList<TrialWrite> freeTrialWrites = new ArrayList<TrialWrite>(); // see TrialWrite
+    boolean sessionDatabase; // also write the data to the session database
+    SessionDatabase database; // used on dataWriter's thread only
+    long databaseBlockId;
+    ArrayList<TraceBuffer> sequenceTraces; // the traces of the trials so far in the sequence, for the database
+    File catalogFile; // the study catalog (see StudyCatalog)
+    String baseFilename;
+    String[] catalogCodes; // the block's codes, with the block's number (see blockCode)
+    int catalogSequences, catalogTrials, catalogMisses, catalogTraceTrials;
+    double catalogMT, catalogTP; // sums, for the block's means
+    String traceFormat;
+    File f1, f2, f3, f1c;
     int screenOrientation, targetHeight1D;
     String sd2Header;
 
     AmplitudeWidth[] aw; // task conditions (A-W pairs)
     float xCenter, yCenter;
-    float xFingerDown, yFingerDown;
-    long fingerDownTime, now, sequenceStartTime;
-    long trialStartTime, trialTime;
-    boolean sequenceStarted, waitTargetSelected, outlier;
-    boolean dragInProgress;
-    int awIdx, selectionCount, trialError;
     Vibrator vib;
     MediaPlayer missSound, tickSound, thankYou, stillHungry, takeANap, animalsAreHungry;
-    StringBuilder sb1, sb2, sb3, results;
+    StringBuilder results;
+
+    // The trial logic (targets, trials, sequences, trace and path measures), driven by the touch events in onTouch
+    DragTrialLogic trials;
 
-    // new stuff to streamline calculation of Throughput
-    PointF[] from;
-    PointF[] to;
-    PointF[] select;
-    float[] mtArray;
-    // -----
+    // Fitts' law models (MT = a + b x IDe, MT = a + b x ID), updated as each sequence is completed
+    FittsModel blockModelIDe, blockModelID; // this block
+    FittsModel allModelIDe, allModelID; // this block and earlier blocks (saved in the shared preferences)
+    String modelKey;
 
-    ArrayList<TracePoint> tracePoint;
-    String sd3Leadin;
+    float traceTolerance; // 0 = no simplification (see TraceSimplifier)
+    RecordEncoder sd3Leadin; // reused for each trial (see writeSd3Trial)
 
     @Override
     public void onCreate(Bundle savedInstanceState)
@@ -420,6 +542,12 @@ public class FittsDragAndDropActivity extends Activity implements View.OnTouchLi
         speechFeedback = b.getBoolean("speechFeedback");
         fittsFarmStyle = b.getBoolean("fittsFarmStyle");
         showAllTargets = b.getBoolean("showAllTargets");
+        historicalSamples = b.getBoolean("historicalSamples");
+        columnarTrials = b.getBoolean("columnarTrials");
+        compressSd1 = b.getBoolean("compressSd1");
+        sessionDatabase = b.getBoolean("sessionDatabase");
+        traceFormat = b.getString("traceFormat");
+        traceTolerance = b.getFloat("traceTolerance");
         screenOrientation = b.getInt("screenOrientation");
 
         // force the UI to operate in the device's default orientation
@@ -442,48 +570,155 @@ public class FittsDragAndDropActivity extends Activity implements View.OnTouchLi
             this.finish(); // terminate
         }
 
+        // rebuild the data files of a block that did not end (e.g., the app was stopped), from its journal
+        File journalFile = new File(dataDirectory, JOURNAL_FILENAME);
+        if (journalFile.exists())
+            recoverJournal(journalFile);
+
+        // the blocks in the catalog (their files may have been merged into segment files, see StudyCatalog)
+        catalogFile = new File(dataDirectory, CATALOG_FILENAME);
+        StudyCatalog catalog;
+        try
+        {
+            catalog = StudyCatalog.read(catalogFile);
+        } catch (IOException e)
+        {
+            Log.e(MYDEBUG, "Catalog not read: " + e);
+            catalog = new StudyCatalog();
+        }
+
         /*
          * The following do-loop creates data files for output and a string sd2Header to write to the sd2
          * output files.  Both the filenames and the sd2Header are constructed by combining the setup parameters
          * so that the filenames and sd2Header are unique and also reveal the conditions used for the block of input.
          *
          * The block code begins "B01" and is incremented on each loop iteration until an available
-         * filename is found.  The goal, of course, is to ensure data files are not inadvertently overwritten.
+         * filename is found (one not in use, and not in the catalog).  The goal, of course, is to ensure data
+         * files are not inadvertently overwritten.
          */
         int blockNumber = 0;
         do
         {
             ++blockNumber;
             String blockCode = String.format(Locale.CANADA, "B%02d", blockNumber);
-            String baseFilename = String.format("%s-%s-%s-%s-%s-%s-%s", APP, participantCode,
+            baseFilename = String.format("%s-%s-%s-%s-%s-%s-%s", APP, participantCode,
                     sessionCode, blockCode, groupCode, conditionCode, dimensionMode);
 
-            f1 = new File(dataDirectory, baseFilename + ".sd1");
+            f1 = new File(dataDirectory, baseFilename + (compressSd1 ? ".sd1z" : ".sd1"));
             f2 = new File(dataDirectory, baseFilename + ".sd2");
-            f3 = new File(dataDirectory, baseFilename + ".sd3");
+            f3 = new File(dataDirectory, baseFilename + "." + traceFormat);
+            f1c = new File(dataDirectory, baseFilename + ".sd1c");
 
             // also make a comma-delimited leader that will begin each data line written to the sd2 file
             sd2Header = String.format("%s,%s,%s,%s,%s,%s,%s", APP, participantCode, sessionCode,
                     blockCode, groupCode, conditionCode, dimensionMode);
-        } while (f1.exists() || f2.exists());
+        } while (f1.exists() || f2.exists() || catalog.get(baseFilename) != null);
+        catalogCodes = new String[] {participantCode, sessionCode, String.format(Locale.CANADA, "B%02d",
+                blockNumber), groupCode, conditionCode, dimensionMode};
 
+        /*
+         * The files are written by dataWriter, so the touch events do not wait on storage. The file streams are
+         * registered with it so they are synced at the end of the block (until then, the journal, below, holds the data
+         * durably). (The sd3m store is written directly: its
+         * writes are stores into memory, with no system call.)
+         */
+        dataWriter = new AsyncDataWriter(dataWriterListener);
         try
         {
-            sd1 = new BufferedWriter(new FileWriter(f1));
-            sd2 = new BufferedWriter(new FileWriter(f2));
-            sd3 = new BufferedWriter(new FileWriter(f3));
+            FileOutputStream out1 = new FileOutputStream(f1);
+            if (compressSd1)
+                sd1 = sd1z = new CompressedTextWriter(new BufferedOutputStream(out1));
+            else
+                sd1 = new BufferedWriter(new OutputStreamWriter(out1));
+            dataWriter.addTarget(sd1, out1);
+            FileOutputStream out2 = new FileOutputStream(f2);
+            sd2 = new BufferedWriter(new OutputStreamWriter(out2));
+            dataWriter.addTarget(sd2, out2);
+            if (columnarTrials)
+            {
+                FileOutputStream out1c = new FileOutputStream(f1c);
+                sd1c = new ColumnarTrialWriter(new BufferedOutputStream(out1c));
+                dataWriter.addTarget(sd1c, out1c);
+            }
+            if (traceFormat.equals("sd3b"))
+            {
+                FileOutputStream out3 = new FileOutputStream(f3);
+                sd3b = new BinaryTraceWriter(new BufferedOutputStream(out3), APP, participantCode, conditionCode,
+                        blockCode);
+                dataWriter.addTarget(sd3b, out3);
+            } else if (traceFormat.equals("sd3m"))
+                sd3m = new MappedTraceStore(f3, APP, participantCode, conditionCode, blockCode);
+            else
+            {
+                FileOutputStream out3 = new FileOutputStream(f3);
+                if (traceFormat.equals("sd3z"))
+                    sd3 = sd3z = new CompressedTextWriter(new BufferedOutputStream(out3));
+                else
+                    sd3 = new BufferedWriter(new OutputStreamWriter(out3));
+                dataWriter.addTarget(sd3, out3);
+                sd3Leadin = new RecordEncoder(64);
+            }
 
             // output header in sd1 file
-            sd1.write(SD1_HEADER, 0, SD1_HEADER.length());
-            sd1.flush();
+            dataWriter.append(sd1, SD1_HEADER);
 
             // output header in sd2 file
-            sd2.write(SD2_HEADER, 0, SD2_HEADER.length());
-            sd2.flush();
+            dataWriter.append(sd2, SD2_HEADER);
+
+            // output header in sd3 file (sd3b and sd3m headers are written by BinaryTraceWriter and MappedTraceStore)
+            if (sd3 != null)
+                dataWriter.append(sd3, SD3_HEADER);
 
-            // output header in sd3 file
-            sd3.write(SD3_HEADER, 0, SD3_HEADER.length());
-            sd3.flush();
+            /*
+             * The journal records the data for the sd1, sd2, and sd3 (or sd3b) files as each trial is completed. It
+             * is committed (written and synced) with each flush of dataWriter, so the files themselves are only
+             * synced at the end of the block. (The sd3m file is not journaled: its trials are committed in place.) The
+             * journal holds the text of the sd1z and sd3z files, so they are rebuilt as sd1 and sd3 files.
+             */
+            String path1 = textPath(f1), path3 = textPath(f3);
+            String[] paths = sd3m == null ? new String[] {path1, f2.getAbsolutePath(), path3} : new String[] {path1,
+                    f2.getAbsolutePath()};
+            journal = new TrialJournal(journalFile, paths, new boolean[] {true, false, false});
+            dataWriter.addTarget(journal, null);
+            final byte[] sd3bHeader = sd3b != null ? BinaryTraceWriter.encodeHeader(APP, participantCode,
+                    conditionCode, blockCode) : null;
+            dataWriter.submit(new AsyncDataWriter.Task()
+            {
+                @Override
+                public int write() throws IOException
+                {
+                    journal.begin(TrialJournal.DATA);
+                    journal.add(SD1_STREAM, SD1_HEADER);
+                    journal.add(SD2_STREAM, SD2_HEADER);
+                    if (sd3 != null)
+                        journal.add(TRACE_STREAM, SD3_HEADER);
+                    else if (sd3bHeader != null)
+                        journal.add(TRACE_STREAM, sd3bHeader, 0, sd3bHeader.length);
+                    journal.end();
+                    return 0;
+                }
+            });
+
+            // the session database is opened, and the block added, on dataWriter's thread (see SessionDatabase)
+            if (sessionDatabase)
+            {
+                final File databaseFile = new File(dataDirectory, APP + ".db");
+                final String databaseBlockCode = String.format(Locale.CANADA, "B%02d", blockNumber);
+                final String databaseFilename = baseFilename;
+                final long started = System.currentTimeMillis();
+                sequenceTraces = new ArrayList<TraceBuffer>();
+                dataWriter.submit(new AsyncDataWriter.Task()
+                {
+                    @Override
+                    public int write() throws IOException
+                    {
+                        database = new SessionDatabase(databaseFile);
+                        databaseBlockId = database.insertBlock(APP, participantCode, sessionCode, databaseBlockCode,
+                                groupCode, conditionCode, dimensionMode, traceFormat, databaseFilename, started);
+                        return 0;
+                    }
+                });
+            }
 
         } catch (IOException e)
         {
@@ -574,17 +809,26 @@ public class FittsDragAndDropActivity extends Activity implements View.OnTouchLi
         if (dimensionMode.equals("2D"))
             numberOfTrials = numberOfTargets;
 
-        // arrays needed for Throughput calculation (done on a per-sequence basis)
-        from = new PointF[numberOfTrials];
-        to = new PointF[numberOfTrials];
-        select = new PointF[numberOfTrials];
-        mtArray = new float[numberOfTrials];
+        // the models for earlier blocks with the same codes are continued (see doEndBlock)
+        modelKey = String.format("%s-%s-%s-%s-%s", participantCode, sessionCode, groupCode, conditionCode,
+                dimensionMode);
+        SharedPreferences modelPreferences = getSharedPreferences(MODEL_PREFERENCES, MODE_PRIVATE);
+        allModelIDe = FittsModel.fromString(modelPreferences.getString(modelKey + "-IDe", null));
+        allModelID = FittsModel.fromString(modelPreferences.getString(modelKey + "-ID", null));
+        blockModelIDe = new FittsModel();
+        blockModelID = new FittsModel();
         aw = getAmplitudeWidthArray(amplitude, width);
-        awIdx = 0;
-        waitTargetSelected = true;
-
-        sequenceStarted = false;
-        dragInProgress = false;
+        float[] sequenceAmplitude = new float[aw.length];
+        float[] sequenceWidth = new float[aw.length];
+        for (int i = 0; i < aw.length; ++i)
+        {
+            sequenceAmplitude[i] = aw[i].a;
+            sequenceWidth[i] = aw[i].w;
+        }
+        String sd1Codes = String.format("%s,%s,%s,%s,%s,%s", participantCode, sessionCode, blockCode, groupCode,
+                conditionCode, dimensionMode);
+        trials = new DragTrialLogic(sd1Codes, sd2Header, dimensionMode.equals("1D"), sequenceAmplitude,
+                sequenceWidth, numberOfTrials, numberOfTargets, xCenter, yCenter, targetHeight1D, traceTolerance, this);
 
          /*
          * We want to play the banner sound now (contingent on setup options), but this isn't possible because the
@@ -647,7 +891,7 @@ public class FittsDragAndDropActivity extends Activity implements View.OnTouchLi
     {
         float x = me.getX();
         float y = me.getY();
-        now = me.getEventTime();
+        long now = me.getEventTime();
 
         expPanel.xTouchPoint = x;
         expPanel.yTouchPoint = y;
@@ -657,22 +901,18 @@ public class FittsDragAndDropActivity extends Activity implements View.OnTouchLi
             // this flag enables the gradient heat map to be drawn under the user's finger
             expPanel.fingerDown = true;
 
-            if (!expPanel.waitStartCircleSelect)
-            {
-                if (expPanel.fromTarget.r.contains(x, y))
-                    doDragObjectBegin(x, y); // object correctly acquired
-                else if (sequenceStarted)
-                {
-                    ++pickupMissCountTrial;
-                    ++pickupMissCountSequence; // object missed
-                }
-            }
+            // begin the drag if the object is correctly acquired (otherwise, a pickup miss)
+            trials.touchDown(now, x, y);
 
         } else if (me.getAction() == MotionEvent.ACTION_MOVE) // ===========================================
         {
-            if (!expPanel.waitStartCircleSelect && dragInProgress)
+            if (!trials.isWaitingForStartCircle() && trials.isDragInProgress())
             {
-                doDragObject(x, y);
+                if (historicalSamples)
+                    doDragObjectHistory(me);
+                trials.touchMove(now, x, y);
+                expPanel.xDragObject = x;
+                expPanel.yDragObject = y;
             }
 
         } else if (me.getAction() == MotionEvent.ACTION_UP) // =============================================
@@ -680,34 +920,43 @@ public class FittsDragAndDropActivity extends Activity implements View.OnTouchLi
             // disable drawing of gradient heat map under user's finger
             expPanel.fingerDown = false;
 
-            if (expPanel.waitStartCircleSelect)
+            if (trials.isWaitingForStartCircle())
             {
                 if (expPanel.startCircle.inTarget(x, y))
                 {
                     doStartCircleSelected();
                 }
 
-            } else if (dragInProgress)
+            } else if (trials.isDragInProgress())
             {
-                doTargetSelected(x, y);
+                // target selection (see DragTrialLogic and the listener methods below)
+                trials.touchUp(now, x, y);
+                updatePanel();
+                expPanel.resetDragObject();
             }
         }
         return true;
     }
 
-    private void configureTargets(int awIdx)
+    // make the targets for the experiment panel (the positions are set by the trial logic)
+    private void configureTargets()
     {
-        for (int i = 0; i < numberOfTargets; ++i)
-        {
-            float x = xCenter + (aw[awIdx].a / 2f) * (float)Math.cos(TWO_TIMES_PI * ((float)i / numberOfTargets));
-            float y = yCenter + (aw[awIdx].a / 2f) * (float)Math.sin(TWO_TIMES_PI * ((float)i / numberOfTargets));
-            if (expPanel.mode.equals("1D"))
-                expPanel.targetSet[i] = new Target(Target.RECTANGLE, x, y, aw[awIdx].w, targetHeight1D, Target
-                        .NORMAL);
-            else
-                expPanel.targetSet[i] = new Target(Target.CIRCLE, x, y, aw[awIdx].w, aw[awIdx].w, Target.NORMAL);
-        }
-        // Don't set target to select yet. This is done when start circle is selected.
+        TargetShape[] shapes = trials.getTargets();
+        expPanel.targetSet = new Target[shapes.length];
+        for (int i = 0; i < shapes.length; ++i)
+            expPanel.targetSet[i] = new Target(shapes[i].type, shapes[i].xCenter, shapes[i].yCenter, shapes[i]
+                    .width, shapes[i].height, Target.NORMAL);
+    }
+
+    // show the state of the trial logic in the experiment panel (the target to select, the start circle, etc.)
+    private void updatePanel()
+    {
+        for (int i = 0; i < expPanel.targetSet.length; ++i)
+            expPanel.targetSet[i].status = i == trials.getToIndex() ? Target.TARGET : Target.NORMAL;
+        expPanel.fromTarget = expPanel.targetSet[trials.getFromIndex()];
+        expPanel.toTarget = expPanel.targetSet[trials.getToIndex()];
+        expPanel.waitStartCircleSelect = trials.isWaitingForStartCircle();
+        expPanel.done = trials.isDone();
     }
 
     private AmplitudeWidth[] getAmplitudeWidthArray(float[] aArray, float[] wArray)
@@ -728,66 +977,93 @@ public class FittsDragAndDropActivity extends Activity implements View.OnTouchLi
         return aw;
     }
 
-    // grab the timestamp and x-y coordinate for a finger down event
-    public void doDragObjectBegin(float xArg, float yArg)
-    {
-        dragInProgress = true;
-
-        xFingerDown = xArg;
-        yFingerDown = yArg;
-        expPanel.xTouchPoint = xArg;
-        expPanel.yTouchPoint = yArg;
-
-        if (sequenceStarted)
-        {
-            fingerDownTime = now;
-            //tracePoint = new ArrayList<>();
-            // this is the 2nd trace point in the trial (beginning of drag operation)
-            tracePoint.add(new TracePoint(now - trialStartTime, (int)xArg, (int)yArg));
-        }
-    }
-
-    public void doDragObject(float xArg, float yArg)
+    /*
+     * Add the samples batched into a move event to the trace. The historical samples are older than the event's
+     * current sample (added by touchMove), and are in order, oldest first.
+     */
+    public void doDragObjectHistory(MotionEvent me)
     {
-        expPanel.xDragObject = xArg;
-        expPanel.yDragObject = yArg;
-
-        if (sequenceStarted)
-        {
-            tracePoint.add(new TracePoint(now - trialStartTime, (int)xArg, (int)yArg));
-        }
+        int n = me.getHistorySize();
+        for (int h = 0; h < n; ++h)
+            trials.touchHistory(me.getHistoricalEventTime(h), me.getHistoricalX(h), me.getHistoricalY(h));
     }
 
     public void doStartCircleSelected()
     {
-        if (expPanel.done) // start circle displayed after last sequence, select to finish
+        if (trials.isDone()) // start circle displayed after last sequence, select to finish
             doEndBlock();
 
-        expPanel.waitStartCircleSelect = false;
-        if (awIdx < aw.length)
-        {
-            expPanel.targetSet = new Target[numberOfTargets];
-            configureTargets(awIdx);
-        }
-
-        expPanel.toTarget = expPanel.targetSet[0];
-        expPanel.toTarget.status = Target.TARGET; // target to select
-        expPanel.fromTarget = expPanel.targetSet[expPanel.targetSet.length / 2];
+        trials.startCircleSelected();
+        configureTargets();
+        updatePanel();
 
         // set starting position of drag object
         expPanel.xDragObject = expPanel.fromTarget.xCenter;
         expPanel.yDragObject = expPanel.fromTarget.yCenter;
-        selectionCount = 0;
     }
 
     // Done! close data files and exit
     private void doEndBlock()
     {
+        // save the models, so the fit continues in the next block with the same codes
+        SharedPreferences.Editor modelEditor = getSharedPreferences(MODEL_PREFERENCES, MODE_PRIVATE).edit();
+        modelEditor.putString(modelKey + "-IDe", allModelIDe.toString());
+        modelEditor.putString(modelKey + "-ID", allModelID.toString());
+        modelEditor.apply();
+
         try
         {
+            // append the models to the sd2 file
+            dataWriter.append(sd2, SD2_MODEL_HEADER);
+            journalRecord(TrialJournal.DATA, SD2_STREAM, SD2_MODEL_HEADER);
+            writeModel("Block", "IDe", blockModelIDe);
+            writeModel("Block", "ID", blockModelID);
+            writeModel("AllBlocks", "IDe", allModelIDe);
+            writeModel("AllBlocks", "ID", allModelID);
+
+            // the block is complete in the session database
+            if (sessionDatabase)
+            {
+                final long ended = System.currentTimeMillis();
+                dataWriter.submit(new AsyncDataWriter.Task()
+                {
+                    @Override
+                    public int write() throws IOException
+                    {
+                        database.endBlock(databaseBlockId, ended);
+                        database.close();
+                        return 0;
+                    }
+                });
+            }
+
+            // wait for the queued data to be written and synced (this throws the first write error, if any)
+            dataWriter.close();
+
             sd1.close();
             sd2.close();
-            sd3.close();
+            if (sd1c != null)
+                sd1c.close();
+            if (sd3 != null)
+                sd3.close();
+            if (sd3b != null)
+                sd3b.close();
+            if (sd3m != null)
+                sd3m.close();
+
+            // the files are complete, so the journal is no longer needed
+            journal.close();
+            if (!journal.getFile().delete())
+                Log.w(MYDEBUG, "Journal not deleted: " + journal.getFile());
+            reportCompression();
+
+            // add the block to the catalog
+            StudyCatalog catalog = StudyCatalog.read(catalogFile);
+            catalog.put(new StudyCatalog.Entry(baseFilename, catalogCodes, catalogSequences, catalogTrials,
+                    (float)(catalogMT / catalogTrials), 100.0f * catalogMisses / catalogTrials,
+                    (float)(catalogTP / catalogSequences), new File[] {f1, f2, f3}, new int[] {catalogTrials,
+                    catalogSequences, catalogTraceTrials}));
+            catalog.write(catalogFile);
 
             /*
              * Make the saved data files visible in Windows Explorer. There seems to be bug doing
@@ -805,7 +1081,11 @@ public class FittsDragAndDropActivity extends Activity implements View.OnTouchLi
              * https://stackoverflow.com/questions/14492138/mime-type-for-txt-files
              */
             MediaScannerConnection.scanFile(this, new String[] {f1.getAbsolutePath(), f2.getAbsolutePath(),
-                    f3.getAbsolutePath()}, new String[] {"text/plain", "text/plain", "text/plain"}, null);
+                    f3.getAbsolutePath()}, new String[] {sd1z != null ? "application/octet-stream" : "text/plain",
+                    "text/plain", sd3 == null || sd3z != null ? "application/octet-stream" : "text/plain"}, null);
+            if (sd1c != null)
+                MediaScannerConnection.scanFile(this, new String[] {f1c.getAbsolutePath()}, new String[]
+                        {"application/octet-stream"}, null);
         } catch (IOException e)
         {
             Toast.makeText(this, String.format("ERROR WRITING TO DATA FILE: e = %s", e), Toast.LENGTH_LONG).show();
@@ -813,304 +1093,418 @@ public class FittsDragAndDropActivity extends Activity implements View.OnTouchLi
         this.finish();
     }
 
-    /**
-     * Process a target selection.  There is the possibility that the target selection is the first selection in a
-     * sequence.  In that case, data are not saved because timing for a sequence begins on finger-up (i.e., at the end
-     * of the first selection).  Most of the target selections will be for targets in a sequence.  In these cases, data
-     * are saved.  We also need to deal with the possibility of an error, the sort of feedback to give, etc.
+    /*
+     * The writes for a completed trial, queued on dataWriter: the trace data for the sd3 or sd3b file, and the trial's
+     * journal record. The tasks are reused, with their buffers: each returns itself to freeTrialWrites once written, so
+     * a trial creates no objects once there are as many tasks as trials queued at once (a few, usually one).
      */
-    void doTargetSelected(float xSelect, float ySelect)
+    private class TrialWrite implements AsyncDataWriter.Task
     {
-        // we've got a finger-up so clear this flag
-        dragInProgress = false;
-
-        // hit or miss? (respond appropriately)
-        trialError = expPanel.toTarget.inTarget(xSelect, ySelect) ? 0 : 1;
+        final RecordEncoder sd1Line = new RecordEncoder(); // the trial's sd1 line (the journal's copy)
+        final RecordEncoder sd3Lines = new RecordEncoder(); // sd3: the trial's t, x, and y lines
+        final TraceBuffer trace = new TraceBuffer(); // sd3b: a copy of the trial's trace
+        int sequence, a, w, trial, fromX, fromY, toX, toY; // sd3b
 
-        // perhaps start a sequence (if the user correctly selects the 1st target)
-        if (!sequenceStarted)
+        @Override
+        public int write() throws IOException
         {
-            if (trialError == 1) // failed start of sequence, try again
+            try
             {
-                expPanel.resetDragObject();
-
-            } else // correct start of sequence; do some preparatory things
+                int n = 0;
+                if (sd3b != null)
+                {
+                    int length = sd3b.writeTrial(sequence, a, w, trial, fromX, fromY, toX, toY, trace);
+                    journal.begin(TrialJournal.TRIAL);
+                    journal.add(SD1_STREAM, sd1Line);
+                    journal.add(TRACE_STREAM, sd3b.getBuffer(), 0, length);
+                    n = 3 * trace.size(); // about one byte per value (see BinaryTraceWriter), for the flush threshold
+                } else if (sd3 != null)
+                {
+                    sd3Lines.writeTo(sd3);
+                    if (sd3z != null)
+                        sd3z.endRecord(); // the file decodes to the end of this trial
+                    journal.begin(TrialJournal.TRIAL);
+                    journal.add(SD1_STREAM, sd1Line);
+                    journal.add(TRACE_STREAM, sd3Lines);
+                    n = sd3Lines.length();
+                } else
+                {
+                    journal.begin(TrialJournal.TRIAL); // sd3m: the trace data were stored in the mapped file
+                    journal.add(SD1_STREAM, sd1Line);
+                    n = sd1Line.length();
+                }
+                journal.end();
+                return n;
+            } finally
             {
-                sequenceStarted = true;
-                sequenceStartTime = now;
-                trialStartTime = now; // need this at the beginning of a sequence
-
-                // new...
-                tracePoint = new ArrayList<>();
-
-                // this the first trace point in the sequence
-                tracePoint.add(new TracePoint(0, (int)xSelect, (int)ySelect));
-
-                advanceTarget();
-                expPanel.fromTarget = expPanel.targetSet[0];
-                sb1 = new StringBuilder();
-                sb2 = new StringBuilder();
-                results = new StringBuilder();
-                if (auditoryFeedback)
-                    tickSound.start();
+                synchronized (freeTrialWrites)
+                {
+                    freeTrialWrites.add(this);
+                }
             }
-
-            // we're not saving any data yet, so return now
-            return;
         }
+    }
 
-        if (trialError == 1)
-        {
-            // provide feedback (as per setup) if the user misses the target
-            if (vibrotactileFeedback)
-                vib.vibrate(VIBRATION_PULSE_DURATION);
-            if (auditoryFeedback)
-                missSound.start();
-
-        } else // provide feedback (as per setup) if the user correctly selected the target
+    // a TrialWrite from the free list, or a new one if they are all queued
+    private TrialWrite obtainTrialWrite()
+    {
+        synchronized (freeTrialWrites)
         {
-            if (auditoryFeedback)
-                tickSound.start();
+            int n = freeTrialWrites.size();
+            return n > 0 ? freeTrialWrites.remove(n - 1) : new TrialWrite();
         }
+    }
 
-        // use static methods in the Throughput class to retrieve dx and ae, as per the usual calculations
-        float xDelta = Throughput.getTrialDeltaX(expPanel.fromTarget.targetCenter(), expPanel.toTarget.targetCenter(),
-                new PointF(xSelect, ySelect));
-        float ae = Throughput.getTrialAe(expPanel.fromTarget.targetCenter(), expPanel.toTarget.targetCenter(),
-                new PointF(xSelect, ySelect));
+    // format the trace data for the trial just completed for the sd3 file (three lines: t, x, y)
+    private void writeSd3Trial(TrialWrite write)
+    {
+        TargetShape from = trials.getFromTarget(), to = trials.getToTarget();
+        RecordEncoder r = sd3Leadin.reset();
+        r.append(APP).append(',').append(participantCode).append(',').append(conditionCode).append(',');
+        r.append(blockCode).append(',').appendInt(trials.getSequenceIndex() + 1).append(',');
+        r.appendInt((int)trials.getA()).append(',').appendInt((int)trials.getW()).append(',');
+        r.appendInt(trials.getTrialIndex() + 1).append(',').appendInt((int)from.xCenter).append(',');
+        r.appendInt((int)from.yCenter).append(',').appendInt((int)to.xCenter).append(',');
+        r.appendInt((int)to.yCenter).append(',');
+        TraceBuffer trace = trials.getTrace();
+        String newline = System.getProperty("line.separator");
+
+        // time data (into the task's encoder: the writer thread reads it after this returns)
+        r = write.sd3Lines.reset();
+        r.append(sd3Leadin).append("t=,");
+        for (int i = 0; i < trace.size(); ++i)
+            r.appendLong(trace.getT(i)).append(',');
+        r.append(newline);
+
+        // x data
+        r.append(sd3Leadin).append("x=,");
+        for (int i = 0; i < trace.size(); ++i)
+            r.appendInt(trace.getX(i)).append(',');
+        r.append(newline);
 
-        // compute distance from select point to target center (this is "b" in the usual calculations)
-        float b = (float)Math.hypot(xSelect - expPanel.toTarget.xCenter, ySelect - expPanel.toTarget.yCenter);
+        // y data
+        r.append(sd3Leadin).append("y=,");
+        for (int i = 0; i < trace.size(); ++i)
+            r.appendInt(trace.getY(i)).append(',');
+        r.append(newline);
+    }
 
-		/*
-         * DEFINITION OF OUTLIER: Any trial where the actual distance moved is less the 1/2 the
-		 * specified amplitude is deemed an outlier. If an outlier occurs, the sequence must be repeated.
-		 */
+    // queue the trials in the sequence just completed for the sd1c file (one batch; see ColumnarTrialWriter)
+    private void writeSd1cSequence(final TrialTable table)
+    {
+        dataWriter.submit(new AsyncDataWriter.Task()
+        {
+            @Override
+            public int write() throws IOException
+            {
+                sd1c.writeTable(table);
+                return 100 * table.size(); // about 100 bytes per trial, for the flush threshold
+            }
+        });
+    }
 
-        if (ae < aw[awIdx].a / 2f)
+    // queue the sequence just completed, with its trials and traces, for the session database (one transaction)
+    private void writeDatabaseSequence(DragTrialLogic logic)
+    {
+        final ThroughputAccumulator t = logic.getThroughput();
+        final int sequence = logic.getSequenceIndex() + 1, trials = t.getNumberOfTrials();
+        final int pickupMisses = logic.getPickupMissesForSequence(), repeats = logic.getSequenceRepeats();
+        final float a = t.getA(), w = t.getW(), id = t.getID(), ae = t.getAe(), we = t.getWe(), ide = t.getIDe();
+        final float mt = t.getMT(), errorRate = t.getErrorRate(), tp = t.getThroughput();
+        final TrialTable table = logic.getTrialTable().copy(); // the trial logic reuses its table
+        final ArrayList<TraceBuffer> traces = sequenceTraces;
+        sequenceTraces = new ArrayList<TraceBuffer>();
+        dataWriter.submit(new AsyncDataWriter.Task()
         {
-            outlier = true;
-            doEndSequence();
-            return;
-        }
+            @Override
+            public int write() throws IOException
+            {
+                database.insertSequence(databaseBlockId, sequence, trials, a, w, id, ae, we, ide, pickupMisses,
+                        repeats, mt, errorRate, tp, table, traces);
+                return 0;
+            }
+        });
+    }
 
-        // trial time is from last finger-up to current finger-up
-        trialTime = now - trialStartTime;
-        //trialStartTime = now;
-
-        String fingerDownUpTime = String.format(Locale.CANADA, "%d", (now - fingerDownTime));
-        float fingerDownUpDelta = (float)Math.sqrt((xSelect - xFingerDown) * (xSelect -
-                xFingerDown) + (ySelect - yFingerDown) * (ySelect - yFingerDown));
-
-		/*
-         * CAUTION: Ensure this is consistent with the sd1 header line defined at the top of
-		 * FittsDragAndDropActivity.
-		 */
-        sb1.append(String.format(Locale.CANADA, "%s,%s,%s,%s,%s,%s,%d,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s," +
-                        "%s,%s,%d,%d,%d%s", participantCode, sessionCode, blockCode, groupCode, conditionCode,
-                dimensionMode, selectionCount, aw[awIdx].a, aw[awIdx].w, expPanel.fromTarget.xCenter, expPanel
-                        .fromTarget.yCenter, expPanel.toTarget.xCenter, expPanel.toTarget.yCenter, xFingerDown,
-                yFingerDown, xSelect, ySelect, xDelta, fingerDownUpDelta, fingerDownUpTime, b, pickupMissCountTrial,
-                trialError, trialTime, System.getProperty("line.separator")));
-
-        // write trace data at end of trial (t, x, y)
-        tracePoint.add(new TracePoint(now - trialStartTime, (int)xSelect, (int)ySelect));
-        sd3Leadin = String.format(Locale.CANADA, "%s,%s,%s,%s,%d,%d,%d,%d,%d,%d,%d,%d,", APP,
-                participantCode, conditionCode, blockCode, (awIdx + 1), (int)aw[awIdx].a, (int)aw[awIdx].w,
-                (selectionCount + 1), (int)expPanel.fromTarget.xCenter, (int)expPanel.fromTarget.yCenter, (int)
-                        expPanel.toTarget.xCenter, (int)expPanel.toTarget.yCenter);
-        // time data
-        sb3 = new StringBuilder(sd3Leadin);
-        sb3.append("t=,");
-        for (int i = 0; i < tracePoint.size(); ++i)
-            sb3.append(tracePoint.get(i).t).append(',');
-        sb3.append(System.getProperty("line.separator"));
+    // copy the trace data for the trial just completed, for the sd3b file (one binary record; see BinaryTraceWriter)
+    private void writeSd3bTrial(TrialWrite write)
+    {
+        TargetShape from = trials.getFromTarget(), to = trials.getToTarget();
+        write.sequence = trials.getSequenceIndex() + 1;
+        write.a = (int)trials.getA();
+        write.w = (int)trials.getW();
+        write.trial = trials.getTrialIndex() + 1;
+        write.fromX = (int)from.xCenter;
+        write.fromY = (int)from.yCenter;
+        write.toX = (int)to.xCenter;
+        write.toY = (int)to.yCenter;
+        write.trace.copyFrom(trials.getTrace()); // the trial logic reuses its buffer
+    }
+
+    // write the trace data for the trial just completed to the sd3m file (stores into the mapped buffer, then commit)
+    private void writeSd3mTrial()
+    {
         try
         {
-            sd3.write(sb3.toString(), 0, sb3.length());
-            sd3.flush();
+            sd3m.beginTrial(trials.getSequenceIndex() + 1, (int)trials.getA(), (int)trials.getW(),
+                    trials.getTrialIndex() + 1, (int)trials.getFromTarget().xCenter, (int)trials.getFromTarget()
+                    .yCenter, (int)trials.getToTarget().xCenter, (int)trials.getToTarget().yCenter);
+            sd3m.addSamples(trials.getTrace());
+            sd3m.commitTrial();
         } catch (IOException e)
         {
             Toast.makeText(this, String.format("ERROR WRITING TO DATA FILE: e = %s", e), Toast.LENGTH_LONG).show();
         }
+    }
 
-        // x data
-        sb3 = new StringBuilder(sd3Leadin);
-        sb3.append("x=,");
-        for (int i = 0; i < tracePoint.size(); ++i)
-            sb3.append(tracePoint.get(i).x).append(',');
-        sb3.append(System.getProperty("line.separator"));
-        try
-        {
-            sd3.write(sb3.toString(), 0, sb3.length());
-            sd3.flush();
-        } catch (IOException e)
+    // write a line with a Fitts' law model to the sd2 file (see SD2_MODEL_HEADER)
+    private void writeModel(String scope, String predictor, FittsModel m)
+    {
+        String line = String.format(Locale.CANADA, "%s,%s,%s,%d,%s,%s,%s%s", sd2Header, scope, predictor, m.getN(),
+                m.getIntercept(), m.getSlope(), m.getR2(), System.getProperty("line.separator"));
+        dataWriter.append(sd2, line);
+        journalRecord(TrialJournal.DATA, SD2_STREAM, line);
+    }
+
+    // queue a journal record with text for one of the files, or no text (null), e.g., the model lines in sd2
+    private void journalRecord(final int type, final int stream, final String text)
+    {
+        dataWriter.submit(new AsyncDataWriter.Task()
         {
-            Toast.makeText(this, String.format("ERROR WRITING TO DATA FILE: e = %s", e), Toast.LENGTH_LONG).show();
-        }
+            @Override
+            public int write() throws IOException
+            {
+                journal.begin(type);
+                if (text == null)
+                {
+                    journal.end();
+                    return 0;
+                }
+                journal.add(stream, text);
+                journal.end();
+                return text.length();
+            }
+        });
+    }
 
-        // y data
-        sb3 = new StringBuilder(sd3Leadin);
-        sb3.append("y=,");
-        for (int i = 0; i < tracePoint.size(); ++i)
-            sb3.append(tracePoint.get(i).y).append(',');
-        sb3.append(System.getProperty("line.separator"));
+    /*
+     * Rebuild the data files of an interrupted block from its journal (see TrialJournal), then delete the journal.
+     * If the journal cannot be read, it is renamed, and kept, so the data are not lost.
+     */
+    private void recoverJournal(File journalFile)
+    {
         try
         {
-            sd3.write(sb3.toString(), 0, sb3.length());
-            sd3.flush();
+            TrialJournal.Recovery r = TrialJournal.recover(journalFile);
+            if (r != null)
+            {
+                String message = String.format(Locale.CANADA, "Recovered %d sequences (%d trials) of an interrupted " +
+                        "block", r.getSequences(), r.getTrials());
+                Log.i(MYDEBUG, message + (r.isTorn() ? " (the last record was incomplete)" : ""));
+                Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+                MediaScannerConnection.scanFile(this, r.getPaths(), null, null);
+
+                // a compressed file (sd1z or sd3z) is replaced by the text file rebuilt from the journal
+                for (String path : r.getPaths())
+                {
+                    File compressed = new File(path + "z");
+                    if (compressed.exists() && !compressed.delete())
+                        Log.w(MYDEBUG, "Compressed file not deleted: " + compressed);
+                }
+            }
+            if (!journalFile.delete())
+                Log.w(MYDEBUG, "Journal not deleted: " + journalFile);
         } catch (IOException e)
         {
-            Toast.makeText(this, String.format("ERROR WRITING TO DATA FILE: e = %s", e), Toast.LENGTH_LONG).show();
+            Log.e(MYDEBUG, "ERROR RECOVERING JOURNAL! e=" + e.toString());
+            File kept = new File(journalFile.getPath() + "-" + System.currentTimeMillis());
+            if (!journalFile.renameTo(kept))
+                Log.w(MYDEBUG, "Journal not renamed: " + journalFile);
         }
+    }
 
-		/*
-         * These four arrays are added to at the end of each trial. At the end of a sequence, they
-		 * are passed to the Throughput constructor. The Throughput object will compute throughput
-		 * and other values based on the data in these arrays.
-		 */
-        from[selectionCount] = new PointF(expPanel.fromTarget.xCenter, expPanel.fromTarget.yCenter);
-        to[selectionCount] = new PointF(expPanel.toTarget.xCenter, expPanel.toTarget.yCenter);
-        select[selectionCount] = new PointF(xSelect, ySelect);
-        mtArray[selectionCount] = trialTime;
-
-        // prepare for next target selection
-        ++selectionCount;
-        dragInProgress = false;
-        pickupMissCountTrial = 0;
-
-        // new... beginning of a trial (but not the first trial in the sequence)
-        trialStartTime = now;
-        tracePoint = new ArrayList<>();
-        tracePoint.add(new TracePoint(0, (int)xSelect, (int)ySelect));
-
-        advanceTarget();
-
-        if (selectionCount == numberOfTrials) // finished sequence
-            doEndSequence();
+    // the path of a data file, as text (e.g., .sd3 for .sd3z; see TrialJournal)
+    private static String textPath(File f)
+    {
+        return f.getAbsolutePath().replaceAll("(\\.sd[13])z$", "$1");
     }
 
-    void doEndSequence()
+    // log and show the compression ratios of the compressed files (if any)
+    private void reportCompression()
     {
-        if (outlier)
+        StringBuilder s = new StringBuilder();
+        for (CompressedTextWriter w : new CompressedTextWriter[] {sd1z, sd3z})
+            if (w != null)
+                s.append(String.format(Locale.CANADA, "%s%s: %d KB written, %d KB as text (%.1f:1)", s.length() > 0 ?
+                        ", " : "", w == sd1z ? "sd1z" : "sd3z", w.getOutputBytes() / 1024, w.getInputBytes() / 1024,
+                        w.getRatio()));
+        if (s.length() == 0)
+            return;
+        Log.i(MYDEBUG, s.toString());
+        Toast.makeText(this, s.toString(), Toast.LENGTH_LONG).show();
+    }
+
+    // reports from dataWriter: a full queue (logged) and the first write error (shown, on the UI thread)
+    final AsyncDataWriter.Listener dataWriterListener = new AsyncDataWriter.Listener()
+    {
+        @Override
+        public void backPressure(long waitMillis, int capacity)
         {
-            ++outlierSequenceCount;
-            results.append("Oops! Outlier sequence!::Possible causes...:- missed tap:- double " +
-                    "tap::Tap to try again");
-            expPanel.resultsString = results.toString().split(":");
-            outlier = false;
-        } else
+            Log.w(MYDEBUG, String.format(Locale.CANADA, "Data writer queue full (%d writes), waited %d ms", capacity,
+                    waitMillis));
+        }
+
+        @Override
+        public void writeError(final IOException e)
         {
-            /*
-             * Give the relevant data to the Throughput object (where the serious calculations are
-			 * performed).
-			 */
-            int taskType = dimensionMode.equals("1D") ? Throughput.ONE_DIMENSIONAL : Throughput.TWO_DIMENSIONAL;
-            int responseType = Throughput.SERIAL;
-            Throughput t = new Throughput("nocode", aw[awIdx].a, aw[awIdx].w, taskType, responseType, from, to, select,
-                    mtArray);
-            /*
-             * CAUTION: Ensure this is consistent with the sd2 header line defined at the top of
-			 * FittsDragAndDropActivity.
-			 */
-            sb2.append(sd2Header);
-            sb2.append(String.format(Locale.CANADA, ",%d,%s,%s,%s,%s,%s,%s,%d,%d,%s,%s,%s%s", t.getNumberOfTrials(),
-                    t.getA(), t.getW(), t.getID(), t.getAe(), t.getWe(), t.getIDe(), pickupMissCountSequence,
-                    outlierSequenceCount, t.getMT(), t.getErrorRate(), t.getThroughput(), System.getProperty("line" +
-                            ".separator")));
-
-            // write data to files at end of each sequence
-            try
+            runOnUiThread(new Runnable()
             {
-                sd1.write(sb1.toString(), 0, sb1.length());
-                sd1.flush();
-                sd2.write(sb2.toString(), 0, sb2.length());
-                sd2.flush();
-            } catch (IOException e)
-            {
-                Toast.makeText(this, String.format("ERROR WRITING TO DATA FILE: e = %s", e), Toast.LENGTH_LONG).show();
-            }
-            sb1.delete(0, sb1.length());
-            sb2.delete(0, sb2.length());
-
-            // prepare results for output on display
-            StringBuilder s = new StringBuilder();
-            s.append(String.format(Locale.CANADA, "Block %d:", Integer.parseInt(blockCode.substring(1))));
-            s.append(String.format(Locale.CANADA, "Sequence %d of %d:", (awIdx + 1), aw.length));
-            s.append(String.format(Locale.CANADA, "Number of trials = %d:", t.getNumberOfTrials()));
-            s.append(String.format(Locale.CANADA, "A = %d px (nominal):", Math.round(t.getA())));
-            s.append(String.format(Locale.CANADA, "W = %d px:", Math.round(t.getW())));
-            s.append(String.format(Locale.CANADA, "ID = %.2f bits:", t.getID()));
-            s.append("-----:");
-            s.append(String.format(Locale.CANADA, "Ae = %.1f px:", t.getAe()));
-            s.append(String.format(Locale.CANADA, "We = %.1f px:", t.getWe()));
-            s.append(String.format(Locale.CANADA, "IDe = %.2f bits:", t.getIDe()));
-            s.append(String.format(Locale.CANADA, "Pickup misses = %d:", pickupMissCountSequence));
-            s.append(String.format(Locale.CANADA, "MT = %d ms (per trial):", Math.round(t.getMT())));
-            s.append(String.format(Locale.CANADA, "Drop errors = %d:", t.getMisses()));
-            s.append(String.format(Locale.CANADA, "Throughput = %.2f bps:", t.getThroughput()));
-            results.append(s);
-            expPanel.resultsString = results.toString().split(":");
-
-            if (fittsFarmStyle && speechFeedback)
-                thankYou.start();
-
-            ++awIdx; // next A-W condition
-            if (awIdx < aw.length)
-            {
-                configureTargets(awIdx);
+                @Override
+                public void run()
+                {
+                    Toast.makeText(FittsDragAndDropActivity.this, String.format("ERROR WRITING TO DATA FILE: e = %s",
+                            e), Toast.LENGTH_LONG).show();
+                }
+            });
+        }
+    };
 
-            } else
-            {
-                expPanel.done = true;
-            }
-            outlierSequenceCount = 0;
-            pickupMissCountSequence = 0;
-            pickupMissCountTrial = 0;
+    // =================================================================================
+    // DragTrialLogic.Listener: feedback, data files, and results for the trial logic
+    // =================================================================================
+
+    @Override
+    public void sequenceStarted()
+    {
+        results = new StringBuilder();
+        if (auditoryFeedback)
+            tickSound.start();
+    }
+
+    @Override
+    public void targetSelected(boolean error)
+    {
+        if (error)
+        {
+            // provide feedback (as per setup) if the user misses the target
+            if (vibrotactileFeedback)
+                vib.vibrate(VIBRATION_PULSE_DURATION);
+            if (auditoryFeedback)
+                missSound.start();
+
+        } else // provide feedback (as per setup) if the user correctly selected the target
+        {
+            if (auditoryFeedback)
+                tickSound.start();
         }
-        expPanel.waitStartCircleSelect = true;
-        expPanel.showBanner = false; // only show before 1st sequence
-        sequenceStarted = false;
-        dragInProgress = false;
     }
 
-    // advance to the next target (a bit complicated for the 2D task; see comment below)
-    private void advanceTarget()
+    @Override
+    public void targetAdvanced()
     {
-        /*
-         * Find the current "target" then advance it to the circle on the opposite side of the layout circle. This is
-         * a bit tricky since every second advance requires the target to be beside the target directly opposite the
-         * last target. This is needed to get the sequence of selections to advance around the layout circle. Of
-         * course, this only applies to the 2D task.
-         */
+        expPanel.nextRandomGraphic(); // only relevant for FittsFarm mode
+    }
 
-        // find index of current target
-        int i;
-        for (i = 0; i < expPanel.targetSet.length; ++i)
-            if (expPanel.targetSet[i].status == Target.TARGET)
-                break; // i is index of current target
+    @Override
+    public void trialCompleted(DragTrialLogic logic)
+    {
+        if (sessionDatabase)
+            sequenceTraces.add(logic.getTrace().copy()); // the trial logic reuses its buffer
+        ++catalogTraceTrials;
+
+        // the trial's sd1 line, for its journal record (the sd1 file is written at the end of the sequence)
+        TrialWrite write = obtainTrialWrite();
+        TrialTable t = logic.getTrialTable();
+        t.appendSd1Row(write.sd1Line.reset(), t.size() - 1, System.getProperty("line.separator"));
+
+        // write trace data at end of trial (t, x, y), with the trial's journal record
+        if (sd3b != null)
+            writeSd3bTrial(write);
+        else if (sd3m != null)
+            writeSd3mTrial();
+        else
+            writeSd3Trial(write);
+        dataWriter.submit(write);
+    }
 
-        // last target becomes "normal" again
-        expPanel.targetSet[i].status = Target.NORMAL;
-        expPanel.xDragObject = expPanel.targetSet[i].xCenter;
-        expPanel.yDragObject = expPanel.targetSet[i].yCenter;
+    @Override
+    public void outlierSequence(DragTrialLogic logic)
+    {
+        // the trials in the sequence are not saved in the sd1 file (see TrialJournal)
+        journalRecord(TrialJournal.OUTLIER, 0, null);
+        if (sessionDatabase)
+            sequenceTraces.clear();
+
+        results.append("Oops! Outlier sequence!::Possible causes...:- missed tap:- double " +
+                "tap::Tap to try again");
+        expPanel.resultsString = results.toString().split(":");
+        expPanel.showBanner = false; // only show before 1st sequence
+    }
 
-        // find next target
-        int next;
-        if (dimensionMode.equals("1D"))
-        {
-            next = (i + 1) % 2;
-        } else
+    @Override
+    public void sequenceCompleted(DragTrialLogic logic, String sd1Lines, String sd2Line)
+    {
+        /*
+         * The throughput measures were accumulated trial by trial (see DragTrialLogic), so they are available here
+         * without further calculation.
+         */
+        ThroughputAccumulator t = logic.getThroughput();
+        if (t.getAmplitudeMismatches() > 0)
+            Log.w(MYDEBUG, String.format(Locale.CANADA, "Amplitude mismatch: A=%s, W=%s, trials=%d, mismatches=%d",
+                    t.getA(), t.getW(), t.getNumberOfTrials(), t.getAmplitudeMismatches()));
+        blockModelIDe.add(t.getIDe(), t.getMT());
+        blockModelID.add(t.getID(), t.getMT());
+        allModelIDe.add(t.getIDe(), t.getMT());
+        allModelID.add(t.getID(), t.getMT());
+
+        // the block's summary, for the catalog
+        ++catalogSequences;
+        catalogTrials += t.getNumberOfTrials();
+        catalogMisses += t.getMisses();
+        catalogMT += t.getMT() * t.getNumberOfTrials();
+        catalogTP += t.getThroughput();
+
+        // write data to files at end of each sequence (queued; the journal is committed once it is written)
+        dataWriter.append(sd1, sd1Lines);
+        dataWriter.append(sd2, sd2Line);
+        if (sd1c != null)
+            writeSd1cSequence(logic.getTrialTable().copy()); // the trial logic reuses its table
+        journalRecord(TrialJournal.SEQUENCE, SD2_STREAM, sd2Line);
+        if (sessionDatabase)
+            writeDatabaseSequence(logic);
+        dataWriter.flush(); // commits the journal (the files are synced at the end of the block)
+
+        // prepare results for output on display
+        StringBuilder s = new StringBuilder();
+        s.append(String.format(Locale.CANADA, "Block %d:", Integer.parseInt(blockCode.substring(1))));
+        s.append(String.format(Locale.CANADA, "Sequence %d of %d:", (logic.getSequenceIndex() + 1), logic
+                .getNumberOfSequences()));
+        s.append(String.format(Locale.CANADA, "Number of trials = %d:", t.getNumberOfTrials()));
+        s.append(String.format(Locale.CANADA, "A = %d px (nominal):", Math.round(t.getA())));
+        s.append(String.format(Locale.CANADA, "W = %d px:", Math.round(t.getW())));
+        s.append(String.format(Locale.CANADA, "ID = %.2f bits:", t.getID()));
+        s.append("-----:");
+        s.append(String.format(Locale.CANADA, "Ae = %.1f px:", t.getAe()));
+        s.append(String.format(Locale.CANADA, "We = %.1f px:", t.getWe()));
+        s.append(String.format(Locale.CANADA, "IDe = %.2f bits:", t.getIDe()));
+        s.append(String.format(Locale.CANADA, "Pickup misses = %d:", logic.getPickupMissesForSequence()));
+        s.append(String.format(Locale.CANADA, "MT = %d ms (per trial):", Math.round(t.getMT())));
+        s.append(String.format(Locale.CANADA, "Drop errors = %d:", t.getMisses()));
+        s.append(String.format(Locale.CANADA, "Throughput = %.2f bps:", t.getThroughput()));
+        if (blockModelIDe.getN() >= 2) // need two sequences to fit a line
         {
-            int halfWay = (expPanel.targetSet.length + 1) / 2;
-            next = (i + halfWay) % expPanel.targetSet.length; // NOTE: odd number of targets
+            s.append("-----:");
+            s.append(String.format(Locale.CANADA, "MT = %.0f + %.0f IDe ms:", blockModelIDe.getIntercept(),
+                    blockModelIDe.getSlope()));
+            s.append(String.format(Locale.CANADA, "R2 = %.3f (%d sequences):", blockModelIDe.getR2(),
+                    blockModelIDe.getN()));
         }
+        results.append(s);
+        expPanel.resultsString = results.toString().split(":");
+        expPanel.showBanner = false; // only show before 1st sequence
 
-        expPanel.targetSet[next].status = Target.TARGET;
-        expPanel.fromTarget = expPanel.targetSet[i];
-        expPanel.toTarget = expPanel.targetSet[next];
-
-        expPanel.nextRandomGraphic(); // only relevant for FittsFarm mode
+        if (fittsFarmStyle && speechFeedback)
+            thankYou.start();
     }
 
     /*
@@ -5,6 +5,7 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.ActivityInfo;
 import android.graphics.Point;
+import android.os.Build;
 import android.os.Bundle;
 import android.view.Display;
 import android.view.Surface;
@@ -15,6 +16,8 @@ import android.widget.RadioButton;
 import android.widget.Spinner;
 import android.widget.Toast;
 
+import java.util.Arrays;
+
 @SuppressWarnings("unused")
 public class FittsDragAndDropSetup extends Activity
 {
@@ -51,9 +54,17 @@ public class FittsDragAndDropSetup extends Activity
     boolean speechFeedback = false;
     boolean fittsFarmStyle = true;
     boolean showAllTargets = true;
+    boolean historicalSamples = false;
+    boolean columnarTrials = false;
+    boolean sessionDatabase = false;
+    boolean compressSd1 = false;
     final String FLICKER = "Flicker";
     final String DRAGANDDROP = "DragAndDrop";
     String[] orderOfControlArray = {FLICKER, DRAGANDDROP};
+    String[] traceFormatArray = {"sd3", "sd3", "sd3b", "sd3m", "sd3z"}; // "sd3z" last (see COMPRESSION_SUPPORTED)
+    // the compressed formats (sd1z, sd3z) need Android 4.4 (API 19), for Deflater.SYNC_FLUSH
+    final static boolean COMPRESSION_SUPPORTED = Build.VERSION.SDK_INT >= 19;
+    String[] traceTolerance = {"0", "0", "0.5", "1", "2", "3", "5"}; // pixels (0 = no trace simplification)
     int screenOrientation;
     SharedPreferences sp;
     SharedPreferences.Editor spe;
@@ -65,7 +76,12 @@ public class FittsDragAndDropSetup extends Activity
     private CheckBox checkAuditoryFeedback, checkSpeechFeedback;
     private CheckBox checkFittsFarmStyle;
     private CheckBox checkShowAllTargets;
+    private CheckBox checkHistoricalSamples;
+    private CheckBox checkColumnarTrials;
+    private CheckBox checkSessionDatabase;
+    private CheckBox checkCompressSd1;
     private Spinner spinOrderOfControl;
+    private Spinner spinTraceFormat, spinTraceTolerance;
     /**
      * Called when the activity is first created.
      */
@@ -101,6 +117,20 @@ public class FittsDragAndDropSetup extends Activity
         speechFeedback = sp.getBoolean("speechFeedback", true);
         fittsFarmStyle = sp.getBoolean("fittsFarmStyle", true);
         showAllTargets = sp.getBoolean("showAllTargets", true);
+        historicalSamples = sp.getBoolean("historicalSamples", false);
+        columnarTrials = sp.getBoolean("columnarTrials", false);
+        sessionDatabase = sp.getBoolean("sessionDatabase", false);
+        compressSd1 = sp.getBoolean("compressSd1", false);
+        traceFormatArray[0] = sp.getString("traceFormat", traceFormatArray[0]);
+        if (!COMPRESSION_SUPPORTED)
+        {
+            // sd1z and sd3z need Deflater.SYNC_FLUSH (see CompressedTextWriter)
+            compressSd1 = false;
+            if (traceFormatArray[0].equals("sd3z"))
+                traceFormatArray[0] = "sd3";
+            traceFormatArray = Arrays.copyOf(traceFormatArray, traceFormatArray.length - 1); // without "sd3z"
+        }
+        traceTolerance[0] = sp.getString("traceTolerance", traceTolerance[0]);
 
         // get references to widget elements
         spinParticipant = (Spinner)findViewById(R.id.paramPart);
@@ -122,6 +152,12 @@ public class FittsDragAndDropSetup extends Activity
         checkSpeechFeedback = (CheckBox)findViewById(R.id.paramSpeechFeedback);
         checkFittsFarmStyle = (CheckBox)findViewById(R.id.paramFittsFarmStyle);
         checkShowAllTargets = (CheckBox)findViewById(R.id.paramShowAllTargets);
+        checkHistoricalSamples = (CheckBox)findViewById(R.id.paramHistoricalSamples);
+        checkColumnarTrials = (CheckBox)findViewById(R.id.paramColumnarTrials);
+        checkSessionDatabase = (CheckBox)findViewById(R.id.paramSessionDatabase);
+        checkCompressSd1 = (CheckBox)findViewById(R.id.paramCompressSd1);
+        spinTraceFormat = (Spinner)findViewById(R.id.paramTraceFormat);
+        spinTraceTolerance = (Spinner)findViewById(R.id.paramTraceTolerance);
 
         // initialise spinner adapters
         ArrayAdapter<CharSequence> adapterPC = new ArrayAdapter<CharSequence>(this, R.layout
@@ -170,6 +206,14 @@ public class FittsDragAndDropSetup extends Activity
                 .spinnerstyle, widths);
         spinWidth.setAdapter(adapterW);
 
+        ArrayAdapter<CharSequence> adapterTF = new ArrayAdapter<CharSequence>(this, R.layout
+                .spinnerstyle, traceFormatArray);
+        spinTraceFormat.setAdapter(adapterTF);
+
+        ArrayAdapter<CharSequence> adapterTT = new ArrayAdapter<CharSequence>(this, R.layout
+                .spinnerstyle, traceTolerance);
+        spinTraceTolerance.setAdapter(adapterTT);
+
         if (dimensionMode.equals("1D"))
             radioButtonMode1D.toggle();
         else
@@ -180,6 +224,11 @@ public class FittsDragAndDropSetup extends Activity
         checkSpeechFeedback.setChecked(speechFeedback);
         checkFittsFarmStyle.setChecked(fittsFarmStyle);
         checkShowAllTargets.setChecked(showAllTargets);
+        checkHistoricalSamples.setChecked(historicalSamples);
+        checkColumnarTrials.setChecked(columnarTrials);
+        checkSessionDatabase.setChecked(sessionDatabase);
+        checkCompressSd1.setChecked(compressSd1);
+        checkCompressSd1.setEnabled(COMPRESSION_SUPPORTED);
 
 		/*
          * Determine if the device is naturally portrait or landscape. This is passed on to the
@@ -232,6 +281,12 @@ public class FittsDragAndDropSetup extends Activity
         boolean speechFeedback = checkSpeechFeedback.isChecked();
         boolean fittsFarmStyle = checkFittsFarmStyle.isChecked();
         boolean showAllTargets = checkShowAllTargets.isChecked();
+        boolean historicalSamples = checkHistoricalSamples.isChecked();
+        boolean columnarTrials = checkColumnarTrials.isChecked();
+        boolean sessionDatabase = checkSessionDatabase.isChecked();
+        boolean compressSd1 = checkCompressSd1.isChecked();
+        String traceFormat = traceFormatArray[spinTraceFormat.getSelectedItemPosition()];
+        float tolerance = Float.parseFloat(traceTolerance[spinTraceTolerance.getSelectedItemPosition()]);
 
         String orderOfControl = orderOfControlArray[spinOrderOfControl.getSelectedItemPosition()];
         //int gain = getGain(orderOfControl, gainString);
@@ -256,6 +311,12 @@ public class FittsDragAndDropSetup extends Activity
         b.putBoolean("speechFeedback", speechFeedback);
         b.putBoolean("fittsFarmStyle", fittsFarmStyle);
         b.putBoolean("showAllTargets", showAllTargets);
+        b.putBoolean("historicalSamples", historicalSamples);
+        b.putBoolean("columnarTrials", columnarTrials);
+        b.putBoolean("sessionDatabase", sessionDatabase);
+        b.putBoolean("compressSd1", compressSd1);
+        b.putString("traceFormat", traceFormat);
+        b.putFloat("traceTolerance", tolerance);
         b.putInt("screenOrientation", screenOrientation);
         b.putString("orderOfControl", orderOfControl);
 
@@ -283,6 +344,12 @@ public class FittsDragAndDropSetup extends Activity
         spe.putBoolean("speechFeedback", checkSpeechFeedback.isChecked());
         spe.putBoolean("fittsFarmStyle", checkFittsFarmStyle.isChecked());
         spe.putBoolean("showAllTargets", checkShowAllTargets.isChecked());
+        spe.putBoolean("historicalSamples", checkHistoricalSamples.isChecked());
+        spe.putBoolean("columnarTrials", checkColumnarTrials.isChecked());
+        spe.putBoolean("sessionDatabase", checkSessionDatabase.isChecked());
+        spe.putBoolean("compressSd1", checkCompressSd1.isChecked());
+        spe.putString("traceFormat", traceFormatArray[spinTraceFormat.getSelectedItemPosition()]);
+        spe.putString("traceTolerance", traceTolerance[spinTraceTolerance.getSelectedItemPosition()]);
         spe.putString("orderOfControl", orderOfControlArray[spinOrderOfControl.getSelectedItemPosition()]);
         spe.apply();
         Toast.makeText(this, "Preferences saved!", Toast.LENGTH_SHORT).show();
@@ -0,0 +1,232 @@
+package ca.yorku.cse.mack.fittsdraganddrop;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.io.Closeable;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import ca.yorku.cse.mack.fittscore.TraceBuffer;
+import ca.yorku.cse.mack.fittscore.TrialTable;
+
+/**
+ * SessionDatabase -- an SQLite database of the blocks, sequences, trials, and trace data, written alongside the sd
+ * files (when the "session database" setup option is set).
+ *
+ * The database accumulates every block run on the device, so a query across participants and sessions does not need
+ * to open and parse the sd files. The tables are:
+ *
+ * <pre>
+ *      blocks       - one row per block: the codes, the trace format, the base filename of the sd files, and the
+ *                     start and end times (ms since 1970; end is null if the block did not end)
+ *      sequences    - one row per sequence: the sd2 fields (block_id refers to blocks)
+ *      trials       - one row per trial: the sd1 fields after Trial, named as in the sd1 header with the units and
+ *                     punctuation replaced by "_" (e.g., MT_ms), and the Trial number (sequence_id refers to sequences)
+ *      trace_chunks - the trace samples for a trial, up to CHUNK_SAMPLES per row: t, x, and y for each sample, as
+ *                     big-endian ints (trial_id refers to trials; chunk = 0, 1, ...)
+ * </pre>
+ *
+ * The codes of blocks (participant, session, condition), and A and W of sequences are indexed. For example, all the
+ * 2D sequences for P07 with W = 25:
+ *
+ * <pre>
+ *      SELECT s.* FROM sequences s JOIN blocks b ON s.block_id = b._id
+ *      WHERE b.participant = 'P07' AND b.mode = '2D' AND s.w = 25
+ * </pre>
+ *
+ * A sequence (its row, and the rows for its trials and trace data) is inserted in one transaction, using statements
+ * compiled once and reused. The database is written from one thread (the AsyncDataWriter's writer thread, in the
+ * app), so the touch events do not wait on it.
+ */
+public class SessionDatabase implements Closeable
+{
+    final static int VERSION = 1;
+    final static int CHUNK_SAMPLES = 512;
+
+    private final SQLiteDatabase db;
+    private final SQLiteStatement insertBlock, endBlock, insertSequence, insertTrial, insertChunk;
+    private final ByteBuffer chunk = ByteBuffer.allocate(12 * CHUNK_SAMPLES);
+
+    /**
+     * Open the database (creating it, if necessary).
+     */
+    public SessionDatabase(File file)
+    {
+        db = SQLiteDatabase.openOrCreateDatabase(file, null);
+        if (db.getVersion() < VERSION)
+            createTables();
+
+        insertBlock = db.compileStatement("INSERT INTO blocks (app, participant, session, block, grp, condition, " +
+                "mode, trace_format, base_filename, started) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        endBlock = db.compileStatement("UPDATE blocks SET ended = ? WHERE _id = ?");
+        insertSequence = db.compileStatement("INSERT INTO sequences (block_id, sequence, trials, a, w, id, ae, we, " +
+                "ide, pickup_misses, repeat_count, mt, error_rate, tp) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, " +
+                "?, ?)");
+        StringBuilder columns = new StringBuilder("sequence_id, trial");
+        StringBuilder values = new StringBuilder("?, ?");
+        for (int c = 0; c < TrialTable.getColumnCount(); ++c)
+        {
+            columns.append(", ").append(columnName(c));
+            values.append(", ?");
+        }
+        insertTrial = db.compileStatement("INSERT INTO trials (" + columns + ") VALUES (" + values + ")");
+        insertChunk = db.compileStatement("INSERT INTO trace_chunks (trial_id, chunk, samples, data) VALUES (?, ?, " +
+                "?, ?)");
+    }
+
+    /**
+     * Insert a block. Returns its id (for insertSequence and endBlock).
+     */
+    public long insertBlock(String app, String participant, String session, String block, String group, String
+            condition, String mode, String traceFormat, String baseFilename, long started)
+    {
+        SQLiteStatement s = insertBlock;
+        s.bindString(1, app);
+        s.bindString(2, participant);
+        s.bindString(3, session);
+        s.bindString(4, block);
+        s.bindString(5, group);
+        s.bindString(6, condition);
+        s.bindString(7, mode);
+        s.bindString(8, traceFormat);
+        s.bindString(9, baseFilename);
+        s.bindLong(10, started);
+        return s.executeInsert();
+    }
+
+    /**
+     * Set the end time of a block.
+     */
+    public void endBlock(long blockId, long ended)
+    {
+        endBlock.bindLong(1, ended);
+        endBlock.bindLong(2, blockId);
+        endBlock.executeUpdateDelete();
+    }
+
+    /**
+     * Insert a sequence (the sd2 fields), with its trials (the rows of table) and their trace data (traces, one per
+     * trial), in one transaction.
+     */
+    public void insertSequence(long blockId, int sequence, int trials, float a, float w, float id, float ae, float we,
+            float ide, int pickupMisses, int repeatCount, float mt, float errorRate, float tp, TrialTable table,
+            List<TraceBuffer> traces)
+    {
+        db.beginTransaction();
+        try
+        {
+            SQLiteStatement s = insertSequence;
+            s.bindLong(1, blockId);
+            s.bindLong(2, sequence);
+            s.bindLong(3, trials);
+            s.bindDouble(4, a);
+            s.bindDouble(5, w);
+            s.bindDouble(6, id);
+            s.bindDouble(7, ae);
+            s.bindDouble(8, we);
+            s.bindDouble(9, ide);
+            s.bindLong(10, pickupMisses);
+            s.bindLong(11, repeatCount);
+            s.bindDouble(12, mt);
+            s.bindDouble(13, errorRate);
+            s.bindDouble(14, tp);
+            long sequenceId = s.executeInsert();
+
+            for (int row = 0; row < table.size(); ++row)
+            {
+                long trialId = insertTrial(sequenceId, table, row);
+                if (row < traces.size())
+                    insertTrace(trialId, traces.get(row));
+            }
+            db.setTransactionSuccessful();
+        } finally
+        {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        insertBlock.close();
+        endBlock.close();
+        insertSequence.close();
+        insertTrial.close();
+        insertChunk.close();
+        db.close();
+    }
+
+    private long insertTrial(long sequenceId, TrialTable table, int row)
+    {
+        SQLiteStatement s = insertTrial;
+        s.bindLong(1, sequenceId);
+        s.bindLong(2, row);
+        for (int c = 0; c < TrialTable.getColumnCount(); ++c)
+        {
+            int i = TrialTable.getColumnIndex(c);
+            if (TrialTable.getColumnType(c) == TrialTable.INT)
+                s.bindLong(3 + c, table.getInt(i, row));
+            else if (TrialTable.getColumnType(c) == TrialTable.LONG)
+                s.bindLong(3 + c, table.getLong(i, row));
+            else
+                s.bindDouble(3 + c, table.getFloat(i, row));
+        }
+        return s.executeInsert();
+    }
+
+    private void insertTrace(long trialId, TraceBuffer trace)
+    {
+        SQLiteStatement s = insertChunk;
+        for (int first = 0; first < trace.size(); first += CHUNK_SAMPLES)
+        {
+            int n = Math.min(CHUNK_SAMPLES, trace.size() - first);
+            chunk.clear();
+            for (int i = first; i < first + n; ++i)
+            {
+                chunk.putInt((int)trace.getT(i));
+                chunk.putInt(trace.getX(i));
+                chunk.putInt(trace.getY(i));
+            }
+            byte[] data = new byte[chunk.position()];
+            chunk.flip();
+            chunk.get(data);
+            s.bindLong(1, trialId);
+            s.bindLong(2, first / CHUNK_SAMPLES);
+            s.bindLong(3, n);
+            s.bindBlob(4, data);
+            s.executeInsert();
+        }
+    }
+
+    private void createTables()
+    {
+        db.execSQL("CREATE TABLE IF NOT EXISTS blocks (_id INTEGER PRIMARY KEY, app TEXT, participant TEXT, session " +
+                "TEXT, block TEXT, grp TEXT, condition TEXT, mode TEXT, trace_format TEXT, base_filename TEXT, " +
+                "started INTEGER, ended INTEGER)");
+        db.execSQL("CREATE TABLE IF NOT EXISTS sequences (_id INTEGER PRIMARY KEY, block_id INTEGER REFERENCES " +
+                "blocks(_id), sequence INTEGER, trials INTEGER, a REAL, w REAL, id REAL, ae REAL, we REAL, ide REAL, " +
+                "pickup_misses INTEGER, repeat_count INTEGER, mt REAL, error_rate REAL, tp REAL)");
+        StringBuilder trials = new StringBuilder("CREATE TABLE IF NOT EXISTS trials (_id INTEGER PRIMARY KEY, " +
+                "sequence_id INTEGER REFERENCES sequences(_id), trial INTEGER");
+        for (int c = 0; c < TrialTable.getColumnCount(); ++c)
+            trials.append(", ").append(columnName(c)).append(TrialTable.getColumnType(c) == TrialTable.FLOAT ?
+                    " REAL" : " INTEGER");
+        db.execSQL(trials.append(")").toString());
+        db.execSQL("CREATE TABLE IF NOT EXISTS trace_chunks (trial_id INTEGER REFERENCES trials(_id), chunk INTEGER, " +
+                "samples INTEGER, data BLOB, PRIMARY KEY (trial_id, chunk))");
+
+        db.execSQL("CREATE INDEX IF NOT EXISTS blocks_codes ON blocks (participant, session, condition)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS sequences_block ON sequences (block_id)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS sequences_a_w ON sequences (a, w)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS trials_sequence ON trials (sequence_id)");
+        db.setVersion(VERSION);
+    }
+
+    // the column name for sd1 column c (e.g., "MT(ms)" -> "MT_ms")
+    static String columnName(int c)
+    {
+        return TrialTable.getColumnName(c).replaceAll("\\W+", "_").replaceAll("_$", "");
+    }
+}
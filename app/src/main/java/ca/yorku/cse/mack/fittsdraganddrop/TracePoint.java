@@ -1,14 +0,0 @@
-package ca.yorku.cse.mack.fittsdraganddrop;
-
-class 	TracePoint
-{
-	long t;
-	int x, y;
-
-	TracePoint(long tArg, int xArg, int yArg)
-	{
-		t = tArg;
-		x = xArg;
-		y = yArg;
-	}
-}
@@ -0,0 +1,165 @@
+package ca.yorku.cse.mack.fittscore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * ThroughputBenchmark -- JMH benchmarks for the Throughput class and the per-trial geometry kernels.
+ *
+ * Each benchmark operates on one sequence of trials. The sequence length covers the range offered in the setup
+ * dialog (4 to 31 trials) plus an archive-scale sequence for batch re-analysis. The lengths are odd, as are the
+ * numbers of targets offered for the 2D task. The trials are laid out as in
+ * FittsDragAndDropActivity.configureTargets: back and forth between two targets (1D) or around the layout circle
+ * (2D). Selections are scattered about the target centre with a spread consistent with the target width.
+ */
+@State(Scope.Benchmark)
+public class ThroughputBenchmark
+{
+	final static float AMPLITUDE = 480f;
+	final static float WIDTH = 50f;
+
+	@Param({"5", "15", "31", "10001"})
+	int trials;
+
+	@Param({"1D", "2D"})
+	String task;
+
+	int taskType;
+	float[] fromX, fromY, toX, toY, selectX, selectY, mt;
+	float[] a; // the amplitude of each trial (for verifyAmplitudeData)
+	Point2D[] from, to, select;
+	Throughput throughput;
+
+	@Setup
+	public void setup()
+	{
+		taskType = task.equals("1D") ? Throughput.ONE_DIMENSIONAL : Throughput.TWO_DIMENSIONAL;
+		int numberOfTargets = taskType == Throughput.ONE_DIMENSIONAL ? 2 : trials;
+
+		// target centres on the layout circle (see FittsDragAndDropActivity.configureTargets)
+		float[] x = new float[numberOfTargets];
+		float[] y = new float[numberOfTargets];
+		for (int i = 0; i < numberOfTargets; ++i)
+		{
+			x[i] = 600f + (AMPLITUDE / 2f) * (float)Math.cos(2.0 * Math.PI * i / numberOfTargets);
+			y[i] = 400f + (AMPLITUDE / 2f) * (float)Math.sin(2.0 * Math.PI * i / numberOfTargets);
+		}
+
+		fromX = new float[trials];
+		fromY = new float[trials];
+		toX = new float[trials];
+		toY = new float[trials];
+		selectX = new float[trials];
+		selectY = new float[trials];
+		mt = new float[trials];
+		a = new float[trials];
+		from = new Point2D[trials];
+		to = new Point2D[trials];
+		select = new Point2D[trials];
+
+		// fixed seed, so every run analyses the same data
+		Random r = new Random(1);
+		float sd = WIDTH / Throughput.SQRT_2_PI_E;
+		int halfWay = (numberOfTargets + 1) / 2;
+		int current = 0;
+		for (int i = 0; i < trials; ++i)
+		{
+			int next = (current + halfWay) % numberOfTargets;
+			fromX[i] = x[current];
+			fromY[i] = y[current];
+			toX[i] = x[next];
+			toY[i] = y[next];
+			selectX[i] = toX[i] + (float)r.nextGaussian() * sd;
+			selectY[i] = toY[i] + (float)r.nextGaussian() * sd;
+			mt[i] = 600f + (float)r.nextGaussian() * 100f;
+			a[i] = (float)Math.hypot(toX[i] - fromX[i], toY[i] - fromY[i]);
+			from[i] = new Point2D(fromX[i], fromY[i]);
+			to[i] = new Point2D(toX[i], toY[i]);
+			select[i] = new Point2D(selectX[i], selectY[i]);
+			current = next;
+		}
+		throughput = newThroughput();
+	}
+
+	Throughput newThroughput()
+	{
+		return new Throughput("bench", AMPLITUDE, WIDTH, taskType, Throughput.SERIAL, fromX, fromY, toX, toY, selectX,
+				selectY, mt, 0, trials);
+	}
+
+	@Benchmark
+	public Throughput setData()
+	{
+		return newThroughput();
+	}
+
+	@Benchmark
+	public Throughput setDataPoints()
+	{
+		return new Throughput("bench", AMPLITUDE, WIDTH, taskType, Throughput.SERIAL, from, to, select, mt);
+	}
+
+	@Benchmark
+	public float getThroughput()
+	{
+		return throughput.getThroughput();
+	}
+
+	@Benchmark
+	public float getIDe()
+	{
+		return throughput.getIDe();
+	}
+
+	@Benchmark
+	public int verifyAmplitudeData()
+	{
+		int mismatches = 0;
+		TargetLayout layout = taskType == Throughput.ONE_DIMENSIONAL ? null : TargetLayout.get(AMPLITUDE, trials);
+		for (int i = 0; i < trials; ++i)
+			if (!Throughput.verifyAmplitudeData(AMPLITUDE, layout, a[i], i, taskType))
+				++mismatches;
+		return mismatches;
+	}
+
+	@Benchmark
+	public float trialDeltaX()
+	{
+		float sum = 0f;
+		for (int i = 0; i < trials; ++i)
+			sum += Throughput.getTrialDeltaX(fromX[i], fromY[i], toX[i], toY[i], selectX[i], selectY[i]);
+		return sum;
+	}
+
+	@Benchmark
+	public float trialDeltaXPoints()
+	{
+		float sum = 0f;
+		for (int i = 0; i < trials; ++i)
+			sum += Throughput.getTrialDeltaX(from[i], to[i], select[i]);
+		return sum;
+	}
+
+	@Benchmark
+	public float trialAe()
+	{
+		float sum = 0f;
+		for (int i = 0; i < trials; ++i)
+			sum += Throughput.getTrialAe(fromX[i], fromY[i], toX[i], toY[i], selectX[i], selectY[i]);
+		return sum;
+	}
+
+	@Benchmark
+	public float trialAePoints()
+	{
+		float sum = 0f;
+		for (int i = 0; i < trials; ++i)
+			sum += Throughput.getTrialAe(from[i], to[i], select[i]);
+		return sum;
+	}
+}
@@ -0,0 +1,368 @@
+package ca.yorku.cse.mack.fittscore;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AsyncDataWriter -- write the data files on a background thread, so the thread handling the touch events does not
+ * wait on storage.
+ *
+ * The caller queues text (append) or other writes (submit), and these are done, in order, by the writer thread. The
+ * targets (the Writers and streams written) are registered with addTarget. They are flushed in groups: when the bytes
+ * written since the last flush reach flushBytes, or when flushMillis has passed since the first of them was written.
+ * flush queues a flush of every target, and sync a flush followed by a sync of the registered file descriptors (e.g.,
+ * at the end of a sequence); close waits for everything queued to be written and synced, then stops the thread.
+ *
+ * The queue is bounded. If it is full, the caller waits for room, and the wait is reported to the listener
+ * (backPressure, on the caller's thread). The first write error is reported to the listener (writeError, on the
+ * writer thread) and thrown again by close. The writes after an error are still attempted, since the other files may
+ * be fine. If the writer thread stops anyway (e.g., an Error thrown by a write), this is reported as a write error,
+ * the writes queued after it are dropped, and close returns (throwing the error) instead of waiting for the thread.
+ *
+ * A task is queued as it is, so submit creates no object (a task may be reused once it has been written, e.g., from
+ * a free list the task returns itself to). The other writes are queued as items.
+ *
+ * The targets must not be used by other threads until close returns.
+ */
+@SuppressWarnings("unused")
+public class AsyncDataWriter implements Closeable
+{
+	public final static int DEFAULT_CAPACITY = 256; // queued writes
+	public final static int DEFAULT_FLUSH_BYTES = 64 * 1024;
+	public final static long DEFAULT_FLUSH_MILLIS = 2000;
+
+	// how often a caller waiting on the writer thread checks that it is still running
+	private final static long WAIT_MILLIS = 100;
+
+	/**
+	 * A write done on the writer thread. Returns the number of bytes (or characters) written, for the flush threshold.
+	 */
+	public interface Task
+	{
+		int write() throws IOException;
+	}
+
+	public interface Listener
+	{
+		/**
+		 * The queue was full, and the caller waited waitMillis for room.
+		 */
+		void backPressure(long waitMillis, int capacity);
+
+		/**
+		 * A write, flush, or sync failed (called on the writer thread, for the first error only).
+		 */
+		void writeError(IOException e);
+	}
+
+	// item types (a task is queued as itself)
+	private final static int TEXT = 0, FLUSH = 1, SYNC = 2, STOP = 3;
+
+	private static class Item
+	{
+		final int type;
+		final Writer out;
+		final String text;
+		final CountDownLatch done;
+
+		Item(int typeArg, Writer outArg, String textArg, CountDownLatch doneArg)
+		{
+			type = typeArg;
+			out = outArg;
+			text = textArg;
+			done = doneArg;
+		}
+	}
+
+	private final BlockingQueue<Object> queue; // Items and Tasks
+	private final int capacity, flushBytes;
+	private final long flushMillis;
+	private final Listener listener;
+	private final ArrayList<Flushable> targets = new ArrayList<Flushable>();
+	private final ArrayList<FileOutputStream> syncStreams = new ArrayList<FileOutputStream>();
+	private final Thread thread;
+	private volatile IOException error;
+	private boolean closed;
+
+	// used by the writer thread only
+	private int pendingBytes;
+	private long firstPendingTime;
+
+	public AsyncDataWriter(Listener listenerArg)
+	{
+		this(DEFAULT_CAPACITY, DEFAULT_FLUSH_BYTES, DEFAULT_FLUSH_MILLIS, listenerArg);
+	}
+
+	public AsyncDataWriter(int capacityArg, int flushBytesArg, long flushMillisArg, Listener listenerArg)
+	{
+		capacity = capacityArg;
+		flushBytes = flushBytesArg;
+		flushMillis = flushMillisArg;
+		listener = listenerArg;
+		queue = new ArrayBlockingQueue<Object>(capacity);
+		thread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				writeLoop();
+			}
+		}, "AsyncDataWriter");
+		thread.start();
+	}
+
+	/**
+	 * Register a target to be flushed, and, if stream is not null, the file stream under it, to be synced (sync and
+	 * close). Register the targets before queuing writes to them.
+	 */
+	public synchronized void addTarget(Flushable target, FileOutputStream stream)
+	{
+		targets.add(target);
+		if (stream != null)
+			syncStreams.add(stream);
+	}
+
+	/**
+	 * Queue text to be written to out (a registered target).
+	 */
+	public void append(Writer out, String text)
+	{
+		put(new Item(TEXT, out, text, null));
+	}
+
+	/**
+	 * Queue a write. The task must not use data the caller changes after this (e.g., copy a reused buffer), and must
+	 * not be submitted again until it has been written.
+	 */
+	public void submit(Task task)
+	{
+		put(task);
+	}
+
+	/**
+	 * Queue a flush of every target (without a sync of the file streams). This does not wait.
+	 */
+	public void flush()
+	{
+		put(new Item(FLUSH, null, null, null));
+	}
+
+	/**
+	 * Queue a flush of every target and a sync of the file streams. This does not wait.
+	 */
+	public void sync()
+	{
+		put(new Item(SYNC, null, null, null));
+	}
+
+	/**
+	 * Returns the first write error so far (or null).
+	 */
+	public IOException getError()
+	{
+		return error;
+	}
+
+	/**
+	 * Write, flush, and sync everything queued, then stop the writer thread. The targets are not closed. Throws the
+	 * first write error, if there was one.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (!closed)
+		{
+			closed = true;
+			CountDownLatch done = new CountDownLatch(1);
+			put(new Item(STOP, null, null, done));
+			boolean interrupted = false;
+			while (true)
+			{
+				try
+				{
+					if (done.await(WAIT_MILLIS, TimeUnit.MILLISECONDS) || !thread.isAlive())
+						break;
+				} catch (InterruptedException e)
+				{
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+		if (error != null)
+			throw error;
+	}
+
+	/*
+	 * Queue an item (or a task), waiting (and reporting the wait) if the queue is full. If the writer thread has
+	 * stopped (see writeLoop), the item is dropped: the error that stopped it is reported, and thrown by close.
+	 */
+	private void put(Object item)
+	{
+		if (closed && type(item) != STOP)
+			throw new IllegalStateException("AsyncDataWriter is closed");
+		if (!thread.isAlive() || queue.offer(item))
+			return;
+		long start = System.nanoTime();
+		boolean interrupted = false;
+		while (thread.isAlive())
+		{
+			try
+			{
+				if (queue.offer(item, WAIT_MILLIS, TimeUnit.MILLISECONDS))
+					break;
+			} catch (InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		if (listener != null)
+			listener.backPressure((System.nanoTime() - start) / 1000000, capacity);
+	}
+
+	/*
+	 * Do the queued items until STOP. Anything a write throws (an Error too) is reported, and the next item is done: a
+	 * bad task must not stop the thread, as close would wait for it. If the thread stops anyway (e.g., the listener
+	 * throws), the waiting close is released.
+	 */
+	private void writeLoop()
+	{
+		try
+		{
+			while (true)
+			{
+				Object item;
+				try
+				{
+					if (pendingBytes == 0)
+						item = queue.take();
+					else
+					{
+						long wait = firstPendingTime + flushMillis - System.currentTimeMillis();
+						item = wait > 0 ? queue.poll(wait, TimeUnit.MILLISECONDS) : null;
+					}
+				} catch (InterruptedException e)
+				{
+					continue; // only close stops the thread
+				}
+
+				try
+				{
+					write(item);
+				} catch (Throwable t)
+				{
+					reportError(t instanceof IOException ? (IOException)t : new IOException(t));
+				} finally
+				{
+					if (type(item) == STOP)
+						((Item)item).done.countDown();
+				}
+				if (type(item) == STOP)
+					return;
+			}
+		} catch (Throwable t)
+		{
+			reportError(new IOException("AsyncDataWriter stopped", t));
+		} finally
+		{
+			// release a close waiting on a STOP that will not be done
+			Object item;
+			while ((item = queue.poll()) != null)
+				if (type(item) == STOP)
+					((Item)item).done.countDown();
+		}
+	}
+
+	// do an item or a task (null: the time threshold), and flush (and sync) as needed
+	private void write(Object item) throws IOException
+	{
+		if (item == null)
+		{
+			flush(false);
+			return;
+		}
+		int type = type(item);
+		try
+		{
+			int n = 0;
+			if (item instanceof Task)
+				n = ((Task)item).write();
+			else if (type == TEXT)
+			{
+				Item i = (Item)item;
+				i.out.write(i.text);
+				n = i.text.length();
+			}
+			if (n > 0 && pendingBytes == 0)
+				firstPendingTime = System.currentTimeMillis();
+			pendingBytes += n;
+		} finally
+		{
+			if (type == SYNC || type == STOP)
+				flush(true);
+			else if (type == FLUSH || pendingBytes >= flushBytes)
+				flush(false);
+		}
+	}
+
+	// the type of a queued item (-1 for a task, or null)
+	private static int type(Object item)
+	{
+		return item instanceof Item ? ((Item)item).type : -1;
+	}
+
+	// flush the targets and, if sync, sync the file streams
+	private void flush(boolean sync)
+	{
+		pendingBytes = 0;
+		Flushable[] t;
+		FileOutputStream[] s;
+		synchronized (this)
+		{
+			t = targets.toArray(new Flushable[targets.size()]);
+			s = syncStreams.toArray(new FileOutputStream[syncStreams.size()]);
+		}
+		for (Flushable f : t)
+		{
+			try
+			{
+				f.flush();
+			} catch (IOException e)
+			{
+				reportError(e);
+			}
+		}
+		if (!sync)
+			return;
+		for (FileOutputStream f : s)
+		{
+			try
+			{
+				f.getFD().sync();
+			} catch (IOException e)
+			{
+				reportError(e);
+			}
+		}
+	}
+
+	private void reportError(IOException e)
+	{
+		if (error != null)
+			return;
+		error = e;
+		if (listener != null)
+			listener.writeError(e);
+	}
+}
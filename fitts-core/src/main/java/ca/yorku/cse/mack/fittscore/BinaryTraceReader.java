@@ -0,0 +1,209 @@
+package ca.yorku.cse.mack.fittscore;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * BinaryTraceReader -- read trace data in the sd3b format (see BinaryTraceWriter).
+ *
+ * The file header is read by the constructor. Each call to next reads one trial record: the samples go into a trace
+ * buffer, and the values in the record header are available through the getters until the next call.
+ *
+ * If the file ends part way through a record (e.g., the app was stopped part way through a trial), the trials end at
+ * the last complete record, and isTruncated returns true.
+ */
+@SuppressWarnings("unused")
+public class BinaryTraceReader implements TraceReader
+{
+	private final InputStream in;
+	private final String app, participant, condition, block;
+	private int sequence, a, w, trial, fromX, fromY, toX, toY;
+	private boolean end, truncated;
+
+	/**
+	 * Create a reader and read the file header. The stream should be buffered (e.g., a BufferedInputStream).
+	 */
+	public BinaryTraceReader(InputStream inArg) throws IOException
+	{
+		in = inArg;
+		DataInputStream header = new DataInputStream(in);
+		byte[] magic = new byte[BinaryTraceWriter.MAGIC.length];
+		header.readFully(magic);
+		if (!Arrays.equals(magic, BinaryTraceWriter.MAGIC))
+			throw new IOException("Not an sd3b file");
+		int version = header.readUnsignedByte();
+		if (version != BinaryTraceWriter.VERSION)
+			throw new IOException("Unsupported sd3b version: " + version);
+		app = header.readUTF();
+		participant = header.readUTF();
+		condition = header.readUTF();
+		block = header.readUTF();
+	}
+
+	/**
+	 * Read the next trial. The trace buffer is reset and filled with the trial's samples. Returns false at the end of
+	 * the file, or if the file ends part way through the trial (see isTruncated).
+	 */
+	@Override
+	public boolean next(TraceBuffer trace) throws IOException
+	{
+		if (end)
+			return false;
+		try
+		{
+			return readTrial(trace);
+		} catch (EOFException e)
+		{
+			trace.reset();
+			end = truncated = true;
+			return false;
+		}
+	}
+
+	/**
+	 * Returns true if the file ended part way through a trial record (the trials read end at the record before it).
+	 * Valid once next has returned false.
+	 */
+	public boolean isTruncated()
+	{
+		return truncated;
+	}
+
+	// read a trial record; returns false at the end of the file
+	private boolean readTrial(TraceBuffer trace) throws IOException
+	{
+		int first = in.read();
+		if (first < 0)
+		{
+			end = true;
+			return false;
+		}
+		sequence = (int)readVarint(first);
+		a = (int)readVarint();
+		w = (int)readVarint();
+		trial = (int)readVarint();
+		fromX = (int)readVarint();
+		fromY = (int)readVarint();
+		toX = (int)readVarint();
+		toY = (int)readVarint();
+		int n = (int)readVarint();
+
+		trace.reset();
+		long t = 0;
+		int x = fromX, y = fromY;
+		for (int i = 0; i < n; ++i)
+		{
+			t += readVarint();
+			x += (int)readVarint();
+			y += (int)readVarint();
+			trace.add(t, x, y);
+		}
+		return true;
+	}
+
+	@Override
+	public String getApp()
+	{
+		return app;
+	}
+
+	@Override
+	public String getParticipant()
+	{
+		return participant;
+	}
+
+	@Override
+	public String getCondition()
+	{
+		return condition;
+	}
+
+	@Override
+	public String getBlock()
+	{
+		return block;
+	}
+
+	@Override
+	public int getSequence()
+	{
+		return sequence;
+	}
+
+	@Override
+	public int getA()
+	{
+		return a;
+	}
+
+	@Override
+	public int getW()
+	{
+		return w;
+	}
+
+	@Override
+	public int getTrial()
+	{
+		return trial;
+	}
+
+	@Override
+	public int getFromX()
+	{
+		return fromX;
+	}
+
+	@Override
+	public int getFromY()
+	{
+		return fromY;
+	}
+
+	@Override
+	public int getToX()
+	{
+		return toX;
+	}
+
+	@Override
+	public int getToY()
+	{
+		return toY;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		in.close();
+	}
+
+	private long readVarint() throws IOException
+	{
+		int b = in.read();
+		if (b < 0)
+			throw new EOFException("Truncated sd3b record");
+		return readVarint(b);
+	}
+
+	// read a zig-zag encoded varint, the first byte of which has been read
+	private long readVarint(int first) throws IOException
+	{
+		long u = first & 0x7F;
+		int shift = 7;
+		for (int b = first; (b & 0x80) != 0; shift += 7)
+		{
+			b = in.read();
+			if (b < 0)
+				throw new EOFException("Truncated sd3b record");
+			if (shift > 63)
+				throw new IOException("Bad varint in sd3b record");
+			u |= (long)(b & 0x7F) << shift;
+		}
+		return (u >>> 1) ^ -(u & 1);
+	}
+}
@@ -0,0 +1,150 @@
+package ca.yorku.cse.mack.fittscore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * BinaryTraceWriter -- write trace data in the sd3b format, a compact binary alternative to the sd3 text format.
+ *
+ * The file begins with a header:
+ *
+ * <pre>
+ *      "SD3B" (4 bytes), version (1 byte)
+ *      App, Participant, Condition, Block (strings, as by DataOutputStream.writeUTF)
+ * </pre>
+ *
+ * This is followed by one record per trial:
+ *
+ * <pre>
+ *      Sequence, A, W, Trial, FromX, FromY, ToX, ToY, NumberOfSamples
+ *      t, x, y for each sample
+ * </pre>
+ *
+ * Every value is a zig-zag encoded varint (7 bits per byte, low-order group first, high bit set on all but the last
+ * byte). The samples are delta encoded: t, x, and y are the differences from the previous sample, with the first
+ * sample taken relative to (0, FromX, FromY). Small movements between samples thus take one byte per value. The
+ * values are those written to the sd3 file (integer pixels, ms from the start of the trial), so the sd3 file can be
+ * reproduced exactly from the sd3b file (see BinaryTraceReader).
+ *
+ * A record is encoded into a buffer and written with a single call, so a flush after each trial leaves only complete
+ * records in the file.
+ */
+public class BinaryTraceWriter implements Closeable, Flushable
+{
+	public final static byte[] MAGIC = {'S', 'D', '3', 'B'};
+	public final static int VERSION = 1;
+
+	// largest size of an encoded long (64 bits / 7 bits per byte)
+	final static int MAXIMUM_VARINT_BYTES = 10;
+
+	private final OutputStream out;
+	private byte[] buffer;
+
+	/**
+	 * Create a writer and write the file header. The stream should be buffered (e.g., a BufferedOutputStream).
+	 */
+	public BinaryTraceWriter(OutputStream outArg, String app, String participant, String condition, String block)
+			throws IOException
+	{
+		out = outArg;
+		buffer = new byte[16 * 1024];
+
+		out.write(encodeHeader(app, participant, condition, block));
+	}
+
+	/**
+	 * Returns the file header, as written by the constructor.
+	 */
+	public static byte[] encodeHeader(String app, String participant, String condition, String block) throws
+			IOException
+	{
+		ByteArrayOutputStream b = new ByteArrayOutputStream();
+		DataOutputStream header = new DataOutputStream(b);
+		header.write(MAGIC);
+		header.writeByte(VERSION);
+		header.writeUTF(app);
+		header.writeUTF(participant);
+		header.writeUTF(condition);
+		header.writeUTF(block);
+		return b.toByteArray();
+	}
+
+	/**
+	 * Write the record for a trial. The samples are those in the trace buffer. Returns the length of the record, which
+	 * is in getBuffer until the next call.
+	 */
+	public int writeTrial(int sequence, int a, int w, int trial, int fromX, int fromY, int toX, int toY,
+			TraceBuffer trace) throws IOException
+	{
+		int n = trace.size();
+		int maximumLength = (9 + 3 * n) * MAXIMUM_VARINT_BYTES;
+		if (buffer.length < maximumLength)
+			buffer = Arrays.copyOf(buffer, Math.max(maximumLength, 2 * buffer.length));
+
+		int p = 0;
+		p = putVarint(buffer, p, sequence);
+		p = putVarint(buffer, p, a);
+		p = putVarint(buffer, p, w);
+		p = putVarint(buffer, p, trial);
+		p = putVarint(buffer, p, fromX);
+		p = putVarint(buffer, p, fromY);
+		p = putVarint(buffer, p, toX);
+		p = putVarint(buffer, p, toY);
+		p = putVarint(buffer, p, n);
+
+		long[] t = trace.getTArray();
+		int[] x = trace.getXArray();
+		int[] y = trace.getYArray();
+		long lastT = 0;
+		int lastX = fromX, lastY = fromY;
+		for (int i = 0; i < n; ++i)
+		{
+			p = putVarint(buffer, p, t[i] - lastT);
+			p = putVarint(buffer, p, x[i] - lastX);
+			p = putVarint(buffer, p, y[i] - lastY);
+			lastT = t[i];
+			lastX = x[i];
+			lastY = y[i];
+		}
+		out.write(buffer, 0, p);
+		return p;
+	}
+
+	/**
+	 * Returns the record last written by writeTrial (indices 0 to the length returned - 1). The array is not copied.
+	 */
+	public byte[] getBuffer()
+	{
+		return buffer;
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		out.close();
+	}
+
+	// zig-zag encode v (so small negative values are small) and put it in b at index p; returns the next index
+	static int putVarint(byte[] b, int p, long v)
+	{
+		long u = (v << 1) ^ (v >> 63);
+		while ((u & ~0x7FL) != 0)
+		{
+			b[p++] = (byte)((u & 0x7F) | 0x80);
+			u >>>= 7;
+		}
+		b[p++] = (byte)u;
+		return p;
+	}
+}
@@ -0,0 +1,131 @@
+package ca.yorku.cse.mack.fittscore;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * ColumnarTrialReader -- read trial tables in the sd1c format (see ColumnarTrialWriter).
+ *
+ * The file header is read by the constructor. Each call to next reads one batch (normally, the trials in a sequence)
+ * into a trial table. The columns are copied in bulk from the batch into the table's column arrays.
+ */
+@SuppressWarnings("unused")
+public class ColumnarTrialReader implements Closeable
+{
+	private final DataInputStream in;
+	private ByteBuffer buffer;
+
+	/**
+	 * Create a reader and read the file header. The columns must be those of TrialTable.
+	 */
+	public ColumnarTrialReader(InputStream inArg) throws IOException
+	{
+		in = new DataInputStream(inArg);
+		buffer = ByteBuffer.allocate(16 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+		byte[] magic = new byte[ColumnarTrialWriter.MAGIC.length];
+		in.readFully(magic);
+		if (!Arrays.equals(magic, ColumnarTrialWriter.MAGIC))
+			throw new IOException("Not an sd1c file");
+		ByteBuffer b = read(8);
+		int version = b.getInt();
+		if (version != ColumnarTrialWriter.VERSION)
+			throw new IOException("Unsupported sd1c version: " + version);
+		int columns = b.getInt();
+		if (columns != TrialTable.COLUMN_TYPE.length)
+			throw new IOException("Unexpected sd1c columns: " + columns);
+		int position = 12; // bytes read so far (the magic, version, and columns)
+		for (int c = 0; c < columns; ++c)
+		{
+			b = read(8);
+			int type = b.getInt();
+			int n = b.getInt();
+			position += 8;
+			int padded = ((position + n + 7) & ~7) - position; // the name is padded to the next 8-byte boundary
+			String name = new String(read(padded).array(), 0, n, ColumnarTrialWriter.UTF_8);
+			if (type != TrialTable.COLUMN_TYPE[c] || !name.equals(TrialTable.COLUMN_NAME[c]))
+				throw new IOException("Unexpected sd1c column: " + name);
+			position += padded;
+		}
+		if ((position & 7) != 0)
+			read(8 - (position & 7));
+	}
+
+	/**
+	 * Read the next batch. The table is reset and filled with the batch's rows. Returns false at the end of the file.
+	 * An EOFException is thrown if the file ends part way through a batch.
+	 */
+	public boolean next(TrialTable table) throws IOException
+	{
+		int first = in.read();
+		if (first < 0)
+			return false;
+		ByteBuffer b = read(7);
+		int length = first | (b.get() & 0xFF) << 8 | (b.get() & 0xFF) << 16 | (b.get() & 0xFF) << 24;
+		int rows = b.getInt(3);
+		if (length < 0 || rows < 0)
+			throw new IOException("Bad sd1c batch");
+
+		b = read(length);
+		int n = b.getInt();
+		String codes = new String(b.array(), 4, n, ColumnarTrialWriter.UTF_8);
+		b.position((4 + n + 7) & ~7);
+		float a = b.getFloat();
+		float w = b.getFloat();
+
+		table.reset(codes, a, w);
+		table.ensureCapacity(rows);
+		table.rows = rows;
+		for (int c = 0; c < TrialTable.COLUMN_TYPE.length; ++c)
+		{
+			int i = TrialTable.COLUMN_INDEX[c];
+			int p = b.position();
+			switch (TrialTable.COLUMN_TYPE[c])
+			{
+				case TrialTable.INT:
+					b.asIntBuffer().get(table.intColumn[i], 0, rows);
+					p += 4 * rows;
+					break;
+				case TrialTable.LONG:
+					b.asLongBuffer().get(table.longColumn[i], 0, rows);
+					p += 8 * rows;
+					break;
+				default:
+					b.asFloatBuffer().get(table.floatColumn[i], 0, rows);
+					p += 4 * rows;
+					break;
+			}
+			b.position((p + 7) & ~7);
+		}
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		in.close();
+	}
+
+	// read n bytes into the buffer; returns the buffer, positioned at 0
+	private ByteBuffer read(int n) throws IOException
+	{
+		if (buffer.capacity() < n)
+			buffer = ByteBuffer.allocate(Math.max(n, 2 * buffer.capacity())).order(ByteOrder.LITTLE_ENDIAN);
+		try
+		{
+			in.readFully(buffer.array(), 0, n);
+		} catch (EOFException e)
+		{
+			throw new EOFException("Truncated sd1c file");
+		}
+		buffer.clear();
+		buffer.limit(n);
+		return buffer;
+	}
+}
@@ -0,0 +1,146 @@
+package ca.yorku.cse.mack.fittscore;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/**
+ * ColumnarTrialWriter -- write trial tables (see TrialTable) in the sd1c format, a columnar binary alternative to the
+ * sd1 text format.
+ *
+ * The file begins with a header:
+ *
+ * <pre>
+ *      "SD1C" (4 bytes), version (int)
+ *      number of columns (int)
+ *      type (int: 0 = int, 1 = long, 2 = float) and name (string) of each column, in the order of the sd1 file
+ * </pre>
+ *
+ * This is followed by one batch per sequence:
+ *
+ * <pre>
+ *      length of the rest of the batch in bytes (int), rows (int)
+ *      codes (string: Participant,Session,Block,Group,Condition,Mode), A (float), W (float)
+ *      the values of each column (rows x 4 or 8 bytes), in the order of the header
+ * </pre>
+ *
+ * Every value is little-endian: int and float take 4 bytes, long 8 bytes. A string is its length in bytes (int)
+ * followed by its UTF-8 bytes. The header, the strings, and the columns are each padded with zeros to a multiple of 8
+ * bytes, so every column begins at an 8-byte boundary in the file. A column can thus be mapped or read straight into
+ * an array (e.g., a Java FloatBuffer, a numpy array, or an Arrow buffer) without being decoded. The trial number is
+ * the row index and A and W are the same for every row, so these are not stored as columns. The sd1 file can be
+ * reproduced exactly from the sd1c file (see ColumnarTrialReader and TrialTable.appendSd1).
+ *
+ * A batch is encoded into a buffer and written with a single call, so a flush after each sequence leaves only
+ * complete batches in the file.
+ */
+@SuppressWarnings("unused")
+public class ColumnarTrialWriter implements Closeable, Flushable
+{
+	public final static byte[] MAGIC = {'S', 'D', '1', 'C'};
+	public final static int VERSION = 1;
+
+	final static Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final OutputStream out;
+	private ByteBuffer buffer;
+
+	/**
+	 * Create a writer and write the file header. The stream need not be buffered (each write is a whole header or
+	 * batch).
+	 */
+	public ColumnarTrialWriter(OutputStream outArg) throws IOException
+	{
+		out = outArg;
+		buffer = ByteBuffer.allocate(16 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+		ByteBuffer b = buffer;
+		b.put(MAGIC);
+		b.putInt(VERSION);
+		b.putInt(TrialTable.COLUMN_TYPE.length);
+		for (int c = 0; c < TrialTable.COLUMN_TYPE.length; ++c)
+		{
+			b.putInt(TrialTable.COLUMN_TYPE[c]);
+			putString(b, TrialTable.COLUMN_NAME[c]);
+		}
+		pad(b);
+		out.write(b.array(), 0, b.position());
+	}
+
+	/**
+	 * Write the batch for a trial table (normally, the trials in a sequence).
+	 */
+	public void writeTable(TrialTable table) throws IOException
+	{
+		int rows = table.size();
+		byte[] codes = table.getCodes().getBytes(UTF_8);
+		int maximumLength = 8 + 8 + codes.length + 8 + 8 + TrialTable.COLUMN_TYPE.length * (8 * rows + 8);
+		if (buffer.capacity() < maximumLength)
+			buffer = ByteBuffer.allocate(Math.max(maximumLength, 2 * buffer.capacity())).order(ByteOrder
+					.LITTLE_ENDIAN);
+
+		ByteBuffer b = buffer;
+		b.clear();
+		b.putInt(0); // length (below)
+		b.putInt(rows);
+		b.putInt(codes.length);
+		b.put(codes);
+		pad(b);
+		b.putFloat(table.getA());
+		b.putFloat(table.getW());
+		for (int c = 0; c < TrialTable.COLUMN_TYPE.length; ++c)
+		{
+			int i = TrialTable.COLUMN_INDEX[c];
+			int p = b.position();
+			switch (TrialTable.COLUMN_TYPE[c])
+			{
+				case TrialTable.INT:
+					b.asIntBuffer().put(table.getIntColumn(i), 0, rows);
+					b.position(p + 4 * rows);
+					break;
+				case TrialTable.LONG:
+					b.asLongBuffer().put(table.getLongColumn(i), 0, rows);
+					b.position(p + 8 * rows);
+					break;
+				default:
+					b.asFloatBuffer().put(table.getFloatColumn(i), 0, rows);
+					b.position(p + 4 * rows);
+					break;
+			}
+			pad(b);
+		}
+		b.putInt(0, b.position() - 8);
+		out.write(b.array(), 0, b.position());
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		out.close();
+	}
+
+	private static void putString(ByteBuffer b, String s)
+	{
+		byte[] bytes = s.getBytes(UTF_8);
+		b.putInt(bytes.length);
+		b.put(bytes);
+		pad(b);
+	}
+
+	// pad b with zeros to a multiple of 8 bytes
+	static void pad(ByteBuffer b)
+	{
+		while ((b.position() & 7) != 0)
+			b.put((byte)0);
+	}
+}
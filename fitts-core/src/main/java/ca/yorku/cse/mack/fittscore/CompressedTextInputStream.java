@@ -0,0 +1,176 @@
+package ca.yorku.cse.mack.fittscore;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * CompressedTextInputStream -- read the text of a file written by CompressedTextWriter (e.g., sd3z or sd1z), as it is
+ * decompressed.
+ *
+ * The frames are read and inflated one at a time, so the file is not decompressed in memory. If the file ends part
+ * way through a frame, or a frame is corrupted (a bad checksum), the text ends at the end of the frame before it, that
+ * is, at the end of the last complete record (see isTruncated). A file being written can thus be read up to its last
+ * complete record.
+ *
+ * Wrap the stream in an InputStreamReader (default charset) to read the text.
+ */
+@SuppressWarnings("unused")
+public class CompressedTextInputStream extends InputStream
+{
+	// largest frame accepted when reading (larger is taken as corruption)
+	final static int MAXIMUM_FRAME_LENGTH = 64 * 1024 * 1024;
+
+	private final DataInputStream in;
+	private final Inflater inflater = new Inflater(true);
+	private final CRC32 crc = new CRC32();
+	private byte[] frame = new byte[16 * 1024];
+	private final byte[] buffer = new byte[64 * 1024]; // inflated text
+	private int position, limit;
+	private boolean end, truncated;
+	private long inputBytes, outputBytes;
+
+	/**
+	 * Create a stream, and read the file header.
+	 */
+	public CompressedTextInputStream(InputStream inArg) throws IOException
+	{
+		in = new DataInputStream(inArg);
+		byte[] magic = new byte[CompressedTextWriter.MAGIC.length];
+		in.readFully(magic);
+		if (!Arrays.equals(magic, CompressedTextWriter.MAGIC))
+			throw new IOException("Not a compressed text (SDZ1) file");
+		inputBytes = magic.length;
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		if (position == limit && !fill())
+			return -1;
+		return buffer[position++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int offset, int length) throws IOException
+	{
+		if (length == 0)
+			return 0;
+		if (position == limit && !fill())
+			return -1;
+		int n = Math.min(length, limit - position);
+		System.arraycopy(buffer, position, b, offset, n);
+		position += n;
+		return n;
+	}
+
+	@Override
+	public int available()
+	{
+		return limit - position;
+	}
+
+	/**
+	 * Returns true if the file ended part way through a record, or had a corrupted record (the text read ends at the
+	 * record before it). Valid once read has returned -1.
+	 */
+	public boolean isTruncated()
+	{
+		return truncated;
+	}
+
+	/**
+	 * Returns the number of bytes of the file read so far (the header, and the frames of the records read).
+	 */
+	public long getInputBytes()
+	{
+		return inputBytes;
+	}
+
+	/**
+	 * Returns the number of bytes of text read so far.
+	 */
+	public long getOutputBytes()
+	{
+		return outputBytes;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		inflater.end();
+		in.close();
+	}
+
+	// inflate more text into the buffer; returns false at the end of the records
+	private boolean fill() throws IOException
+	{
+		while (!end)
+		{
+			if (!inflater.needsInput())
+			{
+				int n;
+				try
+				{
+					n = inflater.inflate(buffer);
+				} catch (DataFormatException e)
+				{
+					throw new IOException("Bad compressed text: " + e.getMessage());
+				}
+				if (n > 0)
+				{
+					position = 0;
+					limit = n;
+					outputBytes += n;
+					return true;
+				}
+				if (!inflater.needsInput()) // finished (a writer does not finish the stream), or needs a dictionary
+					break;
+			}
+			end = !nextFrame();
+		}
+		end = true;
+		return false;
+	}
+
+	// read the next frame, and give it to the inflater; returns false at the end of the file, or a torn or bad frame
+	private boolean nextFrame() throws IOException
+	{
+		int first = in.read();
+		if (first < 0)
+			return false;
+		try
+		{
+			int length = first << 24 | in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8 | in
+					.readUnsignedByte();
+			int checksum = in.readInt();
+			if (length < 0 || length > MAXIMUM_FRAME_LENGTH)
+			{
+				truncated = true;
+				return false;
+			}
+			if (frame.length < length)
+				frame = new byte[Math.max(length, 2 * frame.length)];
+			in.readFully(frame, 0, length);
+			crc.reset();
+			crc.update(frame, 0, length);
+			if ((int)crc.getValue() != checksum)
+			{
+				truncated = true;
+				return false;
+			}
+			inflater.setInput(frame, 0, length);
+			inputBytes += 8 + length;
+			return true;
+		} catch (EOFException e)
+		{
+			truncated = true;
+			return false;
+		}
+	}
+}
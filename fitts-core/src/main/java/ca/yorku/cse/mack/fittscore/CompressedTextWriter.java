@@ -0,0 +1,186 @@
+package ca.yorku.cse.mack.fittscore;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * CompressedTextWriter -- write a text data file (e.g., sd3 or sd1) through a streaming compressor, in records (e.g.,
+ * one per trial), so a partly written file can be decoded up to the last complete record.
+ *
+ * The text is compressed as one deflate stream (so each record is compressed with the text before it as the
+ * dictionary). Each record is ended with a sync flush: the compressed bytes so far can then be decoded without the
+ * bytes that follow. The compressed bytes of each record are written as a frame, so a reader (see
+ * CompressedTextInputStream) knows where the records end, and stops before a torn or corrupted one.
+ *
+ * The file begins with "SDZ1" (4 bytes), followed by the frames. All values are big-endian.
+ *
+ * <pre>
+ *      Frame: length (int), CRC-32 (int, of the compressed bytes), compressed bytes (raw deflate, ending with a sync
+ *             flush)
+ * </pre>
+ *
+ * endRecord (or flush) ends a record. The compression level is BEST_SPEED: the text is repetitive (e.g., the leadin of
+ * each sd3 line, and small increasing integers), so most of the gain comes at the lowest level, for about half the
+ * CPU time of the default level.
+ *
+ * The text is encoded with the default charset, as with an OutputStreamWriter.
+ *
+ * On Android, the sync flush (Deflater.SYNC_FLUSH) needs API 19 (Android 4.4) or later.
+ */
+@SuppressWarnings("unused")
+public class CompressedTextWriter extends Writer
+{
+	public final static byte[] MAGIC = {'S', 'D', 'Z', '1'};
+	public final static int LEVEL = Deflater.BEST_SPEED;
+
+	private final OutputStream out;
+	private final Charset charset = Charset.defaultCharset();
+	private final Deflater deflater = new Deflater(LEVEL, true);
+	private final CRC32 crc = new CRC32();
+	private byte[] frame = new byte[16 * 1024]; // the compressed bytes of the current record
+	private int frameLength;
+	private boolean pending; // text written since the last record ended
+	private long inputBytes, outputBytes;
+
+	/**
+	 * Create a writer, and write the file header to out.
+	 */
+	public CompressedTextWriter(OutputStream outArg) throws IOException
+	{
+		out = outArg;
+		out.write(MAGIC);
+		outputBytes = MAGIC.length;
+	}
+
+	@Override
+	public void write(char[] cbuf, int offset, int length) throws IOException
+	{
+		deflate(new String(cbuf, offset, length).getBytes(charset));
+	}
+
+	@Override
+	public void write(String s) throws IOException
+	{
+		deflate(s.getBytes(charset));
+	}
+
+	@Override
+	public void write(String s, int offset, int length) throws IOException
+	{
+		deflate(s.substring(offset, offset + length).getBytes(charset));
+	}
+
+	/**
+	 * End the current record: its compressed bytes are sync flushed and written (as a frame) to the stream. Does
+	 * nothing if no text was written since the last record ended.
+	 */
+	public void endRecord() throws IOException
+	{
+		if (!pending)
+			return;
+		while (true)
+		{
+			ensureRoom();
+			int room = frame.length - frameLength;
+			int n = deflater.deflate(frame, frameLength, room, Deflater.SYNC_FLUSH);
+			frameLength += n;
+			if (n < room)
+				break;
+		}
+		crc.reset();
+		crc.update(frame, 0, frameLength);
+		writeInt(frameLength);
+		writeInt((int)crc.getValue());
+		out.write(frame, 0, frameLength);
+		outputBytes += 8 + frameLength;
+		frameLength = 0;
+		pending = false;
+	}
+
+	/**
+	 * End the current record (see endRecord), and flush the stream.
+	 */
+	@Override
+	public void flush() throws IOException
+	{
+		endRecord();
+		out.flush();
+	}
+
+	/**
+	 * End the current record and close the stream.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			endRecord();
+		} finally
+		{
+			deflater.end();
+			out.close();
+		}
+	}
+
+	/**
+	 * Returns the number of bytes of text written so far (uncompressed).
+	 */
+	public long getInputBytes()
+	{
+		return inputBytes;
+	}
+
+	/**
+	 * Returns the number of bytes written to the stream so far (the header, and the frames of the records ended).
+	 */
+	public long getOutputBytes()
+	{
+		return outputBytes;
+	}
+
+	/**
+	 * Returns the compression ratio so far (text bytes per byte written).
+	 */
+	public float getRatio()
+	{
+		return (float)inputBytes / outputBytes;
+	}
+
+	// compress text into the current record's frame
+	private void deflate(byte[] b)
+	{
+		if (b.length == 0)
+			return;
+		deflater.setInput(b);
+		while (!deflater.needsInput())
+		{
+			ensureRoom();
+			frameLength += deflater.deflate(frame, frameLength, frame.length - frameLength, Deflater.NO_FLUSH);
+		}
+		inputBytes += b.length;
+		pending = true;
+	}
+
+	// make room in the frame buffer for the deflater's output
+	private void ensureRoom()
+	{
+		if (frame.length - frameLength >= 1024)
+			return;
+		byte[] b = new byte[2 * frame.length];
+		System.arraycopy(frame, 0, b, 0, frameLength);
+		frame = b;
+	}
+
+	private void writeInt(int v) throws IOException
+	{
+		out.write(v >>> 24);
+		out.write(v >>> 16);
+		out.write(v >>> 8);
+		out.write(v);
+	}
+}
@@ -0,0 +1,573 @@
+package ca.yorku.cse.mack.fittscore;
+
+/**
+ * DragTrialLogic -- the trial logic of the drag-and-drop task, driven by touch events (down, move, up).
+ *
+ * This is the part of the task that produces the data: the sequencing of targets, the detection of pickup misses,
+ * drop errors, and outlier sequences, the trace and path measures for each trial, and the lines written to the sd1
+ * and sd2 files. It has no dependence on Android, so the same logic runs in the app (FittsDragAndDropActivity, which
+ * passes it the events from onTouch) and in desktop tools that replay recorded data (see Replay in fitts-tools).
+ *
+ * The events are passed with their times (ms, on any clock, e.g., MotionEvent.getEventTime). The results are reported
+ * to a Listener: per trial (e.g., to write the trace data) and per sequence (the sd1 lines for the sequence and the
+ * sd2 line). Feedback and display are left to the Listener and the caller.
+ *
+ * A block begins waiting for the start circle to be selected (see startCircleSelected). The first target selection
+ * after that starts the sequence; the remaining selections are the trials. After the last trial (or an outlier), the
+ * logic again waits for the start circle. After the last sequence, isDone returns true.
+ */
+@SuppressWarnings("unused")
+public class DragTrialLogic
+{
+	/**
+	 * Receives the results of the trial logic.
+	 */
+	public interface Listener
+	{
+		/**
+		 * A sequence was started (the first target was selected).
+		 */
+		void sequenceStarted();
+
+		/**
+		 * A target selection (finger up) ended a trial. error is true if the drop point is outside the target.
+		 */
+		void targetSelected(boolean error);
+
+		/**
+		 * The target to select advanced to the next target.
+		 */
+		void targetAdvanced();
+
+		/**
+		 * A trial is complete. The trial's trace and sequence/trial indices are available through the getters (e.g.,
+		 * getTrace) until the method returns.
+		 */
+		void trialCompleted(DragTrialLogic logic);
+
+		/**
+		 * A sequence is complete. sd1 holds the sd1 lines for the trials in the sequence, sd2 the sd2 line. The
+		 * sequence measures are available through getThroughput, and the trials' sd1 data through getTrialTable,
+		 * until the method returns.
+		 */
+		void sequenceCompleted(DragTrialLogic logic, String sd1, String sd2);
+
+		/**
+		 * A sequence was abandoned because of an outlier trial (the sequence is repeated).
+		 */
+		void outlierSequence(DragTrialLogic logic);
+	}
+
+	final static String NEWLINE = System.getProperty("line.separator");
+
+	final String sd1Codes, sd2Codes;
+	final boolean oneDimensional;
+	final float[] amplitude, width; // one per sequence
+	final int numberOfTrials, numberOfTargets;
+	final float xCenter, yCenter;
+	final int targetHeight1D;
+	final float traceTolerance;
+	final Listener listener;
+
+	TargetShape[] targetSet;
+	int fromIndex, toIndex;
+
+	boolean waitStartCircleSelect, done;
+	boolean sequenceStarted, dragInProgress, outlier;
+	int sequenceIndex, selectionCount, trialError;
+	int pickupMissCountTrial, pickupMissCountSequence, outlierSequenceCount;
+	float xFingerDown, yFingerDown;
+	long fingerDownTime, trialStartTime, trialTime;
+	int historicalSampleCount;
+
+	final TraceBuffer trace; // reset (not replaced) at the start of each trial
+	final PathAnalyzer path;
+	final TraceSimplifier simplifier;
+	final ThroughputAccumulator throughput;
+	final TrialTable trials; // the sd1 data for the sequence, one row per trial (reset at the start of a sequence)
+	final RecordEncoder sd1Lines; // the sd1 lines for the sequence (see RecordEncoder)
+	final RecordEncoder sd2Line;
+
+	/**
+	 * Create the logic for a block of sequences.
+	 *
+	 * @param sd1CodesArg the codes that begin each sd1 line (Participant,Session,Block,Group,Condition,Mode)
+	 * @param sd2CodesArg the codes that begin each sd2 line (App,Participant,Session,Block,Group,Condition,Mode)
+	 * @param oneDimensionalArg true for the 1D task, false for 2D
+	 * @param amplitudeArg the amplitude for each sequence (pixels)
+	 * @param widthArg the width for each sequence (pixels)
+	 * @param numberOfTrialsArg trials per sequence
+	 * @param numberOfTargetsArg targets in the layout (2 for the 1D task)
+	 * @param xCenterArg x coordinate of the centre of the layout (the centre of the display)
+	 * @param yCenterArg y coordinate of the centre of the layout
+	 * @param targetHeight1DArg height of the targets for the 1D task
+	 * @param traceToleranceArg trace simplification tolerance (0 = no simplification; see TraceSimplifier)
+	 * @param listenerArg receives the results
+	 */
+	public DragTrialLogic(String sd1CodesArg, String sd2CodesArg, boolean oneDimensionalArg, float[] amplitudeArg,
+			float[] widthArg, int numberOfTrialsArg, int numberOfTargetsArg, float xCenterArg, float yCenterArg, int
+			targetHeight1DArg, float traceToleranceArg, Listener listenerArg)
+	{
+		sd1Codes = sd1CodesArg;
+		sd2Codes = sd2CodesArg;
+		oneDimensional = oneDimensionalArg;
+		amplitude = amplitudeArg;
+		width = widthArg;
+		numberOfTrials = numberOfTrialsArg;
+		numberOfTargets = numberOfTargetsArg;
+		xCenter = xCenterArg;
+		yCenter = yCenterArg;
+		targetHeight1D = targetHeight1DArg;
+		traceTolerance = traceToleranceArg;
+		listener = listenerArg;
+
+		trace = new TraceBuffer();
+		path = new PathAnalyzer();
+		simplifier = new TraceSimplifier();
+		throughput = new ThroughputAccumulator();
+		trials = new TrialTable(numberOfTrials);
+		sd1Lines = new RecordEncoder();
+		sd2Line = new RecordEncoder();
+
+		waitStartCircleSelect = true;
+		targetSet = new TargetShape[numberOfTargets];
+		configureTargets();
+	}
+
+	/**
+	 * The start circle was selected. The targets for the next sequence are set, with the first target to select.
+	 */
+	public void startCircleSelected()
+	{
+		waitStartCircleSelect = false;
+		if (sequenceIndex < amplitude.length)
+		{
+			targetSet = new TargetShape[numberOfTargets];
+			configureTargets();
+		}
+		toIndex = 0;
+		fromIndex = targetSet.length / 2;
+		selectionCount = 0;
+	}
+
+	/**
+	 * A finger down event. The drag begins if the drag object (on the "from" target) is touched; otherwise, once the
+	 * sequence has started, it is a pickup miss.
+	 */
+	public void touchDown(long now, float x, float y)
+	{
+		if (waitStartCircleSelect)
+			return;
+		if (targetSet[fromIndex].inRectangle(x, y))
+		{
+			dragInProgress = true;
+			xFingerDown = x;
+			yFingerDown = y;
+			if (sequenceStarted)
+			{
+				fingerDownTime = now;
+				// this is the 2nd trace point in the trial (beginning of drag operation)
+				addTraceSample(now - trialStartTime, (int)x, (int)y);
+			}
+		} else if (sequenceStarted)
+		{
+			++pickupMissCountTrial;
+			++pickupMissCountSequence; // object missed
+		}
+	}
+
+	/**
+	 * A sample batched into a move event (see MotionEvent.getHistoricalX). These are passed before the move event's
+	 * own sample, oldest first.
+	 */
+	public void touchHistory(long time, float x, float y)
+	{
+		if (waitStartCircleSelect || !dragInProgress || !sequenceStarted)
+			return;
+		addTraceSample(time - trialStartTime, (int)x, (int)y);
+		++historicalSampleCount;
+	}
+
+	/**
+	 * A finger move event.
+	 */
+	public void touchMove(long now, float x, float y)
+	{
+		if (waitStartCircleSelect || !dragInProgress || !sequenceStarted)
+			return;
+		addTraceSample(now - trialStartTime, (int)x, (int)y);
+	}
+
+	/**
+	 * A finger up event. If a drag is in progress, this is a target selection (the drop point is (x, y)).
+	 */
+	public void touchUp(long now, float x, float y)
+	{
+		if (!waitStartCircleSelect && dragInProgress)
+			targetSelected(now, x, y);
+	}
+
+	/**
+	 * Returns true if the start circle is to be selected (before each sequence and at the end of the block).
+	 */
+	public boolean isWaitingForStartCircle()
+	{
+		return waitStartCircleSelect;
+	}
+
+	/**
+	 * Returns true if every sequence is complete.
+	 */
+	public boolean isDone()
+	{
+		return done;
+	}
+
+	public boolean isDragInProgress()
+	{
+		return dragInProgress;
+	}
+
+	public boolean isSequenceStarted()
+	{
+		return sequenceStarted;
+	}
+
+	public TargetShape[] getTargets()
+	{
+		return targetSet;
+	}
+
+	public TargetShape getFromTarget()
+	{
+		return targetSet[fromIndex];
+	}
+
+	public TargetShape getToTarget()
+	{
+		return targetSet[toIndex];
+	}
+
+	public int getFromIndex()
+	{
+		return fromIndex;
+	}
+
+	public int getToIndex()
+	{
+		return toIndex;
+	}
+
+	/**
+	 * Returns the index of the current sequence (0 = first).
+	 */
+	public int getSequenceIndex()
+	{
+		return sequenceIndex;
+	}
+
+	public int getNumberOfSequences()
+	{
+		return amplitude.length;
+	}
+
+	/**
+	 * Returns the index of the current trial in the sequence (0 = first).
+	 */
+	public int getTrialIndex()
+	{
+		return selectionCount;
+	}
+
+	/**
+	 * Returns the amplitude for the current sequence.
+	 */
+	public float getA()
+	{
+		return amplitude[sequenceIndex];
+	}
+
+	/**
+	 * Returns the width for the current sequence.
+	 */
+	public float getW()
+	{
+		return width[sequenceIndex];
+	}
+
+	public int getPickupMissesForSequence()
+	{
+		return pickupMissCountSequence;
+	}
+
+	/**
+	 * Returns the number of times the current sequence was repeated because of an outlier (SequenceRepeatCount in the
+	 * sd2 file).
+	 */
+	public int getSequenceRepeats()
+	{
+		return outlierSequenceCount;
+	}
+
+	public TraceBuffer getTrace()
+	{
+		return trace;
+	}
+
+	public PathAnalyzer getPath()
+	{
+		return path;
+	}
+
+	public ThroughputAccumulator getThroughput()
+	{
+		return throughput;
+	}
+
+	/**
+	 * Returns the sd1 data for the trials so far in the current sequence (one row per trial). The table is reset at
+	 * the start of the next sequence; use TrialTable.copy to keep it.
+	 */
+	public TrialTable getTrialTable()
+	{
+		return trials;
+	}
+
+	// the targets for the current sequence
+	private void configureTargets()
+	{
+		if (sequenceIndex >= amplitude.length)
+			return;
+		float a = amplitude[sequenceIndex];
+		float w = width[sequenceIndex];
+		TargetLayout layout = TargetLayout.get(a, numberOfTargets);
+		for (int i = 0; i < numberOfTargets; ++i)
+		{
+			float x = layout.getTargetX(i, xCenter);
+			float y = layout.getTargetY(i, yCenter);
+			if (oneDimensional)
+				targetSet[i] = new TargetShape(TargetShape.RECTANGLE, x, y, w, targetHeight1D);
+			else
+				targetSet[i] = new TargetShape(TargetShape.CIRCLE, x, y, w, w);
+		}
+	}
+
+	/*
+	 * Begin the trace for a new trial, with the first trace point at (x, y). This is called once the "from" and "to"
+	 * targets for the trial are set, since they define the task axis for the path analysis.
+	 */
+	private void beginTrace(int x, int y)
+	{
+		trace.reset();
+		simplifier.reset(traceTolerance, trace);
+		historicalSampleCount = 0;
+		path.reset(targetSet[fromIndex].xCenter, targetSet[fromIndex].yCenter, targetSet[toIndex]);
+		addTraceSample(0, x, y);
+	}
+
+	// add a sample to the trace (through the simplifier, if used) and to the path analysis for the current trial
+	private void addTraceSample(long t, int x, int y)
+	{
+		if (traceTolerance > 0f)
+			simplifier.add(t, x, y);
+		else
+			trace.add(t, x, y);
+		path.add(x, y);
+	}
+
+	/*
+	 * Process a target selection. If it is the first selection in a sequence, data are not saved because timing for a
+	 * sequence begins on finger-up (i.e., at the end of the first selection). Otherwise, the trial is complete.
+	 */
+	private void targetSelected(long now, float xSelect, float ySelect)
+	{
+		// we've got a finger-up so clear this flag
+		dragInProgress = false;
+
+		TargetShape fromTarget = targetSet[fromIndex];
+		TargetShape toTarget = targetSet[toIndex];
+		trialError = toTarget.inTarget(xSelect, ySelect) ? 0 : 1;
+
+		// perhaps start a sequence (if the user correctly selects the 1st target)
+		if (!sequenceStarted)
+		{
+			if (trialError == 0) // correct start of sequence (otherwise, try again)
+			{
+				sequenceStarted = true;
+				trialStartTime = now; // need this at the beginning of a sequence
+
+				advanceTarget();
+
+				// this the first trace point in the sequence
+				beginTrace((int)xSelect, (int)ySelect);
+				int taskType = oneDimensional ? Throughput.ONE_DIMENSIONAL : Throughput.TWO_DIMENSIONAL;
+				float a = amplitude[sequenceIndex];
+				throughput.reset(a, width[sequenceIndex], taskType, Throughput.SERIAL, TargetLayout.get(a,
+						numberOfTargets));
+				trials.reset(sd1Codes, a, width[sequenceIndex]);
+				listener.sequenceStarted();
+			}
+
+			// we're not saving any data yet, so return now
+			return;
+		}
+
+		listener.targetSelected(trialError == 1);
+
+		// use static methods in the Throughput class to retrieve dx and ae, as per the usual calculations
+		float xDelta = Throughput.getTrialDeltaX(fromTarget.xCenter, fromTarget.yCenter, toTarget.xCenter, toTarget
+				.yCenter, xSelect, ySelect);
+		float ae = Throughput.getTrialAe(fromTarget.xCenter, fromTarget.yCenter, toTarget.xCenter, toTarget.yCenter,
+				xSelect, ySelect);
+
+		// compute distance from select point to target center (this is "b" in the usual calculations)
+		float b = (float)Math.hypot(xSelect - toTarget.xCenter, ySelect - toTarget.yCenter);
+
+		/*
+		 * DEFINITION OF OUTLIER: Any trial where the actual distance moved is less the 1/2 the specified amplitude is
+		 * deemed an outlier. If an outlier occurs, the sequence must be repeated.
+		 */
+		if (ae < amplitude[sequenceIndex] / 2f)
+		{
+			outlier = true;
+			endSequence();
+			return;
+		}
+
+		// trial time is from last finger-up to current finger-up
+		trialTime = now - trialStartTime;
+
+		float fingerDownUpDelta = (float)Math.sqrt((xSelect - xFingerDown) * (xSelect - xFingerDown) + (ySelect -
+				yFingerDown) * (ySelect - yFingerDown));
+
+		// last trace point in the trial (the path measures and the trace are then complete)
+		addTraceSample(now - trialStartTime, (int)xSelect, (int)ySelect);
+		if (traceTolerance > 0f)
+			simplifier.finish();
+		float traceCompression = (float)path.getNumberOfSamples() / trace.size();
+
+		/*
+		 * The sd1 data for the trial go in the sequence's trial table (the row index is the trial). The sd1 lines are
+		 * rendered from the table when the sequence ends (see TrialTable.appendSd1).
+		 */
+		TrialTable t = trials;
+		int row = t.addRow();
+		t.setFloat(TrialTable.FROM_X, row, fromTarget.xCenter);
+		t.setFloat(TrialTable.FROM_Y, row, fromTarget.yCenter);
+		t.setFloat(TrialTable.TARGET_X, row, toTarget.xCenter);
+		t.setFloat(TrialTable.TARGET_Y, row, toTarget.yCenter);
+		t.setFloat(TrialTable.FINGER_DOWN_X, row, xFingerDown);
+		t.setFloat(TrialTable.FINGER_DOWN_Y, row, yFingerDown);
+		t.setFloat(TrialTable.SELECT_X, row, xSelect);
+		t.setFloat(TrialTable.SELECT_Y, row, ySelect);
+		t.setFloat(TrialTable.X_DELTA, row, xDelta);
+		t.setFloat(TrialTable.FINGER_DOWN_UP_DELTA, row, fingerDownUpDelta);
+		t.setLong(TrialTable.FINGER_DOWN_UP_TIME, row, now - fingerDownTime);
+		t.setFloat(TrialTable.DISTANCE_FROM_TARGET_CENTER, row, b);
+		t.setInt(TrialTable.PICKUP_MISSES, row, pickupMissCountTrial);
+		t.setInt(TrialTable.ERROR, row, trialError);
+		t.setLong(TrialTable.MT, row, trialTime);
+		t.setInt(TrialTable.HISTORICAL_SAMPLES, row, historicalSampleCount);
+		t.setInt(TrialTable.TRE, row, path.getTargetReEntries());
+		t.setInt(TrialTable.TAC, row, path.getTaskAxisCrossings());
+		t.setInt(TrialTable.MDC, row, path.getMovementDirectionChanges());
+		t.setInt(TrialTable.ODC, row, path.getOrthogonalDirectionChanges());
+		t.setFloat(TrialTable.MV, row, path.getMovementVariability());
+		t.setFloat(TrialTable.ME, row, path.getMovementError());
+		t.setFloat(TrialTable.MO, row, path.getMovementOffset());
+		t.setFloat(TrialTable.PATH_LENGTH, row, path.getPathLength());
+		t.setInt(TrialTable.TRACE_SAMPLES, row, path.getNumberOfSamples());
+		t.setFloat(TrialTable.TRACE_COMPRESSION, row, traceCompression);
+
+		listener.trialCompleted(this);
+
+		/*
+		 * Add the trial to the throughput accumulator. The running values are updated here, so the sequence measures
+		 * are ready (without further calculation) when the sequence ends.
+		 */
+		throughput.addTrial(fromTarget.xCenter, fromTarget.yCenter, toTarget.xCenter, toTarget.yCenter, xSelect,
+				ySelect, trialTime);
+
+		// prepare for next target selection
+		++selectionCount;
+		pickupMissCountTrial = 0;
+
+		// new... beginning of a trial (but not the first trial in the sequence)
+		trialStartTime = now;
+		advanceTarget();
+		beginTrace((int)xSelect, (int)ySelect);
+
+		if (selectionCount == numberOfTrials) // finished sequence
+			endSequence();
+	}
+
+	private void endSequence()
+	{
+		if (outlier)
+		{
+			++outlierSequenceCount;
+			listener.outlierSequence(this);
+			outlier = false;
+		} else
+		{
+			/*
+			 * The throughput measures were accumulated trial by trial (see targetSelected), so they are available
+			 * here without further calculation.
+			 *
+			 * CAUTION: Ensure this is consistent with the sd2 header line defined at the top of
+			 * FittsDragAndDropActivity.
+			 */
+			ThroughputAccumulator t = throughput;
+			RecordEncoder r = sd2Line.reset();
+			r.append(sd2Codes).append(',').appendInt(t.getNumberOfTrials()).append(',');
+			r.appendFloat(t.getA()).append(',').appendFloat(t.getW()).append(',').appendFloat(t.getID()).append(',');
+			r.appendFloat(t.getAe()).append(',').appendFloat(t.getWe()).append(',').appendFloat(t.getIDe());
+			r.append(',').appendInt(pickupMissCountSequence).append(',').appendInt(outlierSequenceCount).append(',');
+			r.appendFloat(t.getMT()).append(',').appendFloat(t.getErrorRate()).append(',');
+			r.appendFloat(t.getThroughput()).append(NEWLINE);
+
+			/*
+			 * CAUTION: Ensure the sd1 lines are consistent with the sd1 header line defined at the top of
+			 * FittsDragAndDropActivity.
+			 */
+			trials.appendSd1(sd1Lines.reset(), NEWLINE);
+			listener.sequenceCompleted(this, sd1Lines.toString(), r.toString());
+
+			++sequenceIndex; // next A-W condition
+			if (sequenceIndex < amplitude.length)
+				configureTargets();
+			else
+				done = true;
+			outlierSequenceCount = 0;
+			pickupMissCountSequence = 0;
+			pickupMissCountTrial = 0;
+		}
+		waitStartCircleSelect = true;
+		sequenceStarted = false;
+		dragInProgress = false;
+	}
+
+	// advance to the next target (a bit complicated for the 2D task; see comment below)
+	private void advanceTarget()
+	{
+		/*
+		 * Advance the target to the one on the opposite side of the layout circle. This is a bit tricky since every
+		 * second advance requires the target to be beside the target directly opposite the last target. This is
+		 * needed to get the sequence of selections to advance around the layout circle. Of course, this only applies
+		 * to the 2D task.
+		 */
+		int i = toIndex;
+		int next;
+		if (oneDimensional)
+		{
+			next = (i + 1) % 2;
+		} else
+		{
+			int halfWay = (targetSet.length + 1) / 2;
+			next = (i + halfWay) % targetSet.length; // NOTE: odd number of targets
+		}
+		fromIndex = i;
+		toIndex = next;
+		listener.targetAdvanced();
+	}
+}
@@ -0,0 +1,127 @@
+package ca.yorku.cse.mack.fittscore;
+
+import java.util.Locale;
+
+/**
+ * FittsModel -- least-squares fit of the Fitts' law model, MT = a + b x ID, updated one point at a time.
+ *
+ * Each point is the (ID, MT) result for one sequence, where ID is the specified or the effective index of difficulty
+ * (bits) and MT is the mean movement time (ms). Only the running sums are kept, so adding a point and querying the
+ * intercept, slope, and coefficient of determination (R^2) are constant-time operations. The sums can be saved as a
+ * string (see toString and fromString) to continue the fit across blocks.
+ */
+@SuppressWarnings("unused")
+public class FittsModel
+{
+	int n;
+	double sumX, sumY, sumXX, sumXY, sumYY;
+
+	public FittsModel()
+	{
+	}
+
+	/**
+	 * Add a point (x = index of difficulty in bits, y = movement time in ms).
+	 */
+	public void add(float x, float y)
+	{
+		++n;
+		sumX += x;
+		sumY += y;
+		sumXX += (double)x * x;
+		sumXY += (double)x * y;
+		sumYY += (double)y * y;
+	}
+
+	/**
+	 * Returns the number of points in the fit.
+	 */
+	public int getN()
+	{
+		return n;
+	}
+
+	/**
+	 * Returns the slope, b (ms/bit). NaN if there are fewer than two distinct x values.
+	 */
+	public float getSlope()
+	{
+		return (float)((n * sumXY - sumX * sumY) / (n * sumXX - sumX * sumX));
+	}
+
+	/**
+	 * Returns the intercept, a (ms).
+	 */
+	public float getIntercept()
+	{
+		return (float)((sumY - getSlope() * sumX) / n);
+	}
+
+	/**
+	 * Returns the coefficient of determination, R^2.
+	 */
+	public float getR2()
+	{
+		double sxy = n * sumXY - sumX * sumY;
+		double sxx = n * sumXX - sumX * sumX;
+		double syy = n * sumYY - sumY * sumY;
+		return (float)(sxy * sxy / (sxx * syy));
+	}
+
+	/**
+	 * Returns the movement time (ms) predicted by the model for the specified index of difficulty.
+	 */
+	public float predict(float x)
+	{
+		return getIntercept() + getSlope() * x;
+	}
+
+	/**
+	 * Add the points of another model to this model.
+	 */
+	public void add(FittsModel m)
+	{
+		n += m.n;
+		sumX += m.sumX;
+		sumY += m.sumY;
+		sumXX += m.sumXX;
+		sumXY += m.sumXY;
+		sumYY += m.sumYY;
+	}
+
+	/**
+	 * Returns the running sums as a string (see fromString).
+	 */
+	@Override
+	public String toString()
+	{
+		return String.format(Locale.CANADA, "%d,%s,%s,%s,%s,%s", n, sumX, sumY, sumXX, sumXY, sumYY);
+	}
+
+	/**
+	 * Returns a model with the running sums in a string returned by toString. An empty model is returned if the
+	 * string is null or not in the expected format.
+	 */
+	public static FittsModel fromString(String s)
+	{
+		FittsModel m = new FittsModel();
+		if (s == null)
+			return m;
+		String[] value = s.split(",");
+		if (value.length != 6)
+			return m;
+		try
+		{
+			m.n = Integer.parseInt(value[0]);
+			m.sumX = Double.parseDouble(value[1]);
+			m.sumY = Double.parseDouble(value[2]);
+			m.sumXX = Double.parseDouble(value[3]);
+			m.sumXY = Double.parseDouble(value[4]);
+			m.sumYY = Double.parseDouble(value[5]);
+		} catch (NumberFormatException e)
+		{
+			return new FittsModel();
+		}
+		return m;
+	}
+}
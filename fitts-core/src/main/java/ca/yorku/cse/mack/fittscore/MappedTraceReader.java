@@ -0,0 +1,209 @@
+package ca.yorku.cse.mack.fittscore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * MappedTraceReader -- read trace data in the sd3m format (see MappedTraceStore).
+ *
+ * Only the committed part of the file (as given in its header) is read. A trial that was not committed (e.g., the app
+ * was killed part way through it) is ignored.
+ */
+@SuppressWarnings("unused")
+public class MappedTraceReader implements TraceReader
+{
+	private final RandomAccessFile file;
+	private final MappedByteBuffer buffer;
+	private final int committedLength;
+	private final int numberOfTrials;
+	private final String app, participant, condition, block;
+	private int sequence, a, w, trial, fromX, fromY, toX, toY;
+
+	/**
+	 * Open the file, map its committed part, and read the header.
+	 */
+	public MappedTraceReader(File f) throws IOException
+	{
+		this(f, 0, -1);
+	}
+
+	/**
+	 * Open sd3m data held in part of a file (e.g., a segment file, see StudyCatalog): the length bytes at offset (-1 =
+	 * to the end of the file).
+	 */
+	public MappedTraceReader(File f, long offset, long lengthArg) throws IOException
+	{
+		file = new RandomAccessFile(f, "r");
+		try
+		{
+			long length = lengthArg < 0 ? file.length() - offset : Math.min(lengthArg, file.length() - offset);
+			if (length < MappedTraceStore.HEADER_SIZE)
+				throw new IOException("Not an sd3m file");
+			FileChannel channel = file.getChannel();
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, offset, MappedTraceStore
+					.HEADER_SIZE);
+			byte[] magic = new byte[MappedTraceStore.MAGIC.length];
+			header.get(magic);
+			if (!Arrays.equals(magic, MappedTraceStore.MAGIC))
+				throw new IOException("Not an sd3m file");
+			int version = header.getInt();
+			if (version != MappedTraceStore.VERSION)
+				throw new IOException("Unsupported sd3m version: " + version);
+			long committed = header.getLong(MappedTraceStore.COMMITTED_LENGTH_OFFSET);
+			if (committed < MappedTraceStore.HEADER_SIZE || committed > length)
+				throw new IOException("Bad committed length in sd3m header: " + committed);
+			committedLength = (int)committed;
+			numberOfTrials = header.getInt(MappedTraceStore.COMMITTED_TRIALS_OFFSET);
+			header.position(MappedTraceStore.STRINGS_OFFSET);
+			app = readString(header);
+			participant = readString(header);
+			condition = readString(header);
+			block = readString(header);
+
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, committedLength);
+			buffer.position(MappedTraceStore.HEADER_SIZE);
+		} catch (IOException e)
+		{
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Read the next committed trial. The trace buffer is reset and filled with the trial's samples. Returns false
+	 * after the last committed trial.
+	 */
+	@Override
+	public boolean next(TraceBuffer trace) throws IOException
+	{
+		if (buffer.position() >= committedLength)
+			return false;
+		if (committedLength - buffer.position() < MappedTraceStore.TRIAL_HEADER_SIZE)
+			throw new IOException("Truncated sd3m trial");
+		byte[] magic = new byte[MappedTraceStore.TRIAL_MAGIC.length];
+		buffer.get(magic);
+		if (!Arrays.equals(magic, MappedTraceStore.TRIAL_MAGIC))
+			throw new IOException("Bad sd3m trial at offset " + (buffer.position() - magic.length));
+		int n = buffer.getInt();
+		sequence = buffer.getInt();
+		a = buffer.getInt();
+		w = buffer.getInt();
+		trial = buffer.getInt();
+		fromX = buffer.getInt();
+		fromY = buffer.getInt();
+		toX = buffer.getInt();
+		toY = buffer.getInt();
+		if (n < 0 || (long)n * MappedTraceStore.SAMPLE_SIZE > committedLength - buffer.position())
+			throw new IOException("Bad sd3m sample count: " + n);
+
+		trace.reset();
+		for (int i = 0; i < n; ++i)
+		{
+			int t = buffer.getInt();
+			int x = buffer.getInt();
+			int y = buffer.getInt();
+			trace.add(t, x, y);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of committed trials (from the file header).
+	 */
+	public int getNumberOfTrials()
+	{
+		return numberOfTrials;
+	}
+
+	@Override
+	public String getApp()
+	{
+		return app;
+	}
+
+	@Override
+	public String getParticipant()
+	{
+		return participant;
+	}
+
+	@Override
+	public String getCondition()
+	{
+		return condition;
+	}
+
+	@Override
+	public String getBlock()
+	{
+		return block;
+	}
+
+	@Override
+	public int getSequence()
+	{
+		return sequence;
+	}
+
+	@Override
+	public int getA()
+	{
+		return a;
+	}
+
+	@Override
+	public int getW()
+	{
+		return w;
+	}
+
+	@Override
+	public int getTrial()
+	{
+		return trial;
+	}
+
+	@Override
+	public int getFromX()
+	{
+		return fromX;
+	}
+
+	@Override
+	public int getFromY()
+	{
+		return fromY;
+	}
+
+	@Override
+	public int getToX()
+	{
+		return toX;
+	}
+
+	@Override
+	public int getToY()
+	{
+		return toY;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		file.close();
+	}
+
+	private static String readString(MappedByteBuffer b) throws IOException
+	{
+		int length = b.getShort() & 0xFFFF;
+		if (length > b.remaining())
+			throw new IOException("Bad string in sd3m header");
+		byte[] bytes = new byte[length];
+		b.get(bytes);
+		return new String(bytes, MappedTraceStore.UTF_8);
+	}
+}
@@ -0,0 +1,214 @@
+package ca.yorku.cse.mack.fittscore;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+/**
+ * MappedTraceStore -- an append-only trace file (sd3m) written through a memory-mapped buffer.
+ *
+ * The file is mapped into memory and grown in preallocated chunks (CHUNK_SIZE), so appending a sample is three int
+ * stores into the buffer. There is no encoding, no copy through a Writer, and no system call, except when a chunk is
+ * added (about every 87,000 samples). Each chunk is mapped on its own, when it is added, so adding a chunk costs the
+ * same however large the file is (the chunks already mapped are kept, not remapped). The operating system writes the
+ * pages to the file in the background.
+ *
+ * The file has a header followed by one record per trial. All values are big-endian.
+ *
+ * <pre>
+ *      Header (HEADER_SIZE bytes):
+ *          "SD3M" (4 bytes), version (int), committed length (long), committed trials (int),
+ *          App, Participant, Condition, Block (each a short length followed by UTF-8 bytes)
+ *      Trial header (TRIAL_HEADER_SIZE bytes):
+ *          "TRL1" (4 bytes), NumberOfSamples (int), Sequence, A, W, Trial, FromX, FromY, ToX, ToY (ints)
+ *      Samples (SAMPLE_SIZE bytes each):
+ *          t, x, y (ints)
+ * </pre>
+ *
+ * NumberOfSamples is -1 until the trial is committed. The commit (commitTrial) sets it, then advances the committed
+ * length in the header. A reader (see MappedTraceReader) only reads up to the committed length, so if the app is
+ * killed part way through a trial, the file holds every committed trial and nothing else. (A power failure before the
+ * pages are written may lose recent trials; close forces the pages to the file.)
+ */
+@SuppressWarnings("unused")
+public class MappedTraceStore implements Closeable
+{
+	public final static byte[] MAGIC = {'S', 'D', '3', 'M'};
+	public final static byte[] TRIAL_MAGIC = {'T', 'R', 'L', '1'};
+	public final static int VERSION = 1;
+
+	public final static int HEADER_SIZE = 256;
+	public final static int TRIAL_HEADER_SIZE = 40;
+	public final static int SAMPLE_SIZE = 12;
+	public final static int CHUNK_SIZE = 1024 * 1024;
+
+	// offsets of the fields updated by commitTrial
+	final static int COMMITTED_LENGTH_OFFSET = 8;
+	final static int COMMITTED_TRIALS_OFFSET = 16;
+	final static int STRINGS_OFFSET = 20;
+	final static int SAMPLE_COUNT_OFFSET = 4;
+
+	final static Charset UTF_8 = Charset.forName("UTF-8");
+
+	// TRIAL_MAGIC, as an int
+	private final static int TRIAL_MAGIC_INT = 'T' << 24 | 'R' << 16 | 'L' << 8 | '1';
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+
+	// the mapped chunks (chunk i maps the file from i * CHUNK_SIZE); every int is 4-aligned, so none spans two chunks
+	private final ArrayList<MappedByteBuffer> chunks = new ArrayList<MappedByteBuffer>();
+	private MappedByteBuffer header; // the first chunk
+	private MappedByteBuffer buffer; // the last chunk
+	private int bufferStart; // the file offset of the last chunk
+
+	private int position; // end of the data written so far
+	private int trialStart = -1; // offset of the current trial's header (-1 = no trial in progress)
+	private int samples; // samples in the current trial
+	private int committedTrials;
+
+	/**
+	 * Create the file (replacing any existing file), map the first chunk, and write the header.
+	 */
+	public MappedTraceStore(File f, String app, String participant, String condition, String block) throws
+			IOException
+	{
+		file = new RandomAccessFile(f, "rw");
+		file.setLength(0);
+		channel = file.getChannel();
+		addChunk();
+		header = buffer;
+
+		header.put(MAGIC);
+		header.putInt(VERSION);
+		header.putLong(HEADER_SIZE);
+		header.putInt(0);
+		for (String s : new String[] {app, participant, condition, block})
+		{
+			byte[] b = s.getBytes(UTF_8);
+			if (header.position() + 2 + b.length > HEADER_SIZE)
+				throw new IllegalArgumentException("Codes too long for the sd3m header");
+			header.putShort((short)b.length);
+			header.put(b);
+		}
+		position = HEADER_SIZE;
+	}
+
+	/**
+	 * Begin a trial. Its samples are added with addSample, and it is completed with commitTrial.
+	 */
+	public void beginTrial(int sequence, int a, int w, int trial, int fromX, int fromY, int toX, int toY) throws
+			IOException
+	{
+		if (trialStart >= 0)
+			throw new IllegalStateException("Trial not committed");
+		ensureCapacity(TRIAL_HEADER_SIZE);
+		trialStart = position;
+		putInt(position, TRIAL_MAGIC_INT);
+		putInt(position + SAMPLE_COUNT_OFFSET, -1);
+		putInt(position + 8, sequence);
+		putInt(position + 12, a);
+		putInt(position + 16, w);
+		putInt(position + 20, trial);
+		putInt(position + 24, fromX);
+		putInt(position + 28, fromY);
+		putInt(position + 32, toX);
+		putInt(position + 36, toY);
+		position += TRIAL_HEADER_SIZE;
+		samples = 0;
+	}
+
+	/**
+	 * Add a sample to the current trial (t = ms from the start of the trial).
+	 */
+	public void addSample(int t, int x, int y) throws IOException
+	{
+		if (position + SAMPLE_SIZE > bufferStart + CHUNK_SIZE)
+			ensureCapacity(SAMPLE_SIZE);
+		putInt(position, t);
+		putInt(position + 4, x);
+		putInt(position + 8, y);
+		position += SAMPLE_SIZE;
+		++samples;
+	}
+
+	/**
+	 * Add the samples in a trace buffer to the current trial.
+	 */
+	public void addSamples(TraceBuffer trace) throws IOException
+	{
+		int n = trace.size();
+		ensureCapacity(n * SAMPLE_SIZE);
+		for (int i = 0; i < n; ++i)
+			addSample((int)trace.getT(i), trace.getX(i), trace.getY(i));
+	}
+
+	/**
+	 * Commit the current trial: set its sample count, then advance the committed length in the header.
+	 */
+	public void commitTrial()
+	{
+		if (trialStart < 0)
+			throw new IllegalStateException("No trial in progress");
+		putInt(trialStart + SAMPLE_COUNT_OFFSET, samples);
+		header.putLong(COMMITTED_LENGTH_OFFSET, position);
+		header.putInt(COMMITTED_TRIALS_OFFSET, ++committedTrials);
+		trialStart = -1;
+	}
+
+	/**
+	 * Returns the number of trials committed.
+	 */
+	public int getNumberOfTrials()
+	{
+		return committedTrials;
+	}
+
+	/**
+	 * Force the data to the file, drop any uncommitted trial, and trim the unused part of the last chunk.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		long committedLength = header.getLong(COMMITTED_LENGTH_OFFSET);
+		for (MappedByteBuffer chunk : chunks)
+			chunk.force();
+		chunks.clear();
+		header = buffer = null;
+		channel.truncate(committedLength);
+		file.close();
+	}
+
+	// make room for size more bytes, adding chunks if necessary
+	private void ensureCapacity(int size) throws IOException
+	{
+		while ((long)position + size > (long)chunks.size() * CHUNK_SIZE)
+			addChunk();
+	}
+
+	// grow the file by a chunk, and map the chunk
+	private void addChunk() throws IOException
+	{
+		long start = (long)chunks.size() * CHUNK_SIZE;
+		if (start + CHUNK_SIZE > Integer.MAX_VALUE)
+			throw new IOException("sd3m file too large");
+		file.setLength(start + CHUNK_SIZE);
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, start, CHUNK_SIZE);
+		bufferStart = (int)start;
+		chunks.add(buffer);
+	}
+
+	// store an int at a file offset (usually in the last chunk)
+	private void putInt(int offset, int v)
+	{
+		if (offset >= bufferStart)
+			buffer.putInt(offset - bufferStart, v);
+		else
+			chunks.get(offset / CHUNK_SIZE).putInt(offset % CHUNK_SIZE, v);
+	}
+}
@@ -0,0 +1,200 @@
+package ca.yorku.cse.mack.fittscore;
+
+/**
+ * PathAnalyzer -- path accuracy measures for a trial, updated as each sample of the trace is added.
+ *
+ * The measures are those of MacKenzie, Kauppinen, and Silfverberg (2001), "Accuracy measures for evaluating computer
+ * pointing devices", Proc. CHI 2001. They are computed relative to the task axis, the line from the centre of the
+ * "from" target to the centre of the "to" target. Each sample is rotated into task-axis coordinates: u (distance along
+ * the axis) and v (distance from the axis, positive on one side and negative on the other). Then,
+ *
+ * <pre>
+ *      TRE - target re-entry: number of times the path enters the target after the first entry
+ *      TAC - task axis crossing: number of times the path crosses the task axis
+ *      MDC - movement direction change: number of times the path changes direction relative to the task axis
+ *            (i.e., the sign of the change in v)
+ *      ODC - orthogonal direction change: number of times the path changes direction along the task axis (i.e., the
+ *            sign of the change in u)
+ *      MV  - movement variability: standard deviation of v
+ *      ME  - movement error: mean of |v|
+ *      MO  - movement offset: mean of v
+ * </pre>
+ *
+ * The total path length is also computed. Each measure is a count or a running sum, so adding a sample takes
+ * constant time and no pass over the trace is needed at the end of the trial. Samples with no change (or on the task
+ * axis) do not count as changes in direction (or crossings).
+ */
+@SuppressWarnings("unused")
+public class PathAnalyzer
+{
+	TargetShape target;
+	float xFrom, yFrom;
+	float ux, uy; // unit vector along the task axis
+
+	int n;
+	float lastX, lastY, lastU, lastV;
+	boolean inTarget;
+	int entries;
+	int lastSignV, lastSignDeltaU, lastSignDeltaV;
+	int taskAxisCrossings, movementDirectionChanges, orthogonalDirectionChanges;
+	double meanV, m2V, sumAbsV;
+	double pathLength;
+
+	public PathAnalyzer()
+	{
+	}
+
+	/**
+	 * Prepare for a new trial. The task axis is from (xFromArg, yFromArg), the centre of the "from" target, to the
+	 * centre of the target.
+	 */
+	public void reset(float xFromArg, float yFromArg, TargetShape targetArg)
+	{
+		target = targetArg;
+		xFrom = xFromArg;
+		yFrom = yFromArg;
+		float dx = target.xCenter - xFrom;
+		float dy = target.yCenter - yFrom;
+		float length = (float)Math.sqrt(dx * dx + dy * dy);
+		ux = length > 0f ? dx / length : 1f;
+		uy = length > 0f ? dy / length : 0f;
+
+		n = 0;
+		inTarget = false;
+		entries = 0;
+		lastSignV = lastSignDeltaU = lastSignDeltaV = 0;
+		taskAxisCrossings = movementDirectionChanges = orthogonalDirectionChanges = 0;
+		meanV = m2V = sumAbsV = 0.0;
+		pathLength = 0.0;
+	}
+
+	/**
+	 * Add the next sample of the trace.
+	 */
+	public void add(float x, float y)
+	{
+		float u = (x - xFrom) * ux + (y - yFrom) * uy;
+		float v = (y - yFrom) * ux - (x - xFrom) * uy;
+
+		boolean in = target.inTarget(x, y);
+		if (in && !inTarget)
+			++entries;
+		inTarget = in;
+
+		int signV = sign(v);
+		if (signV != 0)
+		{
+			if (lastSignV != 0 && signV != lastSignV)
+				++taskAxisCrossings;
+			lastSignV = signV;
+		}
+
+		if (n > 0)
+		{
+			int signDeltaU = sign(u - lastU);
+			if (signDeltaU != 0)
+			{
+				if (lastSignDeltaU != 0 && signDeltaU != lastSignDeltaU)
+					++orthogonalDirectionChanges;
+				lastSignDeltaU = signDeltaU;
+			}
+			int signDeltaV = sign(v - lastV);
+			if (signDeltaV != 0)
+			{
+				if (lastSignDeltaV != 0 && signDeltaV != lastSignDeltaV)
+					++movementDirectionChanges;
+				lastSignDeltaV = signDeltaV;
+			}
+			pathLength += Math.hypot(x - lastX, y - lastY);
+		}
+
+		++n;
+		double d = v - meanV;
+		meanV += d / n;
+		m2V += d * (v - meanV);
+		sumAbsV += Math.abs(v);
+
+		lastX = x;
+		lastY = y;
+		lastU = u;
+		lastV = v;
+	}
+
+	private static int sign(float f)
+	{
+		return f > 0f ? 1 : f < 0f ? -1 : 0;
+	}
+
+	/**
+	 * Returns the number of samples added.
+	 */
+	public int getNumberOfSamples()
+	{
+		return n;
+	}
+
+	/**
+	 * Returns the number of target re-entries (TRE).
+	 */
+	public int getTargetReEntries()
+	{
+		return Math.max(0, entries - 1);
+	}
+
+	/**
+	 * Returns the number of task axis crossings (TAC).
+	 */
+	public int getTaskAxisCrossings()
+	{
+		return taskAxisCrossings;
+	}
+
+	/**
+	 * Returns the number of movement direction changes (MDC).
+	 */
+	public int getMovementDirectionChanges()
+	{
+		return movementDirectionChanges;
+	}
+
+	/**
+	 * Returns the number of orthogonal direction changes (ODC).
+	 */
+	public int getOrthogonalDirectionChanges()
+	{
+		return orthogonalDirectionChanges;
+	}
+
+	/**
+	 * Returns the movement variability (MV), the standard deviation of the distances from the task axis. NaN if fewer
+	 * than two samples were added.
+	 */
+	public float getMovementVariability()
+	{
+		return (float)Math.sqrt(m2V / (n - 1.0));
+	}
+
+	/**
+	 * Returns the movement error (ME), the mean absolute distance from the task axis.
+	 */
+	public float getMovementError()
+	{
+		return (float)(sumAbsV / n);
+	}
+
+	/**
+	 * Returns the movement offset (MO), the mean (signed) distance from the task axis.
+	 */
+	public float getMovementOffset()
+	{
+		return (float)meanV;
+	}
+
+	/**
+	 * Returns the length of the path (the sum of the distances between successive samples).
+	 */
+	public float getPathLength()
+	{
+		return (float)pathLength;
+	}
+}
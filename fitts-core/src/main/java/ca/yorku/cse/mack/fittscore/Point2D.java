@@ -0,0 +1,20 @@
+package ca.yorku.cse.mack.fittscore;
+
+/**
+ * Point2D -- a point with float coordinates. This is a plain value type standing in for android.graphics.PointF, so
+ * the classes in this package may be used without the Android framework.
+ */
+public class Point2D
+{
+	public float x, y;
+
+	public Point2D()
+	{
+	}
+
+	public Point2D(float xArg, float yArg)
+	{
+		x = xArg;
+		y = yArg;
+	}
+}
@@ -0,0 +1,245 @@
+package ca.yorku.cse.mack.fittscore;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * RecordEncoder -- format the fields of the lines in the data files (sd1, sd2, sd3) into a reusable char buffer.
+ *
+ * This replaces String.format for the lines written on every trial. There is no format string to parse, nothing is
+ * boxed, and no object is created (once the buffer has grown to the longest line), so writing a trial's line does
+ * not create garbage. The buffer is reset (not replaced) for the next line.
+ *
+ * Floats are rendered exactly as Float.toString (and thus String.format's "%s") renders them on Android and on Java 8
+ * to 18: the fewest digits that identify the float (ties to even), in plain notation for values from 10^-3 up to 10^7.
+ * This was checked for every float in that range. Other values (in computerized scientific notation, e.g., 1.0E-4,
+ * and NaN and infinities) are passed to Float.toString, and so create a string, but these are rare in the data files.
+ */
+@SuppressWarnings("unused")
+public class RecordEncoder
+{
+	final static int DEFAULT_CAPACITY = 512;
+
+	// powers of ten (exact as doubles)
+	private final static double[] POWER_OF_TEN = new double[23];
+
+	static
+	{
+		double p = 1.0;
+		for (int i = 0; i < POWER_OF_TEN.length; ++i)
+		{
+			POWER_OF_TEN[i] = p;
+			p *= 10.0;
+		}
+	}
+
+	private char[] buffer;
+	private int length;
+	private final char[] digits = new char[20]; // work buffer for appendLong
+
+	public RecordEncoder()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+
+	public RecordEncoder(int capacity)
+	{
+		buffer = new char[capacity];
+	}
+
+	/**
+	 * Empty the buffer (the capacity is kept).
+	 */
+	public RecordEncoder reset()
+	{
+		length = 0;
+		return this;
+	}
+
+	public int length()
+	{
+		return length;
+	}
+
+	/**
+	 * Returns the buffer (indices 0 to length() - 1). The array is not copied.
+	 */
+	public char[] getBuffer()
+	{
+		return buffer;
+	}
+
+	public RecordEncoder append(char c)
+	{
+		ensureCapacity(1);
+		buffer[length++] = c;
+		return this;
+	}
+
+	public RecordEncoder append(String s)
+	{
+		int n = s.length();
+		ensureCapacity(n);
+		s.getChars(0, n, buffer, length);
+		length += n;
+		return this;
+	}
+
+	/**
+	 * Append the contents of another encoder.
+	 */
+	public RecordEncoder append(RecordEncoder e)
+	{
+		ensureCapacity(e.length);
+		System.arraycopy(e.buffer, 0, buffer, length, e.length);
+		length += e.length;
+		return this;
+	}
+
+	/**
+	 * Append an int, as Integer.toString (and "%d") renders it.
+	 */
+	public RecordEncoder appendInt(int v)
+	{
+		return appendLong(v);
+	}
+
+	/**
+	 * Append a long, as Long.toString (and "%d") renders it.
+	 */
+	public RecordEncoder appendLong(long v)
+	{
+		if (v == Long.MIN_VALUE)
+			return append(Long.toString(v));
+		if (v < 0)
+		{
+			append('-');
+			v = -v;
+		}
+		int i = digits.length;
+		do
+		{
+			digits[--i] = (char)('0' + v % 10);
+			v /= 10;
+		} while (v != 0);
+		int n = digits.length - i;
+		ensureCapacity(n);
+		System.arraycopy(digits, i, buffer, length, n);
+		length += n;
+		return this;
+	}
+
+	/**
+	 * Append a float, as Float.toString (and "%s") renders it (see above).
+	 */
+	public RecordEncoder appendFloat(float f)
+	{
+		if (f == 0f)
+			return append(Float.floatToRawIntBits(f) == 0 ? "0.0" : "-0.0");
+		double d = Math.abs((double)f);
+		if (!(d >= 1e-3 && d < 1e7)) // also NaN
+			return append(Float.toString(f));
+		if (f < 0f)
+			append('-');
+
+		// the decimal exponent: 10^e <= d < 10^(e + 1)
+		int e = (int)Math.floor(Math.log10(d));
+		if (belowPowerOfTen(d, e))
+			--e;
+		else if (!belowPowerOfTen(d, e + 1))
+			++e;
+
+		/*
+		 * Find the fewest significant digits, p, that identify the float: a p-digit decimal (c x 10^-s) that rounds to
+		 * the float. Of the two candidates (the float rounded down or up to p digits), take the one nearer the float
+		 * (the even one, if they are equally near).
+		 */
+		float abs = Math.abs(f);
+		for (int p = 1; p <= 9; ++p)
+		{
+			int s = p - 1 - e;
+			double scaled = s >= 0 ? d * POWER_OF_TEN[s] : d / POWER_OF_TEN[-s];
+			long low = (long)Math.floor(scaled);
+			long best = -1;
+			double bestDistance = 0.0;
+			for (long c = low; c <= low + 1; ++c)
+			{
+				double value = s >= 0 ? c / POWER_OF_TEN[s] : c * POWER_OF_TEN[-s];
+				if ((float)value != abs)
+					continue;
+				double distance = Math.abs(c - scaled);
+				if (best < 0 || distance < bestDistance || (distance == bestDistance && (c & 1) == 0))
+				{
+					best = c;
+					bestDistance = distance;
+				}
+			}
+			if (best >= 0)
+				return appendDecimal(best, s);
+		}
+		throw new IllegalStateException("No decimal for " + f); // cannot happen (9 digits identify any float)
+	}
+
+	/**
+	 * Write the buffer to out.
+	 */
+	public void writeTo(Writer out) throws IOException
+	{
+		out.write(buffer, 0, length);
+	}
+
+	@Override
+	public String toString()
+	{
+		return new String(buffer, 0, length);
+	}
+
+	// append c x 10^-s in plain notation, with at least one digit after the point and no trailing zeros after that
+	private RecordEncoder appendDecimal(long c, int s)
+	{
+		int start = length;
+		appendLong(c);
+		int n = length - start; // digits in c
+		if (s <= 0)
+		{
+			for (int i = 0; i < -s; ++i)
+				append('0');
+			append('.');
+			append('0');
+			return this;
+		}
+		if (n <= s) // 0.000ddd
+		{
+			int zeros = s - n;
+			ensureCapacity(2 + zeros);
+			System.arraycopy(buffer, start, buffer, start + 2 + zeros, n);
+			buffer[start] = '0';
+			buffer[start + 1] = '.';
+			Arrays.fill(buffer, start + 2, start + 2 + zeros, '0');
+			length += 2 + zeros;
+		} else // ddd.ddd
+		{
+			ensureCapacity(1);
+			int point = start + n - s;
+			System.arraycopy(buffer, point, buffer, point + 1, s);
+			buffer[point] = '.';
+			++length;
+		}
+		while (buffer[length - 1] == '0' && buffer[length - 2] != '.')
+			--length;
+		return this;
+	}
+
+	// d < 10^e (for e < 0, d x 10^-e is compared with 1, since 10^e is not exact as a double)
+	private static boolean belowPowerOfTen(double d, int e)
+	{
+		return e >= 0 ? d < POWER_OF_TEN[e] : d * POWER_OF_TEN[-e] < 1.0;
+	}
+
+	private void ensureCapacity(int n)
+	{
+		if (length + n > buffer.length)
+			buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, length + n));
+	}
+}
@@ -0,0 +1,427 @@
+package ca.yorku.cse.mack.fittscore;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * StudyCatalog -- a catalog of the blocks in a data directory, so a study can be listed, and a block's data found,
+ * without scanning the directory and parsing every file.
+ *
+ * The catalog is a text file (comma-delimited, with a header line), one line per block:
+ *
+ * <pre>
+ *      Base, Participant, Session, Block, Group, Condition, Mode - the block's base filename and codes
+ *      Sd1Format, TraceFormat                                   - the extensions of the sd1 file (sd1 or sd1z) and
+ *                                                                 the trace file (sd3, sd3b, sd3m, or sd3z)
+ *      Sequences, Trials                                        - the completed sequences, and their trials
+ *      MT(ms), ErrorRate(%), TP(bps)                            - the mean of the trials' MTs, the percentage of the
+ *                                                                 trials that were misses, and the mean of the
+ *                                                                 sequences' throughputs
+ *      Sd1File, Sd1Offset, Sd1Length, Sd1Rows                   - where the block's sd1 data are, and their rows
+ *      Sd2File, Sd2Offset, Sd2Length, Sd2Rows                   - the same, for the sd2 data (rows = sequences)
+ *      TraceFile, TraceOffset, TraceLength, TraceRows           - the same, for the trace data (rows = trials,
+ *                                                                 including those of repeated sequences)
+ * </pre>
+ *
+ * The files are named relative to the data directory. A block's data are either in its own files (offset 0, the
+ * length of the file) or in a segment file that holds the data of many blocks (see the Compact tool), so a reader
+ * opens a part of a block (open) the same way in both cases.
+ *
+ * The catalog is replaced atomically (write): the new catalog is written and synced to a temporary file, which is then
+ * renamed over the old one. A reader sees the old catalog or the new one, never part of one.
+ */
+@SuppressWarnings("unused")
+public class StudyCatalog
+{
+	public final static String HEADER = "Base,Participant,Session,Block,Group,Condition,Mode,Sd1Format,TraceFormat," +
+			"Sequences,Trials,MT(ms),ErrorRate(%),TP(bps),Sd1File,Sd1Offset,Sd1Length,Sd1Rows,Sd2File,Sd2Offset," +
+			"Sd2Length,Sd2Rows,TraceFile,TraceOffset,TraceLength,TraceRows";
+
+	// the parts of a block
+	public final static int SD1 = 0, SD2 = 1, TRACE = 2;
+	public final static int PARTS = 3;
+
+	final static int FIELDS = 26;
+	final static Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * A block in the catalog.
+	 */
+	public static class Entry
+	{
+		String base;
+		String[] codes; // participant, session, block, group, condition, mode
+		String sd1Format, traceFormat;
+		int sequences, trials;
+		float mt, errorRate, tp;
+		String[] file = new String[PARTS];
+		long[] offset = new long[PARTS];
+		long[] length = new long[PARTS];
+		int[] rows = new int[PARTS];
+
+		Entry()
+		{
+		}
+
+		/**
+		 * Create an entry for a block's data files (offset 0, the length of each file). codes are participant,
+		 * session, block, group, condition, and mode; files are the sd1, sd2, and trace files (the formats are the
+		 * files' extensions).
+		 */
+		public Entry(String baseArg, String[] codesArg, int sequencesArg, int trialsArg, float mtArg,
+				float errorRateArg, float tpArg, File[] files, int[] rowsArg)
+		{
+			base = baseArg;
+			codes = codesArg.clone();
+			sd1Format = extension(files[SD1]);
+			traceFormat = extension(files[TRACE]);
+			sequences = sequencesArg;
+			trials = trialsArg;
+			mt = mtArg;
+			errorRate = errorRateArg;
+			tp = tpArg;
+			for (int i = 0; i < PARTS; ++i)
+			{
+				file[i] = files[i].getName();
+				length[i] = files[i].length();
+				rows[i] = rowsArg[i];
+			}
+		}
+
+		public String getBase()
+		{
+			return base;
+		}
+
+		public String getParticipant()
+		{
+			return codes[0];
+		}
+
+		public String getSession()
+		{
+			return codes[1];
+		}
+
+		public String getBlock()
+		{
+			return codes[2];
+		}
+
+		public String getGroup()
+		{
+			return codes[3];
+		}
+
+		public String getCondition()
+		{
+			return codes[4];
+		}
+
+		public String getMode()
+		{
+			return codes[5];
+		}
+
+		public String getSd1Format()
+		{
+			return sd1Format;
+		}
+
+		public String getTraceFormat()
+		{
+			return traceFormat;
+		}
+
+		public int getSequences()
+		{
+			return sequences;
+		}
+
+		public int getTrials()
+		{
+			return trials;
+		}
+
+		public float getMT()
+		{
+			return mt;
+		}
+
+		public float getErrorRate()
+		{
+			return errorRate;
+		}
+
+		public float getThroughput()
+		{
+			return tp;
+		}
+
+		/**
+		 * Returns the file (relative to the data directory) holding a part (SD1, SD2, or TRACE) of the block.
+		 */
+		public String getFile(int part)
+		{
+			return file[part];
+		}
+
+		public long getOffset(int part)
+		{
+			return offset[part];
+		}
+
+		public long getLength(int part)
+		{
+			return length[part];
+		}
+
+		public int getRows(int part)
+		{
+			return rows[part];
+		}
+
+		/**
+		 * Set where a part of the block is (e.g., once it is copied into a segment file).
+		 */
+		public void setLocation(int part, String fileArg, long offsetArg, long lengthArg)
+		{
+			file[part] = fileArg;
+			offset[part] = offsetArg;
+			length[part] = lengthArg;
+		}
+
+		// the catalog line (without the newline)
+		String toLine()
+		{
+			StringBuilder sb = new StringBuilder(base);
+			for (String code : codes)
+				sb.append(',').append(code);
+			sb.append(',').append(sd1Format).append(',').append(traceFormat);
+			sb.append(',').append(sequences).append(',').append(trials);
+			sb.append(',').append(mt).append(',').append(errorRate).append(',').append(tp);
+			for (int i = 0; i < PARTS; ++i)
+				sb.append(',').append(file[i]).append(',').append(offset[i]).append(',').append(length[i]).append(',')
+						.append(rows[i]);
+			return sb.toString();
+		}
+
+		private static String extension(File f)
+		{
+			return f.getName().substring(f.getName().lastIndexOf('.') + 1);
+		}
+
+		static Entry parse(String line) throws IOException
+		{
+			String[] field = line.split(",", -1);
+			if (field.length != FIELDS)
+				throw new IOException("Bad catalog line: " + line);
+			Entry e = new Entry();
+			try
+			{
+				e.base = field[0];
+				e.codes = new String[6];
+				System.arraycopy(field, 1, e.codes, 0, 6);
+				e.sd1Format = field[7];
+				e.traceFormat = field[8];
+				e.sequences = Integer.parseInt(field[9]);
+				e.trials = Integer.parseInt(field[10]);
+				e.mt = Float.parseFloat(field[11]);
+				e.errorRate = Float.parseFloat(field[12]);
+				e.tp = Float.parseFloat(field[13]);
+				for (int i = 0; i < PARTS; ++i)
+				{
+					e.file[i] = field[14 + 4 * i];
+					e.offset[i] = Long.parseLong(field[15 + 4 * i]);
+					e.length[i] = Long.parseLong(field[16 + 4 * i]);
+					e.rows[i] = Integer.parseInt(field[17 + 4 * i]);
+				}
+			} catch (NumberFormatException ex)
+			{
+				throw new IOException("Bad catalog line: " + line);
+			}
+			return e;
+		}
+	}
+
+	private final ArrayList<Entry> entries = new ArrayList<Entry>();
+
+	/**
+	 * Read a catalog. Returns an empty catalog if the file does not exist.
+	 */
+	public static StudyCatalog read(File file) throws IOException
+	{
+		StudyCatalog catalog = new StudyCatalog();
+		InputStream in;
+		try
+		{
+			in = new FileInputStream(file);
+		} catch (FileNotFoundException e)
+		{
+			return catalog;
+		}
+		BufferedReader br = new BufferedReader(new InputStreamReader(in, UTF_8));
+		try
+		{
+			String line = br.readLine();
+			if (line == null)
+				return catalog;
+			if (!line.equals(HEADER))
+				throw new IOException("Not a catalog: " + file);
+			while ((line = br.readLine()) != null)
+				if (line.length() > 0)
+					catalog.entries.add(Entry.parse(line));
+		} finally
+		{
+			br.close();
+		}
+		return catalog;
+	}
+
+	/**
+	 * Returns the entries, in the order they were added.
+	 */
+	public List<Entry> getEntries()
+	{
+		return entries;
+	}
+
+	/**
+	 * Returns the entry for the block with the specified base filename (or null).
+	 */
+	public Entry get(String base)
+	{
+		for (Entry e : entries)
+			if (e.base.equals(base))
+				return e;
+		return null;
+	}
+
+	/**
+	 * Add an entry, replacing the entry for a block with the same base filename (if there is one).
+	 */
+	public void put(Entry entry)
+	{
+		for (int i = 0; i < entries.size(); ++i)
+			if (entries.get(i).base.equals(entry.base))
+			{
+				entries.set(i, entry);
+				return;
+			}
+		entries.add(entry);
+	}
+
+	/**
+	 * Write the catalog, replacing the file atomically (see above).
+	 */
+	public void write(File file) throws IOException
+	{
+		File temporary = new File(file.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(temporary);
+		try
+		{
+			Writer w = new OutputStreamWriter(out, UTF_8);
+			w.write(HEADER);
+			w.write('\n');
+			for (Entry e : entries)
+			{
+				w.write(e.toLine());
+				w.write('\n');
+			}
+			w.flush();
+			out.getFD().sync();
+		} finally
+		{
+			out.close();
+		}
+		if (!temporary.renameTo(file))
+		{
+			// some file systems (e.g., Windows) do not rename over an existing file; this fallback is not atomic
+			if (!file.delete() || !temporary.renameTo(file))
+				throw new IOException("Catalog not replaced: " + file);
+		}
+	}
+
+	/**
+	 * Open a part (SD1, SD2, or TRACE) of a block: a stream of the part's bytes, from its file in directory.
+	 */
+	public static InputStream open(File directory, Entry e, int part) throws IOException
+	{
+		FileInputStream in = new FileInputStream(new File(directory, e.file[part]));
+		try
+		{
+			in.getChannel().position(e.offset[part]);
+		} catch (IOException ex)
+		{
+			in.close();
+			throw ex;
+		}
+		return new PartInputStream(in, e.length[part]);
+	}
+
+	// a stream of the next length bytes of in
+	private static class PartInputStream extends FilterInputStream
+	{
+		private long remaining;
+
+		PartInputStream(InputStream in, long length)
+		{
+			super(in);
+			remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			if (remaining <= 0)
+				return -1;
+			int b = in.read();
+			if (b >= 0)
+				--remaining;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int offset, int length) throws IOException
+		{
+			if (remaining <= 0)
+				return -1;
+			int n = in.read(b, offset, (int)Math.min(length, remaining));
+			if (n > 0)
+				remaining -= n;
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException
+		{
+			long skipped = in.skip(Math.min(n, remaining));
+			remaining -= skipped;
+			return skipped;
+		}
+
+		@Override
+		public int available() throws IOException
+		{
+			return (int)Math.min(in.available(), remaining);
+		}
+
+		@Override
+		public boolean markSupported()
+		{
+			return false;
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package ca.yorku.cse.mack.fittscore;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * TargetLayout -- the geometry of a layout circle: the target positions and the expected movement amplitudes.
+ *
+ * The targets are placed at equal angles around a circle whose diameter is the amplitude, beginning at angle 0 (to the
+ * right of the centre). The positions are held as offsets from the centre of the circle, so the same layout serves any
+ * screen centre. Neither the positions nor the expected amplitudes depend on the target width.
+ *
+ * The expected movement amplitude for 2D trials is less than the diameter of the layout circle except when moving
+ * directly across the circle (see Throughput.verifyAmplitudeData). It is computed once per layout.
+ *
+ * Layouts are cached by amplitude and number of targets (see get), so the trig is done once for each layout, not for
+ * each sequence or trial.
+ */
+@SuppressWarnings("unused")
+public class TargetLayout
+{
+	final static float TWO_TIMES_PI = 6.283185307f;
+
+	// largest number of layouts to cache (the cache is cleared if this is exceeded)
+	final static int MAXIMUM_CACHED_LAYOUTS = 256;
+
+	private final static Map<Long, TargetLayout> cache = new HashMap<Long, TargetLayout>();
+
+	final float amplitude;
+	final int numberOfTargets;
+
+	// target centres, relative to the centre of the layout circle
+	final float[] xOffset, yOffset;
+
+	// expected movement amplitudes for a 2D sequence (even-indexed and odd-indexed trials)
+	final float evenAmplitude2D, oddAmplitude2D;
+
+	TargetLayout(float amplitudeArg, int numberOfTargetsArg)
+	{
+		amplitude = amplitudeArg;
+		numberOfTargets = numberOfTargetsArg;
+
+		xOffset = new float[numberOfTargets];
+		yOffset = new float[numberOfTargets];
+		for (int i = 0; i < numberOfTargets; ++i)
+		{
+			xOffset[i] = (amplitude / 2f) * (float)Math.cos(TWO_TIMES_PI * ((float)i / numberOfTargets));
+			yOffset[i] = (amplitude / 2f) * (float)Math.sin(TWO_TIMES_PI * ((float)i / numberOfTargets));
+		}
+
+		// even number of targets (the amplitude is different for even- and odd-indexed trials)
+		if (numberOfTargets % 2 == 0)
+		{
+			evenAmplitude2D = amplitude;
+			float b = amplitude * (float)Math.sin(Math.PI / numberOfTargets);
+			float theta = 0.5f * (float)Math.PI * (numberOfTargets - 2) / numberOfTargets;
+			float c = b * (float)Math.sin(theta);
+			float x = b * (float)Math.cos(theta);
+			oddAmplitude2D = (float)Math.sqrt((amplitude - x) * (amplitude - x) + c * c);
+		}
+		// odd number of targets (the amplitude is the same for every trial)
+		else
+		{
+			float b = amplitude * (float)Math.sin(Math.PI / numberOfTargets);
+			float m = 2.0f * numberOfTargets;
+			float theta = 0.5f * (((float)Math.PI * (m - 2.0f)) / m);
+			float x = (b / 2.0f) / (float)Math.tan(theta);
+			float h = amplitude - x;
+			evenAmplitude2D = oddAmplitude2D = (float)Math.sqrt(h * h + (b / 2.0f) * (b / 2.0f));
+		}
+	}
+
+	/**
+	 * Returns the layout for the specified amplitude (diameter of the layout circle) and number of targets. The
+	 * layout is computed on first use and cached.
+	 */
+	public static TargetLayout get(float amplitude, int numberOfTargets)
+	{
+		Long key = ((long)Float.floatToIntBits(amplitude) << 32) | (numberOfTargets & 0xffffffffL);
+		synchronized (cache)
+		{
+			TargetLayout layout = cache.get(key);
+			if (layout == null)
+			{
+				if (cache.size() >= MAXIMUM_CACHED_LAYOUTS)
+					cache.clear();
+				layout = new TargetLayout(amplitude, numberOfTargets);
+				cache.put(key, layout);
+			}
+			return layout;
+		}
+	}
+
+	public float getAmplitude()
+	{
+		return amplitude;
+	}
+
+	public int getNumberOfTargets()
+	{
+		return numberOfTargets;
+	}
+
+	/**
+	 * Returns the x coordinate of the centre of target i, for a layout circle centred at xCenter.
+	 */
+	public float getTargetX(int i, float xCenter)
+	{
+		return xCenter + xOffset[i];
+	}
+
+	/**
+	 * Returns the y coordinate of the centre of target i, for a layout circle centred at yCenter.
+	 */
+	public float getTargetY(int i, float yCenter)
+	{
+		return yCenter + yOffset[i];
+	}
+
+	/**
+	 * Returns the expected movement amplitude for the specified trial, i.e., the distance between the centres of the
+	 * "from" and "to" targets. For 1D tasks this is the amplitude. For 2D tasks it depends on the number of targets
+	 * and (for an even number of targets) whether the trial index is even or odd. -1 is returned for an unknown task
+	 * type.
+	 */
+	public float getExpectedAmplitude(int trialIndex, int taskType)
+	{
+		if (taskType == Throughput.ONE_DIMENSIONAL)
+			return amplitude;
+		else if (taskType == Throughput.TWO_DIMENSIONAL)
+			return trialIndex % 2 == 0 ? evenAmplitude2D : oddAmplitude2D;
+		else
+			return -1.0f;
+	}
+}
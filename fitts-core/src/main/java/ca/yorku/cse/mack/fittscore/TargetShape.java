@@ -0,0 +1,57 @@
+package ca.yorku.cse.mack.fittscore;
+
+/**
+ * TargetShape -- the geometry of a target: a rectangle or a circle, defined by its center, width, and height.
+ */
+@SuppressWarnings("unused")
+public class TargetShape
+{
+	public final static int RECTANGLE = 0;
+	public final static int CIRCLE = 1;
+
+	public float xCenter, yCenter, width, height;
+	public int type;
+
+	public TargetShape(int typeArg, float xCenterArg, float yCenterArg, float widthArg, float heightArg)
+	{
+		type = typeArg;
+		xCenter = xCenterArg;
+		yCenter = yCenterArg;
+		width = widthArg;
+		height = heightArg;
+	}
+
+	/**
+	 * Returns true if the specified coordinate is inside the target.
+	 */
+	public boolean inTarget(float xTest, float yTest)
+	{
+		if (type == CIRCLE)
+			return distanceFromTargetCenter(xTest, yTest) <= (width / 2f);
+		else
+			return inRectangle(xTest, yTest);
+	}
+
+	/**
+	 * Returns true if the specified coordinate is inside the bounding rectangle of the target. As with
+	 * android.graphics.RectF.contains, the left and top edges are inside, the right and bottom edges are not.
+	 */
+	public boolean inRectangle(float xTest, float yTest)
+	{
+		float left = xCenter - width / 2f;
+		float top = yCenter - height / 2f;
+		float right = xCenter + width / 2f;
+		float bottom = yCenter + height / 2f;
+		return left < right && top < bottom && xTest >= left && xTest < right && yTest >= top && yTest < bottom;
+	}
+
+	public float distanceFromTargetCenter(float xTest, float yTest)
+	{
+		return (float) Math.sqrt((xCenter - xTest) * (xCenter - xTest) + (yCenter - yTest) * (yCenter - yTest));
+	}
+
+	public Point2D targetCenter()
+	{
+		return new Point2D(xCenter, yCenter);
+	}
+}
@@ -1,38 +1,49 @@
-package ca.yorku.cse.mack.fittsdraganddrop;
+package ca.yorku.cse.mack.fittscore;
 
-import android.graphics.PointF;
+import java.nio.FloatBuffer;
 
 /**
  * Throughput -- class to provide a simple and accurate calculation of Fitts' throughput.
  * 
- * This is an Android version of the Throughput class included with FittsTaskTwo.
+ * This is a version of the Throughput class included with FittsTaskTwo. It has no Android dependencies (points are
+ * given as Point2D objects or as primitive coordinates), so it runs on the device and on a desktop or server JVM.
  */
 @SuppressWarnings("unused")
 public class Throughput
 {
-	final static float LOG_TWO = 0.693147181f;
-	final static float SQRT_2_PI_E = 4.132731354f;
+	public final static float LOG_TWO = 0.693147181f;
+	public final static float SQRT_2_PI_E = 4.132731354f;
 
 	// int constants for response type
-	final static int SERIAL = 100;
-	final static int DISCRETE = 101;
+	public final static int SERIAL = 100;
+	public final static int DISCRETE = 101;
+
+	// allow this much difference (pixels) when verifying amplitudes (see verifyAmplitudeData)
+	public final static float WIGGLE = 2.0f;
 
 	// int constants for tasks type
-	final static int ONE_DIMENSIONAL = 200;
-	final static int TWO_DIMENSIONAL = 201;
+	public final static int ONE_DIMENSIONAL = 200;
+	public final static int TWO_DIMENSIONAL = 201;
+
+	// number of floats per trial in the interleaved input format (see the FloatBuffer constructor)
+	public final static int TRIAL_STRIDE = 7;
 
 	/*
 	 * The following are the core set of data values needed to compute throughput and other measures provided in this
-	 * class.
+	 * class. The coordinates are held in flat arrays (one array per coordinate), beginning at index offset.
 	 */
 	String code;
 	float amplitude, width;
-	PointF[] from, to, select;
+	float[] fromX, fromY, toX, toY, selectX, selectY;
+	int offset;
 	float[] mt;
 	int numberOfTrials;
 	boolean serialTask;
 	int responseType, taskType;
 
+	// point arrays (only created if given to the constructor or requested through getFrom, getTo, or getSelect)
+	Point2D[] from, to, select;
+
 	/*
 	 * The following arrays are populated with values calculated from the data in the arrays above.
 	 */
@@ -40,16 +51,81 @@ public class Throughput
 	float[] ae;
 	int[] miss;
 
+	// number of trials for which the amplitude was not as expected (see verifyAmplitudeData)
+	int amplitudeMismatches;
+
 	// Blank constructor. Must be followed with setData
 	Throughput()
 	{
 	}
 
 	// Constructor with data
-	Throughput(String codeArg, float amplitudeArg, float widthArg, int taskTypeArg, int responseTypeArg,
-			PointF[] fromArg, PointF[] toArg, PointF[] selectArg, float[] mtArg)
+	public Throughput(String codeArg, float amplitudeArg, float widthArg, int taskTypeArg, int responseTypeArg,
+			Point2D[] fromArg, Point2D[] toArg, Point2D[] selectArg, float[] mtArg)
+	{
+		int n = mtArg.length;
+		float[] x1 = new float[n], y1 = new float[n], x2 = new float[n], y2 = new float[n];
+		float[] x = new float[n], y = new float[n];
+		for (int i = 0; i < n; ++i)
+		{
+			x1[i] = fromArg[i].x;
+			y1[i] = fromArg[i].y;
+			x2[i] = toArg[i].x;
+			y2[i] = toArg[i].y;
+			x[i] = selectArg[i].x;
+			y[i] = selectArg[i].y;
+		}
+		setData(codeArg, amplitudeArg, widthArg, taskTypeArg, responseTypeArg, x1, y1, x2, y2, x, y, mtArg, 0, n);
+		from = fromArg;
+		to = toArg;
+		select = selectArg;
+	}
+
+	/**
+	 * Constructor with data in flat arrays. The data for the sequence are the length trials beginning at index
+	 * offsetArg in each array. The arrays are not copied, so a slice of a larger buffer may be given.
+	 */
+	public Throughput(String codeArg, float amplitudeArg, float widthArg, int taskTypeArg, int responseTypeArg,
+			float[] fromXArg, float[] fromYArg, float[] toXArg, float[] toYArg, float[] selectXArg, float[] selectYArg,
+			float[] mtArg, int offsetArg, int length)
 	{
-		setData(codeArg, amplitudeArg, widthArg, taskTypeArg, responseTypeArg, fromArg, toArg, selectArg, mtArg);
+		setData(codeArg, amplitudeArg, widthArg, taskTypeArg, responseTypeArg, fromXArg, fromYArg, toXArg, toYArg,
+				selectXArg, selectYArg, mtArg, offsetArg, length);
+	}
+
+	/**
+	 * Constructor with data in a single interleaved array. Each trial occupies TRIAL_STRIDE consecutive floats: fromX,
+	 * fromY, toX, toY, selectX, selectY, mt. The data for the sequence are the length trials beginning at index
+	 * offsetArg.
+	 */
+	public Throughput(String codeArg, float amplitudeArg, float widthArg, int taskTypeArg, int responseTypeArg,
+			float[] trials, int offsetArg, int length)
+	{
+		this(codeArg, amplitudeArg, widthArg, taskTypeArg, responseTypeArg, FloatBuffer.wrap(trials, offsetArg,
+				length * TRIAL_STRIDE), length);
+	}
+
+	/**
+	 * Constructor with data in a FloatBuffer. The buffer holds length trials in the interleaved format (see above),
+	 * beginning at the buffer's position. The buffer's position is not changed.
+	 */
+	public Throughput(String codeArg, float amplitudeArg, float widthArg, int taskTypeArg, int responseTypeArg,
+			FloatBuffer trials, int length)
+	{
+		float[] x1 = new float[length], y1 = new float[length], x2 = new float[length], y2 = new float[length];
+		float[] x = new float[length], y = new float[length], mtArg = new float[length];
+		for (int i = 0, p = trials.position(); i < length; ++i, p += TRIAL_STRIDE)
+		{
+			x1[i] = trials.get(p);
+			y1[i] = trials.get(p + 1);
+			x2[i] = trials.get(p + 2);
+			y2[i] = trials.get(p + 3);
+			x[i] = trials.get(p + 4);
+			y[i] = trials.get(p + 5);
+			mtArg[i] = trials.get(p + 6);
+		}
+		setData(codeArg, amplitudeArg, widthArg, taskTypeArg, responseTypeArg, x1, y1, x2, y2, x, y, mtArg, 0,
+				length);
 	}
 
 	/**
@@ -58,7 +134,8 @@ public class Throughput
 	 * 
 	 */
 	private void setData(String codeArg, float amplitudeArg, float widthArg, int taskTypeArg, int responseTypeArg,
-			PointF[] fromArg, PointF[] toArg, PointF[] selectArg, float[] mtArg)
+			float[] fromXArg, float[] fromYArg, float[] toXArg, float[] toYArg, float[] selectXArg,
+			float[] selectYArg, float[] mtArg, int offsetArg, int length)
 	{
 		// load core requisite data
 		code = codeArg;
@@ -66,52 +143,85 @@ public class Throughput
 		width = widthArg;
 		taskType = taskTypeArg;
 		responseType = responseTypeArg;
-		from = fromArg;
-		to = toArg;
-		select = selectArg;
-		mt = mtArg;
+		fromX = fromXArg;
+		fromY = fromYArg;
+		toX = toXArg;
+		toY = toYArg;
+		selectX = selectXArg;
+		selectY = selectYArg;
+		offset = offsetArg;
+		from = to = select = null;
+
+		// mean and sd are computed over the whole mt array, so take a copy if only a slice is used
+		if (offset == 0 && mtArg.length == length)
+			mt = mtArg;
+		else
+		{
+			mt = new float[length];
+			System.arraycopy(mtArg, offset, mt, 0, length);
+		}
 
 		serialTask = (taskType == SERIAL);
 
 		// calculate data that depend on the core data loaded above (begin by initializing arrays)
-		numberOfTrials = mt.length;
-		deltaX = new float[mt.length];
-		ae = new float[mt.length];
-		miss = new int[mt.length];
+		numberOfTrials = length;
+		deltaX = new float[length];
+		ae = new float[length];
+		miss = new int[length];
 
 		// fill deltaX, ae, and miss arrays
-		for (int i = 0; i < to.length; ++i)
+		computeTrials(fromX, fromY, toX, toY, selectX, selectY, offset, length, width, taskType, serialTask, deltaX,
+				ae, miss);
+
+		// verify the amplitude for each trial (a is recovered from ae and deltaX; see computeTrials)
+		TargetLayout layout = taskType == ONE_DIMENSIONAL ? null : TargetLayout.get(amplitude, numberOfTrials);
+		amplitudeMismatches = 0;
+		for (int i = 0; i < length; ++i)
+		{
+			float a = ae[i] - deltaX[i];
+			if (serialTask && i > 0)
+				a -= deltaX[i - 1];
+			if (!verifyAmplitudeData(amplitude, layout, a, i, taskType))
+				++amplitudeMismatches;
+		}
+	}
+
+	/**
+	 * Compute deltaX, ae, and miss for a sequence of trials given in flat arrays. This is the calculation at the heart
+	 * of the Throughput class. It is defined as a static method so it may be applied to data held in any arrays (e.g.,
+	 * a slice of a larger buffer). The input arrays are read beginning at index offset. The results for the length
+	 * trials are written to deltaXOut, aeOut, and missOut, beginning at index 0.
+	 */
+	public static void computeTrials(float[] fromX, float[] fromY, float[] toX, float[] toY, float[] selectX,
+			float[] selectY, int offset, int length, float width, int taskType, boolean serialTask, float[] deltaXOut,
+			float[] aeOut, int[] missOut)
+	{
+		for (int i = 0; i < length; ++i)
 		{
 			// start-of-trial coordinate (centre of the "from" target)
-			float x1 = from[i].x;
-			float y1 = from[i].y;
+			float x1 = fromX[offset + i];
+			float y1 = fromY[offset + i];
 
 			// centre coordinate of the target to select (center of the "to" target)
-			float x2 = to[i].x;
-			float y2 = to[i].y;
+			float x2 = toX[offset + i];
+			float y2 = toY[offset + i];
 
 			// actual selection coordinate ("select")
-			float x = select[i].x;
-			float y = select[i].y;
+			float x = selectX[offset + i];
+			float y = selectY[offset + i];
 
 			// compute length of the sides of the triangle formed by the three points above
 			float a = (float)Math.hypot(x1 - x2, y1 - y2); // a: the specified amplitude
 			float b = (float)Math.hypot(x - x2, y - y2); // b: distance from the selection point to the target center
 			float c = (float)Math.hypot(x1 - x, y1 - y); // c: distance from "from" to "to"
 
-			verifyAmplitudeData(amplitude, a, i, taskType, numberOfTrials);
-
 			/*
 			 * Compute dx. This calculation is correct, but a diagram helps to visualize the geometry. dx is negative
 			 * for a selection on the "near side" of the target center (undershoot) and positive for a selection on the
 			 * "far side" of the target center (overshoot). For a near-side selection, the a-b-c triangle is acute
 			 * (i.e., a^2 + b^2 > c^2). For a far-side selection the a-b-c triangle is obtuse (i.e., a^2 + b^2 < c^2).
 			 */
-			deltaX[i] = (c * c - b * b - a * a) / (2.0f * a); // Pythagorean identity
-
-			// debug/demo code...
-			// String type = (a * a + b * b) > (c * c) ? "ACUTE" : "obtuse";
-			// System.out.printf("a=%7.2f   b=%7.2f   c=%7.2f   type=%6s   dx=%7.2f\n", a, b, c, type, deltaX[i]);
+			deltaXOut[i] = (c * c - b * b - a * a) / (2.0f * a); // Pythagorean identity
 
 			/*
 			 * Compute the effective movement amplitude. The computed amplitude, a, is adjusted by adding dx at the end
@@ -120,9 +230,9 @@ public class Throughput
 			 * For serial tasks, we also adjust for the starting position by adding dx from the previous trial (if i >
 			 * 0).
 			 */
-			ae[i] = a + deltaX[i];
+			aeOut[i] = a + deltaXOut[i];
 			if (serialTask && i > 0)
-				ae[i] += deltaX[i - 1];
+				aeOut[i] += deltaXOut[i - 1];
 
 			/*
 			 * Compute whether or not the target was missed. This information is not explicitly provided to the
@@ -132,11 +242,11 @@ public class Throughput
 			 * above) is greater than half the diameter (i.e., targetRadius) of the target circle.
 			 */
 			if (taskType == Throughput.ONE_DIMENSIONAL)
-				miss[i] = Math.abs(deltaX[i]) > width / 2.0 ? 1 : 0;
+				missOut[i] = Math.abs(deltaXOut[i]) > width / 2.0 ? 1 : 0;
 			else if (taskType == Throughput.TWO_DIMENSIONAL)
-				miss[i] = b > width / 2.0 ? 1 : 0;
+				missOut[i] = b > width / 2.0 ? 1 : 0;
 			else
-				miss[i] = -1;
+				missOut[i] = -1;
 		}
 	}
 
@@ -149,8 +259,9 @@ public class Throughput
 	 * 
 	 * For the 2D case, the amplitude passed to the Throughput object is the diameter of the layout circle. This value
 	 * is not necessarily the amplitude of movement for the trials, even if the movements are perfectly executed. The
-	 * movement amplitudes for perfect movements are calculated here, and given the label "taskAdjustedAmplitude". The
-	 * calculations are different depending on whether there is an even number of targets or an odd number of targets.
+	 * movement amplitudes for perfect movements are calculated (by TargetLayout), and given the label
+	 * "taskAdjustedAmplitude". The calculations are different depending on whether there is an even number of targets
+	 * or an odd number of targets.
 	 * 
 	 * 2D - Even Number of Targets. If there is an even number of targets, the first trial (index = 0) begins by
 	 * selecting the start target and then moving directly across the layout circle to the target on the opposite side.
@@ -162,55 +273,22 @@ public class Throughput
 	 * trial. The distance is less than the diameter of the layout circle, because the target is slightly displaced from
 	 * the location directly across the layout circle.
 	 * 
-	 * The calculations below account for the peculiarities of the tasks, as just described.
+	 * The calculations in TargetLayout account for the peculiarities of the tasks, as just described.
 	 * 
 	 * When all the calculations are done, we compare the taskAdjustedAmplitude to the value "a" passed here as an
 	 * argument. The taskAdjustedAmplitude and a should be the same. Because we are dealing with floating point
 	 * arithmetic and there may be some integer rounding issues for the location of targets as rendered on the screen,
 	 * the comparison only requires that taskAdjustedAmplitude and a are within WIGGLE units of each other (see below).
-	 * If they are, all is well. If they aren't, there's a problem.
+	 * If they are, all is well (true is returned). If they aren't, there's a problem (false is returned). The
+	 * task-adjusted amplitudes depend only on the amplitude and the number of trials, so the caller looks up the layout
+	 * (TargetLayout.get) once for the sequence, not for each trial. For 1D tasks the layout is not needed (it may be
+	 * null), as the task-adjusted amplitude is the amplitude.
 	 */
-	private void verifyAmplitudeData(float amplitude, float a, int trialIndex, int taskType, int numberOfTrials)
+	static boolean verifyAmplitudeData(float amplitude, TargetLayout layout, float a, int trialIndex, int taskType)
 	{
-		// allow this much difference when verifying amplitudes
-		final float WIGGLE = 2.0f;
-
-		// calculate the adjusted amplitude
-		float taskAdjustedAmplitude = -1.0f;
-
-		if (taskType == Throughput.TWO_DIMENSIONAL)
-		{
-			// even number of trials (taskAdjustedAmplitude is different for even- and odd-numbered trials)
-			if (numberOfTrials % 2 == 0)
-				if (trialIndex % 2 == 0) // even-indexed trials
-					taskAdjustedAmplitude = amplitude;
-				else
-				// odd-indexed trials
-				{
-					float b = amplitude * (float)Math.sin(Math.PI / numberOfTrials);
-					float theta = 0.5f * (float)Math.PI * (numberOfTrials - 2) / numberOfTrials;
-					float c = b * (float)Math.sin(theta);
-					float x = b * (float)Math.cos(theta);
-					taskAdjustedAmplitude = (float)Math.sqrt((amplitude - x) * (amplitude - x) + c * c);
-				}
-			else
-			// odd number of trials (taskAdjustedAmplitude is the same for every trial in the sequence)
-			{
-				float b = amplitude * (float)Math.sin(Math.PI / numberOfTrials);
-				float m = 2.0f * numberOfTrials;
-				float theta = 0.5f * (((float)Math.PI * (m - 2.0f)) / m);
-				float x = (b / 2.0f) / (float)Math.tan(theta);
-				float h = amplitude - x;
-				taskAdjustedAmplitude = (float)Math.sqrt(h * h + (b / 2.0f) * (b / 2.0f));
-			}
-		} else if (taskType == Throughput.ONE_DIMENSIONAL)
-		{
-			taskAdjustedAmplitude = amplitude; // the 1D case is simple (but still worth checking)
-		}
-
-		if (Math.abs(a - taskAdjustedAmplitude) > WIGGLE)
-			System.out.printf("Oops! amplitude=%1.1f, task_adjusted_amplitude= %1.2f, computed_amplitude= %1.2f\n",
-					amplitude, taskAdjustedAmplitude, a);
+		float taskAdjustedAmplitude = taskType == ONE_DIMENSIONAL ? amplitude : layout.getExpectedAmplitude(
+				trialIndex, taskType);
+		return Math.abs(a - taskAdjustedAmplitude) <= WIGGLE;
 	}
 
 	/**
@@ -301,8 +379,10 @@ public class Throughput
 	 * Returns a point array containing the "from" points for the trials in this sequence. The "from" points are the
 	 * coordinates of the center of the target from which each trial begins.
 	 */
-	public PointF[] getFrom()
+	public Point2D[] getFrom()
 	{
+		if (from == null)
+			from = toPoints(fromX, fromY);
 		return from;
 	}
 
@@ -310,8 +390,10 @@ public class Throughput
 	 * Returns a point array containing the "to" points for the trials in this sequence. The "to" points are the
 	 * coordinates of the center of the target to which each trial proceeds.
 	 */
-	public PointF[] getTo()
+	public Point2D[] getTo()
 	{
+		if (to == null)
+			to = toPoints(toX, toY);
 		return to;
 	}
 
@@ -319,11 +401,22 @@ public class Throughput
 	 * Returns a point array containing the "select" points for the trials in this sequence. The "select" points are the
 	 * coordinates of the point of selection where each trial terminated.
 	 */
-	public PointF[] getSelect()
+	public Point2D[] getSelect()
 	{
+		if (select == null)
+			select = toPoints(selectX, selectY);
 		return select;
 	}
 
+	// Create a point array from the x and y coordinates for the trials in this sequence.
+	private Point2D[] toPoints(float[] x, float[] y)
+	{
+		Point2D[] p = new Point2D[numberOfTrials];
+		for (int i = 0; i < numberOfTrials; ++i)
+			p[i] = new Point2D(x[offset + i], y[offset + i]);
+		return p;
+	}
+
 	/**
 	 * Returns the float array holding the mt (movement time) values for the trials in this sequence.
 	 */
@@ -417,6 +510,15 @@ public class Throughput
 		return (float)Math.log(getAe() / (SQRT_2_PI_E * getSDx()) + 1.0f) / LOG_TWO;
 	}
 
+	/**
+	 * Returns the number of trials for which the distance between the "from" and "to" targets was not the amplitude
+	 * expected for the task (see verifyAmplitudeData). This should be 0.
+	 */
+	public int getAmplitudeMismatches()
+	{
+		return amplitudeMismatches;
+	}
+
 	/**
 	 * Returns the number of misses for this sequence.
 	 */
@@ -478,21 +580,19 @@ public class Throughput
 	 * entire sequence.
 	 *
 	 */
-	public static float getTrialDeltaX(PointF from, PointF to, PointF select)
+	public static float getTrialDeltaX(Point2D from, Point2D to, Point2D select)
 	{
-		// start-of-trial coordinate (centre of the "from" target)
-		float x1 = from.x;
-		double y1 = from.y;
-
-		// centre coordinate of the target to select (center of the "to" target)
-		float x2 = to.x;
-		float y2 = to.y;
-
-		// actual selection coordinate ("select")
-		float x = select.x;
-		float y = select.y;
+		return getTrialDeltaX(from.x, from.y, to.x, to.y, select.x, select.y);
+	}
 
-		// compute length of the sides of the triangle formed by the three points above
+	/**
+	 * Returns deltaX for a trial. This is the same as getTrialDeltaX(Point2D, Point2D, Point2D), except the three points
+	 * are given as primitive coordinates: (x1, y1) is the center of the "from" target, (x2, y2) is the center of the
+	 * "to" target, and (x, y) is the selection coordinate. No objects are created.
+	 */
+	public static float getTrialDeltaX(float x1, float y1, float x2, float y2, float x, float y)
+	{
+		// compute length of the sides of the triangle formed by the three points
 		float a = (float)Math.hypot(x1 - x2, y1 - y2); // a is the specified amplitude
 		float b = (float)Math.hypot(x - x2, y - y2); // b is the distance from the selection point to the target center
 		float c = (float)Math.hypot(x1 - x, y1 - y);
@@ -525,10 +625,19 @@ public class Throughput
 	 * entire sequence.
 	 *
 	 */
-	public static float getTrialAe(PointF from, PointF to, PointF select)
+	public static float getTrialAe(Point2D from, Point2D to, Point2D select)
+	{
+		return getTrialAe(from.x, from.y, to.x, to.y, select.x, select.y);
+	}
+
+	/**
+	 * Returns the effective amplitude (Ae) for a trial. This is the same as getTrialAe(Point2D, Point2D, Point2D), except
+	 * the three points are given as primitive coordinates (see getTrialDeltaX). No objects are created.
+	 */
+	public static float getTrialAe(float x1, float y1, float x2, float y2, float x, float y)
 	{
-		float a = (float)Math.hypot(to.x - from.x, to.y - from.y);
-		float dx = getTrialDeltaX(from, to, select);
+		float a = (float)Math.hypot(x2 - x1, y2 - y1);
+		float dx = getTrialDeltaX(x1, y1, x2, y2, x, y);
 		return a + dx;
 	}
 }
@@ -0,0 +1,246 @@
+package ca.yorku.cse.mack.fittscore;
+
+/**
+ * ThroughputAccumulator -- class to compute Fitts' throughput incrementally, one trial at a time.
+ *
+ * The Throughput class works with the data for an entire sequence of trials. This class computes the same measures,
+ * but from running values that are updated as each trial is added. The mean and standard deviation of deltaX, ae, and
+ * mt are maintained using Welford's method, so Ae, We, IDe, MT, the error rate, and throughput are available at any
+ * point in a sequence without a pass over the data.
+ *
+ * If a TargetLayout is given (see reset), the amplitude of each trial is verified as it is added, as in the Throughput
+ * class. The number of trials with an unexpected amplitude is given by getAmplitudeMismatches.
+ */
+@SuppressWarnings("unused")
+public class ThroughputAccumulator
+{
+	float amplitude, width;
+	int taskType, responseType;
+	boolean serialTask;
+
+	int numberOfTrials;
+	int misses;
+
+	// layout used to verify the amplitude of each trial (null = not verified)
+	TargetLayout layout;
+	int amplitudeMismatches;
+
+	// deltaX for the last trial (carried over to the next trial for serial tasks)
+	float lastDeltaX;
+
+	// running means and sums of squared differences from the mean (Welford)
+	double meanDeltaX, m2DeltaX;
+	double meanAe, m2Ae;
+	double meanMT, m2MT;
+
+	public ThroughputAccumulator()
+	{
+	}
+
+	public ThroughputAccumulator(float amplitudeArg, float widthArg, int taskTypeArg, int responseTypeArg)
+	{
+		reset(amplitudeArg, widthArg, taskTypeArg, responseTypeArg);
+	}
+
+	/**
+	 * Prepare this accumulator for a new sequence of trials.
+	 */
+	public void reset(float amplitudeArg, float widthArg, int taskTypeArg, int responseTypeArg)
+	{
+		reset(amplitudeArg, widthArg, taskTypeArg, responseTypeArg, null);
+	}
+
+	/**
+	 * Prepare this accumulator for a new sequence of trials, with the targets placed as in the specified layout. The
+	 * amplitude of each trial is checked against the layout as the trial is added (see getAmplitudeMismatches).
+	 */
+	public void reset(float amplitudeArg, float widthArg, int taskTypeArg, int responseTypeArg, TargetLayout
+			layoutArg)
+	{
+		layout = layoutArg;
+		amplitudeMismatches = 0;
+		amplitude = amplitudeArg;
+		width = widthArg;
+		taskType = taskTypeArg;
+		responseType = responseTypeArg;
+		serialTask = (taskType == Throughput.SERIAL);
+
+		numberOfTrials = 0;
+		misses = 0;
+		lastDeltaX = 0f;
+		meanDeltaX = m2DeltaX = 0.0;
+		meanAe = m2Ae = 0.0;
+		meanMT = m2MT = 0.0;
+	}
+
+	/**
+	 * Add a trial to the sequence. The geometry for the trial is the centre of the "from" target, the centre of the
+	 * "to" target, and the selection coordinate. mt is the movement time (ms) for the trial.
+	 */
+	public void addTrial(float xFrom, float yFrom, float xTo, float yTo, float xSelect, float ySelect, float mt)
+	{
+		// a: the specified amplitude, b: distance from the selection point to the target center
+		float a = (float)Math.hypot(xFrom - xTo, yFrom - yTo);
+		float b = (float)Math.hypot(xSelect - xTo, ySelect - yTo);
+
+		float deltaX = Throughput.getTrialDeltaX(xFrom, yFrom, xTo, yTo, xSelect, ySelect);
+		float ae = a + deltaX;
+		if (serialTask && numberOfTrials > 0)
+			ae += lastDeltaX;
+
+		if (taskType == Throughput.ONE_DIMENSIONAL)
+			misses += Math.abs(deltaX) > width / 2.0 ? 1 : 0;
+		else if (taskType == Throughput.TWO_DIMENSIONAL)
+			misses += b > width / 2.0 ? 1 : 0;
+
+		if (layout != null && Math.abs(a - layout.getExpectedAmplitude(numberOfTrials, taskType)) > Throughput.WIGGLE)
+			++amplitudeMismatches;
+
+		++numberOfTrials;
+		double d;
+
+		d = deltaX - meanDeltaX;
+		meanDeltaX += d / numberOfTrials;
+		m2DeltaX += d * (deltaX - meanDeltaX);
+
+		d = ae - meanAe;
+		meanAe += d / numberOfTrials;
+		m2Ae += d * (ae - meanAe);
+
+		d = mt - meanMT;
+		meanMT += d / numberOfTrials;
+		m2MT += d * (mt - meanMT);
+
+		lastDeltaX = deltaX;
+	}
+
+	/**
+	 * Returns the number of trials added so far.
+	 */
+	public int getNumberOfTrials()
+	{
+		return numberOfTrials;
+	}
+
+	/**
+	 * Returns the specified amplitude for the trials in this sequence.
+	 */
+	public float getA()
+	{
+		return amplitude;
+	}
+
+	/**
+	 * Returns the specified target width for this sequence of trials.
+	 */
+	public float getW()
+	{
+		return width;
+	}
+
+	/**
+	 * Returns the specified index of difficulty, ID = log2(A/W + 1).
+	 */
+	public float getID()
+	{
+		return (float)Math.log(amplitude / width + 1.0f) / Throughput.LOG_TWO;
+	}
+
+	/**
+	 * Returns the mean of the selection coordinates, as projected onto the task axis.
+	 */
+	public float getX()
+	{
+		return (float)meanDeltaX;
+	}
+
+	/**
+	 * Returns the standard deviation in the selection coordinates, as projected onto the task axis. NaN if fewer
+	 * than two trials were added.
+	 */
+	public float getSDx()
+	{
+		return (float)Math.sqrt(m2DeltaX / (numberOfTrials - 1.0));
+	}
+
+	/**
+	 * Returns the effective amplitude (mean of the actual movement amplitudes, as projected onto the task axis).
+	 */
+	public float getAe()
+	{
+		return (float)meanAe;
+	}
+
+	/**
+	 * Returns the standard deviation in the actual movement amplitudes.
+	 */
+	public float getSDAe()
+	{
+		return (float)Math.sqrt(m2Ae / (numberOfTrials - 1.0));
+	}
+
+	/**
+	 * Returns the effective target width, We = 4.133 x SDx.
+	 */
+	public float getWe()
+	{
+		return Throughput.SQRT_2_PI_E * getSDx();
+	}
+
+	/**
+	 * Returns the effective index of difficulty, IDe = log2(Ae/We + 1).
+	 */
+	public float getIDe()
+	{
+		return (float)Math.log(getAe() / getWe() + 1.0f) / Throughput.LOG_TWO;
+	}
+
+	/**
+	 * Returns the mean movement time (ms).
+	 */
+	public float getMT()
+	{
+		return (float)meanMT;
+	}
+
+	/**
+	 * Returns the standard deviation in the movement times (ms).
+	 */
+	public float getSDMT()
+	{
+		return (float)Math.sqrt(m2MT / (numberOfTrials - 1.0));
+	}
+
+	/**
+	 * Returns the number of misses so far.
+	 */
+	public int getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * Returns the number of trials so far with an amplitude other than that expected from the layout (0 if no layout
+	 * was given).
+	 */
+	public int getAmplitudeMismatches()
+	{
+		return amplitudeMismatches;
+	}
+
+	/**
+	 * Returns the error rate as a percentage.
+	 */
+	public float getErrorRate()
+	{
+		return (float)misses / numberOfTrials * 100.0f;
+	}
+
+	/**
+	 * Returns the throughput (bits per second) for the trials added so far.
+	 */
+	public float getThroughput()
+	{
+		return getIDe() / (getMT() / 1000.0f);
+	}
+}
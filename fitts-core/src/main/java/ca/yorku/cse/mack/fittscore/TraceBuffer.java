@@ -0,0 +1,139 @@
+package ca.yorku.cse.mack.fittscore;
+
+import java.util.Arrays;
+
+/**
+ * TraceBuffer -- the trace (path) of the finger or stylus for one trial, held in parallel primitive arrays.
+ *
+ * Each sample is a timestamp (ms from the start of the trial) and an x-y coordinate. Adding a sample stores three
+ * primitives; no object is created. The buffer is reset (not replaced) at the start of each trial, so the arrays are
+ * only reallocated if a trial has more samples than any trial before it.
+ *
+ * The samples may be read one at a time (getT, getX, getY) or in bulk through the backing arrays (getTArray, etc.).
+ * The backing arrays are valid from index 0 to size() - 1, and only until the next reset or add.
+ */
+@SuppressWarnings("unused")
+public class TraceBuffer
+{
+	final static int DEFAULT_CAPACITY = 1024; // about 4 s at 240 Hz
+
+	long[] t;
+	int[] x, y;
+	int size;
+
+	public TraceBuffer()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+
+	public TraceBuffer(int capacity)
+	{
+		t = new long[capacity];
+		x = new int[capacity];
+		y = new int[capacity];
+	}
+
+	/**
+	 * Empty the buffer (the capacity is kept).
+	 */
+	public void reset()
+	{
+		size = 0;
+	}
+
+	/**
+	 * Add a sample (t = ms from the start of the trial).
+	 */
+	public void add(long tArg, int xArg, int yArg)
+	{
+		if (size == t.length)
+		{
+			int n = 2 * t.length;
+			t = Arrays.copyOf(t, n);
+			x = Arrays.copyOf(x, n);
+			y = Arrays.copyOf(y, n);
+		}
+		t[size] = tArg;
+		x[size] = xArg;
+		y[size] = yArg;
+		++size;
+	}
+
+	/**
+	 * Returns a copy of the buffer (e.g., to keep the trace after the buffer is reset for the next trial).
+	 */
+	public TraceBuffer copy()
+	{
+		TraceBuffer b = new TraceBuffer(Math.max(size, 1));
+		System.arraycopy(t, 0, b.t, 0, size);
+		System.arraycopy(x, 0, b.x, 0, size);
+		System.arraycopy(y, 0, b.y, 0, size);
+		b.size = size;
+		return b;
+	}
+
+	/**
+	 * Replace the samples with a copy of those in b (e.g., to reuse a buffer for a trace kept after its trial). The
+	 * arrays are only reallocated if b has more samples than the capacity.
+	 */
+	public void copyFrom(TraceBuffer b)
+	{
+		if (b.size > t.length)
+		{
+			t = new long[b.size];
+			x = new int[b.size];
+			y = new int[b.size];
+		}
+		System.arraycopy(b.t, 0, t, 0, b.size);
+		System.arraycopy(b.x, 0, x, 0, b.size);
+		System.arraycopy(b.y, 0, y, 0, b.size);
+		size = b.size;
+	}
+
+	/**
+	 * Returns the number of samples in the buffer.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	public long getT(int i)
+	{
+		return t[i];
+	}
+
+	public int getX(int i)
+	{
+		return x[i];
+	}
+
+	public int getY(int i)
+	{
+		return y[i];
+	}
+
+	/**
+	 * Returns the timestamps (indices 0 to size() - 1). The array is not copied.
+	 */
+	public long[] getTArray()
+	{
+		return t;
+	}
+
+	/**
+	 * Returns the x coordinates (indices 0 to size() - 1). The array is not copied.
+	 */
+	public int[] getXArray()
+	{
+		return x;
+	}
+
+	/**
+	 * Returns the y coordinates (indices 0 to size() - 1). The array is not copied.
+	 */
+	public int[] getYArray()
+	{
+		return y;
+	}
+}
@@ -0,0 +1,41 @@
+package ca.yorku.cse.mack.fittscore;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * TraceReader -- a reader for a binary trace file (sd3b or sd3m). Each call to next reads one trial: the samples go
+ * into a trace buffer, and the values in the trial header are available through the getters until the next call.
+ */
+public interface TraceReader extends Closeable
+{
+	/**
+	 * Read the next trial. The trace buffer is reset and filled with the trial's samples. Returns false if there are
+	 * no more trials.
+	 */
+	boolean next(TraceBuffer trace) throws IOException;
+
+	String getApp();
+
+	String getParticipant();
+
+	String getCondition();
+
+	String getBlock();
+
+	int getSequence();
+
+	int getA();
+
+	int getW();
+
+	int getTrial();
+
+	int getFromX();
+
+	int getFromY();
+
+	int getToX();
+
+	int getToY();
+}
@@ -0,0 +1,132 @@
+package ca.yorku.cse.mack.fittscore;
+
+/**
+ * TraceSimplifier -- error-bounded simplification of a trace, done as the samples arrive.
+ *
+ * Samples are passed to add (in order) and the samples kept are added to an output trace buffer. Each sample dropped
+ * is within the tolerance (pixels) of the line through the kept samples on either side of it, and within sqrt(2) x
+ * the tolerance of the segment between them. Kept samples are original samples, with their original timestamps. The
+ * first and last samples of the trial (and thus the first and last timestamps) are always kept.
+ *
+ * The algorithm is the "sleeve" (cone intersection) method of Zhao and Saalfeld (1997). From the last kept sample
+ * (the anchor), each later sample at distance d allows the next segment to leave the anchor in any direction within
+ * asin(tolerance / d) of the direction to the sample. The allowed directions for the samples since the anchor are
+ * intersected. When a sample lies outside the intersection, the previous sample is kept and becomes the new anchor.
+ * A sample that moves back toward the anchor by more than the tolerance also ends the segment, so a reversal of
+ * direction is kept. Only the anchor, the previous sample, and the range of directions are held, so adding a sample
+ * takes constant time and space.
+ */
+@SuppressWarnings("unused")
+public class TraceSimplifier
+{
+	float tolerance;
+	TraceBuffer out;
+
+	int samples; // samples given to add
+	boolean pending; // true if the previous sample has not been kept (yet)
+
+	long anchorT, lastT;
+	int anchorX, anchorY, lastX, lastY;
+
+	// range of directions allowed for the segment from the anchor (radians, relative to direction0)
+	boolean haveDirection;
+	double direction0, low, high;
+	double maximumDistance;
+
+	public TraceSimplifier()
+	{
+	}
+
+	/**
+	 * Prepare for a new trial. The samples kept are added to outArg (which should be reset by the caller).
+	 */
+	public void reset(float toleranceArg, TraceBuffer outArg)
+	{
+		tolerance = toleranceArg;
+		out = outArg;
+		samples = 0;
+		pending = false;
+	}
+
+	/**
+	 * Add the next sample.
+	 */
+	public void add(long t, int x, int y)
+	{
+		++samples;
+		if (samples == 1)
+		{
+			out.add(t, x, y);
+			setAnchor(t, x, y);
+			return;
+		}
+		if (!fits(x, y))
+		{
+			// keep the previous sample, and start a new segment from it
+			out.add(lastT, lastX, lastY);
+			setAnchor(lastT, lastX, lastY);
+			fits(x, y); // always true for the first sample after the anchor
+		}
+		lastT = t;
+		lastX = x;
+		lastY = y;
+		pending = true;
+	}
+
+	/**
+	 * Finish the trial (the last sample is kept).
+	 */
+	public void finish()
+	{
+		if (pending)
+			out.add(lastT, lastX, lastY);
+		pending = false;
+	}
+
+	/**
+	 * Returns the number of samples given to add.
+	 */
+	public int getNumberOfSamples()
+	{
+		return samples;
+	}
+
+	private void setAnchor(long t, int x, int y)
+	{
+		anchorT = t;
+		anchorX = x;
+		anchorY = y;
+		haveDirection = false;
+		maximumDistance = 0.0;
+	}
+
+	// returns true (and narrows the range of directions) if the segment from the anchor can pass near (x, y)
+	private boolean fits(int x, int y)
+	{
+		double dx = x - anchorX, dy = y - anchorY;
+		double d = Math.sqrt(dx * dx + dy * dy);
+		if (d < maximumDistance - tolerance)
+			return false;
+		if (d > tolerance)
+		{
+			double spread = Math.asin(tolerance / d);
+			double direction = Math.atan2(dy, dx);
+			if (!haveDirection)
+			{
+				haveDirection = true;
+				direction0 = direction;
+				low = -spread;
+				high = spread;
+			} else
+			{
+				double relative = Math.IEEEremainder(direction - direction0, 2.0 * Math.PI);
+				if (relative < low || relative > high)
+					return false;
+				low = Math.max(low, relative - spread);
+				high = Math.min(high, relative + spread);
+			}
+		}
+		maximumDistance = Math.max(maximumDistance, d);
+		return true;
+	}
+}
@@ -0,0 +1,460 @@
+package ca.yorku.cse.mack.fittscore;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * TrialJournal -- an append-only, checksummed journal of the data written to the data files of a block, so the files
+ * can be rebuilt if the app is stopped part way through the block (see recover).
+ *
+ * The data files are the journal's streams (e.g., 0 = sd1, 1 = sd2, 2 = sd3), named by their paths when the journal
+ * is created. Each record holds the bytes appended to one or more streams (segments), and is one of:
+ *
+ * <pre>
+ *      DATA     - always kept (e.g., the header lines)
+ *      TRIAL    - a completed trial (e.g., its sd1 line and trace data)
+ *      SEQUENCE - a completed sequence (e.g., its sd2 line)
+ *      OUTLIER  - an abandoned sequence (no segments)
+ * </pre>
+ *
+ * A stream may be marked "sequenced" (e.g., sd1). Its segments in TRIAL records are kept only if a SEQUENCE record
+ * follows (before any OUTLIER record), as the app only writes the sd1 lines of completed sequences. The segments for
+ * the other streams are kept as they come (e.g., the trace data, written for every trial).
+ *
+ * The records are committed in groups: they are held in memory until flush, which writes them with a single call and
+ * syncs the file. (Registered with an AsyncDataWriter, the journal is thus committed at each time or size threshold,
+ * and at each sync or flush, e.g., at the end of a sequence.)
+ *
+ * The file begins with "SDJ1" (4 bytes), followed by the records. All values are big-endian.
+ *
+ * <pre>
+ *      Record:  length (int, of the type and payload), CRC-32 (int, of the type and payload), type (byte), payload
+ *      OPEN:    number of streams (short), and for each: sequenced (byte), path (short length, UTF-8 bytes)
+ *      Others:  number of segments (short), and for each: stream (byte), length (int), bytes
+ * </pre>
+ *
+ * A torn or corrupted record (a short read or a bad checksum) ends the journal; the records before it are recovered.
+ *
+ * A journal is used by one thread at a time (e.g., the AsyncDataWriter's writer thread).
+ */
+@SuppressWarnings("unused")
+public class TrialJournal implements Closeable, Flushable
+{
+	public final static byte[] MAGIC = {'S', 'D', 'J', '1'};
+
+	// record types
+	public final static int DATA = 1, TRIAL = 2, SEQUENCE = 3, OUTLIER = 4;
+	final static int OPEN = 0;
+
+	// largest record length accepted when reading (larger is taken as corruption)
+	final static int MAXIMUM_RECORD_LENGTH = 64 * 1024 * 1024;
+
+	final static Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final File file;
+	private final FileOutputStream out;
+	private final int streams;
+	private final CRC32 crc = new CRC32();
+
+	private ByteBuffer pending; // the records not yet committed
+	private int recordStart = -1; // offset of the current record in pending (-1 = no record in progress)
+	private int segmentCount;
+
+	/**
+	 * Create a journal (replacing any file of the same name) for the data files in paths. sequenced[i] is true if the
+	 * segments for stream i in TRIAL records are only kept for completed sequences (see above).
+	 */
+	public TrialJournal(File fileArg, String[] paths, boolean[] sequenced) throws IOException
+	{
+		file = fileArg;
+		streams = paths.length;
+		pending = ByteBuffer.allocate(16 * 1024);
+		out = new FileOutputStream(file);
+		pending.put(MAGIC);
+
+		beginRecord(OPEN);
+		pending.putShort((short)streams);
+		for (int i = 0; i < streams; ++i)
+		{
+			byte[] b = paths[i].getBytes(UTF_8);
+			ensureCapacity(3 + b.length);
+			pending.put((byte)(sequenced[i] ? 1 : 0));
+			pending.putShort((short)b.length);
+			pending.put(b);
+		}
+		sealRecord();
+		flush();
+	}
+
+	public File getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * Begin a record of the specified type (DATA, TRIAL, SEQUENCE, or OUTLIER). The segments are then added with add,
+	 * and the record is ended with end.
+	 */
+	public void begin(int type)
+	{
+		if (recordStart >= 0)
+			throw new IllegalStateException("TrialJournal record in progress");
+		if (type < DATA || type > OUTLIER)
+			throw new IllegalArgumentException("Bad TrialJournal record type: " + type);
+		beginRecord(type);
+		pending.putShort((short)0); // the number of segments (set by end)
+		segmentCount = 0;
+	}
+
+	/**
+	 * Add text (as UTF-8) for a stream to the current record.
+	 */
+	public void add(int stream, String text)
+	{
+		byte[] b = text.getBytes(UTF_8);
+		add(stream, b, 0, b.length);
+	}
+
+	/**
+	 * Add the text in an encoder (as UTF-8) for a stream to the current record. The chars are encoded straight into
+	 * the record, so no string or byte array is created.
+	 */
+	public void add(int stream, RecordEncoder text)
+	{
+		add(stream, text.getBuffer(), 0, text.length());
+	}
+
+	/**
+	 * Add text (as UTF-8) for a stream to the current record (an unpaired surrogate is encoded as '?', as by
+	 * String.getBytes).
+	 */
+	public void add(int stream, char[] c, int offset, int length)
+	{
+		beginSegment(stream, 3 * length); // at most 3 bytes per char (4 per surrogate pair)
+		int start = pending.position();
+		byte[] b = pending.array();
+		int n = start;
+		for (int i = offset; i < offset + length; ++i)
+		{
+			char ch = c[i];
+			if (ch < 0x80)
+				b[n++] = (byte)ch;
+			else if (ch < 0x800)
+			{
+				b[n++] = (byte)(0xc0 | ch >> 6);
+				b[n++] = (byte)(0x80 | ch & 0x3f);
+			} else if (ch >= Character.MIN_SURROGATE && ch <= Character.MAX_SURROGATE)
+			{
+				if (Character.isHighSurrogate(ch) && i + 1 < offset + length && Character.isLowSurrogate(c[i + 1]))
+				{
+					int cp = Character.toCodePoint(ch, c[++i]);
+					b[n++] = (byte)(0xf0 | cp >> 18);
+					b[n++] = (byte)(0x80 | cp >> 12 & 0x3f);
+					b[n++] = (byte)(0x80 | cp >> 6 & 0x3f);
+					b[n++] = (byte)(0x80 | cp & 0x3f);
+				} else
+					b[n++] = '?';
+			} else
+			{
+				b[n++] = (byte)(0xe0 | ch >> 12);
+				b[n++] = (byte)(0x80 | ch >> 6 & 0x3f);
+				b[n++] = (byte)(0x80 | ch & 0x3f);
+			}
+		}
+		pending.putInt(start - 4, n - start);
+		pending.position(n);
+	}
+
+	/**
+	 * Add bytes for a stream to the current record.
+	 */
+	public void add(int stream, byte[] b, int offset, int length)
+	{
+		beginSegment(stream, length);
+		pending.putInt(pending.position() - 4, length);
+		pending.put(b, offset, length);
+	}
+
+	/**
+	 * End the current record. It is committed by the next flush.
+	 */
+	public void end()
+	{
+		if (recordStart < 0)
+			throw new IllegalStateException("No TrialJournal record in progress");
+		pending.putShort(recordStart + 9, (short)segmentCount);
+		sealRecord();
+	}
+
+	/**
+	 * Commit the records ended since the last flush: write them and sync the file. Does nothing if there are none.
+	 */
+	@Override
+	public void flush() throws IOException
+	{
+		int n = recordStart >= 0 ? recordStart : pending.position(); // not the record in progress
+		if (n == 0)
+			return;
+		out.write(pending.array(), 0, n);
+		out.getFD().sync();
+
+		// keep the record in progress (if any) at the start of the buffer
+		int rest = pending.position() - n;
+		System.arraycopy(pending.array(), n, pending.array(), 0, rest);
+		pending.position(rest);
+		if (recordStart >= 0)
+			recordStart = 0;
+	}
+
+	/**
+	 * Commit the records ended so far and close the file. The file is kept (delete it once the data files are
+	 * complete).
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			flush();
+		} finally
+		{
+			out.close();
+		}
+	}
+
+	// begin a record: the length and CRC (set by sealRecord) and the type (with room for the short that follows)
+	private void beginRecord(int type)
+	{
+		ensureCapacity(11);
+		recordStart = pending.position();
+		pending.putInt(0);
+		pending.putInt(0);
+		pending.put((byte)type);
+	}
+
+	// begin a segment, with room for up to length bytes (the length, after the stream, is set by the caller)
+	private void beginSegment(int stream, int length)
+	{
+		if (recordStart < 0)
+			throw new IllegalStateException("No TrialJournal record in progress");
+		if (stream < 0 || stream >= streams)
+			throw new IllegalArgumentException("Bad TrialJournal stream: " + stream);
+		ensureCapacity(5 + length);
+		pending.put((byte)stream);
+		pending.putInt(0);
+		++segmentCount;
+	}
+
+	// set the length and CRC of the current record
+	private void sealRecord()
+	{
+		int length = pending.position() - recordStart - 8;
+		crc.reset();
+		crc.update(pending.array(), recordStart + 8, length);
+		pending.putInt(recordStart, length);
+		pending.putInt(recordStart + 4, (int)crc.getValue());
+		recordStart = -1;
+	}
+
+	private void ensureCapacity(int n)
+	{
+		if (pending.remaining() >= n)
+			return;
+		ByteBuffer b = ByteBuffer.allocate(Math.max(2 * pending.capacity(), pending.position() + n));
+		b.put(pending.array(), 0, pending.position());
+		pending = b;
+	}
+
+	/**
+	 * The result of recover.
+	 */
+	public static class Recovery
+	{
+		String[] paths;
+		int records, trials, sequences;
+		boolean torn;
+
+		/**
+		 * Returns the paths of the data files (rebuilt, unless the journal had no records after the OPEN record).
+		 */
+		public String[] getPaths()
+		{
+			return paths;
+		}
+
+		public int getRecords()
+		{
+			return records;
+		}
+
+		/**
+		 * Returns the number of trials in completed sequences (those in the sequenced streams).
+		 */
+		public int getTrials()
+		{
+			return trials;
+		}
+
+		public int getSequences()
+		{
+			return sequences;
+		}
+
+		/**
+		 * Returns true if the journal ended with a torn or corrupted record.
+		 */
+		public boolean isTorn()
+		{
+			return torn;
+		}
+	}
+
+	/**
+	 * Rebuild the data files of a journal: each file is replaced with the kept segments for its stream (see above),
+	 * and synced. The segments of a sequence that was not completed are not kept for the sequenced streams (the
+	 * sequence would have been repeated). The journal itself is not changed; delete it once this returns. Returns
+	 * null if the file is not a journal (or is too short to have the OPEN record).
+	 */
+	public static Recovery recover(File journal) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal)));
+		try
+		{
+			byte[] magic = new byte[MAGIC.length];
+			CRC32 crc = new CRC32();
+			byte[] record;
+			try
+			{
+				in.readFully(magic);
+				record = readRecord(in, crc);
+			} catch (EOFException e)
+			{
+				return null;
+			}
+			if (!Arrays.equals(magic, MAGIC) || record == null || record[0] != OPEN)
+				return null;
+
+			Recovery r = new Recovery();
+			ByteBuffer b = ByteBuffer.wrap(record, 1, record.length - 1);
+			int streams = b.getShort();
+			r.paths = new String[streams];
+			boolean[] sequenced = new boolean[streams];
+			for (int i = 0; i < streams; ++i)
+			{
+				sequenced[i] = b.get() != 0;
+				byte[] path = new byte[b.getShort()];
+				b.get(path);
+				r.paths[i] = new String(path, UTF_8);
+			}
+
+			FileOutputStream[] out = new FileOutputStream[streams];
+			ByteArrayOutputStream[] held = new ByteArrayOutputStream[streams]; // the current sequence's segments
+			try
+			{
+				for (int i = 0; i < streams; ++i)
+				{
+					out[i] = new FileOutputStream(r.paths[i]);
+					held[i] = new ByteArrayOutputStream();
+				}
+				int heldTrials = 0;
+				while (true)
+				{
+					try
+					{
+						record = readRecord(in, crc);
+					} catch (EOFException e)
+					{
+						r.torn = true;
+						break;
+					}
+					if (record == null) // end of the journal
+						break;
+					if (record.length < 3 || record[0] < DATA || record[0] > OUTLIER)
+					{
+						r.torn = true;
+						break;
+					}
+					++r.records;
+					int type = record[0];
+					if (type == OUTLIER)
+					{
+						for (int i = 0; i < streams; ++i)
+							held[i].reset();
+						heldTrials = 0;
+						continue;
+					}
+					if (type == SEQUENCE)
+					{
+						for (int i = 0; i < streams; ++i)
+						{
+							held[i].writeTo(out[i]);
+							held[i].reset();
+						}
+						r.trials += heldTrials;
+						heldTrials = 0;
+						++r.sequences;
+					} else if (type == TRIAL)
+						++heldTrials;
+
+					b = ByteBuffer.wrap(record, 1, record.length - 1);
+					int segments = b.getShort();
+					for (int s = 0; s < segments; ++s)
+					{
+						int stream = b.get();
+						int length = b.getInt();
+						if (type == TRIAL && sequenced[stream])
+							held[stream].write(record, b.position(), length);
+						else
+							out[stream].write(record, b.position(), length);
+						b.position(b.position() + length);
+					}
+				}
+				for (int i = 0; i < streams; ++i)
+					out[i].getFD().sync();
+			} finally
+			{
+				for (FileOutputStream f : out)
+					if (f != null)
+						f.close();
+			}
+			return r;
+		} finally
+		{
+			in.close();
+		}
+	}
+
+	/*
+	 * Read a record (the type and payload). Returns null at the end of the file, and throws EOFException if the file
+	 * ends part way through a record or the record is corrupt.
+	 */
+	private static byte[] readRecord(DataInputStream in, CRC32 crc) throws IOException
+	{
+		int first = in.read();
+		if (first < 0)
+			return null;
+		int length = first << 24 | in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8 | in.readUnsignedByte();
+		int checksum = in.readInt();
+		if (length < 1 || length > MAXIMUM_RECORD_LENGTH)
+			throw new EOFException("Bad TrialJournal record length");
+		byte[] record = new byte[length];
+		in.readFully(record);
+		crc.reset();
+		crc.update(record, 0, length);
+		if ((int)crc.getValue() != checksum)
+			throw new EOFException("Bad TrialJournal record checksum");
+		return record;
+	}
+}
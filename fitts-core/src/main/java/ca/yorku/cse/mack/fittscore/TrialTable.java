@@ -0,0 +1,277 @@
+package ca.yorku.cse.mack.fittscore;
+
+import java.util.Arrays;
+
+/**
+ * TrialTable -- the sd1 data for the trials in a sequence, held in primitive column arrays (one row per trial).
+ *
+ * The table has the codes (Participant, Session, Block, Group, Condition, Mode), A, and W for the sequence, and a
+ * column for each of the other sd1 fields except Trial, which is the row index. The columns are int, long, or float,
+ * and are addressed by type and index (e.g., getFloat(TrialTable.SELECT_X, row)). The table is reset (not replaced)
+ * for the next sequence, so the arrays are only reallocated if a sequence has more trials than any before it.
+ *
+ * The data may be read a value at a time or in bulk through the backing arrays (getFloatColumn, etc.). It may be
+ * written as sd1 lines (appendSd1) or in the columnar sd1c format (see ColumnarTrialWriter), without being parsed
+ * again.
+ */
+@SuppressWarnings("unused")
+public class TrialTable
+{
+	// column types
+	public final static int INT = 0, LONG = 1, FLOAT = 2;
+
+	// the float columns
+	public final static int FROM_X = 0, FROM_Y = 1, TARGET_X = 2, TARGET_Y = 3, FINGER_DOWN_X = 4,
+			FINGER_DOWN_Y = 5, SELECT_X = 6, SELECT_Y = 7, X_DELTA = 8, FINGER_DOWN_UP_DELTA = 9,
+			DISTANCE_FROM_TARGET_CENTER = 10, MV = 11, ME = 12, MO = 13, PATH_LENGTH = 14, TRACE_COMPRESSION = 15;
+	final static int FLOAT_COLUMNS = 16;
+
+	// the int columns
+	public final static int PICKUP_MISSES = 0, ERROR = 1, HISTORICAL_SAMPLES = 2, TRE = 3, TAC = 4, MDC = 5, ODC = 6,
+			TRACE_SAMPLES = 7;
+	final static int INT_COLUMNS = 8;
+
+	// the long columns
+	public final static int FINGER_DOWN_UP_TIME = 0, MT = 1;
+	final static int LONG_COLUMNS = 2;
+
+	/*
+	 * The columns, in the order of the sd1 file (after Participant, Session, Block, Group, Condition, Mode, Trial, A,
+	 * and W): the name, type, and index of each.
+	 */
+	final static String[] COLUMN_NAME = {"FromX", "FromY", "TargetX", "TargetY", "FingerDownX", "FingerDownY",
+			"SelectX", "SelectY", "xDelta", "FingerDownUpDelta", "FingerDownUpTime(ms)", "DistanceFromTargetCenter",
+			"PickupMisses", "Error", "MT(ms)", "HistoricalSamples", "TRE", "TAC", "MDC", "ODC", "MV", "ME", "MO",
+			"PathLength", "TraceSamples", "TraceCompression"};
+	final static int[] COLUMN_TYPE = {FLOAT, FLOAT, FLOAT, FLOAT, FLOAT, FLOAT, FLOAT, FLOAT, FLOAT, FLOAT, LONG,
+			FLOAT, INT, INT, LONG, INT, INT, INT, INT, INT, FLOAT, FLOAT, FLOAT, FLOAT, INT, FLOAT};
+	final static int[] COLUMN_INDEX = {FROM_X, FROM_Y, TARGET_X, TARGET_Y, FINGER_DOWN_X, FINGER_DOWN_Y, SELECT_X,
+			SELECT_Y, X_DELTA, FINGER_DOWN_UP_DELTA, FINGER_DOWN_UP_TIME, DISTANCE_FROM_TARGET_CENTER, PICKUP_MISSES,
+			ERROR, MT, HISTORICAL_SAMPLES, TRE, TAC, MDC, ODC, MV, ME, MO, PATH_LENGTH, TRACE_SAMPLES,
+			TRACE_COMPRESSION};
+
+	final static int DEFAULT_CAPACITY = 32;
+
+	String codes;
+	float a, w;
+	int rows;
+	int[][] intColumn;
+	long[][] longColumn;
+	float[][] floatColumn;
+
+	public TrialTable()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+
+	public TrialTable(int capacity)
+	{
+		intColumn = new int[INT_COLUMNS][capacity];
+		longColumn = new long[LONG_COLUMNS][capacity];
+		floatColumn = new float[FLOAT_COLUMNS][capacity];
+	}
+
+	/**
+	 * Empty the table for a new sequence (the capacity is kept).
+	 *
+	 * @param codesArg the codes (Participant,Session,Block,Group,Condition,Mode)
+	 * @param aArg the amplitude for the sequence
+	 * @param wArg the width for the sequence
+	 */
+	public void reset(String codesArg, float aArg, float wArg)
+	{
+		codes = codesArg;
+		a = aArg;
+		w = wArg;
+		rows = 0;
+	}
+
+	/**
+	 * Add a row (with every value 0) and return its index. The values are then set with setInt, setLong, and
+	 * setFloat.
+	 */
+	public int addRow()
+	{
+		ensureCapacity(rows + 1);
+		for (int i = 0; i < INT_COLUMNS; ++i)
+			intColumn[i][rows] = 0;
+		for (int i = 0; i < LONG_COLUMNS; ++i)
+			longColumn[i][rows] = 0L;
+		for (int i = 0; i < FLOAT_COLUMNS; ++i)
+			floatColumn[i][rows] = 0f;
+		return rows++;
+	}
+
+	public void setInt(int column, int row, int value)
+	{
+		intColumn[column][row] = value;
+	}
+
+	public void setLong(int column, int row, long value)
+	{
+		longColumn[column][row] = value;
+	}
+
+	public void setFloat(int column, int row, float value)
+	{
+		floatColumn[column][row] = value;
+	}
+
+	/**
+	 * Returns the number of columns (the sd1 fields after Participant, Session, Block, Group, Condition, Mode, Trial,
+	 * A, and W).
+	 */
+	public static int getColumnCount()
+	{
+		return COLUMN_TYPE.length;
+	}
+
+	/**
+	 * Returns the sd1 name of column c (0 = FromX, in the order of the sd1 file).
+	 */
+	public static String getColumnName(int c)
+	{
+		return COLUMN_NAME[c];
+	}
+
+	/**
+	 * Returns the type of column c (INT, LONG, or FLOAT).
+	 */
+	public static int getColumnType(int c)
+	{
+		return COLUMN_TYPE[c];
+	}
+
+	/**
+	 * Returns the index of column c among the columns of its type (e.g., for getFloat).
+	 */
+	public static int getColumnIndex(int c)
+	{
+		return COLUMN_INDEX[c];
+	}
+
+	public String getCodes()
+	{
+		return codes;
+	}
+
+	public float getA()
+	{
+		return a;
+	}
+
+	public float getW()
+	{
+		return w;
+	}
+
+	/**
+	 * Returns the number of rows (trials).
+	 */
+	public int size()
+	{
+		return rows;
+	}
+
+	public int getInt(int column, int row)
+	{
+		return intColumn[column][row];
+	}
+
+	public long getLong(int column, int row)
+	{
+		return longColumn[column][row];
+	}
+
+	public float getFloat(int column, int row)
+	{
+		return floatColumn[column][row];
+	}
+
+	/**
+	 * Returns an int column (indices 0 to size() - 1). The array is not copied.
+	 */
+	public int[] getIntColumn(int column)
+	{
+		return intColumn[column];
+	}
+
+	/**
+	 * Returns a long column (indices 0 to size() - 1). The array is not copied.
+	 */
+	public long[] getLongColumn(int column)
+	{
+		return longColumn[column];
+	}
+
+	/**
+	 * Returns a float column (indices 0 to size() - 1). The array is not copied.
+	 */
+	public float[] getFloatColumn(int column)
+	{
+		return floatColumn[column];
+	}
+
+	/**
+	 * Returns a copy of the table (e.g., to keep the data after the table is reset for the next sequence).
+	 */
+	public TrialTable copy()
+	{
+		TrialTable t = new TrialTable(Math.max(rows, 1));
+		t.codes = codes;
+		t.a = a;
+		t.w = w;
+		t.rows = rows;
+		for (int i = 0; i < INT_COLUMNS; ++i)
+			System.arraycopy(intColumn[i], 0, t.intColumn[i], 0, rows);
+		for (int i = 0; i < LONG_COLUMNS; ++i)
+			System.arraycopy(longColumn[i], 0, t.longColumn[i], 0, rows);
+		for (int i = 0; i < FLOAT_COLUMNS; ++i)
+			System.arraycopy(floatColumn[i], 0, t.floatColumn[i], 0, rows);
+		return t;
+	}
+
+	// make room for n rows (the rows kept)
+	void ensureCapacity(int n)
+	{
+		int capacity = floatColumn[0].length;
+		if (n <= capacity)
+			return;
+		capacity = Math.max(n, 2 * capacity);
+		for (int i = 0; i < INT_COLUMNS; ++i)
+			intColumn[i] = Arrays.copyOf(intColumn[i], capacity);
+		for (int i = 0; i < LONG_COLUMNS; ++i)
+			longColumn[i] = Arrays.copyOf(longColumn[i], capacity);
+		for (int i = 0; i < FLOAT_COLUMNS; ++i)
+			floatColumn[i] = Arrays.copyOf(floatColumn[i], capacity);
+	}
+
+	/**
+	 * Append the sd1 lines for the rows to r, each ended with newline.
+	 */
+	public void appendSd1(RecordEncoder r, String newline)
+	{
+		for (int row = 0; row < rows; ++row)
+			appendSd1Row(r, row, newline);
+	}
+
+	/**
+	 * Append the sd1 line for a row to r, ended with newline.
+	 */
+	public void appendSd1Row(RecordEncoder r, int row, String newline)
+	{
+		r.append(codes).append(',').appendInt(row).append(',').appendFloat(a).append(',').appendFloat(w);
+		for (int c = 0; c < COLUMN_TYPE.length; ++c)
+		{
+			r.append(',');
+			int i = COLUMN_INDEX[c];
+			if (COLUMN_TYPE[c] == INT)
+				r.appendInt(intColumn[i][row]);
+			else if (COLUMN_TYPE[c] == LONG)
+				r.appendLong(longColumn[i][row]);
+			else
+				r.appendFloat(floatColumn[i][row]);
+		}
+		r.append(newline);
+	}
+}
@@ -0,0 +1,155 @@
+package ca.yorku.cse.mack.fittscore;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the sd3b format (BinaryTraceWriter and BinaryTraceReader): the varints, a round trip, and a file that ends
+ * part way through a record.
+ */
+public class BinaryTraceTest
+{
+	@Test
+	public void varintLengths()
+	{
+		byte[] b = new byte[BinaryTraceWriter.MAXIMUM_VARINT_BYTES];
+		assertEquals(1, BinaryTraceWriter.putVarint(b, 0, 0));
+		assertEquals(1, BinaryTraceWriter.putVarint(b, 0, -1)); // zig-zag: small negative values are small
+		assertEquals(1, BinaryTraceWriter.putVarint(b, 0, 63));
+		assertEquals(1, BinaryTraceWriter.putVarint(b, 0, -64));
+		assertEquals(2, BinaryTraceWriter.putVarint(b, 0, 64));
+		assertEquals(2, BinaryTraceWriter.putVarint(b, 0, -65));
+		assertEquals(10, BinaryTraceWriter.putVarint(b, 0, Long.MAX_VALUE));
+		assertEquals(10, BinaryTraceWriter.putVarint(b, 0, Long.MIN_VALUE));
+	}
+
+	@Test
+	public void roundTrip() throws IOException
+	{
+		TraceBuffer first = trace(new long[] {0, 8, 16, 1000000000000L}, new int[] {100, 101, 99, 5000}, new int[]
+				{200, 150, 260, -3});
+		TraceBuffer extremes = trace(new long[] {Long.MAX_VALUE, Long.MIN_VALUE, -1, 0}, new int[] {Integer.MIN_VALUE,
+				Integer.MAX_VALUE, -1, 0}, new int[] {Integer.MAX_VALUE, Integer.MIN_VALUE, 0, -1});
+		TraceBuffer empty = new TraceBuffer();
+
+		ByteArrayOutputStream b = new ByteArrayOutputStream();
+		BinaryTraceWriter out = new BinaryTraceWriter(b, "FittsDragAndDrop", "P01", "C01", "B01");
+		int n = out.writeTrial(1, 400, 60, 1, 100, 200, 500, 200, first);
+		byte[] record = Arrays.copyOf(out.getBuffer(), n);
+		out.writeTrial(1, 400, 60, 2, -500, -200, Integer.MIN_VALUE, Integer.MAX_VALUE, extremes);
+		out.writeTrial(2, 800, 30, 1, 0, 0, 0, 0, empty);
+		out.close();
+
+		byte[] file = b.toByteArray();
+		int header = BinaryTraceWriter.encodeHeader("FittsDragAndDrop", "P01", "C01", "B01").length;
+		assertArrayEquals(record, Arrays.copyOfRange(file, header, header + n)); // getBuffer has the record written
+
+		BinaryTraceReader in = new BinaryTraceReader(new ByteArrayInputStream(file));
+		assertEquals("FittsDragAndDrop", in.getApp());
+		assertEquals("P01", in.getParticipant());
+		assertEquals("C01", in.getCondition());
+		assertEquals("B01", in.getBlock());
+		TraceBuffer trace = new TraceBuffer(1);
+		assertTrue(in.next(trace));
+		assertTrial(in, 1, 400, 60, 1, 100, 200, 500, 200);
+		assertTrace(first, trace);
+		assertTrue(in.next(trace));
+		assertTrial(in, 1, 400, 60, 2, -500, -200, Integer.MIN_VALUE, Integer.MAX_VALUE);
+		assertTrace(extremes, trace);
+		assertTrue(in.next(trace));
+		assertTrial(in, 2, 800, 30, 1, 0, 0, 0, 0);
+		assertEquals(0, trace.size());
+		assertFalse(in.next(trace));
+		assertFalse(in.isTruncated());
+		assertFalse(in.next(trace));
+		in.close();
+	}
+
+	@Test
+	public void truncatedRecord() throws IOException
+	{
+		TraceBuffer trace = trace(new long[] {0, 8, 300}, new int[] {10, 20, 700}, new int[] {10, 20, -700});
+		ByteArrayOutputStream b = new ByteArrayOutputStream();
+		BinaryTraceWriter out = new BinaryTraceWriter(b, "FittsDragAndDrop", "P01", "C01", "B01");
+		out.writeTrial(1, 400, 60, 1, 0, 0, 400, 0, trace);
+		int complete = b.size();
+		int n = out.writeTrial(1, 400, 60, 2, 400, 0, 0, 0, trace);
+		out.close();
+		byte[] file = b.toByteArray();
+
+		// every cut inside the second record leaves the first trial, and the file is reported as truncated
+		for (int length = complete + 1; length < complete + n; ++length)
+		{
+			BinaryTraceReader in = new BinaryTraceReader(new ByteArrayInputStream(file, 0, length));
+			TraceBuffer t = new TraceBuffer();
+			assertTrue(in.next(t));
+			assertEquals(1, in.getTrial());
+			assertFalse("cut at " + length, in.next(t));
+			assertTrue("cut at " + length, in.isTruncated());
+			assertEquals(0, t.size());
+			assertFalse(in.next(t));
+		}
+
+		// a cut between records is the end of the file
+		BinaryTraceReader in = new BinaryTraceReader(new ByteArrayInputStream(file, 0, complete));
+		TraceBuffer t = new TraceBuffer();
+		assertTrue(in.next(t));
+		assertFalse(in.next(t));
+		assertFalse(in.isTruncated());
+	}
+
+	@Test(expected = IOException.class)
+	public void notAnSd3bFile() throws IOException
+	{
+		new BinaryTraceReader(new ByteArrayInputStream("SD3,t=,0,".getBytes("US-ASCII")));
+	}
+
+	@Test(expected = IOException.class)
+	public void unsupportedVersion() throws IOException
+	{
+		byte[] header = BinaryTraceWriter.encodeHeader("FittsDragAndDrop", "P01", "C01", "B01");
+		header[BinaryTraceWriter.MAGIC.length] = BinaryTraceWriter.VERSION + 1;
+		new BinaryTraceReader(new ByteArrayInputStream(header));
+	}
+
+	static TraceBuffer trace(long[] t, int[] x, int[] y)
+	{
+		TraceBuffer trace = new TraceBuffer(1);
+		for (int i = 0; i < t.length; ++i)
+			trace.add(t[i], x[i], y[i]);
+		return trace;
+	}
+
+	static void assertTrace(TraceBuffer expected, TraceBuffer actual)
+	{
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); ++i)
+		{
+			assertEquals("t[" + i + "]", expected.getT(i), actual.getT(i));
+			assertEquals("x[" + i + "]", expected.getX(i), actual.getX(i));
+			assertEquals("y[" + i + "]", expected.getY(i), actual.getY(i));
+		}
+	}
+
+	static void assertTrial(TraceReader in, int sequence, int a, int w, int trial, int fromX, int fromY, int toX,
+			int toY)
+	{
+		assertEquals(sequence, in.getSequence());
+		assertEquals(a, in.getA());
+		assertEquals(w, in.getW());
+		assertEquals(trial, in.getTrial());
+		assertEquals(fromX, in.getFromX());
+		assertEquals(fromY, in.getFromY());
+		assertEquals(toX, in.getToX());
+		assertEquals(toY, in.getToY());
+	}
+}
@@ -0,0 +1,116 @@
+package ca.yorku.cse.mack.fittscore;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of the sd1c format (ColumnarTrialWriter and ColumnarTrialReader): a round trip that reproduces the sd1 lines,
+ * the 8-byte alignment, and a file that ends part way through a batch.
+ */
+public class ColumnarTrialTest
+{
+	final static String CODES = "P01,S01,B01,G01,C01,2D";
+
+	@Test
+	public void roundTrip() throws IOException
+	{
+		TrialTable[] tables = {table(1, 13, 480f, 50f), table(2, 100, 240.5f, 25f), table(3, 0, 120f, 10f), table(4,
+				1, 1e-4f, 1e7f)};
+		ByteArrayOutputStream b = new ByteArrayOutputStream();
+		ColumnarTrialWriter out = new ColumnarTrialWriter(b);
+		assertEquals(0, b.size() % 8);
+		for (TrialTable t : tables)
+		{
+			out.writeTable(t);
+			assertEquals(0, b.size() % 8); // so every column begins at an 8-byte boundary
+		}
+		out.close();
+
+		ColumnarTrialReader in = new ColumnarTrialReader(new ByteArrayInputStream(b.toByteArray()));
+		TrialTable t = new TrialTable(1);
+		for (TrialTable expected : tables)
+		{
+			assertTrue(in.next(t));
+			assertEquals(expected.getCodes(), t.getCodes());
+			assertEquals(expected.getA(), t.getA(), 0f);
+			assertEquals(expected.getW(), t.getW(), 0f);
+			assertEquals(expected.size(), t.size());
+			assertEquals(sd1(expected), sd1(t)); // every column, as written to the sd1 file
+		}
+		assertFalse(in.next(t));
+		in.close();
+	}
+
+	@Test
+	public void truncatedBatch() throws IOException
+	{
+		ByteArrayOutputStream b = new ByteArrayOutputStream();
+		ColumnarTrialWriter out = new ColumnarTrialWriter(b);
+		out.writeTable(table(1, 5, 480f, 50f));
+		int complete = b.size();
+		out.writeTable(table(2, 5, 480f, 50f));
+		out.close();
+		byte[] file = b.toByteArray();
+
+		for (int length = complete + 1; length < file.length; length += 7)
+		{
+			ColumnarTrialReader in = new ColumnarTrialReader(new ByteArrayInputStream(file, 0, length));
+			TrialTable t = new TrialTable();
+			assertTrue(in.next(t));
+			try
+			{
+				in.next(t);
+				fail("cut at " + length);
+			} catch (EOFException e)
+			{
+				// expected
+			}
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void notAnSd1cFile() throws IOException
+	{
+		new ColumnarTrialReader(new ByteArrayInputStream("SD1,Participant,Session\n".getBytes("US-ASCII")));
+	}
+
+	// a table with random values in every column
+	static TrialTable table(int seed, int rows, float a, float w)
+	{
+		Random r = new Random(seed);
+		TrialTable t = new TrialTable(2);
+		t.reset(CODES, a, w);
+		for (int row = 0; row < rows; ++row)
+		{
+			t.addRow();
+			for (int c = 0; c < TrialTable.getColumnCount(); ++c)
+			{
+				int i = TrialTable.getColumnIndex(c);
+				if (TrialTable.getColumnType(c) == TrialTable.INT)
+					t.setInt(i, row, r.nextInt());
+				else if (TrialTable.getColumnType(c) == TrialTable.LONG)
+					t.setLong(i, row, r.nextLong());
+				else
+					t.setFloat(i, row, (float)(r.nextGaussian() * 1000.0));
+			}
+		}
+		return t;
+	}
+
+	static String sd1(TrialTable t)
+	{
+		RecordEncoder r = new RecordEncoder();
+		t.appendSd1(r, "\n");
+		return r.toString();
+	}
+}
@@ -0,0 +1,155 @@
+package ca.yorku.cse.mack.fittscore;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the SDZ1 format (CompressedTextWriter and CompressedTextInputStream): a round trip, and files that end part
+ * way through a frame or have a corrupted frame, which must decode to the end of the last complete record.
+ */
+public class CompressedTextTest
+{
+	@Test
+	public void roundTrip() throws IOException
+	{
+		List<String> records = records(200);
+		ByteArrayOutputStream b = new ByteArrayOutputStream();
+		CompressedTextWriter out = new CompressedTextWriter(b);
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < records.size(); ++i)
+		{
+			String r = records.get(i);
+			if (i % 3 == 0)
+				out.write(r);
+			else if (i % 3 == 1)
+				out.write(r.toCharArray(), 0, r.length());
+			else
+			{
+				out.write(r, 0, 5);
+				out.write(r, 5, r.length() - 5);
+			}
+			out.endRecord();
+			out.endRecord(); // nothing written since the last, so no frame
+			text.append(r);
+		}
+		String large = large(); // larger than the writer's and the reader's buffers
+		out.write(large);
+		out.flush();
+		text.append(large);
+		assertEquals(b.size(), out.getOutputBytes());
+		out.close();
+		assertEquals(text.length(), out.getInputBytes());
+		assertTrue(out.getRatio() > 2f);
+
+		byte[] file = b.toByteArray();
+		CompressedTextInputStream in = new CompressedTextInputStream(new ByteArrayInputStream(file));
+		assertEquals(text.toString(), read(in));
+		assertFalse(in.isTruncated());
+		assertEquals(file.length, in.getInputBytes());
+		assertEquals(text.length(), in.getOutputBytes());
+	}
+
+	@Test
+	public void truncatedAndCorrupted() throws IOException
+	{
+		List<String> records = records(30);
+		ByteArrayOutputStream b = new ByteArrayOutputStream();
+		CompressedTextWriter out = new CompressedTextWriter(b);
+		List<Integer> fileEnds = new ArrayList<Integer>(), textEnds = new ArrayList<Integer>();
+		fileEnds.add(b.size());
+		textEnds.add(0);
+		StringBuilder text = new StringBuilder();
+		for (String r : records)
+		{
+			out.write(r);
+			out.endRecord();
+			text.append(r);
+			fileEnds.add(b.size());
+			textEnds.add(text.length());
+		}
+		out.close();
+		byte[] file = b.toByteArray();
+
+		// a file cut anywhere decodes to the end of the last record before the cut
+		for (int length = CompressedTextWriter.MAGIC.length; length < file.length; ++length)
+		{
+			int record = 0;
+			while (fileEnds.get(record + 1) <= length)
+				++record;
+			CompressedTextInputStream in = new CompressedTextInputStream(new ByteArrayInputStream(file, 0, length));
+			assertEquals("cut at " + length, text.substring(0, textEnds.get(record)), read(in));
+			assertEquals("cut at " + length, length != fileEnds.get(record), in.isTruncated());
+		}
+
+		// a corrupted byte ends the text at the record before it
+		for (int record = 0; record < records.size(); record += 3)
+		{
+			byte[] bad = file.clone();
+			int p = (fileEnds.get(record) + fileEnds.get(record + 1)) / 2;
+			bad[p] ^= 0x55;
+			CompressedTextInputStream in = new CompressedTextInputStream(new ByteArrayInputStream(bad));
+			assertEquals("corrupted at " + p, text.substring(0, textEnds.get(record)), read(in));
+			assertTrue(in.isTruncated());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void notCompressedText() throws IOException
+	{
+		new CompressedTextInputStream(new ByteArrayInputStream("SD3,t=,0,8,\n".getBytes("US-ASCII")));
+	}
+
+	// sd3-like records (three lines of a trial's trace data)
+	static List<String> records(int n)
+	{
+		Random r = new Random(n);
+		List<String> records = new ArrayList<String>();
+		for (int trial = 0; trial < n; ++trial)
+		{
+			StringBuilder s = new StringBuilder();
+			String leadin = "FittsDragAndDrop,P01,C01,B01," + (1 + trial / 10) + ",480,50," + trial + ",";
+			int samples = 5 + r.nextInt(100);
+			for (String axis : new String[] {"t", "x", "y"})
+			{
+				s.append(leadin).append(axis).append("=,");
+				for (int i = 0; i < samples; ++i)
+					s.append(axis.equals("t") ? 8 * i : 300 + r.nextInt(400)).append(',');
+				s.append('\n');
+			}
+			records.add(s.toString());
+		}
+		return records;
+	}
+
+	// a record of random digits (not very compressible), about 200 KB
+	static String large()
+	{
+		Random r = new Random(1);
+		StringBuilder s = new StringBuilder();
+		while (s.length() < 200 * 1024)
+			s.append(r.nextInt()).append(',');
+		return s.append('\n').toString();
+	}
+
+	static String read(CompressedTextInputStream in) throws IOException
+	{
+		ByteArrayOutputStream text = new ByteArrayOutputStream();
+		byte[] b = new byte[1000];
+		int n;
+		while ((n = in.read(b, 0, b.length)) > 0)
+			text.write(b, 0, n);
+		assertEquals(-1, in.read());
+		in.close();
+		return text.toString("US-ASCII");
+	}
+}
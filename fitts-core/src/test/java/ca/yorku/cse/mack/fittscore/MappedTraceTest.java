@@ -0,0 +1,179 @@
+package ca.yorku.cse.mack.fittscore;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the sd3m format (MappedTraceStore and MappedTraceReader): trials across several chunks, uncommitted trials,
+ * and sd3m data held in part of a file.
+ */
+public class MappedTraceTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void roundTripAcrossChunks() throws IOException
+	{
+		File f = folder.newFile("t.sd3m");
+		int trials = write(f, 300, 2000); // about 3.6 MB, so trials and trial headers span the chunk boundaries
+		assertTrue(f.length() > 3L * MappedTraceStore.CHUNK_SIZE);
+		assertEquals(trials, read(f, 0, -1, 300, 2000));
+	}
+
+	@Test
+	public void uncommittedTrialIsDropped() throws IOException
+	{
+		File f = folder.newFile("t.sd3m");
+		MappedTraceStore store = new MappedTraceStore(f, "FittsDragAndDrop", "P01", "C01", "B01");
+		store.beginTrial(1, 400, 60, 1, 10, 20, 410, 20);
+		store.addSample(0, 10, 20);
+		store.addSample(8, 12, 21);
+		store.commitTrial();
+		long committed = MappedTraceStore.HEADER_SIZE + MappedTraceStore.TRIAL_HEADER_SIZE + 2 * MappedTraceStore
+				.SAMPLE_SIZE;
+		store.beginTrial(1, 400, 60, 2, 410, 20, 10, 20);
+		store.addSample(0, 410, 20);
+
+		// a reader sees the committed trials while the file is being written (e.g., after the app is killed)
+		MappedTraceReader in = new MappedTraceReader(f);
+		assertEquals(1, in.getNumberOfTrials());
+		TraceBuffer trace = new TraceBuffer();
+		assertTrue(in.next(trace));
+		assertEquals(2, trace.size());
+		assertFalse(in.next(trace));
+		in.close();
+
+		assertEquals(1, store.getNumberOfTrials());
+		store.close();
+		assertEquals(committed, f.length()); // trimmed to the committed trials
+		in = new MappedTraceReader(f);
+		assertEquals("FittsDragAndDrop", in.getApp());
+		assertEquals("P01", in.getParticipant());
+		assertEquals("C01", in.getCondition());
+		assertEquals("B01", in.getBlock());
+		assertTrue(in.next(trace));
+		BinaryTraceTest.assertTrial(in, 1, 400, 60, 1, 10, 20, 410, 20);
+		BinaryTraceTest.assertTrace(BinaryTraceTest.trace(new long[] {0, 8}, new int[] {10, 12}, new int[] {20, 21}),
+				trace);
+		assertFalse(in.next(trace));
+		in.close();
+	}
+
+	@Test
+	public void partOfAFile() throws IOException
+	{
+		File f = folder.newFile("t.sd3m");
+		int trials = write(f, 20, 300);
+		byte[] data = readFile(f);
+
+		// the sd3m data between other data (as in a segment file, see StudyCatalog)
+		File segment = folder.newFile("t.seg");
+		FileOutputStream out = new FileOutputStream(segment);
+		out.write(new byte[1234]);
+		out.write(data);
+		out.write(new byte[99]);
+		out.close();
+		assertEquals(trials, read(segment, 1234, data.length, 20, 300));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void beginWithTrialInProgress() throws IOException
+	{
+		MappedTraceStore store = new MappedTraceStore(folder.newFile("t.sd3m"), "FittsDragAndDrop", "P01", "C01",
+				"B01");
+		try
+		{
+			store.beginTrial(1, 400, 60, 1, 0, 0, 0, 0);
+			store.beginTrial(1, 400, 60, 2, 0, 0, 0, 0);
+		} finally
+		{
+			store.close();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void notAnSd3mFile() throws IOException
+	{
+		File f = folder.newFile("t.sd3b");
+		FileOutputStream out = new FileOutputStream(f);
+		out.write(new byte[2 * MappedTraceStore.HEADER_SIZE]);
+		out.close();
+		new MappedTraceReader(f);
+	}
+
+	// write trials with random numbers of samples (up to maximumSamples); returns the number of trials
+	private static int write(File f, int trials, int maximumSamples) throws IOException
+	{
+		MappedTraceStore store = new MappedTraceStore(f, "FittsDragAndDrop", "P01", "C01", "B01");
+		Random r = new Random(trials);
+		for (int trial = 0; trial < trials; ++trial)
+		{
+			store.beginTrial(1 + trial / 10, 400, 60, trial, trial, -trial, 2 * trial, -2 * trial);
+			int n = r.nextInt(maximumSamples);
+			if (trial % 2 == 0)
+				for (int i = 0; i < n; ++i)
+					store.addSample(i, trial + i, -i);
+			else
+			{
+				TraceBuffer trace = new TraceBuffer();
+				for (int i = 0; i < n; ++i)
+					trace.add(i, trial + i, -i);
+				store.addSamples(trace);
+			}
+			store.commitTrial();
+		}
+		assertEquals(trials, store.getNumberOfTrials());
+		store.close();
+		return trials;
+	}
+
+	// read and check the trials written by write; returns the number of trials
+	private static int read(File f, long offset, long length, int trials, int maximumSamples) throws IOException
+	{
+		MappedTraceReader in = new MappedTraceReader(f, offset, length);
+		assertEquals(trials, in.getNumberOfTrials());
+		Random r = new Random(trials);
+		TraceBuffer trace = new TraceBuffer();
+		int trial = 0;
+		while (in.next(trace))
+		{
+			BinaryTraceTest.assertTrial(in, 1 + trial / 10, 400, 60, trial, trial, -trial, 2 * trial, -2 * trial);
+			assertEquals(r.nextInt(maximumSamples), trace.size());
+			for (int i = 0; i < trace.size(); ++i)
+			{
+				assertEquals(i, trace.getT(i));
+				assertEquals(trial + i, trace.getX(i));
+				assertEquals(-i, trace.getY(i));
+			}
+			++trial;
+		}
+		in.close();
+		return trial;
+	}
+
+	private static byte[] readFile(File f) throws IOException
+	{
+		RandomAccessFile in = new RandomAccessFile(f, "r");
+		try
+		{
+			byte[] b = new byte[(int)in.length()];
+			in.readFully(b);
+			return b;
+		} finally
+		{
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package ca.yorku.cse.mack.fittscore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of PathAnalyzer: the accuracy measures for a short path computed by hand, the same path rotated onto another
+ * task axis, and the incremental measures against a batch recomputation (two passes, as in MacKenzie et al.) over a
+ * trace as recorded by the app.
+ */
+public class PathAnalyzerTest
+{
+	final static float TOLERANCE = 1e-4f;
+
+	/*
+	 * A path along a task axis from (0, 0) to a circle of diameter 20 at (100, 0), so u = x and v = y:
+	 *
+	 *      u:  0  20  40  60  50  80  95  112  98  100
+	 *      v:  0   5  -5  -3   4   2   0    0   3    0
+	 *
+	 * TAC: v changes sign + to - (20 -> 40) and - to + (60 -> 50) = 2
+	 * MDC: the change in v (perpendicular to the axis) is + - + + - - 0 + -, so 5 sign changes (the 0 is skipped)
+	 * ODC: the change in u (along the axis) is + + + - + + + - +, so 4 sign changes
+	 * TRE: the path enters the target at (95, 0), leaves at (112, 0), and enters again at (98, 3) = 1
+	 * MO = 6 / 10, ME = 22 / 10, MV = sqrt((88 - 10 x 0.6^2) / 9)
+	 */
+	final static float[] U = {0f, 20f, 40f, 60f, 50f, 80f, 95f, 112f, 98f, 100f};
+	final static float[] V = {0f, 5f, -5f, -3f, 4f, 2f, 0f, 0f, 3f, 0f};
+
+	@Test
+	public void handComputedPath()
+	{
+		PathAnalyzer p = new PathAnalyzer();
+		p.reset(0f, 0f, new TargetShape(TargetShape.CIRCLE, 100f, 0f, 20f, 20f));
+		for (int i = 0; i < U.length; ++i)
+			p.add(U[i], V[i]);
+		assertHandComputed(p);
+	}
+
+	@Test
+	public void rotatedPath()
+	{
+		// the same path, on a task axis from (300, 200) straight down the screen to (300, 300)
+		PathAnalyzer p = new PathAnalyzer();
+		p.reset(300f, 200f, new TargetShape(TargetShape.CIRCLE, 300f, 300f, 20f, 20f));
+		for (int i = 0; i < U.length; ++i)
+			p.add(300f - V[i], 200f + U[i]);
+		assertHandComputed(p);
+	}
+
+	private static void assertHandComputed(PathAnalyzer p)
+	{
+		assertEquals(10, p.getNumberOfSamples());
+		assertEquals(1, p.getTargetReEntries());
+		assertEquals(2, p.getTaskAxisCrossings());
+		assertEquals(5, p.getMovementDirectionChanges());
+		assertEquals(4, p.getOrthogonalDirectionChanges());
+		assertEquals(0.6f, p.getMovementOffset(), TOLERANCE);
+		assertEquals(2.2f, p.getMovementError(), TOLERANCE);
+		assertEquals((float)Math.sqrt((88.0 - 10.0 * 0.36) / 9.0), p.getMovementVariability(), TOLERANCE);
+		float length = (float)(Math.sqrt(425) + Math.sqrt(500) + Math.sqrt(404) + Math.sqrt(149) + Math.sqrt(904) +
+				Math.sqrt(229) + 17.0 + Math.sqrt(205) + Math.sqrt(13));
+		assertEquals(length, p.getPathLength(), length * TOLERANCE);
+	}
+
+	/*
+	 * A 2D trial as written to an sd3 file by the app (the x= and y= rows): from (661, 1023) to a circle of diameter 82
+	 * at (437, 869), so the task axis is on a diagonal.
+	 */
+	final static float X_FROM = 661f, Y_FROM = 1023f, X_TO = 437f, Y_TO = 869f, W = 82f;
+	final static int[] X = {670, 657, 657, 656, 653, 646, 639, 635, 626, 617, 605, 597, 584, 577, 567, 553, 541, 533,
+			523, 508, 500, 489, 480, 474, 461, 456, 449, 448, 440, 441, 439};
+	final static int[] Y = {1011, 1004, 1001, 1004, 1006, 1000, 992, 987, 985, 977, 968, 964, 954, 947, 941, 931, 923,
+			913, 903, 902, 893, 889, 880, 872, 869, 866, 862, 860, 857, 856, 853};
+
+	@Test
+	public void recordedTrace()
+	{
+		TargetShape target = new TargetShape(TargetShape.CIRCLE, X_TO, Y_TO, W, W);
+		PathAnalyzer p = new PathAnalyzer();
+		p.reset(X_FROM, Y_FROM, target);
+		for (int i = 0; i < X.length; ++i)
+			p.add(X[i], Y[i]);
+
+		// batch recomputation: rotate the whole path onto the task axis, then count and sum over the arrays
+		int n = X.length;
+		double length = Math.hypot(X_TO - X_FROM, Y_TO - Y_FROM);
+		double ux = (X_TO - X_FROM) / length, uy = (Y_TO - Y_FROM) / length;
+		double[] u = new double[n], v = new double[n];
+		int entries = 0;
+		double pathLength = 0.0;
+		for (int i = 0; i < n; ++i)
+		{
+			u[i] = (X[i] - X_FROM) * ux + (Y[i] - Y_FROM) * uy;
+			v[i] = (Y[i] - Y_FROM) * ux - (X[i] - X_FROM) * uy;
+			if (target.inTarget(X[i], Y[i]) && (i == 0 || !target.inTarget(X[i - 1], Y[i - 1])))
+				++entries;
+			if (i > 0)
+				pathLength += Math.hypot(X[i] - X[i - 1], Y[i] - Y[i - 1]);
+		}
+		double[] du = new double[n - 1], dv = new double[n - 1];
+		for (int i = 1; i < n; ++i)
+		{
+			du[i - 1] = u[i] - u[i - 1];
+			dv[i - 1] = v[i] - v[i - 1];
+		}
+		double mean = 0.0, meanAbs = 0.0;
+		for (int i = 0; i < n; ++i)
+		{
+			mean += v[i] / n;
+			meanAbs += Math.abs(v[i]) / n;
+		}
+		double sumOfSquares = 0.0;
+		for (int i = 0; i < n; ++i)
+			sumOfSquares += (v[i] - mean) * (v[i] - mean);
+
+		assertEquals(n, p.getNumberOfSamples());
+		assertEquals(Math.max(0, entries - 1), p.getTargetReEntries());
+		assertEquals(signChanges(v), p.getTaskAxisCrossings());
+		assertEquals(signChanges(dv), p.getMovementDirectionChanges());
+		assertEquals(signChanges(du), p.getOrthogonalDirectionChanges());
+		assertEquals(mean, p.getMovementOffset(), TOLERANCE * meanAbs);
+		assertEquals(meanAbs, p.getMovementError(), TOLERANCE * meanAbs);
+		assertEquals(Math.sqrt(sumOfSquares / (n - 1)), p.getMovementVariability(), TOLERANCE * meanAbs);
+		assertEquals(pathLength, p.getPathLength(), TOLERANCE * pathLength);
+	}
+
+	// the number of changes of sign in a series of values (zeros are skipped)
+	private static int signChanges(double[] values)
+	{
+		int changes = 0, last = 0;
+		for (double d : values)
+		{
+			int sign = d > 0.0 ? 1 : d < 0.0 ? -1 : 0;
+			if (sign == 0)
+				continue;
+			if (last != 0 && sign != last)
+				++changes;
+			last = sign;
+		}
+		return changes;
+	}
+}
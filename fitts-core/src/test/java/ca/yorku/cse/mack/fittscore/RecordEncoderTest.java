@@ -0,0 +1,128 @@
+package ca.yorku.cse.mack.fittscore;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests of RecordEncoder (the fields of the data file lines, as String.format renders them), and of the journal's
+ * encoding of its chars.
+ */
+public class RecordEncoderTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void integers()
+	{
+		RecordEncoder r = new RecordEncoder(1);
+		long[] values = {0, 1, -1, 9, 10, -10, 99, 100, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE,
+				Long.MIN_VALUE, Long.MIN_VALUE + 1};
+		for (long v : values)
+			assertEquals(Long.toString(v), r.reset().appendLong(v).toString());
+		Random random = new Random(1);
+		for (int i = 0; i < 100000; ++i)
+		{
+			int v = random.nextInt();
+			assertEquals(Integer.toString(v), r.reset().appendInt(v).toString());
+		}
+	}
+
+	@Test
+	public void floats()
+	{
+		RecordEncoder r = new RecordEncoder(1);
+		String[][] values = {{"0.0", "0"}, {"-0.0", "-0"}, {"1.0", "1"}, {"-2.5", "-2.5"}, {"0.1", "0.1"}, {"0.001",
+				"0.001"}, {"0.0123", "0.0123"}, {"3.4028235E38", "3.4028235E38"}, {"1.0E-4", "0.0001"}, {"1.0E7",
+				"1e7"}, {"9999999.0", "9999999"}, {"123.456", "123.456"}, {"4.2949673E9", "4294967296"}, {"NaN",
+				"NaN"}, {"-Infinity", "-Infinity"}};
+		for (String[] v : values)
+			assertEquals(v[0], r.reset().appendFloat(Float.parseFloat(v[1])).toString());
+	}
+
+	@Test
+	public void floatsAsFloatToString()
+	{
+		// the floats are rendered as by Float.toString on Android and Java 8 to 18 (it changed in Java 19)
+		assumeTrue(javaVersion() <= 18);
+		RecordEncoder r = new RecordEncoder(1);
+		Random random = new Random(2);
+		for (int i = 0; i < 1000000; ++i)
+		{
+			float f = i % 2 == 0 ? Float.intBitsToFloat(random.nextInt()) : (float)(random.nextDouble() * Math.pow(10,
+					random.nextInt(11) - 3));
+			assertEquals(Float.toString(f), r.reset().appendFloat(f).toString());
+		}
+	}
+
+	@Test
+	public void appendAndWrite() throws Exception
+	{
+		RecordEncoder leadin = new RecordEncoder(2);
+		leadin.append("FittsDragAndDrop").append(',').appendInt(3).append(',');
+		RecordEncoder r = new RecordEncoder(2);
+		for (int i = 0; i < 2; ++i) // the second time, into the buffer grown the first time
+		{
+			r.reset().append(leadin).append("t=,").appendLong(1234567890123L).append(',').appendFloat(0.5f);
+			assertEquals("FittsDragAndDrop,3,t=,1234567890123,0.5", r.toString());
+			assertEquals(r.toString().length(), r.length());
+		}
+		StringWriter out = new StringWriter();
+		r.writeTo(out);
+		assertEquals(r.toString(), out.toString());
+	}
+
+	@Test
+	public void journalEncodesCharsAsUtf8() throws Exception
+	{
+		String[] texts = {"", "FittsDragAndDrop,P01,3,480,50,0.5\n", "\u00e9\u20ac\ud834\udd1ex",
+				"a\ud800b\udc00c\ud800"};
+		RecordEncoder r = new RecordEncoder(1);
+		for (String text : texts)
+		{
+			// the chars in one stream, the string (as by String.getBytes) in the other
+			File data = folder.newFile(), string = folder.newFile();
+			TrialJournal journal = new TrialJournal(folder.newFile(), new String[] {data.getPath(), string.getPath()},
+					new boolean[] {false, false});
+			journal.begin(TrialJournal.DATA);
+			journal.add(0, r.reset().append(text));
+			journal.add(1, text);
+			journal.end();
+			journal.close();
+			TrialJournal.recover(journal.getFile());
+			byte[] expected = text.getBytes("UTF-8"); // an unpaired surrogate is encoded as '?'
+			assertArrayEquals(text, expected, readFile(string));
+			assertArrayEquals(text, expected, readFile(data));
+		}
+	}
+
+	private static byte[] readFile(File f) throws Exception
+	{
+		RandomAccessFile in = new RandomAccessFile(f, "r");
+		try
+		{
+			byte[] b = new byte[(int)in.length()];
+			in.readFully(b);
+			return b;
+		} finally
+		{
+			in.close();
+		}
+	}
+
+	private static int javaVersion()
+	{
+		String v = System.getProperty("java.specification.version");
+		return Integer.parseInt(v.startsWith("1.") ? v.substring(2) : v);
+	}
+}
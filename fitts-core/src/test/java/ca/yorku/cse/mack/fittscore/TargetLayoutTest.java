@@ -0,0 +1,115 @@
+package ca.yorku.cse.mack.fittscore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests of TargetLayout: the cached target centres and expected amplitudes must be exactly those of the per-trial trig
+ * that they replace (configureTargets in the activity, and Throughput.verifyAmplitudeData), for even and odd numbers
+ * of targets.
+ */
+public class TargetLayoutTest
+{
+	final static float TWO_TIMES_PI = 6.283185307f;
+
+	final static float[] AMPLITUDES = {120f, 240f, 274f, 427.54642f, 480f, 855.09283f};
+
+	final static float X_CENTER = 640.5f, Y_CENTER = 400f;
+
+	@Test
+	public void targetCentres()
+	{
+		for (float a : AMPLITUDES)
+			for (int n = 2; n <= 25; ++n)
+			{
+				TargetLayout layout = TargetLayout.get(a, n);
+				assertEquals(a, layout.getAmplitude(), 0f);
+				assertEquals(n, layout.getNumberOfTargets());
+				for (int i = 0; i < n; ++i)
+				{
+					String message = "A=" + a + " N=" + n + " target " + i;
+					assertEquals(message, oldTargetX(a, n, i), layout.getTargetX(i, X_CENTER), 0f);
+					assertEquals(message, oldTargetY(a, n, i), layout.getTargetY(i, Y_CENTER), 0f);
+				}
+			}
+	}
+
+	@Test
+	public void expectedAmplitudes()
+	{
+		int[] taskTypes = {Throughput.ONE_DIMENSIONAL, Throughput.TWO_DIMENSIONAL, Throughput.SERIAL};
+		for (float a : AMPLITUDES)
+			for (int n = 2; n <= 25; ++n)
+				for (int taskType : taskTypes)
+					for (int i = 0; i < n; ++i)
+						assertEquals("A=" + a + " N=" + n + " task " + taskType + " trial " + i, oldExpectedAmplitude(a,
+								i, taskType, n), TargetLayout.get(a, n).getExpectedAmplitude(i, taskType), 0f);
+	}
+
+	@Test
+	public void cache()
+	{
+		assertSame(TargetLayout.get(480f, 13), TargetLayout.get(480f, 13));
+		assertNotSame(TargetLayout.get(480f, 13), TargetLayout.get(480f, 12));
+		assertNotSame(TargetLayout.get(480f, 13), TargetLayout.get(240f, 13));
+
+		// more layouts than are cached: the cache is cleared, and the layouts are computed again (the same values)
+		TargetLayout first = TargetLayout.get(1f, 1);
+		for (int n = 2; n <= TargetLayout.MAXIMUM_CACHED_LAYOUTS + 1; ++n)
+			TargetLayout.get(1f, n);
+		TargetLayout again = TargetLayout.get(1f, 1);
+		assertNotSame(first, again);
+		assertEquals(first.getTargetX(0, 0f), again.getTargetX(0, 0f), 0f);
+	}
+
+	// the target centre as configureTargets computed it for each sequence (before TargetLayout)
+	private static float oldTargetX(float a, int numberOfTargets, int i)
+	{
+		return X_CENTER + (a / 2f) * (float)Math.cos(TWO_TIMES_PI * ((float)i / numberOfTargets));
+	}
+
+	private static float oldTargetY(float a, int numberOfTargets, int i)
+	{
+		return Y_CENTER + (a / 2f) * (float)Math.sin(TWO_TIMES_PI * ((float)i / numberOfTargets));
+	}
+
+	// the expected amplitude as verifyAmplitudeData computed it for each trial (before TargetLayout)
+	private static float oldExpectedAmplitude(float amplitude, int trialIndex, int taskType, int numberOfTrials)
+	{
+		float taskAdjustedAmplitude = -1.0f;
+
+		if (taskType == Throughput.TWO_DIMENSIONAL)
+		{
+			// even number of trials (taskAdjustedAmplitude is different for even- and odd-numbered trials)
+			if (numberOfTrials % 2 == 0)
+				if (trialIndex % 2 == 0) // even-indexed trials
+					taskAdjustedAmplitude = amplitude;
+				else
+				// odd-indexed trials
+				{
+					float b = amplitude * (float)Math.sin(Math.PI / numberOfTrials);
+					float theta = 0.5f * (float)Math.PI * (numberOfTrials - 2) / numberOfTrials;
+					float c = b * (float)Math.sin(theta);
+					float x = b * (float)Math.cos(theta);
+					taskAdjustedAmplitude = (float)Math.sqrt((amplitude - x) * (amplitude - x) + c * c);
+				}
+			else
+			// odd number of trials (taskAdjustedAmplitude is the same for every trial in the sequence)
+			{
+				float b = amplitude * (float)Math.sin(Math.PI / numberOfTrials);
+				float m = 2.0f * numberOfTrials;
+				float theta = 0.5f * (((float)Math.PI * (m - 2.0f)) / m);
+				float x = (b / 2.0f) / (float)Math.tan(theta);
+				float h = amplitude - x;
+				taskAdjustedAmplitude = (float)Math.sqrt(h * h + (b / 2.0f) * (b / 2.0f));
+			}
+		} else if (taskType == Throughput.ONE_DIMENSIONAL)
+		{
+			taskAdjustedAmplitude = amplitude; // the 1D case is simple (but still worth checking)
+		}
+		return taskAdjustedAmplitude;
+	}
+}
@@ -0,0 +1,103 @@
+package ca.yorku.cse.mack.fittscore;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of ThroughputAccumulator against Throughput: the running (Welford) values after each trial must agree with a
+ * Throughput computed over the same trials, for 1D and 2D sequences of several lengths, with misses.
+ *
+ * Throughput sums in float and ThroughputAccumulator in double, so the measures are compared to a relative tolerance
+ * of TOLERANCE (the misses and error rate must be identical).
+ */
+public class ThroughputAccumulatorTest
+{
+	final static float TOLERANCE = 1e-4f;
+
+	final static float X_CENTER = 640f, Y_CENTER = 400f;
+
+	@Test
+	public void twoDimensional()
+	{
+		Random r = new Random(2);
+		int misses = 0;
+		for (int n : new int[] {5, 9, 13, 25})
+			for (float[] aw : new float[][] {{480f, 50f}, {240f, 25f}, {120f, 60f}})
+				misses += compare(Throughput.TWO_DIMENSIONAL, aw[0], aw[1], n, r);
+		assertTrue(misses > 0);
+	}
+
+	@Test
+	public void oneDimensional()
+	{
+		Random r = new Random(1);
+		int misses = 0;
+		for (int n : new int[] {2, 10, 20, 31})
+			for (float[] aw : new float[][] {{480f, 50f}, {240f, 25f}, {120f, 60f}})
+				misses += compare(Throughput.ONE_DIMENSIONAL, aw[0], aw[1], n, r);
+		assertTrue(misses > 0);
+	}
+
+	/*
+	 * Generate a sequence of n trials (targets visited as in DragTrialLogic.advanceTarget, selections scattered about
+	 * the target centre with sd = W/2, so roughly a third are misses) and compare the accumulator with Throughput after
+	 * every trial from the second on. Returns the number of misses in the sequence.
+	 */
+	private static int compare(int taskType, float a, float w, int n, Random r)
+	{
+		int numberOfTargets = taskType == Throughput.ONE_DIMENSIONAL ? 2 : n;
+		TargetLayout layout = TargetLayout.get(a, numberOfTargets);
+		float[] fromX = new float[n], fromY = new float[n], toX = new float[n], toY = new float[n];
+		float[] selectX = new float[n], selectY = new float[n], mt = new float[n];
+
+		ThroughputAccumulator accumulator = new ThroughputAccumulator();
+		accumulator.reset(a, w, taskType, Throughput.SERIAL, layout);
+		int to = 0;
+		for (int i = 0; i < n; ++i)
+		{
+			int from = to;
+			to = taskType == Throughput.ONE_DIMENSIONAL ? (from + 1) % 2 : (from + (numberOfTargets + 1) / 2)
+					% numberOfTargets;
+			fromX[i] = layout.getTargetX(from, X_CENTER);
+			fromY[i] = layout.getTargetY(from, Y_CENTER);
+			toX[i] = layout.getTargetX(to, X_CENTER);
+			toY[i] = layout.getTargetY(to, Y_CENTER);
+			selectX[i] = toX[i] + (float)r.nextGaussian() * w / 2f;
+			selectY[i] = toY[i] + (float)r.nextGaussian() * w / 2f;
+			mt[i] = 400f + 600f * r.nextFloat();
+
+			accumulator.addTrial(fromX[i], fromY[i], toX[i], toY[i], selectX[i], selectY[i], mt[i]);
+			if (i == 0)
+				continue; // the standard deviations need two trials
+
+			String message = (taskType == Throughput.ONE_DIMENSIONAL ? "1D" : "2D") + " A=" + a + " W=" + w + " n=" +
+					n + " after " + (i + 1) + " trials";
+			Throughput expected = new Throughput("", a, w, taskType, Throughput.SERIAL, fromX, fromY, toX, toY,
+					selectX, selectY, mt, 0, i + 1);
+			assertEquals(message, expected.getNumberOfTrials(), accumulator.getNumberOfTrials());
+			assertClose(message + ": Ae", expected.getAe(), accumulator.getAe());
+			assertClose(message + ": We", expected.getWe(), accumulator.getWe());
+			assertClose(message + ": IDe", expected.getIDe(), accumulator.getIDe());
+			assertClose(message + ": MT", expected.getMT(), accumulator.getMT());
+			assertClose(message + ": TP", expected.getThroughput(), accumulator.getThroughput());
+			assertEquals(message + ": misses", expected.getMisses(), accumulator.getMisses());
+			assertEquals(message + ": ErrorRate", expected.getErrorRate(), accumulator.getErrorRate(), 0f);
+		}
+
+		// Throughput takes the layout from the number of trials, so the amplitudes agree only for the whole sequence
+		Throughput expected = new Throughput("", a, w, taskType, Throughput.SERIAL, fromX, fromY, toX, toY, selectX,
+				selectY, mt, 0, n);
+		assertEquals(0, expected.getAmplitudeMismatches());
+		assertEquals(0, accumulator.getAmplitudeMismatches());
+		return accumulator.getMisses();
+	}
+
+	private static void assertClose(String message, float expected, float actual)
+	{
+		assertEquals(message, expected, actual, TOLERANCE * Math.abs(expected));
+	}
+}
@@ -0,0 +1,232 @@
+package ca.yorku.cse.mack.fittscore;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of TrialJournal.recover: the segments kept for completed, abandoned (outlier), and incomplete sequences, and
+ * journals that end with a torn or corrupted record.
+ */
+public class TrialJournalTest
+{
+	final static String SD1 = "H1\ns1t0\ns1t1\ns1t2\ns2t0\ns2t1\ns2t2\n";
+	final static String SD2 = "H2\nseq1\nseq2\n";
+	final static String TRACE = "\u0001\u0002\u0003tr1-0\ntr1-1\ntr1-2\notr-0\notr-1\ntr2-0\ntr2-1\ntr2-2\ntr3-0\n";
+	final static int RECORDS = 13; // after the OPEN record
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	File journalFile;
+	String[] paths;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		journalFile = new File(folder.getRoot(), "FittsDragAndDrop.journal");
+		paths = new String[] {folder.getRoot() + "/x.sd1", folder.getRoot() + "/x.sd2", folder.getRoot() + "/x.sd3"};
+	}
+
+	@Test
+	public void recover() throws IOException
+	{
+		write();
+		TrialJournal.Recovery r = TrialJournal.recover(journalFile);
+		assertNotNull(r);
+		assertArrayEquals(paths, r.getPaths());
+		assertEquals(RECORDS, r.getRecords());
+		assertEquals(2, r.getSequences());
+		assertEquals(6, r.getTrials());
+		assertFalse(r.isTorn());
+		assertEquals(SD1, readText(paths[0])); // not the outlier sequence's trials, nor those of the last sequence
+		assertEquals(SD2, readText(paths[1]));
+		assertEquals(TRACE, readText(paths[2])); // every trial's trace data
+	}
+
+	@Test
+	public void flushCommitsTheRecordsEnded() throws IOException
+	{
+		TrialJournal j = new TrialJournal(journalFile, paths, new boolean[] {true, false, false});
+		j.begin(TrialJournal.DATA);
+		j.add(1, "H2\n");
+		j.end();
+		j.begin(TrialJournal.SEQUENCE);
+		j.add(1, "seq1\n");
+		j.flush(); // the record in progress is kept for the next flush
+
+		TrialJournal.Recovery r = TrialJournal.recover(journalFile);
+		assertEquals(1, r.getRecords());
+		assertEquals("H2\n", readText(paths[1]));
+
+		j.end();
+		j.close();
+		r = TrialJournal.recover(journalFile);
+		assertEquals(2, r.getRecords());
+		assertEquals("H2\nseq1\n", readText(paths[1]));
+	}
+
+	@Test
+	public void truncatedAtEveryByte() throws IOException
+	{
+		write();
+		byte[] full = readFile(journalFile);
+		int previousRecords = -1; // the OPEN record not read
+		for (int length = 0; length < full.length; ++length)
+		{
+			writeFile(journalFile, Arrays.copyOf(full, length));
+			TrialJournal.Recovery r = TrialJournal.recover(journalFile);
+			if (r == null) // before the end of the OPEN record
+			{
+				assertEquals("cut at " + length, -1, previousRecords);
+				continue;
+			}
+			assertTrue("cut at " + length, r.getRecords() >= previousRecords);
+			assertTrue("cut at " + length, r.getRecords() < RECORDS);
+			boolean boundary = r.getRecords() > previousRecords; // the cut is at the end of a record
+			assertEquals("cut at " + length, !boundary, r.isTorn());
+			previousRecords = r.getRecords();
+			assertTrue("cut at " + length, SD1.startsWith(readText(paths[0])));
+			assertTrue("cut at " + length, SD2.startsWith(readText(paths[1])));
+			assertTrue("cut at " + length, TRACE.startsWith(readText(paths[2])));
+		}
+		assertEquals(RECORDS - 1, previousRecords);
+	}
+
+	@Test
+	public void corruptedRecord() throws IOException
+	{
+		write();
+		byte[] b = readFile(journalFile);
+		b[b.length / 2] ^= 0x40;
+		writeFile(journalFile, b);
+		TrialJournal.Recovery r = TrialJournal.recover(journalFile);
+		assertTrue(r.isTorn());
+		assertTrue(r.getRecords() < RECORDS);
+		assertTrue(SD1.startsWith(readText(paths[0])));
+		assertTrue(TRACE.startsWith(readText(paths[2])));
+	}
+
+	@Test
+	public void notAJournal() throws IOException
+	{
+		writeFile(journalFile, "SD1,Participant\n".getBytes("US-ASCII"));
+		assertNull(TrialJournal.recover(journalFile));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void addWithoutRecord() throws IOException
+	{
+		TrialJournal j = new TrialJournal(journalFile, paths, new boolean[] {true, false, false});
+		try
+		{
+			j.add(0, "s1t0\n");
+		} finally
+		{
+			j.close();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void badStream() throws IOException
+	{
+		TrialJournal j = new TrialJournal(journalFile, paths, new boolean[] {true, false, false});
+		try
+		{
+			j.begin(TrialJournal.DATA);
+			j.add(3, "x");
+		} finally
+		{
+			j.close();
+		}
+	}
+
+	/*
+	 * A block's journal: the headers, a completed sequence, an outlier sequence, a completed sequence, and a sequence
+	 * with one trial and a record in progress when the journal is closed.
+	 */
+	private void write() throws IOException
+	{
+		TrialJournal j = new TrialJournal(journalFile, paths, new boolean[] {true, false, false});
+		j.begin(TrialJournal.DATA);
+		j.add(0, "H1\n");
+		j.add(1, "H2\n");
+		j.add(2, new byte[] {1, 2, 3}, 0, 3);
+		j.end();
+		trials(j, "s1t", "tr1-", 3);
+		j.flush();
+		sequence(j, "seq1\n");
+		trials(j, "ot", "otr-", 2);
+		j.begin(TrialJournal.OUTLIER);
+		j.end();
+		trials(j, "s2t", "tr2-", 3);
+		sequence(j, "seq2\n");
+		trials(j, "s3t", "tr3-", 1);
+		j.begin(TrialJournal.TRIAL);
+		j.add(0, "s3t1\n");
+		j.close();
+	}
+
+	private static void trials(TrialJournal j, String sd1, String trace, int n)
+	{
+		for (int t = 0; t < n; ++t)
+		{
+			j.begin(TrialJournal.TRIAL);
+			j.add(0, sd1 + t + "\n");
+			j.add(2, trace + t + "\n");
+			j.end();
+		}
+	}
+
+	private static void sequence(TrialJournal j, String sd2)
+	{
+		j.begin(TrialJournal.SEQUENCE);
+		j.add(1, sd2);
+		j.end();
+	}
+
+	private static String readText(String path) throws IOException
+	{
+		return new String(readFile(new File(path)), "UTF-8");
+	}
+
+	private static byte[] readFile(File f) throws IOException
+	{
+		RandomAccessFile in = new RandomAccessFile(f, "r");
+		try
+		{
+			byte[] b = new byte[(int)in.length()];
+			in.readFully(b);
+			return b;
+		} finally
+		{
+			in.close();
+		}
+	}
+
+	private static void writeFile(File f, byte[] b) throws IOException
+	{
+		FileOutputStream out = new FileOutputStream(f);
+		try
+		{
+			out.write(b);
+		} finally
+		{
+			out.close();
+		}
+	}
+}
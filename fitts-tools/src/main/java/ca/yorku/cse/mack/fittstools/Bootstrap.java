@@ -0,0 +1,134 @@
+package ca.yorku.cse.mack.fittstools;
+
+import ca.yorku.cse.mack.fittscore.Throughput;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Bootstrap -- percentile bootstrap confidence intervals for throughput.
+ *
+ * Two kinds of resampling are supported:
+ *
+ * 1. Trials within a sequence (sequenceInterval). The per-trial deltaX and ae are computed once, by
+ * Throughput.computeTrials, and each resample draws n trials (with replacement) from them. Throughput is then
+ * recomputed from the resampled trials with the Throughput calculations: TP = log2(Ae/We + 1) / MT, where We = 4.133
+ * x SDx.
+ *
+ * 2. Sequences (meanInterval). Each resample draws n sequence throughputs (with replacement) and computes their mean.
+ * This gives the interval for a participant's mean throughput.
+ *
+ * A resample only updates running sums, so no objects (or arrays) are created per resample. The replicates are kept
+ * in a float array, which is sorted to find the percentiles.
+ *
+ * NOTE: For very short sequences, a resample can draw the same trial n times. SDx is then 0 and the resampled
+ * throughput is infinite. These replicates are kept (they sort to the top), so the upper limit is infinite if they are
+ * more than (1 - confidence) / 2 of the replicates. This only happens with fewer than 5 trials.
+ */
+public class Bootstrap
+{
+    final int resamples;
+    final float confidence;
+    final float[] replicate;
+
+    /**
+     * Create a bootstrap with the specified number of resamples and confidence level (e.g., 0.95f). The object holds
+     * scratch space, so a thread should use its own Bootstrap object.
+     */
+    public Bootstrap(int resamplesArg, float confidenceArg)
+    {
+        if (resamplesArg < 1 || confidenceArg <= 0f || confidenceArg >= 1f)
+            throw new IllegalArgumentException("Bad resamples or confidence: " + resamplesArg + ", " + confidenceArg);
+        resamples = resamplesArg;
+        confidence = confidenceArg;
+        replicate = new float[resamples];
+    }
+
+    /**
+     * Returns the throughput for a sequence, with its confidence interval from resampling the sequence's trials.
+     */
+    public Interval sequenceInterval(SequenceData s, SplittableRandom random)
+    {
+        int n = s.numberOfTrials;
+        float[] deltaX = new float[n];
+        float[] ae = new float[n];
+        int[] miss = new int[n];
+        Throughput.computeTrials(s.fromX, s.fromY, s.toX, s.toY, s.selectX, s.selectY, 0, n, s.w, s.getTaskType(),
+                true, deltaX, ae, miss);
+        float estimate = s.toThroughput().getThroughput();
+        return trialInterval(estimate, deltaX, ae, s.mt, n, random);
+    }
+
+    /**
+     * Returns the confidence interval for throughput from resampling trials, given the per-trial deltaX, effective
+     * amplitude, and movement time (ms) of n trials.
+     */
+    public Interval trialInterval(float estimate, float[] deltaX, float[] ae, float[] mt, int n, SplittableRandom
+            random)
+    {
+        for (int b = 0; b < resamples; ++b)
+        {
+            double sumDeltaX = 0.0, sumDeltaXSquared = 0.0, sumAe = 0.0, sumMT = 0.0;
+            for (int k = 0; k < n; ++k)
+            {
+                int i = random.nextInt(n);
+                sumDeltaX += deltaX[i];
+                sumDeltaXSquared += (double)deltaX[i] * deltaX[i];
+                sumAe += ae[i];
+                sumMT += mt[i];
+            }
+            double meanDeltaX = sumDeltaX / n;
+            float sdx = (float)Math.sqrt(Math.max(0.0, (sumDeltaXSquared - n * meanDeltaX * meanDeltaX) / (n - 1.0)));
+            float we = Throughput.SQRT_2_PI_E * sdx;
+            float ide = (float)Math.log((float)(sumAe / n) / we + 1.0f) / Throughput.LOG_TWO;
+            replicate[b] = ide / ((float)(sumMT / n) / 1000.0f);
+        }
+        return percentiles(estimate);
+    }
+
+    /**
+     * Returns the mean of n values (e.g., the throughputs of a participant's sequences), with its confidence
+     * interval from resampling the values.
+     */
+    public Interval meanInterval(float[] value, int n, SplittableRandom random)
+    {
+        double sum = 0.0;
+        for (int i = 0; i < n; ++i)
+            sum += value[i];
+        float estimate = (float)(sum / n);
+
+        for (int b = 0; b < resamples; ++b)
+        {
+            double s = 0.0;
+            for (int k = 0; k < n; ++k)
+                s += value[random.nextInt(n)];
+            replicate[b] = (float)(s / n);
+        }
+        return percentiles(estimate);
+    }
+
+    // percentile interval from the replicates
+    private Interval percentiles(float estimate)
+    {
+        Arrays.sort(replicate);
+        float alpha = (1f - confidence) / 2f;
+        int lower = Math.round(alpha * (resamples - 1));
+        int upper = Math.round((1f - alpha) * (resamples - 1));
+        return new Interval(estimate, replicate[lower], replicate[upper]);
+    }
+
+    /**
+     * Interval -- an estimate with the lower and upper limits of its confidence interval.
+     */
+    public static class Interval
+    {
+        public final float estimate, lower, upper;
+
+        Interval(float estimateArg, float lowerArg, float upperArg)
+        {
+            estimate = estimateArg;
+            lower = lowerArg;
+            upper = upperArg;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package ca.yorku.cse.mack.fittstools;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * BootstrapCI -- print bootstrap confidence intervals for the throughput in a directory of sd1 files.
+ *
+ * The blocks are found as in Reanalysis, so a compacted study (see Compact) is read from its catalog.
+ *
+ * With -by sequence (the default), there is one line per sequence, with the interval from resampling the sequence's
+ * trials. With -by participant, there is one line per participant x session x group x condition x mode, with the
+ * interval for the mean throughput from resampling the participant's sequences (all blocks).
+ *
+ * Each interval is computed by a separate task, with its own SplittableRandom split (in order) from a generator with
+ * the specified seed, so the output does not depend on the number of threads. Tasks run in parallel (fork/join).
+ *
+ * Usage: BootstrapCI datadir [-by sequence|participant] [-resamples n] [-confidence c] [-seed s] [-threads n]
+ */
+public class BootstrapCI
+{
+    public static void main(String[] args) throws IOException
+    {
+        String dataDirectory = null;
+        boolean byParticipant = false;
+        int resamples = 10000;
+        float confidence = 0.95f;
+        long seed = 1L;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; ++i)
+        {
+            if (args[i].equals("-by") && i + 1 < args.length)
+            {
+                String by = args[++i];
+                if (by.equals("participant"))
+                    byParticipant = true;
+                else if (!by.equals("sequence"))
+                    usage();
+            } else if (args[i].equals("-resamples") && i + 1 < args.length)
+                resamples = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-confidence") && i + 1 < args.length)
+                confidence = Float.parseFloat(args[++i]);
+            else if (args[i].equals("-seed") && i + 1 < args.length)
+                seed = Long.parseLong(args[++i]);
+            else if (args[i].equals("-threads") && i + 1 < args.length)
+                threads = Integer.parseInt(args[++i]);
+            else if (dataDirectory == null)
+                dataDirectory = args[i];
+            else
+                usage();
+        }
+        if (dataDirectory == null)
+            usage();
+
+        // the sequences, and the codes of each sequence's block (see StudyBlock.getCodes)
+        List<SequenceData> sequences = new ArrayList<>();
+        List<String[]> sequenceCodes = new ArrayList<>();
+        for (StudyBlock b : StudyBlock.find(Paths.get(dataDirectory)))
+        {
+            String[] codes = b.getCodes();
+            for (SequenceData s : Sd1Reader.read(b))
+            {
+                sequences.add(s);
+                sequenceCodes.add(codes != null ? codes : new String[] {s.participant, s.session, s.block, s.group,
+                        s.condition, s.mode});
+            }
+        }
+
+        // one task per interval
+        List<Task> tasks = new ArrayList<>();
+        if (byParticipant)
+        {
+            Map<String, List<SequenceData>> participants = new LinkedHashMap<>();
+            for (int i = 0; i < sequences.size(); ++i)
+            {
+                String[] c = sequenceCodes.get(i);
+                String key = String.join(",", c[0], c[1], c[3], c[4], c[5]);
+                participants.computeIfAbsent(key, k -> new ArrayList<>()).add(sequences.get(i));
+            }
+            for (Map.Entry<String, List<SequenceData>> e : participants.entrySet())
+                tasks.add(new Task(e.getKey(), e.getValue()));
+        } else
+            for (int i = 0; i < sequences.size(); ++i)
+            {
+                SequenceData s = sequences.get(i);
+                tasks.add(new Task(String.join(",", String.join(",", sequenceCodes.get(i)), s.aString, s.wString), s));
+            }
+
+        SplittableRandom random = new SplittableRandom(seed);
+        for (Task t : tasks)
+            t.random = random.split();
+
+        long start = System.nanoTime();
+        new ForkJoinPool(threads).invoke(new ComputeIntervals(tasks, 0, tasks.size(), resamples, confidence));
+        long elapsed = System.nanoTime() - start;
+
+        int percent = Math.round(confidence * 100f);
+        System.out.println((byParticipant ? "Participant,Session,Group,Condition,Mode,Sequences,TP(bps)," :
+                "Participant,Session,Block,Group,Condition,Mode,A,W,Trials,TP(bps),") + String.format(Locale.CANADA,
+                "CI%dLower,CI%dUpper", percent, percent));
+        for (Task t : tasks)
+            System.out.printf(Locale.CANADA, "%s,%d,%.4f,%.4f,%.4f%n", t.codes, t.size, t.interval.estimate,
+                    t.interval.lower, t.interval.upper);
+        System.err.printf(Locale.CANADA, "%d intervals, %d resamples each, %d ms (%d threads)%n", tasks.size(),
+                resamples, elapsed / 1000000, threads);
+    }
+
+    private static void usage()
+    {
+        System.err.println("usage: BootstrapCI datadir [-by sequence|participant] [-resamples n] [-confidence c] " +
+                "[-seed s] [-threads n]");
+        System.exit(1);
+    }
+
+    /*
+     * Task -- the data for one interval (a sequence, or a participant's sequences), and the result.
+     */
+    static class Task
+    {
+        final String codes;
+        final SequenceData sequence;
+        final List<SequenceData> sequences;
+        final int size; // trials or sequences
+        SplittableRandom random;
+        Bootstrap.Interval interval;
+
+        Task(String codesArg, SequenceData sequenceArg)
+        {
+            codes = codesArg;
+            sequence = sequenceArg;
+            sequences = null;
+            size = sequenceArg.numberOfTrials;
+        }
+
+        Task(String codesArg, List<SequenceData> sequencesArg)
+        {
+            codes = codesArg;
+            sequence = null;
+            sequences = sequencesArg;
+            size = sequencesArg.size();
+        }
+
+        void compute(Bootstrap bootstrap)
+        {
+            if (sequence != null)
+                interval = bootstrap.sequenceInterval(sequence, random);
+            else
+            {
+                float[] tp = new float[size];
+                for (int i = 0; i < size; ++i)
+                    tp[i] = sequences.get(i).toThroughput().getThroughput();
+                interval = bootstrap.meanInterval(tp, size, random);
+            }
+        }
+    }
+
+    /*
+     * Fork/join task to compute the intervals for a range of tasks. The range is split in half until it is small
+     * enough to compute directly (with one Bootstrap object for the range).
+     */
+    @SuppressWarnings("serial")
+    static class ComputeIntervals extends RecursiveAction
+    {
+        final static int THRESHOLD = 8;
+
+        final List<Task> tasks;
+        final int from, to;
+        final int resamples;
+        final float confidence;
+
+        ComputeIntervals(List<Task> tasksArg, int fromArg, int toArg, int resamplesArg, float confidenceArg)
+        {
+            tasks = tasksArg;
+            from = fromArg;
+            to = toArg;
+            resamples = resamplesArg;
+            confidence = confidenceArg;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from <= THRESHOLD)
+            {
+                Bootstrap bootstrap = new Bootstrap(resamples, confidence);
+                for (int i = from; i < to; ++i)
+                    tasks.get(i).compute(bootstrap);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ComputeIntervals(tasks, from, middle, resamples, confidence), new ComputeIntervals(tasks,
+                    middle, to, resamples, confidence));
+        }
+    }
+}
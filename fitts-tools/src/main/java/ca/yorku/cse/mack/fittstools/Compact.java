@@ -0,0 +1,254 @@
+package ca.yorku.cse.mack.fittstools;
+
+import ca.yorku.cse.mack.fittscore.StudyCatalog;
+import ca.yorku.cse.mack.fittscore.Throughput;
+import ca.yorku.cse.mack.fittscore.TraceBuffer;
+import ca.yorku.cse.mack.fittscore.TraceReader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compact -- merge the small per-block data files in a data directory into one segment file per participant, with
+ * the study catalog (see StudyCatalog) as the index.
+ *
+ * The app adds each block to the catalog (FittsDragAndDrop.catalog) at the end of the block. Blocks with files in
+ * the directory but not in the catalog (e.g., written before there was a catalog, or rebuilt from a journal) are first
+ * added to it: their sd1 files are read for the summary, and their trace files for the number of trials.
+ *
+ * Each block not yet in a segment then has its sd1, sd2, and trace data appended to its participant's segment file,
+ * FittsDragAndDrop-P01.seg (for example), and its catalog entry is changed to the data's offsets in the segment. The
+ * segments are synced before the catalog is replaced, so a crash part way through leaves the catalog pointing at the
+ * original files (the bytes appended to the segments are then not referenced, and are harmless). With -delete, the
+ * original files are deleted once the catalog is replaced.
+ *
+ * With -list, the catalog is listed (optionally, for one participant) without opening any data file. With -extract,
+ * a block's files are written back out (to the data directory, or the -o directory) from wherever the catalog says
+ * they are, for programs that read the sd1, sd2, and sd3 files (e.g., FittsTrace). The tools here (Reanalysis,
+ * BootstrapCI, CubeSummary, Replay, and Sd3bToSd3) read the catalog themselves (see StudyBlock), so they read a
+ * compacted directory as they read the original files.
+ *
+ * Usage: Compact datadir [-delete]
+ *        Compact datadir -list [participant]
+ *        Compact datadir -extract base [-o directory]
+ */
+public class Compact
+{
+    final static String APP = "FittsDragAndDrop";
+    final static String CATALOG = APP + ".catalog";
+    final static String SEGMENT_EXTENSION = ".seg";
+    final static String[] TRACE_EXTENSIONS = {".sd3", ".sd3b", ".sd3m", ".sd3z"};
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 1)
+            usage();
+        File directory = new File(args[0]);
+        File catalogFile = new File(directory, CATALOG);
+        if (args.length >= 2 && args[1].equals("-list") && args.length <= 3)
+            list(StudyCatalog.read(catalogFile), args.length == 3 ? args[2] : null);
+        else if (args.length >= 3 && args[1].equals("-extract"))
+        {
+            File output = directory;
+            if (args.length == 5 && args[3].equals("-o"))
+                output = new File(args[4]);
+            else if (args.length != 3)
+                usage();
+            extract(directory, StudyCatalog.read(catalogFile), args[2], output);
+        } else if (args.length == 1 || args.length == 2 && args[1].equals("-delete"))
+            compact(directory, catalogFile, args.length == 2);
+        else
+            usage();
+    }
+
+    private static void usage()
+    {
+        System.err.println("usage: Compact datadir [-delete]");
+        System.err.println("       Compact datadir -list [participant]");
+        System.err.println("       Compact datadir -extract base [-o directory]");
+        System.exit(1);
+    }
+
+    // list the blocks in the catalog (for one participant, if participant is not null)
+    static void list(StudyCatalog catalog, String participant)
+    {
+        System.out.println("Base,Sequences,Trials,MT(ms),ErrorRate(%),TP(bps),Sd1File,Sd2File,TraceFile");
+        for (StudyCatalog.Entry e : catalog.getEntries())
+            if (participant == null || e.getParticipant().equals(participant))
+                System.out.printf(Locale.CANADA, "%s,%d,%d,%.1f,%.2f,%.2f,%s,%s,%s%n", e.getBase(), e.getSequences(),
+                        e.getTrials(), e.getMT(), e.getErrorRate(), e.getThroughput(), e.getFile(StudyCatalog.SD1),
+                        e.getFile(StudyCatalog.SD2), e.getFile(StudyCatalog.TRACE));
+    }
+
+    // write a block's files, from the catalog's locations, to the output directory
+    static void extract(File directory, StudyCatalog catalog, String base, File output) throws IOException
+    {
+        StudyCatalog.Entry e = catalog.get(base);
+        if (e == null)
+        {
+            System.err.println("Not in the catalog: " + base);
+            System.exit(1);
+        }
+        for (int part = 0; part < StudyCatalog.PARTS; ++part)
+        {
+            File f = new File(output, base + extension(e, part));
+            if (f.getCanonicalFile().equals(new File(directory, e.getFile(part)).getCanonicalFile()))
+                continue; // the block's own file
+            try (InputStream in = StudyCatalog.open(directory, e, part);
+                 FileOutputStream out = new FileOutputStream(f))
+            {
+                copy(in, out);
+            }
+            System.err.println(f);
+        }
+    }
+
+    // add the blocks not in the catalog, append the blocks not in segments to the segments, and replace the catalog
+    static void compact(File directory, File catalogFile, boolean delete) throws IOException
+    {
+        StudyCatalog catalog = StudyCatalog.read(catalogFile);
+        int added = addFiles(directory, catalog);
+
+        Map<String, FileOutputStream> segments = new HashMap<>();
+        List<File> merged = new ArrayList<>();
+        int blocks = 0;
+        long bytes = 0;
+        try
+        {
+            for (StudyCatalog.Entry e : catalog.getEntries())
+            {
+                String segment = APP + "-" + e.getParticipant() + SEGMENT_EXTENSION;
+                if (e.getFile(StudyCatalog.SD1).endsWith(SEGMENT_EXTENSION))
+                    continue; // already in a segment
+                FileOutputStream out = segments.get(segment);
+                if (out == null)
+                {
+                    out = new FileOutputStream(new File(directory, segment), true);
+                    segments.put(segment, out);
+                }
+                for (int part = 0; part < StudyCatalog.PARTS; ++part)
+                {
+                    long offset = out.getChannel().position();
+                    long length;
+                    try (InputStream in = StudyCatalog.open(directory, e, part))
+                    {
+                        length = copy(in, out);
+                    }
+                    if (length != e.getLength(part))
+                        throw new IOException("File changed since it was cataloged: " + e.getFile(part));
+                    merged.add(new File(directory, e.getFile(part)));
+                    e.setLocation(part, segment, offset, length);
+                    bytes += length;
+                }
+                ++blocks;
+            }
+            for (FileOutputStream out : segments.values())
+                out.getFD().sync();
+        } finally
+        {
+            for (FileOutputStream out : segments.values())
+                out.close();
+        }
+        catalog.write(catalogFile);
+
+        if (delete)
+            for (File f : merged)
+                if (!f.delete())
+                    System.err.println("Not deleted: " + f);
+        System.err.printf(Locale.CANADA, "%d blocks added to the catalog, %d blocks (%d bytes) merged into %d " +
+                "segments%s%n", added, blocks, bytes, segments.size(), delete && !merged.isEmpty() ? " (files " +
+                "deleted)" : "");
+    }
+
+    // add the blocks with files in the directory but not in the catalog; returns the number added
+    static int addFiles(File directory, StudyCatalog catalog) throws IOException
+    {
+        File[] files = directory.listFiles((d, name) -> name.startsWith(APP) && (name.endsWith(".sd1") || name
+                .endsWith(".sd1z")));
+        if (files == null)
+            throw new IOException("Not a directory: " + directory);
+        Arrays.sort(files);
+        int added = 0;
+        for (File sd1 : files)
+        {
+            String base = sd1.getName().substring(0, sd1.getName().lastIndexOf('.'));
+            File sd2 = new File(directory, base + ".sd2");
+            File trace = null;
+            for (String extension : TRACE_EXTENSIONS)
+                if (new File(directory, base + extension).exists())
+                    trace = new File(directory, base + extension);
+            if (catalog.get(base) != null || !sd2.exists() || trace == null)
+                continue;
+            catalog.put(summarize(base, sd1, sd2, trace));
+            ++added;
+        }
+        return added;
+    }
+
+    /*
+     * A catalog entry for a block's files (the summary is computed as in the app, see Reanalysis). The codes are taken
+     * from the filename, as the app writes "B01" as the block code in every sd1 file.
+     */
+    static StudyCatalog.Entry summarize(String base, File sd1, File sd2, File trace) throws IOException
+    {
+        String[] codes = StudyBlock.codes(base);
+        int sequences = 0, trials = 0, misses = 0;
+        double sumMT = 0, sumTP = 0;
+        for (SequenceData s : Sd1Reader.read(sd1))
+        {
+            if (codes == null)
+                codes = new String[] {s.participant, s.session, s.block, s.group, s.condition, s.mode};
+            Throughput t = s.toThroughput();
+            ++sequences;
+            trials += t.getNumberOfTrials();
+            misses += t.getMisses();
+            sumMT += t.getMT() * t.getNumberOfTrials();
+            sumTP += t.getThroughput();
+        }
+        if (codes == null)
+            throw new IOException("Unexpected filename: " + sd1);
+
+        int traceTrials = 0;
+        TraceBuffer buffer = new TraceBuffer();
+        try (TraceReader in = Replay.open(trace))
+        {
+            while (in.next(buffer))
+                ++traceTrials;
+        }
+        return new StudyCatalog.Entry(base, codes, sequences, trials, (float)(sumMT / trials), 100.0f * misses / trials,
+                (float)(sumTP / sequences), new File[] {sd1, sd2, trace}, new int[] {trials, sequences, traceTrials});
+    }
+
+    // the extension of a block's file for a part
+    private static String extension(StudyCatalog.Entry e, int part)
+    {
+        if (part == StudyCatalog.SD1)
+            return "." + e.getSd1Format();
+        if (part == StudyCatalog.SD2)
+            return ".sd2";
+        return "." + e.getTraceFormat();
+    }
+
+    // copy in to out; returns the number of bytes
+    private static long copy(InputStream in, OutputStream out) throws IOException
+    {
+        byte[] b = new byte[64 * 1024];
+        long total = 0;
+        int n;
+        while ((n = in.read(b)) > 0)
+        {
+            out.write(b, 0, n);
+            total += n;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,77 @@
+package ca.yorku.cse.mack.fittstools;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * CubeSummary -- load the sd1 files in a directory into a ResultCube and print the means of the sd2 measures, rolled
+ * up over all but the specified dimensions. The blocks are found as in Reanalysis, so a compacted study (see Compact)
+ * is read from its catalog. The codes for a sequence are its block's (see StudyBlock.getCodes), as in Reanalysis.
+ *
+ * Usage: CubeSummary datadir [dimension ...]
+ *
+ * where each dimension is one of Participant, Session, Block, Group, Condition, Mode, A, W. For example,
+ * "CubeSummary data Condition Mode" prints the mean throughput (etc.) for each condition x mode, followed by the grand
+ * means.
+ */
+public class CubeSummary
+{
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 1)
+        {
+            System.err.println("usage: CubeSummary datadir [dimension ...]");
+            System.exit(1);
+        }
+        int[] by = new int[args.length - 1];
+        for (int i = 1; i < args.length; ++i)
+        {
+            by[i - 1] = -1;
+            for (int d = 0; d < ResultCube.DIMENSION_NAMES.length; ++d)
+                if (ResultCube.DIMENSION_NAMES[d].equalsIgnoreCase(args[i]))
+                    by[i - 1] = d;
+            if (by[i - 1] < 0)
+            {
+                System.err.println("Unknown dimension: " + args[i]);
+                System.exit(1);
+            }
+        }
+
+        ResultCube cube = new ResultCube();
+        for (StudyBlock b : StudyBlock.find(Paths.get(args[0])))
+        {
+            String[] codes = b.getCodes();
+            for (SequenceData s : Sd1Reader.read(b))
+                cube.add(codes, s, s.toThroughput());
+        }
+        if (cube.getSequencesNotAdded() > 0)
+            System.err.printf(Locale.CANADA, "%d sequences not included: %s%n", cube.getSequencesNotAdded(),
+                    cube.getOverflow());
+
+        StringBuilder header = new StringBuilder();
+        for (int d : by)
+            header.append(ResultCube.DIMENSION_NAMES[d]).append(',');
+        header.append("Sequences");
+        for (String name : ResultCube.MEASURE_NAMES)
+            header.append(',').append(name);
+        System.out.println(header);
+
+        List<ResultCube.Aggregate> rows = new ArrayList<>(cube.rollUp(by));
+        if (by.length > 0 && cube.getTotal() != null)
+            rows.add(cube.getTotal());
+        for (ResultCube.Aggregate a : rows)
+        {
+            StringBuilder sb = new StringBuilder();
+            for (int d : by)
+                sb.append(a.getCode(d) == null ? "ALL" : a.getCode(d)).append(',');
+            sb.append(a.getCount());
+            for (int m = 0; m < ResultCube.MEASURE_NAMES.length; ++m)
+                sb.append(String.format(Locale.CANADA, ",%.4f", a.getMean(m)));
+            System.out.println(sb);
+        }
+        System.err.printf(Locale.CANADA, "%d cells%n", cube.getNumberOfCells());
+    }
+}
@@ -0,0 +1,207 @@
+package ca.yorku.cse.mack.fittstools;
+
+import ca.yorku.cse.mack.fittscore.Throughput;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Reanalysis -- regenerate sd2 data (one line per sequence) from a directory of sd1 files.
+ *
+ * The directory is searched (recursively) for FittsDragAndDrop blocks: those in a study catalog (see Compact), and
+ * those with an sd1 (or sd1z) file but not in a catalog (see StudyBlock). The trials in each block are grouped into
+ * sequences and the sd2 measures (Ae, We, IDe, MT, error rate, throughput) are recomputed with the Throughput class,
+ * from the whole sequence. Files are processed in parallel (fork/join) and the results are merged, in filename order,
+ * into a single sd2 output file.
+ *
+ * The app computes the same measures as each trial is added (ThroughputAccumulator, with running means and variances),
+ * so the results agree with the app's sd2 files to within rounding (in the last digits), not exactly. The error
+ * rate and the number of trials are the same.
+ *
+ * The codes (participant, session, block, etc.) are the block's, from its catalog entry or its filename (see
+ * StudyBlock.getCodes), as in the app's sd2 file. The block code in the sd1 data is always "B01".
+ *
+ * The sequence repeat count is not in the sd1 file. It is taken from the block's sd2 data, if there are any, or is 0
+ * otherwise.
+ *
+ * With -kernel vector, the per-trial calculations use the fastest TrialKernel available (see TrialKernels) instead of
+ * the Throughput class. The results then agree with those of the Throughput class to within float rounding.
+ *
+ * Usage: Reanalysis datadir [-o output.sd2] [-threads n] [-kernel scalar|vector]
+ */
+public class Reanalysis
+{
+    final static String APP = "FittsDragAndDrop";
+    final static String SD2_HEADER = "App,Participant,Session,Block,Group,Condition,Mode,Trials," +
+            "A,W,ID,Ae,We,IDe,PickupMisses,SequenceRepeatCount,MT(ms),ErrorRate(%),TP(bps)";
+
+    public static void main(String[] args) throws IOException
+    {
+        String dataDirectory = null;
+        String output = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        TrialKernel kernel = null;
+        for (int i = 0; i < args.length; ++i)
+        {
+            if (args[i].equals("-o") && i + 1 < args.length)
+                output = args[++i];
+            else if (args[i].equals("-threads") && i + 1 < args.length)
+                threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-kernel") && i + 1 < args.length)
+            {
+                String name = args[++i];
+                if (name.equals("vector"))
+                    kernel = TrialKernels.best();
+                else if (!name.equals("scalar"))
+                    usage();
+            } else if (dataDirectory == null)
+                dataDirectory = args[i];
+            else
+                usage();
+        }
+        if (dataDirectory == null)
+            usage();
+
+        List<StudyBlock> blocks = StudyBlock.find(Paths.get(dataDirectory));
+        long start = System.nanoTime();
+        List<String> lines = new ForkJoinPool(threads).invoke(new AnalyzeBlocks(blocks, 0, blocks.size(), kernel));
+        long elapsed = System.nanoTime() - start;
+
+        Writer w = output == null ? new OutputStreamWriter(System.out) : new FileWriter(output);
+        try (BufferedWriter bw = new BufferedWriter(w))
+        {
+            bw.write(SD2_HEADER);
+            bw.newLine();
+            for (String line : lines)
+            {
+                bw.write(line);
+                bw.newLine();
+            }
+        }
+        System.err.printf(Locale.CANADA, "%d blocks, %d sequences, %d ms (%d threads, %s kernel)%n", blocks.size(),
+                lines.size(), elapsed / 1000000, threads, kernel == null ? "Throughput" : kernel.getName());
+    }
+
+    private static void usage()
+    {
+        System.err.println("usage: Reanalysis datadir [-o output.sd2] [-threads n] [-kernel scalar|vector]");
+        System.exit(1);
+    }
+
+    /**
+     * Returns the sd2 lines for the sequences in a block. If kernel is null, the measures are computed by the
+     * Throughput class; otherwise, by the specified kernel.
+     */
+    static List<String> analyze(StudyBlock block, TrialKernel kernel) throws IOException
+    {
+        Map<String, String> repeatCount = readRepeatCounts(block.openSd2());
+        List<String> lines = new ArrayList<>();
+        String[] blockCodes = block.getCodes();
+        for (SequenceData s : Sd1Reader.read(block))
+        {
+            String[] codes = blockCodes != null ? blockCodes : new String[] {s.participant, s.session, s.block,
+                    s.group, s.condition, s.mode};
+            String repeats = repeatCount.get(s.aString + "," + s.wString);
+            if (repeats == null)
+                repeats = "0";
+            if (kernel == null)
+            {
+                Throughput t = s.toThroughput();
+                lines.add(String.format(Locale.CANADA, "%s,%s,%s,%s,%s,%s,%s,%d,%s,%s,%s,%s,%s,%s,%d,%s,%s,%s,%s", APP,
+                        codes[0], codes[1], codes[2], codes[3], codes[4], codes[5], t.getNumberOfTrials(), t.getA(),
+                        t.getW(), t.getID(), t.getAe(), t.getWe(), t.getIDe(), s.pickupMisses, repeats,
+                        t.getMT(), t.getErrorRate(), t.getThroughput()));
+            } else
+            {
+                SequenceMeasures m = new SequenceMeasures(s, kernel);
+                lines.add(String.format(Locale.CANADA, "%s,%s,%s,%s,%s,%s,%s,%d,%s,%s,%s,%s,%s,%s,%d,%s,%s,%s,%s", APP,
+                        codes[0], codes[1], codes[2], codes[3], codes[4], codes[5], m.numberOfTrials, s.a, s.w, m.id,
+                        m.ae, m.we, m.ide, s.pickupMisses, repeats, m.mt, m.errorRate, m.throughput));
+            }
+        }
+        return lines;
+    }
+
+    // map "A,W" to the sequence repeat count in a block's sd2 data (empty if there are none), and close the reader
+    private static Map<String, String> readRepeatCounts(BufferedReader sd2) throws IOException
+    {
+        Map<String, String> repeatCount = new HashMap<>();
+        if (sd2 == null)
+            return repeatCount;
+        try (BufferedReader br = sd2)
+        {
+            String header = br.readLine();
+            if (header == null)
+                return repeatCount;
+            Map<String, Integer> column = Sd1Reader.columnIndex(header);
+            Integer a = column.get("A"), w = column.get("W"), repeats = column.get("SequenceRepeatCount");
+            if (a == null || w == null || repeats == null)
+                return repeatCount;
+            String line;
+            while ((line = br.readLine()) != null)
+            {
+                String[] field = line.split(",", -1);
+                if (field.length > repeats)
+                    repeatCount.put(field[a] + "," + field[w], field[repeats]);
+            }
+        }
+        return repeatCount;
+    }
+
+    /*
+     * Fork/join task to analyze a range of blocks. The range is split in half until it holds a single block. Results
+     * are joined in block order.
+     */
+    @SuppressWarnings("serial")
+    static class AnalyzeBlocks extends RecursiveTask<List<String>>
+    {
+        final List<StudyBlock> blocks;
+        final int from, to;
+        final TrialKernel kernel;
+
+        AnalyzeBlocks(List<StudyBlock> blocksArg, int fromArg, int toArg, TrialKernel kernelArg)
+        {
+            blocks = blocksArg;
+            from = fromArg;
+            to = toArg;
+            kernel = kernelArg;
+        }
+
+        @Override
+        protected List<String> compute()
+        {
+            if (to - from <= 1)
+            {
+                if (to == from)
+                    return new ArrayList<>();
+                try
+                {
+                    return analyze(blocks.get(from), kernel);
+                } catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            int middle = (from + to) >>> 1;
+            AnalyzeBlocks left = new AnalyzeBlocks(blocks, from, middle, kernel);
+            left.fork();
+            List<String> right = new AnalyzeBlocks(blocks, middle, to, kernel).compute();
+            List<String> lines = left.join();
+            lines.addAll(right);
+            return lines;
+        }
+    }
+}
@@ -0,0 +1,878 @@
+package ca.yorku.cse.mack.fittstools;
+
+import ca.yorku.cse.mack.fittscore.BinaryTraceWriter;
+import ca.yorku.cse.mack.fittscore.CompressedTextWriter;
+import ca.yorku.cse.mack.fittscore.DragTrialLogic;
+import ca.yorku.cse.mack.fittscore.FittsModel;
+import ca.yorku.cse.mack.fittscore.MappedTraceStore;
+import ca.yorku.cse.mack.fittscore.RecordEncoder;
+import ca.yorku.cse.mack.fittscore.TargetLayout;
+import ca.yorku.cse.mack.fittscore.TargetShape;
+import ca.yorku.cse.mack.fittscore.ThroughputAccumulator;
+import ca.yorku.cse.mack.fittscore.TraceBuffer;
+import ca.yorku.cse.mack.fittscore.TraceReader;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Replay -- replay a block recorded by the app through the app's trial logic (DragTrialLogic), without a device.
+ *
+ * The trials in an sd1 file and the trace data in the matching sd3, sd3b, or sd3m file are turned back into the touch
+ * events that produced them. For each sequence, these are the start circle and the first target selection, then, for
+ * each trial, the pickup misses, the finger down (FingerDownX, FingerDownY), the moves (the trace), and the finger up
+ * (SelectX, SelectY), at their original times. Sequences that were repeated after an outlier (SequenceRepeatCount, in
+ * the sd2 file) are replayed too, using the trace data for the abandoned attempt if there are any. The events are
+ * passed to a DragTrialLogic, as FittsDragAndDropActivity.onTouch passes them, and the sd1 lines, sd2 lines, and traces
+ * it produces are compared with the originals. Differences are reported by column, and the exit status is 2 if there
+ * are any, so the tool serves as a regression test for the trial logic. (An sd3z file is read as the sd3 text it
+ * holds.) If the block is in the study catalog in the sd1 file's directory, its data are read from wherever the
+ * catalog says they are, so a compacted block (see Compact) is replayed by naming its sd1 file.
+ *
+ * The events are replayed as fast as possible or, with -realtime, at their original timing. With -repeat n, the block
+ * is replayed n times and the event and trial rates are reported (the first replay, which also does the comparison,
+ * is a warm-up), as a benchmark of the data path. With -o, the regenerated sd1, sd2, and trace files (in the format of
+ * the input trace file) are written to a directory, and writing them is part of the benchmark.
+ *
+ * Some values cannot be recovered from the files, so they differ from the originals:
+ *
+ * <pre>
+ *      - the samples batched into move events are replayed as moves (HistoricalSamples is 0)
+ *      - if the trace was simplified (TraceCompression above 1), the dropped samples are not replayed, so the path
+ *        measures differ
+ *      - the AllBlocks model lines depend on earlier blocks, and are not compared
+ * </pre>
+ *
+ * The centre of the layout (the centre of the display) is found from the first target in the first sequence; use
+ * -screen to give the display size instead.
+ *
+ * Usage: Replay input.sd1 [-trace input.sd3|.sd3b|.sd3m|.sd3z] [-o directory] [-realtime] [-repeat n] [-tolerance px]
+ * [-screen WxH]
+ */
+public class Replay
+{
+    final static String MODEL_DATA = "MODEL DATA";
+    final static String SD2_MODEL_COLUMNS = "App,Participant,Session,Block,Group,Condition,Mode,Scope,Predictor," +
+            "Sequences,Intercept(ms),Slope(ms/bit),R2";
+    final static String[] CODE_COLUMNS = Sd1Reader.CODE_COLUMNS;
+    final static int MAXIMUM_MESSAGES = 10; // trace differences reported individually
+    final static String NEWLINE = System.lineSeparator();
+
+    // event types
+    final static byte START = 0, DOWN = 1, MOVE = 2, UP = 3;
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        String sd1 = null, traceFile = null, outputDirectory = null;
+        boolean realtime = false;
+        int repeat = 1;
+        float tolerance = 0f;
+        int screenWidth = 0, screenHeight = 0;
+        for (int i = 0; i < args.length; ++i)
+        {
+            if (args[i].equals("-trace") && i + 1 < args.length)
+                traceFile = args[++i];
+            else if (args[i].equals("-o") && i + 1 < args.length)
+                outputDirectory = args[++i];
+            else if (args[i].equals("-realtime"))
+                realtime = true;
+            else if (args[i].equals("-repeat") && i + 1 < args.length)
+                repeat = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-tolerance") && i + 1 < args.length)
+                tolerance = Float.parseFloat(args[++i]);
+            else if (args[i].equals("-screen") && i + 1 < args.length)
+            {
+                String[] size = args[++i].split("x");
+                if (size.length != 2)
+                    usage();
+                screenWidth = Integer.parseInt(size[0]);
+                screenHeight = Integer.parseInt(size[1]);
+            } else if (sd1 == null)
+                sd1 = args[i];
+            else
+                usage();
+        }
+        if (sd1 == null || repeat < 1)
+            usage();
+
+        StudyBlock study = StudyBlock.locate(new File(sd1));
+        String traceName = traceFile != null ? new File(traceFile).getName() : study.getTraceFormat() == null ? null :
+                study.getBase() + "." + study.getTraceFormat();
+        RecordedBlock block = RecordedBlock.read(study, traceFile == null ? null : new File(traceFile));
+        if (screenWidth > 0)
+            block.setScreen(screenWidth / 2f, screenHeight / 2f);
+
+        int differences = 0;
+        long elapsed = 0;
+        Player player = null;
+        for (int r = 0; r < repeat; ++r)
+        {
+            Output output = outputDirectory == null ? null : new Output(new File(outputDirectory), study.getBase(),
+                    traceName, block);
+            boolean first = player == null;
+            Player p = new Player(block, tolerance, realtime, output, first ? null : player.events);
+            long start = System.nanoTime();
+            p.run();
+            if (output != null)
+                output.close(p);
+            if (first)
+            {
+                player = p;
+                differences = player.compare();
+            } else
+                elapsed += System.nanoTime() - start;
+        }
+
+        if (repeat > 1)
+        {
+            int replays = repeat - 1;
+            double seconds = elapsed / 1e9;
+            System.err.printf(Locale.CANADA, "%d replays: %d events, %d trials in %d ms (%.0f events/s, %.0f " +
+                    "trials/s)%n", replays, (long)player.events.size * replays, (long)player.trials * replays,
+                    elapsed / 1000000, player.events.size * replays / seconds, player.trials * replays / seconds);
+        }
+        if (differences > 0)
+            System.exit(2);
+    }
+
+    private static void usage()
+    {
+        System.err.println("usage: Replay input.sd1 [-trace input.sd3|.sd3b|.sd3m|.sd3z] [-o directory] [-realtime] " +
+                "[-repeat n] [-tolerance px] [-screen WxH]");
+        System.exit(1);
+    }
+
+    // =================================================================================
+    // The recorded data
+    // =================================================================================
+
+    /*
+     * A trial in the trace file.
+     */
+    static class TraceTrial
+    {
+        final int sequence, trial;
+        final TraceBuffer trace;
+
+        TraceTrial(int sequenceArg, int trialArg, TraceBuffer traceArg)
+        {
+            sequence = sequenceArg;
+            trial = trialArg;
+            trace = traceArg;
+        }
+    }
+
+    /*
+     * A trial in the sd1 file (with its trace, if there are trace data).
+     */
+    static class RecordedTrial
+    {
+        String line;
+        float fromX, fromY, downX, downY, selectX, selectY;
+        long downUpTime, mt;
+        int pickupMisses;
+        TraceBuffer trace;
+    }
+
+    /*
+     * A sequence in the sd1 file, with its sd2 line and the trace data for attempts abandoned after an outlier.
+     */
+    static class RecordedSequence
+    {
+        float a, w;
+        List<RecordedTrial> trials = new ArrayList<>();
+        List<List<TraceTrial>> abandoned = new ArrayList<>();
+        int repeats; // from the sd2 file (0 if there is none)
+        int abandonedPickupMisses; // pickup misses during the completed trials of abandoned attempts
+    }
+
+    /*
+     * The block: the sequences, the codes, and the original output (for comparison).
+     */
+    static class RecordedBlock
+    {
+        String sd1Header, sd2Header;
+        String sd1Codes, sd2Codes;
+        boolean oneDimensional;
+        int numberOfTrials, numberOfTargets;
+        float xCenter, yCenter;
+        int targetHeight1D;
+        List<RecordedSequence> sequences = new ArrayList<>();
+        List<String> sd1Lines = new ArrayList<>();
+        List<String> sd2Lines = new ArrayList<>();
+        List<String> sd2ModelLines = new ArrayList<>(); // Block scope only
+        String traceApp, traceParticipant, traceCondition, traceBlock;
+
+        // read a block (with the trace data in traceFile, if not null, instead of the block's)
+        static RecordedBlock read(StudyBlock study, File traceFile) throws IOException
+        {
+            RecordedBlock b = new RecordedBlock();
+            b.readSd1(study.openSd1(), study.getName());
+            if (b.sequences.isEmpty())
+                throw new IOException(study + ": no trials");
+            b.readSd2(study.openSd2());
+            TraceReader trace = traceFile != null ? open(traceFile) : study.openTrace();
+            if (trace != null)
+                b.readTraces(trace);
+
+            RecordedSequence first = b.sequences.get(0);
+            b.numberOfTrials = first.trials.size();
+            b.numberOfTargets = b.oneDimensional ? 2 : b.numberOfTrials;
+            // the first target of a sequence is target 0 in the layout, at angle 0 (to the right of the centre)
+            float x0 = first.trials.get(0).fromX - TargetLayout.get(first.a, b.numberOfTargets).getTargetX(0, 0f);
+            b.setScreen(Math.round(x0 * 2f) / 2f, first.trials.get(0).fromY);
+            return b;
+        }
+
+        void setScreen(float xCenterArg, float yCenterArg)
+        {
+            xCenter = xCenterArg;
+            yCenter = yCenterArg;
+            targetHeight1D = (int)((int)(2f * yCenter) * 0.9f); // as in the app: 90% of the display height
+        }
+
+        private void readSd1(BufferedReader in, String f) throws IOException
+        {
+            try (BufferedReader br = in)
+            {
+                sd1Header = br.readLine();
+                if (sd1Header == null)
+                    return;
+                Map<String, Integer> column = Sd1Reader.columnIndex(sd1Header);
+                int[] code = new int[CODE_COLUMNS.length];
+                for (int i = 0; i < code.length; ++i)
+                    code[i] = require(column, CODE_COLUMNS[i], f);
+                int trial = require(column, "Trial", f);
+                int a = require(column, "A", f);
+                int w = require(column, "W", f);
+                int fromX = require(column, "FromX", f);
+                int fromY = require(column, "FromY", f);
+                int downX = require(column, "FingerDownX", f);
+                int downY = require(column, "FingerDownY", f);
+                int selectX = require(column, "SelectX", f);
+                int selectY = require(column, "SelectY", f);
+                int downUpTime = require(column, "FingerDownUpTime(ms)", f);
+                int mt = require(column, "MT(ms)", f);
+                int pickupMisses = require(column, "PickupMisses", f);
+
+                RecordedSequence s = null;
+                String line;
+                while ((line = br.readLine()) != null)
+                {
+                    if (line.isEmpty())
+                        continue;
+                    String[] field = line.split(",", -1);
+                    if (sd1Codes == null)
+                    {
+                        StringBuilder sb = new StringBuilder();
+                        for (int i = 0; i < code.length; ++i)
+                            sb.append(i == 0 ? "" : ",").append(field[code[i]]);
+                        sd1Codes = sb.toString();
+                        oneDimensional = field[code[code.length - 1]].equals("1D");
+                    }
+                    float aValue = Float.parseFloat(field[a]);
+                    float wValue = Float.parseFloat(field[w]);
+                    if (s == null || s.a != aValue || s.w != wValue || field[trial].equals("0"))
+                    {
+                        s = new RecordedSequence();
+                        s.a = aValue;
+                        s.w = wValue;
+                        sequences.add(s);
+                    }
+                    RecordedTrial t = new RecordedTrial();
+                    t.line = line;
+                    t.fromX = Float.parseFloat(field[fromX]);
+                    t.fromY = Float.parseFloat(field[fromY]);
+                    t.downX = Float.parseFloat(field[downX]);
+                    t.downY = Float.parseFloat(field[downY]);
+                    t.selectX = Float.parseFloat(field[selectX]);
+                    t.selectY = Float.parseFloat(field[selectY]);
+                    t.downUpTime = Long.parseLong(field[downUpTime]);
+                    t.mt = Long.parseLong(field[mt]);
+                    t.pickupMisses = Integer.parseInt(field[pickupMisses]);
+                    s.trials.add(t);
+                    sd1Lines.add(line);
+                }
+            }
+        }
+
+        // read the sequence lines and the Block model lines (the sd2 data are optional: in is null if there are none)
+        private void readSd2(BufferedReader in) throws IOException
+        {
+            if (in != null)
+            {
+                try (BufferedReader br = in)
+                {
+                    sd2Header = br.readLine();
+                    Map<String, Integer> column = Sd1Reader.columnIndex(sd2Header == null ? "" : sd2Header);
+                    Integer repeats = column.get("SequenceRepeatCount");
+                    Integer pickupMisses = column.get("PickupMisses");
+                    Integer scope = null;
+                    boolean models = false;
+                    String line;
+                    while ((line = br.readLine()) != null)
+                    {
+                        if (line.isEmpty())
+                            continue;
+                        if (line.equals(MODEL_DATA))
+                        {
+                            models = true;
+                            String header = br.readLine();
+                            scope = Sd1Reader.columnIndex(header == null ? "" : header).get("Scope");
+                            continue;
+                        }
+                        String[] field = line.split(",", -1);
+                        if (models)
+                        {
+                            if (scope != null && field.length > scope && field[scope].equals("Block"))
+                                sd2ModelLines.add(line);
+                            continue;
+                        }
+                        int i = sd2Lines.size();
+                        sd2Lines.add(line);
+                        if (sd2Codes == null && field.length > CODE_COLUMNS.length)
+                            sd2Codes = line.substring(0, nthComma(line, CODE_COLUMNS.length + 1));
+                        if (i < sequences.size() && repeats != null && pickupMisses != null)
+                        {
+                            RecordedSequence s = sequences.get(i);
+                            s.repeats = Integer.parseInt(field[repeats]);
+                            int misses = Integer.parseInt(field[pickupMisses]);
+                            for (RecordedTrial t : s.trials)
+                                misses -= t.pickupMisses;
+                            s.abandonedPickupMisses = Math.max(0, misses);
+                        }
+                    }
+                }
+            }
+            if (sd2Header == null)
+                sd2Header = Reanalysis.SD2_HEADER;
+            if (sd2Codes == null)
+                sd2Codes = Reanalysis.APP + "," + sd1Codes;
+        }
+
+        /*
+         * Read the traces and attach them to the trials. The trials for a sequence are in one or more attempts (a new
+         * attempt begins when the trial number does not increase). The last attempt is the one in the sd1 file; the
+         * others were abandoned after an outlier.
+         */
+        private void readTraces(TraceReader reader) throws IOException
+        {
+            Map<Integer, List<List<TraceTrial>>> attempts = new LinkedHashMap<>();
+            try (TraceReader in = reader)
+            {
+                TraceBuffer trace = new TraceBuffer();
+                int lastSequence = -1, lastTrial = -1;
+                while (in.next(trace))
+                {
+                    if (traceApp == null)
+                    {
+                        traceApp = in.getApp();
+                        traceParticipant = in.getParticipant();
+                        traceCondition = in.getCondition();
+                        traceBlock = in.getBlock();
+                    }
+                    List<List<TraceTrial>> list = attempts.get(in.getSequence());
+                    if (list == null)
+                    {
+                        list = new ArrayList<>();
+                        attempts.put(in.getSequence(), list);
+                    }
+                    if (list.isEmpty() || in.getSequence() != lastSequence || in.getTrial() <= lastTrial)
+                        list.add(new ArrayList<TraceTrial>());
+                    list.get(list.size() - 1).add(new TraceTrial(in.getSequence(), in.getTrial(), trace.copy()));
+                    lastSequence = in.getSequence();
+                    lastTrial = in.getTrial();
+                }
+            }
+
+            for (int i = 0; i < sequences.size(); ++i)
+            {
+                List<List<TraceTrial>> list = attempts.get(i + 1);
+                if (list == null)
+                    continue;
+                RecordedSequence s = sequences.get(i);
+                List<TraceTrial> kept = list.get(list.size() - 1);
+                for (TraceTrial t : kept)
+                    if (t.trial >= 1 && t.trial <= s.trials.size())
+                        s.trials.get(t.trial - 1).trace = t.trace;
+                s.abandoned.addAll(list.subList(0, list.size() - 1));
+            }
+        }
+
+        // the index of the nth comma in s (or the length of s, if there are fewer)
+        private static int nthComma(String s, int n)
+        {
+            int i = -1;
+            for (int k = 0; k < n; ++k)
+            {
+                i = s.indexOf(',', i + 1);
+                if (i < 0)
+                    return s.length();
+            }
+            return i;
+        }
+
+        private static int require(Map<String, Integer> column, String name, String f) throws IOException
+        {
+            Integer i = column.get(name);
+            if (i == null)
+                throw new IOException(String.format("%s: no \"%s\" column in header", f, name));
+            return i;
+        }
+    }
+
+    // open a trace file (sd3 text, sd3z, sd3b, or sd3m), choosing the reader by the file's extension
+    static TraceReader open(File f) throws IOException
+    {
+        if (f.getName().endsWith(".sd3") || f.getName().endsWith(".sd3z"))
+            return new Sd3Reader(SdzToText.openText(f));
+        return Sd3bToSd3.open(f.getPath());
+    }
+
+    // =================================================================================
+    // The events
+    // =================================================================================
+
+    /*
+     * The touch events of a replay, kept in parallel arrays so a block can be replayed again without regenerating
+     * them.
+     */
+    static class EventLog
+    {
+        byte[] type = new byte[1024];
+        long[] time = new long[1024];
+        float[] x = new float[1024];
+        float[] y = new float[1024];
+        int size;
+
+        void add(byte typeArg, long timeArg, float xArg, float yArg)
+        {
+            if (size == type.length)
+            {
+                type = Arrays.copyOf(type, 2 * size);
+                time = Arrays.copyOf(time, 2 * size);
+                x = Arrays.copyOf(x, 2 * size);
+                y = Arrays.copyOf(y, 2 * size);
+            }
+            type[size] = typeArg;
+            time[size] = timeArg;
+            x[size] = xArg;
+            y[size] = yArg;
+            ++size;
+        }
+    }
+
+    /*
+     * Plays the events for a block into a DragTrialLogic, and collects (and optionally writes) what it produces.
+     */
+    static class Player implements DragTrialLogic.Listener
+    {
+        final RecordedBlock block;
+        final boolean realtime;
+        final Output output;
+        final DragTrialLogic logic;
+        final EventLog events;
+        final boolean generate; // true to generate the events (and compare the results), false to replay a log
+
+        long clock; // time of the last event
+        long realtimeStart, firstEventTime;
+        TraceBuffer expectedTrace;
+        int trials, sequences, outliers;
+        int traceDifferences;
+        final List<String> sd1Lines = new ArrayList<>();
+        final List<String> sd2Lines = new ArrayList<>();
+        final FittsModel blockModelIDe = new FittsModel(), blockModelID = new FittsModel();
+
+        Player(RecordedBlock blockArg, float tolerance, boolean realtimeArg, Output outputArg, EventLog log)
+        {
+            block = blockArg;
+            realtime = realtimeArg;
+            output = outputArg;
+            generate = log == null;
+            events = generate ? new EventLog() : log;
+            float[] a = new float[block.sequences.size()];
+            float[] w = new float[block.sequences.size()];
+            for (int i = 0; i < a.length; ++i)
+            {
+                a[i] = block.sequences.get(i).a;
+                w[i] = block.sequences.get(i).w;
+            }
+            logic = new DragTrialLogic(block.sd1Codes, block.sd2Codes, block.oneDimensional, a, w,
+                    block.numberOfTrials, block.numberOfTargets, block.xCenter, block.yCenter, block.targetHeight1D,
+                    tolerance, this);
+        }
+
+        void run() throws IOException, InterruptedException
+        {
+            realtimeStart = System.nanoTime();
+            if (!generate)
+            {
+                firstEventTime = events.time[0];
+                for (int i = 0; i < events.size; ++i)
+                    dispatch(events.type[i], events.time[i], events.x[i], events.y[i]);
+                return;
+            }
+
+            for (RecordedSequence s : block.sequences)
+            {
+                // outliers for which there are no trace data (the outlier was the first trial)
+                for (int i = s.abandoned.size(); i < s.repeats; ++i)
+                    playAbandoned(new ArrayList<TraceTrial>(), 0);
+                for (int i = 0; i < s.abandoned.size(); ++i)
+                    playAbandoned(s.abandoned.get(i), i == s.abandoned.size() - 1 ? s.abandonedPickupMisses : 0);
+
+                startSequence(s.trials.get(0).trace);
+                for (RecordedTrial t : s.trials)
+                    playTrial(t.trace, t.downX, t.downY, t.mt - t.downUpTime, t.selectX, t.selectY, t.mt, t
+                            .pickupMisses);
+            }
+        }
+
+        // select the start circle, then the first target (at the first point in the first trial's trace)
+        private void startSequence(TraceBuffer trace) throws InterruptedException
+        {
+            event(START, clock, 0f, 0f);
+            TargetShape from = logic.getFromTarget();
+            event(DOWN, clock, from.xCenter, from.yCenter);
+            TargetShape to = logic.getToTarget();
+            float x = to.xCenter, y = to.yCenter;
+            if (trace != null && trace.size() > 0)
+            {
+                // the trace has the point truncated to int, so use the point in that pixel nearest the target centre
+                float xNear = nearest(to.xCenter, trace.getX(0)), yNear = nearest(to.yCenter, trace.getY(0));
+                if (to.inTarget(xNear, yNear))
+                {
+                    x = xNear;
+                    y = yNear;
+                }
+            }
+            event(UP, clock, x, y);
+        }
+
+        // the value v in [pixel, pixel + 1) nearest to c
+        private static float nearest(float c, int pixel)
+        {
+            return Math.max(pixel, Math.min(c, Math.nextDown(pixel + 1f)));
+        }
+
+        // the pickup misses, finger down, moves (the trace, less its first and last points), and finger up of a trial
+        private void playTrial(TraceBuffer trace, float downX, float downY, long downTime, float selectX, float
+                selectY, long mt, int pickupMisses) throws InterruptedException
+        {
+            long start = clock;
+            TargetShape from = logic.getFromTarget();
+            for (int i = 0; i < pickupMisses; ++i)
+            {
+                event(DOWN, start, from.xCenter + from.width, from.yCenter);
+                event(UP, start, from.xCenter + from.width, from.yCenter);
+            }
+            event(DOWN, start + downTime, downX, downY);
+            if (trace != null)
+                for (int i = 1; i < trace.size() - 1; ++i)
+                {
+                    if (i == 1 && trace.getT(1) == downTime && trace.getX(1) == (int)downX && trace.getY(1) ==
+                            (int)downY)
+                        continue; // the finger down
+                    event(MOVE, start + trace.getT(i), trace.getX(i), trace.getY(i));
+                }
+            expectedTrace = trace;
+            event(UP, start + mt, selectX, selectY);
+            expectedTrace = null;
+            clock = start + mt;
+        }
+
+        // an attempt at a sequence abandoned after an outlier (its completed trials, then the outlier)
+        private void playAbandoned(List<TraceTrial> attempt, int pickupMisses) throws InterruptedException
+        {
+            startSequence(attempt.isEmpty() ? null : attempt.get(0).trace);
+            for (int k = 0; k < attempt.size(); ++k)
+            {
+                TraceBuffer t = attempt.get(k).trace;
+                int n = t.size();
+                if (n < 2)
+                    continue;
+                playTrial(t, t.getX(1), t.getY(1), t.getT(1), t.getX(n - 1), t.getY(n - 1), t.getT(n - 1), k == 0 ?
+                        pickupMisses : 0);
+            }
+            // the outlier: the object is dropped where it was picked up
+            TargetShape from = logic.getFromTarget();
+            event(DOWN, clock, from.xCenter, from.yCenter);
+            event(UP, clock, from.xCenter, from.yCenter);
+        }
+
+        private void event(byte type, long time, float x, float y) throws InterruptedException
+        {
+            if (events.size == 0)
+                firstEventTime = time;
+            events.add(type, time, x, y);
+            dispatch(type, time, x, y);
+        }
+
+        // pass an event to the trial logic, as FittsDragAndDropActivity.onTouch does
+        private void dispatch(byte type, long time, float x, float y) throws InterruptedException
+        {
+            if (realtime)
+            {
+                long wait = (time - firstEventTime) - (System.nanoTime() - realtimeStart) / 1000000;
+                if (wait > 0)
+                    Thread.sleep(wait);
+            }
+            switch (type)
+            {
+                case START:
+                    if (logic.isWaitingForStartCircle())
+                        logic.startCircleSelected();
+                    break;
+                case DOWN:
+                    logic.touchDown(time, x, y);
+                    break;
+                case MOVE:
+                    logic.touchMove(time, x, y);
+                    break;
+                case UP:
+                    logic.touchUp(time, x, y);
+                    break;
+            }
+        }
+
+        @Override
+        public void sequenceStarted()
+        {
+        }
+
+        @Override
+        public void targetSelected(boolean error)
+        {
+        }
+
+        @Override
+        public void targetAdvanced()
+        {
+        }
+
+        @Override
+        public void trialCompleted(DragTrialLogic logic)
+        {
+            ++trials;
+            TraceBuffer trace = logic.getTrace();
+            if (generate && expectedTrace != null && !equal(trace, expectedTrace))
+            {
+                if (traceDifferences < MAXIMUM_MESSAGES)
+                    System.err.printf(Locale.CANADA, "trace differs: sequence %d, trial %d (%d samples, %d " +
+                            "expected)%n", logic.getSequenceIndex() + 1, logic.getTrialIndex() + 1, trace.size(),
+                            expectedTrace.size());
+                ++traceDifferences;
+            }
+            if (output != null)
+                output.writeTrace(logic);
+        }
+
+        @Override
+        public void sequenceCompleted(DragTrialLogic logic, String sd1, String sd2)
+        {
+            ++sequences;
+            for (String line : sd1.split(NEWLINE))
+                if (!line.isEmpty())
+                    sd1Lines.add(line);
+            sd2Lines.add(sd2.trim());
+            ThroughputAccumulator t = logic.getThroughput();
+            blockModelIDe.add(t.getIDe(), t.getMT());
+            blockModelID.add(t.getID(), t.getMT());
+            if (output != null)
+                output.writeSequence(sd1, sd2);
+        }
+
+        @Override
+        public void outlierSequence(DragTrialLogic logic)
+        {
+            ++outliers;
+        }
+
+        List<String> modelLines()
+        {
+            List<String> lines = new ArrayList<>();
+            lines.add(modelLine("IDe", blockModelIDe));
+            lines.add(modelLine("ID", blockModelID));
+            return lines;
+        }
+
+        private String modelLine(String predictor, FittsModel m)
+        {
+            return String.format(Locale.CANADA, "%s,%s,%s,%d,%s,%s,%s", block.sd2Codes, "Block", predictor, m.getN(),
+                    m.getIntercept(), m.getSlope(), m.getR2());
+        }
+
+        // compare the results with the originals, report, and return the number of differences
+        int compare()
+        {
+            System.err.printf(Locale.CANADA, "replayed %d events: %d sequences, %d trials, %d outlier sequences%n",
+                    events.size, sequences, trials, outliers);
+            int differences = compare("sd1", block.sd1Header, block.sd1Lines, sd1Lines);
+            differences += compare("sd2", block.sd2Header, block.sd2Lines, sd2Lines);
+            if (!block.sd2ModelLines.isEmpty())
+                differences += compare("sd2 models", SD2_MODEL_COLUMNS, block.sd2ModelLines, modelLines());
+            System.err.printf(Locale.CANADA, "traces: %d of %d trials differ%n", traceDifferences, trials);
+            return differences + traceDifferences;
+        }
+
+        // compare lines field by field, and print the number of lines with a difference in each column
+        private static int compare(String name, String header, List<String> expected, List<String> actual)
+        {
+            String[] column = header.split(",");
+            int[] count = new int[column.length + 1]; // the last is for extra fields
+            int differ = 0;
+            int n = Math.min(expected.size(), actual.size());
+            for (int i = 0; i < n; ++i)
+            {
+                if (expected.get(i).equals(actual.get(i)))
+                    continue;
+                ++differ;
+                String[] e = expected.get(i).split(",", -1);
+                String[] a = actual.get(i).split(",", -1);
+                for (int j = 0; j < Math.max(e.length, a.length); ++j)
+                    if (j >= e.length || j >= a.length || !e[j].equals(a[j]))
+                        ++count[Math.min(j, column.length)];
+            }
+            int missing = Math.abs(expected.size() - actual.size());
+            System.err.printf(Locale.CANADA, "%s: %d of %d lines differ%s%n", name, differ, n, missing == 0 ? "" :
+                    String.format(Locale.CANADA, ", %d lines %s", missing, expected.size() > actual.size() ?
+                            "missing" : "extra"));
+            for (int j = 0; j < count.length; ++j)
+                if (count[j] > 0)
+                    System.err.printf(Locale.CANADA, "    %s: %d%n", j < column.length ? column[j] : "(extra fields)",
+                            count[j]);
+            return differ + missing;
+        }
+
+        private static boolean equal(TraceBuffer a, TraceBuffer b)
+        {
+            if (a.size() != b.size())
+                return false;
+            for (int i = 0; i < a.size(); ++i)
+                if (a.getT(i) != b.getT(i) || a.getX(i) != b.getX(i) || a.getY(i) != b.getY(i))
+                    return false;
+            return true;
+        }
+    }
+
+    // =================================================================================
+    // The output files
+    // =================================================================================
+
+    /*
+     * Writes the regenerated sd1, sd2, and trace files to a directory, with the names of the input files.
+     */
+    static class Output
+    {
+        final BufferedWriter sd1, sd2;
+        BufferedWriter sd3;
+        CompressedTextWriter sd3z; // under sd3, if the trace file is sd3z
+        BinaryTraceWriter sd3b;
+        MappedTraceStore sd3m;
+        final RecordedBlock block;
+        final RecordEncoder leadin = new RecordEncoder(), line = new RecordEncoder();
+        IOException error;
+
+        // traceFile is the name of the trace file to write (null for none)
+        Output(File directory, String base, String traceFile, RecordedBlock blockArg) throws IOException
+        {
+            block = blockArg;
+            if (!directory.isDirectory() && !directory.mkdirs())
+                throw new IOException("Cannot create " + directory);
+            sd1 = new BufferedWriter(new FileWriter(new File(directory, base + ".sd1")));
+            sd1.write(block.sd1Header + NEWLINE);
+            sd2 = new BufferedWriter(new FileWriter(new File(directory, base + ".sd2")));
+            sd2.write(block.sd2Header + NEWLINE);
+            if (traceFile == null || block.traceApp == null)
+                return;
+            File f = new File(directory, traceFile);
+            if (traceFile.endsWith(".sd3b"))
+                sd3b = new BinaryTraceWriter(new BufferedOutputStream(new FileOutputStream(f)), block.traceApp, block
+                        .traceParticipant, block.traceCondition, block.traceBlock);
+            else if (traceFile.endsWith(".sd3m"))
+                sd3m = new MappedTraceStore(f, block.traceApp, block.traceParticipant, block.traceCondition, block
+                        .traceBlock);
+            else
+            {
+                if (traceFile.endsWith(".sd3z"))
+                    sd3 = new BufferedWriter(sd3z = new CompressedTextWriter(new BufferedOutputStream(new
+                            FileOutputStream(f))));
+                else
+                    sd3 = new BufferedWriter(new FileWriter(f));
+                sd3.write("TRACE DATA" + NEWLINE + Sd3bToSd3.SD3_COLUMNS + NEWLINE);
+            }
+        }
+
+        void writeTrace(DragTrialLogic logic)
+        {
+            if (error != null)
+                return;
+            int sequence = logic.getSequenceIndex() + 1;
+            int a = (int)logic.getA(), w = (int)logic.getW(), trial = logic.getTrialIndex() + 1;
+            TargetShape from = logic.getFromTarget(), to = logic.getToTarget();
+            try
+            {
+                if (sd3b != null)
+                    sd3b.writeTrial(sequence, a, w, trial, (int)from.xCenter, (int)from.yCenter, (int)to.xCenter,
+                            (int)to.yCenter, logic.getTrace());
+                else if (sd3m != null)
+                {
+                    sd3m.beginTrial(sequence, a, w, trial, (int)from.xCenter, (int)from.yCenter, (int)to.xCenter,
+                            (int)to.yCenter);
+                    sd3m.addSamples(logic.getTrace());
+                    sd3m.commitTrial();
+                } else if (sd3 != null)
+                    Sd3bToSd3.writeTrial(sd3, leadin, line, block.traceApp, block.traceParticipant, block
+                            .traceCondition, block.traceBlock, sequence, a, w, trial, (int)from.xCenter, (int)from
+                            .yCenter, (int)to.xCenter, (int)to.yCenter, logic.getTrace());
+                if (sd3z != null)
+                    sd3.flush(); // ends the trial's record, as in the app
+            } catch (IOException e)
+            {
+                error = e;
+            }
+        }
+
+        void writeSequence(String sd1Lines, String sd2Line)
+        {
+            if (error != null)
+                return;
+            try
+            {
+                sd1.write(sd1Lines);
+                sd2.write(sd2Line);
+            } catch (IOException e)
+            {
+                error = e;
+            }
+        }
+
+        void close(Player player) throws IOException
+        {
+            sd2.write(NEWLINE + MODEL_DATA + NEWLINE + SD2_MODEL_COLUMNS + NEWLINE);
+            for (String line : player.modelLines())
+                sd2.write(line + NEWLINE);
+            sd1.close();
+            sd2.close();
+            if (sd3 != null)
+                sd3.close();
+            if (sd3b != null)
+                sd3b.close();
+            if (sd3m != null)
+                sd3m.close();
+            if (error != null)
+                throw error;
+        }
+    }
+}
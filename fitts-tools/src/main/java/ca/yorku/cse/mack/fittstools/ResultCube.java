@@ -0,0 +1,404 @@
+package ca.yorku.cse.mack.fittstools;
+
+import ca.yorku.cse.mack.fittscore.Throughput;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ResultCube -- in-memory aggregation of sequence results, grouped by the codes that identify a sequence.
+ *
+ * A sequence is identified by eight dimensions: participant, session, block, group, condition, mode (1D/2D), A, and W.
+ * When a sequence is added, its measures are added to the running sums of every roll-up of those dimensions (2^8 =
+ * 256 cells, from the cell for the sequence's own codes to the grand total). A query for any combination of
+ * dimension values, with ALL (null) in the dimensions rolled up, is then a single lookup. The number of sequences
+ * added does not matter.
+ *
+ * Each dimension value is replaced by a small integer (see Dimension) and the eight integers are packed, 16 bits each,
+ * into two longs (participant to group, then condition to W), which are the key for the cell. A dimension can thus
+ * have up to 65,535 distinct values (e.g., A and W values from many devices). Cells are held in parallel arrays and
+ * found with an open-addressing hash table, so adding a sequence allocates nothing (except when a new value or cell is
+ * seen for the first time).
+ *
+ * A sequence with a new value for a dimension that already has the most values is not added (add returns false). The
+ * first such value is described by getOverflow, and the sequences not added are counted (getSequencesNotAdded), so a
+ * tool can report them once its input is read.
+ */
+public class ResultCube
+{
+    // dimensions
+    public final static int PARTICIPANT = 0;
+    public final static int SESSION = 1;
+    public final static int BLOCK = 2;
+    public final static int GROUP = 3;
+    public final static int CONDITION = 4;
+    public final static int MODE = 5;
+    public final static int A = 6;
+    public final static int W = 7;
+    public final static String[] DIMENSION_NAMES = {"Participant", "Session", "Block", "Group", "Condition", "Mode",
+            "A", "W"};
+
+    // measures (the sd2 performance measures)
+    public final static int ID = 0;
+    public final static int AE = 1;
+    public final static int WE = 2;
+    public final static int IDE = 3;
+    public final static int MT = 4;
+    public final static int ERROR_RATE = 5;
+    public final static int TP = 6;
+    public final static String[] MEASURE_NAMES = {"ID", "Ae", "We", "IDe", "MT(ms)", "ErrorRate(%)", "TP(bps)"};
+
+    // the packed key: BITS bits for each dimension (the largest value of a field means ALL), FIELDS per long
+    final static int DIMENSIONS = DIMENSION_NAMES.length;
+    final static int BITS = 16;
+    final static int FIELDS = 64 / BITS;
+
+    final Dimension[] dimension = new Dimension[DIMENSIONS];
+
+    // cells: key (dimensions 0 to FIELDS - 1 in cellKeyHigh, the others in cellKeyLow), count, and (for each
+    // measure) the sum and the sum of squares
+    long[] cellKeyHigh, cellKeyLow;
+    long[] count;
+    double[][] sum, sumOfSquares;
+    int numberOfCells;
+
+    // open-addressing hash table: cell index + 1 (0 = empty slot)
+    int[] table;
+
+    // sequences not added (see add), and the first reason
+    int sequencesNotAdded;
+    String overflow;
+
+    // scratch values for add (one per dimension, and one per measure)
+    private final int[] code = new int[DIMENSIONS];
+    private final String[] sequenceCodes = new String[DIMENSIONS];
+    private final double[] value = new double[MEASURE_NAMES.length];
+
+    public ResultCube()
+    {
+        for (int d = 0; d < dimension.length; ++d)
+            dimension[d] = new Dimension(DIMENSION_NAMES[d], (1 << BITS) - 1);
+        final int INITIAL_CELLS = 1024;
+        cellKeyHigh = new long[INITIAL_CELLS];
+        cellKeyLow = new long[INITIAL_CELLS];
+        count = new long[INITIAL_CELLS];
+        sum = new double[MEASURE_NAMES.length][INITIAL_CELLS];
+        sumOfSquares = new double[MEASURE_NAMES.length][INITIAL_CELLS];
+        table = new int[2 * INITIAL_CELLS];
+    }
+
+    /**
+     * Add the results for a sequence. codes holds the dimension values, in the order of the dimension constants
+     * (PARTICIPANT ... W). measures holds the measures, in the order of the measure constants (ID ... TP). Returns
+     * false (and the sequence is not added) if a dimension has too many values (see getOverflow).
+     */
+    public boolean add(String[] codes, double[] measures)
+    {
+        for (int d = 0; d < code.length; ++d)
+            if (dimension[d].find(codes[d]) < 0 && dimension[d].isFull())
+            {
+                if (overflow == null)
+                    overflow = String.format("Too many values for %s (at most %d): %s", dimension[d].name,
+                            dimension[d].all, codes[d]);
+                ++sequencesNotAdded;
+                return false;
+            }
+        for (int d = 0; d < code.length; ++d)
+            code[d] = dimension[d].idOf(codes[d]);
+
+        // every subset of the dimensions is rolled up (bit d of mask set = dimension d is ALL)
+        for (int mask = 0; mask < 1 << code.length; ++mask)
+        {
+            long high = 0, low = 0;
+            for (int d = 0; d < code.length; ++d)
+            {
+                long field = (long)((mask & (1 << d)) != 0 ? dimension[d].all : code[d]) << shift(d);
+                if (d < FIELDS)
+                    high |= field;
+                else
+                    low |= field;
+            }
+            int cell = findOrAddCell(high, low);
+            ++count[cell];
+            for (int m = 0; m < measures.length; ++m)
+            {
+                sum[m][cell] += measures[m];
+                sumOfSquares[m][cell] += measures[m] * measures[m];
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add the results for a sequence, as computed by a Throughput object. blockCodes are the codes of the sequence's
+     * block (see StudyBlock.getCodes), or null to use those in the sd1 data (where the block is always "B01").
+     * Returns false if the sequence is not added (see above).
+     */
+    public boolean add(String[] blockCodes, SequenceData s, Throughput t)
+    {
+        if (blockCodes != null)
+            System.arraycopy(blockCodes, 0, sequenceCodes, PARTICIPANT, MODE + 1);
+        else
+        {
+            sequenceCodes[PARTICIPANT] = s.participant;
+            sequenceCodes[SESSION] = s.session;
+            sequenceCodes[BLOCK] = s.block;
+            sequenceCodes[GROUP] = s.group;
+            sequenceCodes[CONDITION] = s.condition;
+            sequenceCodes[MODE] = s.mode;
+        }
+        sequenceCodes[A] = s.aString;
+        sequenceCodes[W] = s.wString;
+        value[ID] = t.getID();
+        value[AE] = t.getAe();
+        value[WE] = t.getWe();
+        value[IDE] = t.getIDe();
+        value[MT] = t.getMT();
+        value[ERROR_RATE] = t.getErrorRate();
+        value[TP] = t.getThroughput();
+        return add(sequenceCodes, value);
+    }
+
+    /**
+     * Returns the number of sequences not added, as a dimension had too many values.
+     */
+    public int getSequencesNotAdded()
+    {
+        return sequencesNotAdded;
+    }
+
+    /**
+     * Returns a description of the first value that could not be added (or null if every sequence was added).
+     */
+    public String getOverflow()
+    {
+        return overflow;
+    }
+
+    /**
+     * Returns the aggregate for the specified dimension values (null = ALL, i.e., rolled up), or null if no sequence
+     * matches.
+     */
+    public Aggregate get(String... codes)
+    {
+        if (codes.length != dimension.length)
+            throw new IllegalArgumentException("Expected " + dimension.length + " codes, got " + codes.length);
+        long high = 0, low = 0;
+        for (int d = 0; d < codes.length; ++d)
+        {
+            int id = codes[d] == null ? dimension[d].all : dimension[d].find(codes[d]);
+            if (id < 0)
+                return null;
+            if (d < FIELDS)
+                high |= (long)id << shift(d);
+            else
+                low |= (long)id << shift(d);
+        }
+        int cell = findCell(high, low);
+        return cell < 0 ? null : new Aggregate(cell);
+    }
+
+    /**
+     * Returns the grand total (all sequences).
+     */
+    public Aggregate getTotal()
+    {
+        return get(new String[dimension.length]);
+    }
+
+    /**
+     * Returns the aggregates for every combination of values of the specified dimensions (all other dimensions
+     * rolled up). For example, rollUp(CONDITION, MODE) gives the marginal means for each condition x mode.
+     */
+    public List<Aggregate> rollUp(int... dimensions)
+    {
+        // the key (high, then low) with every dimension ALL, except the kept dimensions (0); and the kept fields
+        long[] allKey = new long[2];
+        long[] keptMask = new long[2];
+        for (int d = 0; d < dimension.length; ++d)
+            allKey[d / FIELDS] |= (long)dimension[d].all << shift(d);
+        for (int d : dimensions)
+        {
+            long field = (long)dimension[d].all << shift(d);
+            allKey[d / FIELDS] &= ~field;
+            keptMask[d / FIELDS] |= field;
+        }
+
+        List<Aggregate> aggregates = new ArrayList<>();
+        for (int cell = 0; cell < numberOfCells; ++cell)
+        {
+            if ((cellKeyHigh[cell] & ~keptMask[0]) != allKey[0] || (cellKeyLow[cell] & ~keptMask[1]) != allKey[1])
+                continue;
+            boolean kept = true;
+            for (int d : dimensions)
+                kept &= fieldOf(cell, d) != dimension[d].all;
+            if (kept)
+                aggregates.add(new Aggregate(cell));
+        }
+        return aggregates;
+    }
+
+    public int getNumberOfCells()
+    {
+        return numberOfCells;
+    }
+
+    // the shift of dimension d's field in its long
+    private static int shift(int d)
+    {
+        return (d % FIELDS) * BITS;
+    }
+
+    private int fieldOf(int cell, int d)
+    {
+        long key = d < FIELDS ? cellKeyHigh[cell] : cellKeyLow[cell];
+        return (int)(key >>> shift(d)) & dimension[d].all;
+    }
+
+    private static int hash(long high, long low)
+    {
+        long h = high * 0x9E3779B97F4A7C15L ^ low * 0xC2B2AE3D27D4EB4FL;
+        return (int)(h ^ (h >>> 32));
+    }
+
+    private int findCell(long high, long low)
+    {
+        int mask = table.length - 1;
+        for (int slot = hash(high, low) & mask; table[slot] != 0; slot = (slot + 1) & mask)
+        {
+            int cell = table[slot] - 1;
+            if (cellKeyHigh[cell] == high && cellKeyLow[cell] == low)
+                return cell;
+        }
+        return -1;
+    }
+
+    private int findOrAddCell(long high, long low)
+    {
+        int mask = table.length - 1;
+        int slot = hash(high, low) & mask;
+        for (; table[slot] != 0; slot = (slot + 1) & mask)
+        {
+            int cell = table[slot] - 1;
+            if (cellKeyHigh[cell] == high && cellKeyLow[cell] == low)
+                return cell;
+        }
+
+        // new cell
+        if (numberOfCells == cellKeyHigh.length)
+        {
+            int n = 2 * cellKeyHigh.length;
+            cellKeyHigh = Arrays.copyOf(cellKeyHigh, n);
+            cellKeyLow = Arrays.copyOf(cellKeyLow, n);
+            count = Arrays.copyOf(count, n);
+            for (int m = 0; m < sum.length; ++m)
+            {
+                sum[m] = Arrays.copyOf(sum[m], n);
+                sumOfSquares[m] = Arrays.copyOf(sumOfSquares[m], n);
+            }
+        }
+        int cell = numberOfCells++;
+        cellKeyHigh[cell] = high;
+        cellKeyLow[cell] = low;
+        table[slot] = cell + 1;
+
+        // keep the table at most half full
+        if (2 * numberOfCells > table.length)
+        {
+            table = new int[2 * table.length];
+            mask = table.length - 1;
+            for (int c = 0; c < numberOfCells; ++c)
+            {
+                int s = hash(cellKeyHigh[c], cellKeyLow[c]) & mask;
+                while (table[s] != 0)
+                    s = (s + 1) & mask;
+                table[s] = c + 1;
+            }
+        }
+        return cell;
+    }
+
+    /**
+     * Aggregate -- a view of one cell of the cube: the number of sequences and the mean (and standard deviation) of
+     * each measure.
+     */
+    public class Aggregate
+    {
+        final int cell;
+
+        Aggregate(int cellArg)
+        {
+            cell = cellArg;
+        }
+
+        /**
+         * Returns the value of the specified dimension for this cell, or null if the dimension is rolled up.
+         */
+        public String getCode(int d)
+        {
+            int id = fieldOf(cell, d);
+            return id == dimension[d].all ? null : dimension[d].values.get(id);
+        }
+
+        public long getCount()
+        {
+            return count[cell];
+        }
+
+        public double getMean(int measure)
+        {
+            return sum[measure][cell] / count[cell];
+        }
+
+        public double getSD(int measure)
+        {
+            long n = count[cell];
+            double mean = sum[measure][cell] / n;
+            return Math.sqrt(Math.max(0.0, (sumOfSquares[measure][cell] - n * mean * mean) / (n - 1.0)));
+        }
+    }
+
+    /*
+     * Dimension -- the distinct values of one dimension, each assigned a small integer id (in order of appearance).
+     */
+    static class Dimension
+    {
+        final String name;
+        final int all; // the id reserved for ALL (also one more than the largest id available for values)
+        final Map<String, Integer> ids = new HashMap<>();
+        final List<String> values = new ArrayList<>();
+
+        Dimension(String nameArg, int allArg)
+        {
+            name = nameArg;
+            all = allArg;
+        }
+
+        int find(String value)
+        {
+            Integer id = ids.get(value);
+            return id == null ? -1 : id;
+        }
+
+        boolean isFull()
+        {
+            return values.size() == all;
+        }
+
+        // the id of a value, assigning the next id to a new value (the caller checks isFull first)
+        int idOf(String value)
+        {
+            Integer id = ids.get(value);
+            if (id == null)
+            {
+                id = values.size();
+                ids.put(value, id);
+                values.add(value);
+            }
+            return id;
+        }
+    }
+}
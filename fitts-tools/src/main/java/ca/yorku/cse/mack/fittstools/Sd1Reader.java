@@ -0,0 +1,104 @@
+package ca.yorku.cse.mack.fittstools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sd1Reader -- reads an sd1 file and groups the trials into sequences.
+ *
+ * Columns are located by name (from the header line), so files with additional columns can be read. Consecutive rows
+ * with the same A and W belong to the same sequence.
+ */
+public class Sd1Reader
+{
+    final static String[] CODE_COLUMNS = {"Participant", "Session", "Block", "Group", "Condition", "Mode"};
+
+    /**
+     * Read the sequences in the specified sd1 (or sd1z) file.
+     */
+    public static List<SequenceData> read(File f) throws IOException
+    {
+        return read(SdzToText.openText(f), f.getPath());
+    }
+
+    /**
+     * Read the sequences in a block's sd1 data (from its file, or from wherever the study catalog says they are).
+     */
+    public static List<SequenceData> read(StudyBlock block) throws IOException
+    {
+        return read(block.openSd1(), block.getName());
+    }
+
+    /**
+     * Read the sequences in sd1 data, and close the reader. source names the data (for messages, and SequenceData).
+     */
+    static List<SequenceData> read(BufferedReader in, String source) throws IOException
+    {
+        List<SequenceData> sequences = new ArrayList<>();
+        try (BufferedReader br = in)
+        {
+            String header = br.readLine();
+            if (header == null)
+                return sequences;
+            Map<String, Integer> column = columnIndex(header);
+
+            int[] code = new int[CODE_COLUMNS.length];
+            for (int i = 0; i < code.length; ++i)
+                code[i] = require(column, CODE_COLUMNS[i], source);
+            int a = require(column, "A", source);
+            int w = require(column, "W", source);
+            int fromX = require(column, "FromX", source);
+            int fromY = require(column, "FromY", source);
+            int toX = require(column, "TargetX", source);
+            int toY = require(column, "TargetY", source);
+            int selectX = require(column, "SelectX", source);
+            int selectY = require(column, "SelectY", source);
+            int mt = require(column, "MT(ms)", source);
+            int pickupMisses = require(column, "PickupMisses", source);
+
+            SequenceData s = null;
+            String line;
+            while ((line = br.readLine()) != null)
+            {
+                if (line.isEmpty())
+                    continue;
+                String[] field = line.split(",", -1);
+                if (s == null || !s.aString.equals(field[a]) || !s.wString.equals(field[w]))
+                {
+                    String[] codes = new String[code.length];
+                    for (int i = 0; i < code.length; ++i)
+                        codes[i] = field[code[i]];
+                    s = new SequenceData(source, codes, field[a], field[w]);
+                    sequences.add(s);
+                }
+                s.addTrial(Float.parseFloat(field[fromX]), Float.parseFloat(field[fromY]), Float.parseFloat
+                        (field[toX]), Float.parseFloat(field[toY]), Float.parseFloat(field[selectX]), Float
+                        .parseFloat(field[selectY]), Float.parseFloat(field[mt]), Integer.parseInt(field[pickupMisses]));
+            }
+        }
+        return sequences;
+    }
+
+    // map each column name in a header line to its index
+    static Map<String, Integer> columnIndex(String header)
+    {
+        Map<String, Integer> column = new HashMap<>();
+        String[] name = header.split(",");
+        for (int i = 0; i < name.length; ++i)
+            column.put(name[i].trim(), i);
+        return column;
+    }
+
+    private static int require(Map<String, Integer> column, String name, String source) throws IOException
+    {
+        Integer i = column.get(name);
+        if (i == null)
+            throw new IOException(String.format("%s: no \"%s\" column in header", source, name));
+        return i;
+    }
+}
@@ -0,0 +1,59 @@
+package ca.yorku.cse.mack.fittstools;
+
+import ca.yorku.cse.mack.fittscore.ColumnarTrialReader;
+import ca.yorku.cse.mack.fittscore.RecordEncoder;
+import ca.yorku.cse.mack.fittscore.TrialTable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Sd1cToSd1 -- convert an sd1c (columnar binary) trial file to the sd1 text format, as written by the app, so the
+ * trial data can be read by Reanalysis (and other tools that read sd1 files).
+ *
+ * Usage: Sd1cToSd1 input.sd1c [output.sd1]
+ *
+ * If no output file is given, the output file is the input file with the extension changed to .sd1.
+ */
+public class Sd1cToSd1
+{
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 1 || args.length > 2)
+        {
+            System.err.println("usage: Sd1cToSd1 input.sd1c [output.sd1]");
+            System.exit(1);
+        }
+        String output = args.length == 2 ? args[1] : args[0].replaceAll("\\.sd1c$", "") + ".sd1";
+        int trials;
+        try (ColumnarTrialReader in = new ColumnarTrialReader(new BufferedInputStream(new FileInputStream(args[0])));
+             BufferedWriter out = new BufferedWriter(new FileWriter(output)))
+        {
+            trials = convert(in, out);
+        }
+        System.err.printf("%d trials written to %s%n", trials, output);
+    }
+
+    /**
+     * Write the trials read from an sd1c file in the sd1 text format. Returns the number of trials.
+     */
+    static int convert(ColumnarTrialReader in, Writer out) throws IOException
+    {
+        out.write(Synthesize.SD1_HEADER + Synthesize.NEWLINE);
+
+        TrialTable table = new TrialTable();
+        RecordEncoder lines = new RecordEncoder();
+        int trials = 0;
+        while (in.next(table))
+        {
+            table.appendSd1(lines.reset(), Synthesize.NEWLINE);
+            lines.writeTo(out);
+            trials += table.size();
+        }
+        return trials;
+    }
+}
@@ -0,0 +1,157 @@
+package ca.yorku.cse.mack.fittstools;
+
+import ca.yorku.cse.mack.fittscore.TraceBuffer;
+import ca.yorku.cse.mack.fittscore.TraceReader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * Sd3Reader -- read trace data in the sd3 text format, as written by the app (see Sd3bToSd3).
+ *
+ * Each trial is three lines (t, x, y) with the same lead-in: App, Participant, Condition, Block, Sequence, A, W,
+ * Trial, from_x, from_y, to_x, to_y. The "TRACE DATA" and column header lines are skipped.
+ */
+public class Sd3Reader implements TraceReader
+{
+    final static int LEADIN_FIELDS = 12;
+
+    private final BufferedReader in;
+    private String app, participant, condition, block;
+    private int sequence, a, w, trial, fromX, fromY, toX, toY;
+
+    public Sd3Reader(BufferedReader inArg)
+    {
+        in = inArg;
+    }
+
+    @Override
+    public boolean next(TraceBuffer trace) throws IOException
+    {
+        String[] t = nextLine("t=");
+        if (t == null)
+            return false;
+        String[] x = nextLine("x=");
+        String[] y = nextLine("y=");
+        if (x == null || y == null)
+            throw new IOException("Truncated sd3 trial");
+        app = t[0];
+        participant = t[1];
+        condition = t[2];
+        block = t[3];
+        sequence = Integer.parseInt(t[4]);
+        a = Integer.parseInt(t[5]);
+        w = Integer.parseInt(t[6]);
+        trial = Integer.parseInt(t[7]);
+        fromX = Integer.parseInt(t[8]);
+        fromY = Integer.parseInt(t[9]);
+        toX = Integer.parseInt(t[10]);
+        toY = Integer.parseInt(t[11]);
+
+        trace.reset();
+        int n = t.length - LEADIN_FIELDS - 1;
+        if (x.length != t.length || y.length != t.length)
+            throw new IOException(String.format("sd3 trial %d of sequence %d: t, x, y have different lengths", trial,
+                    sequence));
+        for (int i = 0; i < n; ++i)
+        {
+            int f = LEADIN_FIELDS + 1 + i;
+            trace.add(Long.parseLong(t[f]), Integer.parseInt(x[f]), Integer.parseInt(y[f]));
+        }
+        return true;
+    }
+
+    // read the next data line, which must have the specified label (null at the end of the file)
+    private String[] nextLine(String label) throws IOException
+    {
+        String line;
+        do
+        {
+            line = in.readLine();
+            if (line == null)
+                return null;
+        } while (line.isEmpty() || line.equals("TRACE DATA") || line.startsWith("App,"));
+        String[] field = line.split(",");
+        if (field.length <= LEADIN_FIELDS || !field[LEADIN_FIELDS].equals(label))
+            throw new IOException("Expected a \"" + label + "\" line in sd3 file: " + line);
+        return field;
+    }
+
+    @Override
+    public String getApp()
+    {
+        return app;
+    }
+
+    @Override
+    public String getParticipant()
+    {
+        return participant;
+    }
+
+    @Override
+    public String getCondition()
+    {
+        return condition;
+    }
+
+    @Override
+    public String getBlock()
+    {
+        return block;
+    }
+
+    @Override
+    public int getSequence()
+    {
+        return sequence;
+    }
+
+    @Override
+    public int getA()
+    {
+        return a;
+    }
+
+    @Override
+    public int getW()
+    {
+        return w;
+    }
+
+    @Override
+    public int getTrial()
+    {
+        return trial;
+    }
+
+    @Override
+    public int getFromX()
+    {
+        return fromX;
+    }
+
+    @Override
+    public int getFromY()
+    {
+        return fromY;
+    }
+
+    @Override
+    public int getToX()
+    {
+        return toX;
+    }
+
+    @Override
+    public int getToY()
+    {
+        return toY;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        in.close();
+    }
+}
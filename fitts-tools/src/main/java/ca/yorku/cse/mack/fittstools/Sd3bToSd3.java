@@ -0,0 +1,125 @@
+package ca.yorku.cse.mack.fittstools;
+
+import ca.yorku.cse.mack.fittscore.BinaryTraceReader;
+import ca.yorku.cse.mack.fittscore.MappedTraceReader;
+import ca.yorku.cse.mack.fittscore.RecordEncoder;
+import ca.yorku.cse.mack.fittscore.TraceBuffer;
+import ca.yorku.cse.mack.fittscore.TraceReader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Sd3bToSd3 -- convert an sd3b or sd3m (binary) trace file to the sd3 text format, as written by the app, so the
+ * trace data can be viewed with FittsTrace (and other tools that read sd3 files).
+ *
+ * Usage: Sd3bToSd3 input.sd3b|input.sd3m [output.sd3]
+ *
+ * The input format is given by the extension (.sd3m for the memory-mapped format, otherwise sd3b). If no output file
+ * is given, the output file is the input file with the extension changed to .sd3. An sd3b file that ends part way
+ * through a trial (e.g., the app was stopped part way through a block) is converted up to the last complete trial,
+ * and reported as truncated. If the input file does not exist, but its block is in the study catalog in its directory
+ * (e.g., the block was compacted, see Compact), the block's trace data are read from wherever the catalog says they
+ * are.
+ */
+public class Sd3bToSd3
+{
+    final static String SD3_COLUMNS = "App,Participant,Condition,Block,Sequence,A,W,Trial,from_x,from_y,to_x,to_y," +
+            "{t_x_y}";
+    final static String NEWLINE = System.lineSeparator();
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 1 || args.length > 2)
+        {
+            System.err.println("usage: Sd3bToSd3 input.sd3b|input.sd3m [output.sd3]");
+            System.exit(1);
+        }
+        String output = args.length == 2 ? args[1] : args[0].replaceAll("\\.sd3[bm]$", "") + ".sd3";
+        int trials;
+        boolean truncated;
+        try (TraceReader in = new File(args[0]).exists() ? open(args[0]) : openCataloged(new File(args[0]));
+             BufferedWriter out = new BufferedWriter(new FileWriter(output)))
+        {
+            trials = convert(in, out);
+            truncated = in instanceof BinaryTraceReader && ((BinaryTraceReader)in).isTruncated();
+        }
+        System.err.printf("%d trials written to %s%s%n", trials, output, truncated ?
+                " -- truncated at the last complete trial" : "");
+    }
+
+    /**
+     * Open a trace file, choosing the reader by the file's extension.
+     */
+    static TraceReader open(String name) throws IOException
+    {
+        if (name.endsWith(".sd3m"))
+            return new MappedTraceReader(new File(name));
+        return new BinaryTraceReader(new BufferedInputStream(new FileInputStream(name)));
+    }
+
+    // open the trace data of a cataloged block (see StudyBlock), if they are sd3b or sd3m
+    private static TraceReader openCataloged(File f) throws IOException
+    {
+        StudyBlock block = StudyBlock.locate(f);
+        String format = block.getTraceFormat();
+        if (!"sd3b".equals(format) && !"sd3m".equals(format))
+            throw new IOException("No sd3b or sd3m data for " + f + (format == null ? "" : " (the trace data are " +
+                    format + ")"));
+        return block.openTrace();
+    }
+
+    /**
+     * Write the trials read from an sd3b or sd3m file in the sd3 text format. Returns the number of trials.
+     */
+    static int convert(TraceReader in, Writer out) throws IOException
+    {
+        out.write("TRACE DATA" + NEWLINE + SD3_COLUMNS + NEWLINE);
+
+        TraceBuffer trace = new TraceBuffer();
+        RecordEncoder leadin = new RecordEncoder(), line = new RecordEncoder();
+        int trials = 0;
+        while (in.next(trace))
+        {
+            writeTrial(out, leadin, line, in.getApp(), in.getParticipant(), in.getCondition(), in.getBlock(),
+                    in.getSequence(), in.getA(), in.getW(), in.getTrial(), in.getFromX(), in.getFromY(), in.getToX(),
+                    in.getToY(), trace);
+            ++trials;
+        }
+        return trials;
+    }
+
+    /**
+     * Write one trial in the sd3 text format (three lines: t, x, y). leadin and line are work buffers.
+     */
+    static void writeTrial(Writer out, RecordEncoder leadin, RecordEncoder line, String app, String participant,
+            String condition, String block, int sequence, int a, int w, int trial, int fromX, int fromY, int toX, int
+            toY, TraceBuffer trace) throws IOException
+    {
+        leadin.reset().append(app).append(',').append(participant).append(',').append(condition).append(',');
+        leadin.append(block).append(',').appendInt(sequence).append(',').appendInt(a).append(',').appendInt(w);
+        leadin.append(',').appendInt(trial).append(',').appendInt(fromX).append(',').appendInt(fromY).append(',');
+        leadin.appendInt(toX).append(',').appendInt(toY).append(',');
+        for (int n = 0; n < 3; ++n)
+        {
+            line.reset().append(leadin).append("txy".charAt(n)).append("=,");
+            for (int i = 0; i < trace.size(); ++i)
+            {
+                if (n == 0)
+                    line.appendLong(trace.getT(i));
+                else if (n == 1)
+                    line.appendInt(trace.getX(i));
+                else
+                    line.appendInt(trace.getY(i));
+                line.append(',');
+            }
+            line.append(NEWLINE);
+            line.writeTo(out);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package ca.yorku.cse.mack.fittstools;
+
+import ca.yorku.cse.mack.fittscore.CompressedTextInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * SdzToText -- convert a compressed text data file (sd3z or sd1z, see CompressedTextWriter) to the text file, as
+ * written by the app without compression, so the data can be read by FittsTrace, Reanalysis, and the other tools.
+ *
+ * Usage: SdzToText input.sd3z|input.sd1z [output]
+ *
+ * If no output file is given, the output file is the input file without the trailing "z" (e.g., .sd3). A file that
+ * ends part way through a record (e.g., the app was stopped part way through a block) is converted up to the last
+ * complete record, and reported as truncated.
+ */
+public class SdzToText
+{
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 1 || args.length > 2)
+        {
+            System.err.println("usage: SdzToText input.sd3z|input.sd1z [output]");
+            System.exit(1);
+        }
+        String output = args.length == 2 ? args[1] : args[0].replaceAll("z$", "");
+        if (output.equals(args[0]))
+            output = args[0] + ".txt";
+        try (CompressedTextInputStream in = new CompressedTextInputStream(new BufferedInputStream(new FileInputStream
+                (args[0]))); OutputStream out = new BufferedOutputStream(new FileOutputStream(output)))
+        {
+            byte[] b = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(b)) > 0)
+                out.write(b, 0, n);
+            System.err.printf(Locale.CANADA, "%d bytes written to %s (compression ratio %.1f:1)%s%n",
+                    in.getOutputBytes(), output, (double)in.getOutputBytes() / in.getInputBytes(), in.isTruncated() ?
+                    " -- truncated at the last complete record" : "");
+        }
+    }
+
+    /**
+     * Open a text data file for reading: through a CompressedTextInputStream if the name ends with "z" (e.g., .sd3z),
+     * otherwise as is.
+     */
+    static BufferedReader openText(File f) throws IOException
+    {
+        if (f.getName().endsWith("z"))
+            return new BufferedReader(new InputStreamReader(new CompressedTextInputStream(new BufferedInputStream(new
+                    FileInputStream(f)))));
+        return new BufferedReader(new FileReader(f));
+    }
+}
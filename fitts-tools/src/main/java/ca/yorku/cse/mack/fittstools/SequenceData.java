@@ -0,0 +1,84 @@
+package ca.yorku.cse.mack.fittstools;
+
+import ca.yorku.cse.mack.fittscore.Throughput;
+
+import java.util.Arrays;
+
+/**
+ * SequenceData -- the trials for one sequence (one A-W condition in a block), as read from an sd1 file.
+ *
+ * The per-trial data are held in flat arrays, in the form accepted by the Throughput class.
+ */
+public class SequenceData
+{
+    String source; // the file the sequence was read from
+    String participant, session, block, group, condition, mode;
+    float a, w;
+    String aString, wString; // A and W, exactly as written in the data file
+    int pickupMisses;
+
+    int numberOfTrials;
+    float[] fromX, fromY, toX, toY, selectX, selectY, mt;
+
+    SequenceData(String sourceArg, String[] codes, String aArg, String wArg)
+    {
+        source = sourceArg;
+        participant = codes[0];
+        session = codes[1];
+        block = codes[2];
+        group = codes[3];
+        condition = codes[4];
+        mode = codes[5];
+        aString = aArg;
+        wString = wArg;
+        a = Float.parseFloat(aArg);
+        w = Float.parseFloat(wArg);
+
+        final int INITIAL_CAPACITY = 32;
+        fromX = new float[INITIAL_CAPACITY];
+        fromY = new float[INITIAL_CAPACITY];
+        toX = new float[INITIAL_CAPACITY];
+        toY = new float[INITIAL_CAPACITY];
+        selectX = new float[INITIAL_CAPACITY];
+        selectY = new float[INITIAL_CAPACITY];
+        mt = new float[INITIAL_CAPACITY];
+    }
+
+    void addTrial(float x1, float y1, float x2, float y2, float x, float y, float mtArg, int pickupMissesArg)
+    {
+        if (numberOfTrials == mt.length)
+        {
+            int n = 2 * mt.length;
+            fromX = Arrays.copyOf(fromX, n);
+            fromY = Arrays.copyOf(fromY, n);
+            toX = Arrays.copyOf(toX, n);
+            toY = Arrays.copyOf(toY, n);
+            selectX = Arrays.copyOf(selectX, n);
+            selectY = Arrays.copyOf(selectY, n);
+            mt = Arrays.copyOf(mt, n);
+        }
+        fromX[numberOfTrials] = x1;
+        fromY[numberOfTrials] = y1;
+        toX[numberOfTrials] = x2;
+        toY[numberOfTrials] = y2;
+        selectX[numberOfTrials] = x;
+        selectY[numberOfTrials] = y;
+        mt[numberOfTrials] = mtArg;
+        pickupMisses += pickupMissesArg;
+        ++numberOfTrials;
+    }
+
+    int getTaskType()
+    {
+        return mode.equals("1D") ? Throughput.ONE_DIMENSIONAL : Throughput.TWO_DIMENSIONAL;
+    }
+
+    /**
+     * Returns a Throughput object for this sequence (computed exactly as in the app).
+     */
+    Throughput toThroughput()
+    {
+        return new Throughput(source, a, w, getTaskType(), Throughput.SERIAL, fromX, fromY, toX, toY, selectX,
+                selectY, mt, 0, numberOfTrials);
+    }
+}
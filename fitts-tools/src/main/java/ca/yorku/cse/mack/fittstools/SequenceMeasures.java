@@ -0,0 +1,47 @@
+package ca.yorku.cse.mack.fittstools;
+
+import ca.yorku.cse.mack.fittscore.Throughput;
+
+/**
+ * SequenceMeasures -- the sd2 measures for a sequence, computed from the per-trial results of a TrialKernel.
+ *
+ * The calculations are those of the Throughput class (mean Ae, We = 4.133 x SDx, IDe = log2(Ae/We + 1), TP = IDe/MT).
+ */
+public class SequenceMeasures
+{
+    int numberOfTrials, misses;
+    float id, ae, we, ide, mt, errorRate, throughput;
+
+    SequenceMeasures(SequenceData s, TrialKernel kernel)
+    {
+        int n = s.numberOfTrials;
+        float[] deltaX = new float[n];
+        float[] aeTrial = new float[n];
+        int[] miss = new int[n];
+        kernel.computeTrials(s.fromX, s.fromY, s.toX, s.toY, s.selectX, s.selectY, 0, n, s.w, s.getTaskType(), true,
+                deltaX, aeTrial, miss);
+
+        float meanDeltaX = 0f, sumMT = 0f;
+        ae = 0f;
+        for (int i = 0; i < n; ++i)
+        {
+            meanDeltaX += deltaX[i];
+            ae += aeTrial[i];
+            sumMT += s.mt[i];
+            misses += miss[i];
+        }
+        meanDeltaX /= n;
+        ae /= n;
+        float sum = 0f;
+        for (int i = 0; i < n; ++i)
+            sum += (meanDeltaX - deltaX[i]) * (meanDeltaX - deltaX[i]);
+
+        numberOfTrials = n;
+        id = (float)Math.log(s.a / s.w + 1.0f) / Throughput.LOG_TWO;
+        we = Throughput.SQRT_2_PI_E * (float)Math.sqrt(sum / (n - 1.0f));
+        ide = (float)Math.log(ae / we + 1.0f) / Throughput.LOG_TWO;
+        mt = sumMT / n;
+        errorRate = (float)misses / n * 100.0f;
+        throughput = ide / (mt / 1000.0f);
+    }
+}
@@ -0,0 +1,221 @@
+package ca.yorku.cse.mack.fittstools;
+
+import ca.yorku.cse.mack.fittscore.BinaryTraceReader;
+import ca.yorku.cse.mack.fittscore.CompressedTextInputStream;
+import ca.yorku.cse.mack.fittscore.MappedTraceReader;
+import ca.yorku.cse.mack.fittscore.StudyCatalog;
+import ca.yorku.cse.mack.fittscore.TraceReader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * StudyBlock -- a block of data in a data directory, for the tools that read the sd1, sd2, and trace data.
+ *
+ * A block is either in the directory's study catalog (see StudyCatalog and Compact), in which case its data are read
+ * from wherever the catalog says they are (the block's own files, or a segment file), or it is a set of files that
+ * are not in a catalog (e.g., a directory written before there was a catalog). The tools open a block's parts the
+ * same way in both cases, so they read a compacted study (Compact -delete) as they read the original files.
+ */
+public class StudyBlock
+{
+    final File directory;
+    final String base;
+    final StudyCatalog.Entry entry; // null if the block is not in a catalog
+    final File sd1, sd2, trace; // the block's files, if it is not in a catalog (sd2 and trace may be null)
+
+    private StudyBlock(File directoryArg, String baseArg, StudyCatalog.Entry entryArg, File sd1Arg, File sd2Arg,
+            File traceArg)
+    {
+        directory = directoryArg;
+        base = baseArg;
+        entry = entryArg;
+        sd1 = sd1Arg;
+        sd2 = sd2Arg;
+        trace = traceArg;
+    }
+
+    /**
+     * Find the blocks in a directory (searched recursively): the blocks in each directory's catalog, and the blocks
+     * with an sd1 (or sd1z) file but not in the catalog. The blocks are sorted by directory and base filename, so the
+     * output of a tool is in a repeatable order.
+     */
+    static List<StudyBlock> find(Path directory) throws IOException
+    {
+        List<Path> paths;
+        try (Stream<Path> s = Files.walk(directory))
+        {
+            paths = s.filter(p -> p.getFileName().toString().startsWith(Compact.APP)).collect(Collectors.toList());
+        }
+        Map<File, StudyCatalog> catalogs = new HashMap<>();
+        for (Path p : paths)
+            if (p.getFileName().toString().equals(Compact.CATALOG))
+                catalogs.put(p.toFile().getParentFile(), StudyCatalog.read(p.toFile()));
+
+        List<StudyBlock> blocks = new ArrayList<>();
+        for (Map.Entry<File, StudyCatalog> c : catalogs.entrySet())
+            for (StudyCatalog.Entry e : c.getValue().getEntries())
+                blocks.add(new StudyBlock(c.getKey(), e.getBase(), e, null, null, null));
+        for (Path p : paths)
+        {
+            File f = p.toFile();
+            String name = f.getName();
+            if (!name.endsWith(".sd1") && !name.endsWith(".sd1z"))
+                continue;
+            String base = name.substring(0, name.lastIndexOf('.'));
+            StudyCatalog catalog = catalogs.get(f.getParentFile());
+            if (catalog == null || catalog.get(base) == null)
+                blocks.add(ofFiles(f.getParentFile(), base, f));
+        }
+        Collections.sort(blocks, Comparator.comparing((StudyBlock b) -> b.directory.getPath()).thenComparing(b ->
+                b.base));
+        return blocks;
+    }
+
+    /**
+     * Returns the block that a file belongs to (e.g., input.sd1, or input.sd3b). The block is looked up in the
+     * catalog in the file's directory, so the file need not exist if the block was compacted. Otherwise the block's
+     * files are found by its base filename.
+     */
+    static StudyBlock locate(File f) throws IOException
+    {
+        File directory = f.getAbsoluteFile().getParentFile();
+        String name = f.getName();
+        String base = name.lastIndexOf('.') > 0 ? name.substring(0, name.lastIndexOf('.')) : name;
+        StudyCatalog.Entry e = StudyCatalog.read(new File(directory, Compact.CATALOG)).get(base);
+        if (e != null)
+            return new StudyBlock(directory, base, e, null, null, null);
+        File sd1 = new File(directory, base + ".sd1");
+        if (!sd1.exists() && new File(directory, base + ".sd1z").exists())
+            sd1 = new File(directory, base + ".sd1z");
+        if (!sd1.exists() && !f.exists())
+            throw new IOException("Not found (as a file, or in the catalog): " + f);
+        return ofFiles(directory, base, sd1);
+    }
+
+    // a block that is not in a catalog (sd1 may not exist, e.g., if only a trace file is converted)
+    private static StudyBlock ofFiles(File directory, String base, File sd1)
+    {
+        File sd2 = new File(directory, base + ".sd2");
+        File trace = null;
+        for (String extension : Compact.TRACE_EXTENSIONS)
+            if (new File(directory, base + extension).exists())
+                trace = new File(directory, base + extension);
+        return new StudyBlock(directory, base, null, sd1, sd2.exists() ? sd2 : null, trace);
+    }
+
+    public String getBase()
+    {
+        return base;
+    }
+
+    /**
+     * Returns the block's codes (participant, session, block, group, condition, mode): those in its catalog entry,
+     * or those in its base filename. null if the block is not in a catalog and the filename is not as written by the
+     * app. The codes in the sd1 data are not used for the block, as the app writes "B01" in every sd1 file.
+     */
+    public String[] getCodes()
+    {
+        if (entry != null)
+            return new String[] {entry.getParticipant(), entry.getSession(), entry.getBlock(), entry.getGroup(),
+                    entry.getCondition(), entry.getMode()};
+        return codes(base);
+    }
+
+    // the codes in a base filename (App-Participant-Session-Block-Group-Condition-Mode), or null if there are none
+    static String[] codes(String base)
+    {
+        String[] name = base.split("-", -1);
+        return name.length == 7 ? Arrays.copyOfRange(name, 1, 7) : null;
+    }
+
+    /**
+     * Returns the path of the block's sd1 data, for messages (the file need not exist, if the block was compacted).
+     */
+    public String getName()
+    {
+        return entry == null ? sd1.getPath() : new File(directory, base + "." + entry.getSd1Format()).getPath();
+    }
+
+    /**
+     * Returns the format (extension, without the dot) of the block's trace data (e.g., "sd3b"), or null if there
+     * are no trace data.
+     */
+    public String getTraceFormat()
+    {
+        if (entry != null)
+            return entry.getTraceFormat();
+        return trace == null ? null : trace.getName().substring(trace.getName().lastIndexOf('.') + 1);
+    }
+
+    /**
+     * Open the block's sd1 data (decompressed, if sd1z).
+     */
+    public BufferedReader openSd1() throws IOException
+    {
+        if (entry == null)
+            return SdzToText.openText(sd1);
+        return openText(StudyCatalog.SD1, entry.getSd1Format().endsWith("z"));
+    }
+
+    /**
+     * Open the block's sd2 data, or return null if there are none.
+     */
+    public BufferedReader openSd2() throws IOException
+    {
+        if (entry == null)
+            return sd2 == null ? null : SdzToText.openText(sd2);
+        return openText(StudyCatalog.SD2, false);
+    }
+
+    /**
+     * Open the block's trace data, or return null if there are none.
+     */
+    public TraceReader openTrace() throws IOException
+    {
+        if (entry == null)
+            return trace == null ? null : Replay.open(trace);
+        String format = entry.getTraceFormat();
+        if (format.equals("sd3") || format.equals("sd3z"))
+            return new Sd3Reader(openText(StudyCatalog.TRACE, format.endsWith("z")));
+        if (format.equals("sd3m"))
+            return new MappedTraceReader(new File(directory, entry.getFile(StudyCatalog.TRACE)), entry.getOffset
+                    (StudyCatalog.TRACE), entry.getLength(StudyCatalog.TRACE));
+        return new BinaryTraceReader(new BufferedInputStream(StudyCatalog.open(directory, entry, StudyCatalog.TRACE)));
+    }
+
+    // open a text part of a cataloged block (the default charset, as written by the app)
+    private BufferedReader openText(int part, boolean compressed) throws IOException
+    {
+        InputStream in = new BufferedInputStream(StudyCatalog.open(directory, entry, part));
+        try
+        {
+            return new BufferedReader(new InputStreamReader(compressed ? new CompressedTextInputStream(in) : in));
+        } catch (IOException e)
+        {
+            in.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return getName();
+    }
+}
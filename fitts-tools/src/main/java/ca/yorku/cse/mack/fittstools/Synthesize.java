@@ -0,0 +1,467 @@
+package ca.yorku.cse.mack.fittstools;
+
+import ca.yorku.cse.mack.fittscore.BinaryTraceWriter;
+import ca.yorku.cse.mack.fittscore.DragTrialLogic;
+import ca.yorku.cse.mack.fittscore.FittsModel;
+import ca.yorku.cse.mack.fittscore.MappedTraceStore;
+import ca.yorku.cse.mack.fittscore.RecordEncoder;
+import ca.yorku.cse.mack.fittscore.TargetShape;
+import ca.yorku.cse.mack.fittscore.ThroughputAccumulator;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Synthesize -- generate the data files for simulated participants, for load testing the tools that read them.
+ *
+ * Each simulated participant does a number of blocks of the 1D or 2D task. The touch events are passed to the app's
+ * trial logic (DragTrialLogic), with the targets laid out as in the app, so the sd1, sd2, and trace files are those
+ * the app would write for the same events. The events come from a simple model of the participant:
+ *
+ * <pre>
+ *      - movement time (finger-up to finger-up) follows Fitts' law, MT = a + b * log2(A / W + 1), with a and b drawn
+ *        for each participant (within 20% of the values given with -mt) and 15% (log-normal) trial-to-trial variation
+ *      - the drag object is picked up a quarter of the way through the movement time, near the centre of the "from"
+ *        target; with probability -misses, the object is missed once before it is picked up
+ *      - the end points are Gaussian about the target centre, with a standard deviation along the task axis of
+ *        W / 4.133 (so We is about W) scaled by a per-participant accuracy factor, and half that across the axis
+ *      - the finger follows a minimum-jerk trajectory from the pickup point to the end point, sampled at -rate
+ *        samples per second, with Gaussian noise (-noise pixels) added to each sample
+ * </pre>
+ *
+ * The A and W values (-a, -w) are scaled to the display (-screen, -density) as in the app. The generation is
+ * repeatable: each participant has a random number generator seeded from -seed and the participant number, so the
+ * files are the same whatever the number of threads. Participants are generated in parallel (-threads), and the
+ * number of trials per minute is reported.
+ *
+ * The trace files are written in the format given by -format (sd3, sd3b, or sd3m), or not at all (none).
+ *
+ * Usage: Synthesize outputdir [-participants n] [-blocks n] [-mode 1D|2D] [-format sd3|sd3b|sd3m|none] [-seed n]
+ * [-threads n] [-a a1,a2,...] [-w w1,w2,...] [-trials n] [-targets n] [-screen WxH] [-density d] [-mt a,b]
+ * [-misses p] [-rate hz] [-noise px]
+ */
+public class Synthesize
+{
+    final static String SD1_HEADER = "Participant,Session,Block,Group,Condition,Mode,Trial,A,W,FromX,FromY,TargetX," +
+            "TargetY,FingerDownX,FingerDownY,SelectX,SelectY,xDelta,FingerDownUpDelta,FingerDownUpTime(ms)," +
+            "DistanceFromTargetCenter,PickupMisses,Error,MT(ms),HistoricalSamples,TRE,TAC,MDC,ODC,MV,ME,MO," +
+            "PathLength,TraceSamples,TraceCompression";
+    final static String NEWLINE = System.lineSeparator();
+
+    final static float WE_FACTOR = 4.133f; // We = 4.133 * SDx
+    final static long SEQUENCE_GAP = 3000; // ms, from the end of a sequence to the start circle for the next
+    final static long MINIMUM_MT = 100; // ms
+
+    // the study design and the display
+    static class Design
+    {
+        int participants = 12, blocks = 5;
+        String mode = "2D", format = "sd3";
+        float[] amplitude = {120f, 240f, 480f}, width = {50f, 100f};
+        int trials1D = 14, targets2D = 15;
+        int screenWidth = 1080, screenHeight = 1920;
+        float density = 2.625f;
+        float mtIntercept = 150f, mtSlope = 180f; // ms, ms/bit
+        float missProbability = 0.02f;
+        float sampleRate = 60f; // Hz
+        float noise = 1f; // px
+        long seed = 1;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        Design d = new Design();
+        String outputDirectory = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; ++i)
+        {
+            boolean hasValue = i + 1 < args.length;
+            if (args[i].equals("-participants") && hasValue)
+                d.participants = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-blocks") && hasValue)
+                d.blocks = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-mode") && hasValue)
+                d.mode = args[++i];
+            else if (args[i].equals("-format") && hasValue)
+                d.format = args[++i];
+            else if (args[i].equals("-seed") && hasValue)
+                d.seed = Long.parseLong(args[++i]);
+            else if (args[i].equals("-threads") && hasValue)
+                threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-a") && hasValue)
+                d.amplitude = values(args[++i]);
+            else if (args[i].equals("-w") && hasValue)
+                d.width = values(args[++i]);
+            else if (args[i].equals("-trials") && hasValue)
+                d.trials1D = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-targets") && hasValue)
+                d.targets2D = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-screen") && hasValue)
+            {
+                String[] size = args[++i].split("x");
+                if (size.length != 2)
+                    usage();
+                d.screenWidth = Integer.parseInt(size[0]);
+                d.screenHeight = Integer.parseInt(size[1]);
+            } else if (args[i].equals("-density") && hasValue)
+                d.density = Float.parseFloat(args[++i]);
+            else if (args[i].equals("-mt") && hasValue)
+            {
+                float[] mt = values(args[++i]);
+                if (mt.length != 2)
+                    usage();
+                d.mtIntercept = mt[0];
+                d.mtSlope = mt[1];
+            } else if (args[i].equals("-misses") && hasValue)
+                d.missProbability = Float.parseFloat(args[++i]);
+            else if (args[i].equals("-rate") && hasValue)
+                d.sampleRate = Float.parseFloat(args[++i]);
+            else if (args[i].equals("-noise") && hasValue)
+                d.noise = Float.parseFloat(args[++i]);
+            else if (outputDirectory == null)
+                outputDirectory = args[i];
+            else
+                usage();
+        }
+        if (outputDirectory == null || !(d.mode.equals("1D") || d.mode.equals("2D")) || !(d.format.equals("sd3") ||
+                d.format.equals("sd3b") || d.format.equals("sd3m") || d.format.equals("none")) || d.participants < 1
+                || d.blocks < 1 || threads < 1 || d.sampleRate <= 0f)
+            usage();
+        File directory = new File(outputDirectory);
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Cannot create " + directory);
+
+        List<Callable<long[]>> tasks = new ArrayList<>();
+        for (int p = 1; p <= d.participants; ++p)
+            tasks.add(new Participant(d, p, directory));
+
+        long start = System.nanoTime();
+        long sequences = 0, trials = 0;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try
+        {
+            for (Future<long[]> f : pool.invokeAll(tasks))
+            {
+                long[] counts = f.get();
+                sequences += counts[0];
+                trials += counts[1];
+            }
+        } catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+                throw (IOException)e.getCause();
+            throw new RuntimeException(e.getCause());
+        } finally
+        {
+            pool.shutdown();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.err.printf(Locale.CANADA, "%d participants, %d blocks, %d sequences, %d trials in %d ms (%.0f " +
+                "trials/min, %d threads)%n", d.participants, d.participants * d.blocks, sequences, trials, elapsed /
+                1000000, trials * 60e9 / elapsed, threads);
+    }
+
+    private static void usage()
+    {
+        System.err.println("usage: Synthesize outputdir [-participants n] [-blocks n] [-mode 1D|2D] " +
+                "[-format sd3|sd3b|sd3m|none] [-seed n] [-threads n] [-a a1,a2,...] [-w w1,w2,...] [-trials n] " +
+                "[-targets n] [-screen WxH] [-density d] [-mt a,b] [-misses p] [-rate hz] [-noise px]");
+        System.exit(1);
+    }
+
+    private static float[] values(String s)
+    {
+        String[] field = s.split(",");
+        float[] v = new float[field.length];
+        for (int i = 0; i < field.length; ++i)
+            v[i] = Float.parseFloat(field[i].trim());
+        return v;
+    }
+
+    /*
+     * One simulated participant: generates the participant's blocks, in order (the AllBlocks models continue from
+     * block to block, as in the app). Returns the number of sequences and trials.
+     */
+    static class Participant implements Callable<long[]>, DragTrialLogic.Listener
+    {
+        final Design d;
+        final String participantCode;
+        final File directory;
+        final Random random;
+
+        // the participant's model
+        final float mtIntercept, mtSlope, accuracy;
+
+        // the block being generated
+        String sd2Codes, traceBlockCode;
+        BufferedWriter sd1, sd2, sd3;
+        BinaryTraceWriter sd3b;
+        MappedTraceStore sd3m;
+        final RecordEncoder leadin = new RecordEncoder(), line = new RecordEncoder();
+        FittsModel blockModelIDe, blockModelID;
+        final FittsModel allModelIDe = new FittsModel(), allModelID = new FittsModel();
+        IOException error;
+        long sequences, trials;
+
+        Participant(Design designArg, int participant, File directoryArg)
+        {
+            d = designArg;
+            participantCode = String.format(Locale.CANADA, "P%02d", participant);
+            directory = directoryArg;
+            random = new Random(d.seed * 1000003L + participant);
+            mtIntercept = Math.max(0.1f, 1f + 0.2f * (float)random.nextGaussian()) * d.mtIntercept;
+            mtSlope = Math.max(0.1f, 1f + 0.2f * (float)random.nextGaussian()) * d.mtSlope;
+            accuracy = (float)Math.exp(0.15 * random.nextGaussian());
+        }
+
+        @Override
+        public long[] call() throws IOException
+        {
+            for (int b = 1; b <= d.blocks; ++b)
+                block(String.format(Locale.CANADA, "B%02d", b));
+            return new long[] {sequences, trials};
+        }
+
+        private void block(String blockCode) throws IOException
+        {
+            String codes = String.format("%s,%s,%s,%s,%s,%s", participantCode, "S01", blockCode, "G01", "C01",
+                    d.mode);
+            sd2Codes = Reanalysis.APP + "," + codes;
+            traceBlockCode = blockCode;
+            String base = String.format("%s-%s-%s-%s-%s-%s-%s", Reanalysis.APP, participantCode, "S01", blockCode,
+                    "G01", "C01", d.mode);
+            open(base);
+
+            // the layout, as in FittsDragAndDropActivity.onCreate
+            float xCenter = d.screenWidth / 2f, yCenter = d.screenHeight / 2f;
+            int targetHeight1D = (int)(d.screenHeight * 0.9f);
+            float largestAmplitude = 0f, largestWidth = 0f;
+            for (float value : d.amplitude)
+                largestAmplitude = Math.max(largestAmplitude, value);
+            for (float value : d.width)
+                largestWidth = Math.max(largestWidth, value);
+            float scaleFactor = Math.min(d.screenWidth, d.screenHeight) / (largestAmplitude + largestWidth + 10.0f * d
+                    .density);
+            boolean oneDimensional = d.mode.equals("1D");
+            int numberOfTargets = oneDimensional ? 2 : d.targets2D;
+            int numberOfTrials = oneDimensional ? d.trials1D : d.targets2D;
+
+            // the A-W conditions, in random order (as in FittsDragAndDropActivity.getAmplitudeWidthArray)
+            int n = d.amplitude.length * d.width.length;
+            float[] sequenceAmplitude = new float[n], sequenceWidth = new float[n];
+            for (int i = 0; i < n; ++i)
+            {
+                sequenceAmplitude[i] = d.amplitude[i / d.width.length] * scaleFactor;
+                sequenceWidth[i] = d.width[i % d.width.length] * scaleFactor;
+            }
+            for (int i = 0; i < n; ++i)
+            {
+                int idx = random.nextInt(n);
+                float a = sequenceAmplitude[idx], w = sequenceWidth[idx];
+                sequenceAmplitude[idx] = sequenceAmplitude[i];
+                sequenceWidth[idx] = sequenceWidth[i];
+                sequenceAmplitude[i] = a;
+                sequenceWidth[i] = w;
+            }
+
+            blockModelIDe = new FittsModel();
+            blockModelID = new FittsModel();
+            DragTrialLogic logic = new DragTrialLogic(codes, sd2Codes, oneDimensional, sequenceAmplitude,
+                    sequenceWidth, numberOfTrials, numberOfTargets, xCenter, yCenter, targetHeight1D, 0f, this);
+            long clock = 0;
+            while (!logic.isDone())
+            {
+                clock += SEQUENCE_GAP;
+                logic.startCircleSelected();
+
+                // the first selection starts the sequence (it is not a trial)
+                TargetShape from = logic.getFromTarget(), to = logic.getToTarget();
+                logic.touchDown(clock, from.xCenter, from.yCenter);
+                clock += mt(logic);
+                logic.touchUp(clock, to.xCenter, to.yCenter);
+
+                while (!logic.isWaitingForStartCircle())
+                    clock = trial(logic, clock);
+            }
+            close();
+        }
+
+        // the movement time for the current sequence's A and W (ms)
+        private long mt(DragTrialLogic logic)
+        {
+            double id = Math.log(logic.getA() / logic.getW() + 1.0) / Math.log(2.0);
+            double mt = (mtIntercept + mtSlope * id) * Math.exp(0.15 * random.nextGaussian());
+            return Math.max(MINIMUM_MT, Math.round(mt));
+        }
+
+        // generate the events for one trial, starting at the previous finger up; returns the time of the finger up
+        private long trial(DragTrialLogic logic, long start)
+        {
+            TargetShape from = logic.getFromTarget(), to = logic.getToTarget();
+            long mt = mt(logic);
+            long down = start + mt / 4, up = start + mt;
+
+            if (random.nextFloat() < d.missProbability)
+            {
+                float x = from.xCenter + 1.5f * from.width;
+                logic.touchDown(start + mt / 8, x, from.yCenter);
+                logic.touchUp(start + mt / 8 + 1, x, from.yCenter);
+            }
+            float xDown = from.xCenter + from.width / 8f * (float)random.nextGaussian();
+            float yDown = from.yCenter + from.width / 8f * (float)random.nextGaussian();
+            logic.touchDown(down, xDown, yDown);
+
+            // the end point, spread along and across the task axis
+            float dx = to.xCenter - from.xCenter, dy = to.yCenter - from.yCenter;
+            float length = (float)Math.hypot(dx, dy);
+            float ux = length > 0f ? dx / length : 1f, uy = length > 0f ? dy / length : 0f;
+            float sd = accuracy * logic.getW() / WE_FACTOR;
+            float along = sd * (float)random.nextGaussian(), across = sd / 2f * (float)random.nextGaussian();
+            float xUp = to.xCenter + along * ux - across * uy;
+            float yUp = to.yCenter + along * uy + across * ux;
+
+            // minimum-jerk trajectory from the finger down to the finger up
+            double step = 1000.0 / d.sampleRate;
+            for (double t = down + step; t < up; t += step)
+            {
+                float tau = (float)((t - down) / (up - down));
+                float s = tau * tau * tau * (10f + tau * (-15f + 6f * tau));
+                logic.touchMove((long)t, xDown + s * (xUp - xDown) + d.noise * (float)random.nextGaussian(), yDown +
+                        s * (yUp - yDown) + d.noise * (float)random.nextGaussian());
+            }
+            logic.touchUp(up, xUp, yUp);
+            return up;
+        }
+
+        private void open(String base) throws IOException
+        {
+            sd1 = new BufferedWriter(new FileWriter(new File(directory, base + ".sd1")));
+            sd1.write(SD1_HEADER + NEWLINE);
+            sd2 = new BufferedWriter(new FileWriter(new File(directory, base + ".sd2")));
+            sd2.write(Reanalysis.SD2_HEADER + NEWLINE);
+            File f3 = new File(directory, base + "." + d.format);
+            if (d.format.equals("sd3b"))
+                sd3b = new BinaryTraceWriter(new BufferedOutputStream(new FileOutputStream(f3)), Reanalysis.APP,
+                        participantCode, "C01", traceBlockCode);
+            else if (d.format.equals("sd3m"))
+                sd3m = new MappedTraceStore(f3, Reanalysis.APP, participantCode, "C01", traceBlockCode);
+            else if (d.format.equals("sd3"))
+            {
+                sd3 = new BufferedWriter(new FileWriter(f3));
+                sd3.write("TRACE DATA" + NEWLINE + Sd3bToSd3.SD3_COLUMNS + NEWLINE);
+            }
+        }
+
+        private void close() throws IOException
+        {
+            sd2.write(NEWLINE + Replay.MODEL_DATA + NEWLINE + Replay.SD2_MODEL_COLUMNS + NEWLINE);
+            writeModel("Block", "IDe", blockModelIDe);
+            writeModel("Block", "ID", blockModelID);
+            writeModel("AllBlocks", "IDe", allModelIDe);
+            writeModel("AllBlocks", "ID", allModelID);
+            sd1.close();
+            sd2.close();
+            if (sd3 != null)
+                sd3.close();
+            if (sd3b != null)
+                sd3b.close();
+            if (sd3m != null)
+                sd3m.close();
+            sd3 = null;
+            sd3b = null;
+            sd3m = null;
+            if (error != null)
+                throw error;
+        }
+
+        private void writeModel(String scope, String predictor, FittsModel m) throws IOException
+        {
+            sd2.write(String.format(Locale.CANADA, "%s,%s,%s,%d,%s,%s,%s%s", sd2Codes, scope, predictor, m.getN(), m
+                    .getIntercept(), m.getSlope(), m.getR2(), NEWLINE));
+        }
+
+        @Override
+        public void sequenceStarted()
+        {
+        }
+
+        @Override
+        public void targetSelected(boolean error)
+        {
+        }
+
+        @Override
+        public void targetAdvanced()
+        {
+        }
+
+        @Override
+        public void trialCompleted(DragTrialLogic logic)
+        {
+            ++trials;
+            if (error != null || d.format.equals("none"))
+                return;
+            int sequence = logic.getSequenceIndex() + 1;
+            int a = (int)logic.getA(), w = (int)logic.getW(), trial = logic.getTrialIndex() + 1;
+            TargetShape from = logic.getFromTarget(), to = logic.getToTarget();
+            try
+            {
+                if (sd3b != null)
+                    sd3b.writeTrial(sequence, a, w, trial, (int)from.xCenter, (int)from.yCenter, (int)to.xCenter,
+                            (int)to.yCenter, logic.getTrace());
+                else if (sd3m != null)
+                {
+                    sd3m.beginTrial(sequence, a, w, trial, (int)from.xCenter, (int)from.yCenter, (int)to.xCenter,
+                            (int)to.yCenter);
+                    sd3m.addSamples(logic.getTrace());
+                    sd3m.commitTrial();
+                } else
+                    Sd3bToSd3.writeTrial(sd3, leadin, line, Reanalysis.APP, participantCode, "C01", traceBlockCode,
+                            sequence, a, w, trial, (int)from.xCenter, (int)from.yCenter, (int)to.xCenter, (int)to
+                                    .yCenter, logic.getTrace());
+            } catch (IOException e)
+            {
+                error = e;
+            }
+        }
+
+        @Override
+        public void sequenceCompleted(DragTrialLogic logic, String sd1Lines, String sd2Line)
+        {
+            ++sequences;
+            ThroughputAccumulator t = logic.getThroughput();
+            blockModelIDe.add(t.getIDe(), t.getMT());
+            blockModelID.add(t.getID(), t.getMT());
+            allModelIDe.add(t.getIDe(), t.getMT());
+            allModelID.add(t.getID(), t.getMT());
+            if (error != null)
+                return;
+            try
+            {
+                sd1.write(sd1Lines);
+                sd2.write(sd2Line);
+            } catch (IOException e)
+            {
+                error = e;
+            }
+        }
+
+        @Override
+        public void outlierSequence(DragTrialLogic logic)
+        {
+        }
+    }
+}
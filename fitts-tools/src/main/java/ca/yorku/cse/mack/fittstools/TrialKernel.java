@@ -0,0 +1,17 @@
+package ca.yorku.cse.mack.fittstools;
+
+/**
+ * TrialKernel -- computes deltaX, ae, and miss for a batch of trials given in flat arrays.
+ *
+ * The arguments and results are those of Throughput.computeTrials: the input arrays are read beginning at index
+ * offset and the results for the length trials are written to the output arrays beginning at index 0. See
+ * TrialKernels for the available implementations.
+ */
+public interface TrialKernel
+{
+    void computeTrials(float[] fromX, float[] fromY, float[] toX, float[] toY, float[] selectX, float[] selectY,
+            int offset, int length, float width, int taskType, boolean serialTask, float[] deltaXOut,
+            float[] aeOut, int[] missOut);
+
+    String getName();
+}
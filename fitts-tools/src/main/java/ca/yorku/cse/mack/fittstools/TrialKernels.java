@@ -0,0 +1,58 @@
+package ca.yorku.cse.mack.fittstools;
+
+import ca.yorku.cse.mack.fittscore.Throughput;
+
+/**
+ * TrialKernels -- the available TrialKernel implementations.
+ *
+ * SCALAR is the per-trial loop in Throughput.computeTrials. It gives exactly the values computed by the app.
+ *
+ * The vectorized kernel (VectorTrialKernel, compiled from src/vector/java) uses the Vector API in
+ * jdk.incubator.vector to process a full vector of trials at a time. It is only present if the tools were built with
+ * JDK 16 or later, and only usable if the JVM was started with --add-modules jdk.incubator.vector. best() returns the
+ * vectorized kernel if it can be loaded, and SCALAR otherwise. Its agreement with SCALAR is checked by its tests
+ * (src/vectorTest/java), not when it is loaded.
+ */
+public class TrialKernels
+{
+    final static String VECTOR_KERNEL = "ca.yorku.cse.mack.fittstools.VectorTrialKernel";
+
+    public final static TrialKernel SCALAR = new TrialKernel()
+    {
+        @Override
+        public void computeTrials(float[] fromX, float[] fromY, float[] toX, float[] toY, float[] selectX,
+                float[] selectY, int offset, int length, float width, int taskType, boolean serialTask,
+                float[] deltaXOut, float[] aeOut, int[] missOut)
+        {
+            Throughput.computeTrials(fromX, fromY, toX, toY, selectX, selectY, offset, length, width, taskType,
+                    serialTask, deltaXOut, aeOut, missOut);
+        }
+
+        @Override
+        public String getName()
+        {
+            return "scalar";
+        }
+    };
+
+    private static TrialKernel best;
+
+    /**
+     * Returns the fastest kernel available in this JVM.
+     */
+    public static synchronized TrialKernel best()
+    {
+        if (best == null)
+        {
+            best = SCALAR;
+            try
+            {
+                best = (TrialKernel)Class.forName(VECTOR_KERNEL).newInstance();
+            } catch (ClassNotFoundException | LinkageError | InstantiationException | IllegalAccessException e)
+            {
+                // Vector API not present (or not enabled with --add-modules); use the scalar kernel
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,95 @@
+package ca.yorku.cse.mack.fittstools;
+
+import ca.yorku.cse.mack.fittscore.Throughput;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Tests of the scalar trial kernel (the values computed by the app). The vectorized kernel is checked against it in
+ * VectorTrialKernelTest (src/vectorTest/java).
+ */
+public class TrialKernelsTest
+{
+    final static float WIDTH = 40f;
+
+    // three trials from (100, 300) to (400, 300), read from offset 2: an overshoot, an undershoot, a 2D miss
+    final static int OFFSET = 2, LENGTH = 3;
+    final static float[] FROM_X = {0f, 0f, 100f, 100f, 100f};
+    final static float[] FROM_Y = {0f, 0f, 300f, 300f, 300f};
+    final static float[] TO_X = {0f, 0f, 400f, 400f, 400f};
+    final static float[] TO_Y = {0f, 0f, 300f, 300f, 300f};
+    final static float[] SELECT_X = {0f, 0f, 410f, 375f, 400f};
+    final static float[] SELECT_Y = {0f, 0f, 305f, 300f, 325f};
+
+    @Test
+    public void oneDimensional()
+    {
+        float[] deltaX = new float[LENGTH], ae = new float[LENGTH];
+        int[] miss = new int[LENGTH];
+        compute(Throughput.ONE_DIMENSIONAL, false, deltaX, ae, miss);
+        assertArrayEquals(new float[] {10f, -25f, 0f}, deltaX, 1e-3f);
+        assertArrayEquals(new float[] {310f, 275f, 300f}, ae, 1e-3f);
+        assertArrayEquals(new int[] {0, 1, 0}, miss); // |deltaX| > W / 2
+    }
+
+    @Test
+    public void twoDimensional()
+    {
+        float[] deltaX = new float[LENGTH], ae = new float[LENGTH];
+        int[] miss = new int[LENGTH];
+        compute(Throughput.TWO_DIMENSIONAL, false, deltaX, ae, miss);
+        assertArrayEquals(new float[] {10f, -25f, 0f}, deltaX, 1e-3f);
+        assertArrayEquals(new int[] {0, 1, 1}, miss); // distance to the target centre > W / 2
+    }
+
+    @Test
+    public void serialTaskAddsThePreviousDeltaX()
+    {
+        float[] deltaX = new float[LENGTH], ae = new float[LENGTH];
+        int[] miss = new int[LENGTH];
+        compute(Throughput.TWO_DIMENSIONAL, true, deltaX, ae, miss);
+        assertArrayEquals(new float[] {310f, 285f, 275f}, ae, 1e-3f);
+    }
+
+    @Test
+    public void unknownTaskType()
+    {
+        float[] deltaX = new float[LENGTH], ae = new float[LENGTH];
+        int[] miss = new int[LENGTH];
+        compute(0, false, deltaX, ae, miss);
+        assertArrayEquals(new int[] {-1, -1, -1}, miss);
+    }
+
+    @Test
+    public void bestAgreesWithScalar()
+    {
+        TrialKernel best = TrialKernels.best();
+        assertNotNull(best);
+        float[] deltaX = new float[LENGTH], ae = new float[LENGTH];
+        int[] miss = new int[LENGTH];
+        best.computeTrials(FROM_X, FROM_Y, TO_X, TO_Y, SELECT_X, SELECT_Y, OFFSET, LENGTH, WIDTH,
+                Throughput.ONE_DIMENSIONAL, true, deltaX, ae, miss);
+        assertArrayEquals(new float[] {10f, -25f, 0f}, deltaX, 1e-3f);
+        assertArrayEquals(new float[] {310f, 285f, 275f}, ae, 1e-3f);
+        assertArrayEquals(new int[] {0, 1, 0}, miss);
+    }
+
+    @Test
+    public void emptyBatch()
+    {
+        int[] miss = {7};
+        TrialKernels.SCALAR.computeTrials(FROM_X, FROM_Y, TO_X, TO_Y, SELECT_X, SELECT_Y, OFFSET, 0, WIDTH,
+                Throughput.TWO_DIMENSIONAL, true, new float[1], new float[1], miss);
+        assertEquals(7, miss[0]);
+    }
+
+    private static void compute(int taskType, boolean serialTask, float[] deltaX, float[] ae, int[] miss)
+    {
+        TrialKernels.SCALAR.computeTrials(FROM_X, FROM_Y, TO_X, TO_Y, SELECT_X, SELECT_Y, OFFSET, LENGTH, WIDTH,
+                taskType, serialTask, deltaX, ae, miss);
+    }
+}
@@ -0,0 +1,106 @@
+package ca.yorku.cse.mack.fittstools;
+
+import ca.yorku.cse.mack.fittscore.Throughput;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * VectorTrialKernel -- a TrialKernel using the Vector API (jdk.incubator.vector) to compute deltaX, ae, and miss for
+ * a full vector of trials at a time.
+ *
+ * The geometry is that of Throughput.computeTrials, with one simplification: deltaX = (c^2 - b^2 - a^2) / 2a needs
+ * only the squared lengths of b and c, so only a is computed with a square root. Likewise, the 2D miss test compares
+ * b^2 with (W/2)^2. The results agree with the scalar kernel to within float rounding (see VectorTrialKernelTest).
+ *
+ * This class is loaded by TrialKernels.best() (by name) and is only compiled with JDK 16 or later.
+ */
+public class VectorTrialKernel implements TrialKernel
+{
+    final static VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    final static VectorSpecies<Integer> INTS = VectorSpecies.of(int.class, FLOATS.vectorShape());
+
+    @Override
+    public void computeTrials(float[] fromX, float[] fromY, float[] toX, float[] toY, float[] selectX,
+            float[] selectY, int offset, int length, float width, int taskType, boolean serialTask,
+            float[] deltaXOut, float[] aeOut, int[] missOut)
+    {
+        float halfWidth = width / 2f;
+        IntVector zero = IntVector.zero(INTS);
+        int upper = FLOATS.loopBound(length);
+
+        int i = 0;
+        for (; i < upper; i += FLOATS.length())
+        {
+            FloatVector x1 = FloatVector.fromArray(FLOATS, fromX, offset + i);
+            FloatVector y1 = FloatVector.fromArray(FLOATS, fromY, offset + i);
+            FloatVector x2 = FloatVector.fromArray(FLOATS, toX, offset + i);
+            FloatVector y2 = FloatVector.fromArray(FLOATS, toY, offset + i);
+            FloatVector x = FloatVector.fromArray(FLOATS, selectX, offset + i);
+            FloatVector y = FloatVector.fromArray(FLOATS, selectY, offset + i);
+
+            // squared lengths of the sides of the a-b-c triangle (see Throughput.computeTrials)
+            FloatVector ax = x1.sub(x2), ay = y1.sub(y2);
+            FloatVector bx = x.sub(x2), by = y.sub(y2);
+            FloatVector cx = x1.sub(x), cy = y1.sub(y);
+            FloatVector a2 = ax.mul(ax).add(ay.mul(ay));
+            FloatVector b2 = bx.mul(bx).add(by.mul(by));
+            FloatVector c2 = cx.mul(cx).add(cy.mul(cy));
+            FloatVector a = a2.sqrt();
+
+            FloatVector dx = c2.sub(b2).sub(a2).div(a.mul(2f));
+            dx.intoArray(deltaXOut, i);
+            a.add(dx).intoArray(aeOut, i);
+
+            VectorMask<Float> missed;
+            if (taskType == Throughput.ONE_DIMENSIONAL)
+                missed = dx.abs().compare(VectorOperators.GT, halfWidth);
+            else
+                missed = b2.compare(VectorOperators.GT, halfWidth * halfWidth);
+            zero.blend(1, missed.cast(INTS)).intoArray(missOut, i);
+        }
+
+        // remaining trials (fewer than a full vector)
+        for (; i < length; ++i)
+        {
+            int j = offset + i;
+            float ax = fromX[j] - toX[j], ay = fromY[j] - toY[j];
+            float bx = selectX[j] - toX[j], by = selectY[j] - toY[j];
+            float cx = fromX[j] - selectX[j], cy = fromY[j] - selectY[j];
+            float a2 = ax * ax + ay * ay, b2 = bx * bx + by * by, c2 = cx * cx + cy * cy;
+            float a = (float)Math.sqrt(a2);
+            deltaXOut[i] = (c2 - b2 - a2) / (2f * a);
+            aeOut[i] = a + deltaXOut[i];
+            if (taskType == Throughput.ONE_DIMENSIONAL)
+                missOut[i] = Math.abs(deltaXOut[i]) > halfWidth ? 1 : 0;
+            else
+                missOut[i] = b2 > halfWidth * halfWidth ? 1 : 0;
+        }
+
+        // for serial tasks, add deltaX from the previous trial (the second pass keeps the vector loop independent)
+        if (serialTask && length > 1)
+        {
+            int upperShifted = 1 + FLOATS.loopBound(length - 1);
+            int k = 1;
+            for (; k < upperShifted; k += FLOATS.length())
+                FloatVector.fromArray(FLOATS, aeOut, k).add(FloatVector.fromArray(FLOATS, deltaXOut, k - 1))
+                        .intoArray(aeOut, k);
+            for (; k < length; ++k)
+                aeOut[k] += deltaXOut[k - 1];
+        }
+
+        // unknown task type (as in Throughput.computeTrials)
+        if (taskType != Throughput.ONE_DIMENSIONAL && taskType != Throughput.TWO_DIMENSIONAL)
+            for (int k = 0; k < length; ++k)
+                missOut[k] = -1;
+    }
+
+    @Override
+    public String getName()
+    {
+        return "vector (" + FLOATS.length() + " lanes)";
+    }
+}
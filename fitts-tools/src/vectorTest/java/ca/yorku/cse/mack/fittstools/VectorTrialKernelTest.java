@@ -0,0 +1,129 @@
+package ca.yorku.cse.mack.fittstools;
+
+import ca.yorku.cse.mack.fittscore.Throughput;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of the vectorized trial kernel against the scalar kernel, for 1D and 2D, discrete and serial trials, with
+ * hits and misses. The batch lengths and offsets exercise the vector loop, the scalar tail, and batches shorter than
+ * a vector. Run by the vectorTest task (see build.gradle), with the Vector API enabled.
+ */
+public class VectorTrialKernelTest
+{
+    // largest difference allowed between the vectorized and scalar results (pixels; relative for large values)
+    final static float TOLERANCE = 1e-3f;
+    final static float WIDTH = 40f;
+    final static int[] TASK_TYPES = {Throughput.ONE_DIMENSIONAL, Throughput.TWO_DIMENSIONAL, 0};
+
+    final VectorTrialKernel vector = new VectorTrialKernel();
+
+    @Test
+    public void bestIsTheVectorKernel()
+    {
+        assertTrue(TrialKernels.best() instanceof VectorTrialKernel);
+    }
+
+    @Test
+    public void largeBatch()
+    {
+        int misses = check(new Random(1), 3, 1001);
+        assertTrue("misses: " + misses, misses > 0 && misses < 1001);
+    }
+
+    @Test
+    public void everyTailLength()
+    {
+        int lanes = VectorTrialKernel.FLOATS.length();
+        Random r = new Random(2);
+        for (int length = 0; length <= 3 * lanes + 1; ++length)
+            for (int offset = 0; offset < 3; ++offset)
+                check(r, offset, length);
+    }
+
+    @Test
+    public void allMissed()
+    {
+        int length = 2 * VectorTrialKernel.FLOATS.length() + 3;
+        float[][] xy = trials(new Random(3), 0, length, 10f * WIDTH);
+        for (int taskType : new int[] {Throughput.ONE_DIMENSIONAL, Throughput.TWO_DIMENSIONAL})
+        {
+            int[] miss = new int[length];
+            vector.computeTrials(xy[0], xy[1], xy[2], xy[3], xy[4], xy[5], 0, length, WIDTH, taskType, false,
+                    new float[length], new float[length], miss);
+            int[] scalar = new int[length];
+            TrialKernels.SCALAR.computeTrials(xy[0], xy[1], xy[2], xy[3], xy[4], xy[5], 0, length, WIDTH,
+                    taskType, false, new float[length], new float[length], scalar);
+            for (int i = 0; i < length; ++i)
+                assertEquals("trial " + i, scalar[i], miss[i]);
+        }
+    }
+
+    /*
+     * Compare the kernels for a batch of random trials at offset, for each task type, discrete and serial. Returns
+     * the number of 2D misses (scalar), so the caller can check the batch has both hits and misses.
+     */
+    private int check(Random r, int offset, int length)
+    {
+        float[][] xy = trials(r, offset, length, WIDTH / 3f);
+        int misses = 0;
+        for (int taskType : TASK_TYPES)
+            for (int serial = 0; serial < 2; ++serial)
+            {
+                float[] dx1 = new float[length], ae1 = new float[length], dx2 = new float[length], ae2 = new
+                        float[length];
+                int[] miss1 = new int[length], miss2 = new int[length];
+                TrialKernels.SCALAR.computeTrials(xy[0], xy[1], xy[2], xy[3], xy[4], xy[5], offset, length, WIDTH,
+                        taskType, serial == 1, dx1, ae1, miss1);
+                vector.computeTrials(xy[0], xy[1], xy[2], xy[3], xy[4], xy[5], offset, length, WIDTH, taskType,
+                        serial == 1, dx2, ae2, miss2);
+                String batch = String.format("task %d, serial %d, offset %d, length %d, trial ", taskType, serial,
+                        offset, length);
+                for (int i = 0; i < length; ++i)
+                {
+                    if (!close(dx1[i], dx2[i]))
+                        fail(batch + i + ": deltaX " + dx1[i] + " (scalar) vs. " + dx2[i]);
+                    if (!close(ae1[i], ae2[i]))
+                        fail(batch + i + ": ae " + ae1[i] + " (scalar) vs. " + ae2[i]);
+
+                    // a selection within rounding distance of the target edge may legitimately go either way
+                    float edge = taskType == Throughput.ONE_DIMENSIONAL ? Math.abs(dx1[i]) : (float)Math.hypot
+                            (xy[4][offset + i] - xy[2][offset + i], xy[5][offset + i] - xy[3][offset + i]);
+                    if (miss1[i] != miss2[i] && !close(edge, WIDTH / 2f))
+                        fail(batch + i + ": miss " + miss1[i] + " (scalar) vs. " + miss2[i]);
+                    if (taskType == Throughput.TWO_DIMENSIONAL && serial == 0)
+                        misses += miss1[i];
+                }
+            }
+        return misses;
+    }
+
+    // random trials at offset (from, to, and select x-y), with the selections scattered by spread about the target
+    private static float[][] trials(Random r, int offset, int length, float spread)
+    {
+        float[][] xy = new float[6][offset + length];
+        for (int i = offset; i < offset + length; ++i)
+        {
+            double angle = 2.0 * Math.PI * r.nextDouble();
+            float amplitude = 100f + 500f * r.nextFloat();
+            xy[0][i] = 600f + 300f * r.nextFloat();
+            xy[1][i] = 400f + 300f * r.nextFloat();
+            xy[2][i] = xy[0][i] + amplitude * (float)Math.cos(angle);
+            xy[3][i] = xy[1][i] + amplitude * (float)Math.sin(angle);
+            xy[4][i] = xy[2][i] + (float)r.nextGaussian() * spread;
+            xy[5][i] = xy[3][i] + (float)r.nextGaussian() * spread;
+        }
+        return xy;
+    }
+
+    private static boolean close(float a, float b)
+    {
+        return Math.abs(a - b) <= TOLERANCE * Math.max(1f, Math.abs(a));
+    }
+}